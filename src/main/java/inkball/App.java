@@ -1,17 +1,21 @@
 package inkball;
 
 import processing.core.PApplet;
+import processing.core.PGraphics;
 import processing.core.PImage;
 import processing.data.JSONArray;
 import processing.data.JSONObject;
 import processing.event.KeyEvent;
 import processing.event.MouseEvent;
 
+import javax.imageio.ImageIO;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Future;
 
 /**
  * Main application class for the Inkball game.
@@ -42,9 +46,30 @@ public class App extends PApplet {
 
     public static final int FPS = 30;
 
+    public static final int HINT_DURATION = 5000;
+    public static final int REWIND_SECONDS = 10;
+
+    // Speeds of the game, chosen with the number keys
+    public static final float[] SPEEDS = {0.25f, 1f, 2f, 8f, 0f}; // For the frames simulated per frame drawn, 0 for as many as fit
+    public static final String[] SPEED_NAMES = {"0.25x", "1x", "2x", "8x", "MAX"};
+    public static final int SPEED_NORMAL = 1;
+
+    // Actions of a player, applied by applyInput()
+    public static final int INK_BEGIN = 1;
+    public static final int INK_POINT = 2;
+    public static final int INK_END = 3;
+    public static final int INK_ERASE = 4;
+    public static final int INPUT_PAUSE = 5;
+    public static final int INPUT_RESTART = 6;
+    public static final int INPUT_HINT = 7;
+    public static final int INPUT_REWIND = 8;
+    public static final int INK_ERASE_SPAN = 9;
+    public static final int INPUT_SPEED = 10;
+
     public String configPath;
 
-    public static Random random = new Random();
+    public long seed = new Random().nextLong(); // For the seed of the game, saved with its scores
+    public Random random = new Random(seed); // For the spawn positions and ball velocities, seeded for reproducible runs
 	
 	// Feel free to add any additional methods or attributes you want. Please put classes in different files.
 
@@ -52,26 +77,18 @@ public class App extends PApplet {
     private HashMap<String, PImage> sprites = new HashMap<>(); // For storing the pre-loaded images
     public Cell [][] board = new Cell[BOARD_HEIGHT][BOARD_WIDTH]; // For the set-up of the walls 
     // Attributes read from the config file
-    public int totalLevel; // For storing the total number of levels
+    public GameConfig config = null; // For the levels and score tables, shared by every game of the same config
     public int currentLevel; // For tracking the current level
-    public String[][] layouts; // For storing the layouts of each level
-    public String[] layoutDir; // For storing the file directory of the layout of each level
-    public int[] time; // For storing the maximum time allowed for playing for each level
-    public int[] spawn_interval; // For storing the spawn internal of for each level
-    public float[] score_increase_from_hole_capture_modifier; // For storing the increase modifier of for each level
-    public float[] score_decrease_from_wrong_hole_modifier; // For storing the decrease modifer of for each level
-    public ArrayList<ArrayList<String>> ballsRaw; // For storing the balls of each level
-    public HashMap<Integer,Integer> score_increase_from_hole_capture = null; // For storing the score increase for correct hole capture
-    public HashMap<Integer,Integer> score_decrease_from_wrong_hole = null; // For storing the score decrease for incorrect hole capture
 
     // Attributes for the gameplay
     public ArrayList<Ball> balls = null;
     public Queue<Ball> ballQueue = null;
     public ArrayList<Ball> ballsOnBoard = null;
     public ArrayList<Hole> holes = null;
-    public ArrayList<Wall> walls = null;
+    public WallSet walls = null;
+    public ArrayList<Wall> brokenBricks = new ArrayList<Wall>(); // For the bricks broken during the current frame
     public ArrayList<Spawner> spawners = null;
-    public ArrayList<ArrayList<Point>> lines = null;
+    public ArrayList<InkStroke> lines = null;
     public int starttime = 0;
     public boolean gameOver;
     public boolean gameWin;
@@ -85,6 +102,49 @@ public class App extends PApplet {
     public ArrayList<Wall> rotateBlock = null;
     public int numFrameForConversion;
     public int remainFrameForConversion;
+    public int tickCount = 0; // For counting the frames simulated by update()
+    public volatile Clock clock = new SystemClock(); // For the time read by the timers of the game
+    public volatile int speed = SPEED_NORMAL; // For the index of the current speed in SPEEDS
+    private float framesDue = 0; // For the part of a frame owed at slow speeds
+    private boolean speedFromWallClock = false; // For returning to the wall clock at normal speed
+    public StressTest stressTest = null; // For running the stress test instead of the levels in the config file
+    public volatile ArrayList<InkStroke> hint = null; // For the lines suggested by the last hint
+    public volatile int hintUntil = 0; // For the time until which the hint is shown
+    private Future<?> hintSearch = null; // For the hint search running in the background
+    public SessionRecorder recorder = null; // For recording the session to a file
+    public InkStroke[] currentStroke = new InkStroke[2]; // For the line each player is drawing
+    public LockstepSession lockstep = null; // For the two-player game kept in step over the network
+    public boolean threaded = false; // For simulating the game on its own thread
+    public SimulationThread simulation = null; // For the thread simulating the game when threaded
+    public RenderBuffer renderBuffer = new RenderBuffer(); // For handing the frames to draw from the simulation
+    public volatile long lastFrameNanos = 0; // For the time spent on the last frame, simulating and drawing
+    public QualityGovernor governor = new QualityGovernor(); // For leaving out optional drawing when frames take too long
+    public boolean showDebug = false; // For showing the debug overlay
+    public RewindBuffer rewindBuffer = new RewindBuffer(REWIND_SECONDS * FPS, FPS / 3); // For the recent states of the level that can be rewound
+    public InkIndex inkIndex = new InkIndex(); // For finding the lines under the eraser
+    public boolean partialErase = false; // For erasing only the touched part of a line instead of the whole line
+    public boolean preloadNextLevel = true; // For building the next level in the background during the score conversion
+    private Future<World> nextWorld = null; // For the world of the next level being built in the background
+    public EventBus events = new EventBus(); // For the captures, misses and brick breaks of the frames, read by the subscribers
+    private final EventBus.Handler scoringHandler = this::score;
+    private final EventBus.Subscription scoring = events.subscribeEvery(scoringHandler); // For updating the score and the queue from every event
+    private final EventBus.Subscription overlayEvents = events.subscribe(); // For counting the events shown on the debug overlay
+    private final int[] eventCounts = new int[GameEvent.TYPE_COUNT];
+    private final EventBus.Handler overlayHandler = event -> eventCounts[event.type]++;
+    public ParallelCollisions parallelCollisions = null; // For splitting the collisions of large boards across the cores
+    public BallKernel ballKernel = null; // For moving and bouncing the balls many at a time instead of one by one
+    public boolean useHoleField = false; // For pulling the balls towards the holes with a table worked out when the level starts
+    private HoleField holeField = null; // For the pull of the holes of the current level when useHoleField is set, shared with the copies
+    private final HoleField.Fallen holeFallen = new HoleField.Fallen(); // For the balls fallen into a hole this frame, kept by each game
+    public HighScoreStore highScores = null; // For saving the scores of the levels and games played
+    public SessionTelemetry telemetry = null; // For logging what happens in the session to files
+    private final EventBus.Subscription telemetryEvents = events.subscribe(); // For the captures and misses logged
+    private final EventBus.Handler telemetryHandler = this::logEvent;
+    public volatile boolean showLeaderboard = false; // For showing the best scores
+    public int leaderboardUntil = 0; // For the time until which the best scores are shown after starting
+    private int levelTimeLeft = 0; // For the time left when the last level was cleared
+    private boolean scoreSaved = false; // For saving the score of a game only once when it ends
+    private boolean levelScoreSaved = false; // For saving the score of a level only once, even if it is cleared again after a rewind
 
     // Additional functions:
     /**
@@ -100,12 +160,27 @@ public class App extends PApplet {
     public PImage getSprite(String s) {
         PImage result = sprites.get(s);
         if (result == null) {
+            FlightEvents.SpriteLoad flight = new FlightEvents.SpriteLoad();
+            boolean profiling = flight.isEnabled();
+            if(profiling){
+                flight.begin();
+            }
             try{
-            result = loadImage(URLDecoder.decode(this.getClass().getResource(s+".png").getPath(), StandardCharsets.UTF_8.name()));
+            if(sketchPath() == null){
+                // Without a window there is no sketch to load from, so the image is decoded directly
+                result = new PImage(ImageIO.read(this.getClass().getResource(s+".png")));
+                result.format = ARGB;
+            } else {
+                result = loadImage(URLDecoder.decode(this.getClass().getResource(s+".png").getPath(), StandardCharsets.UTF_8.name()));
+            }
             sprites.put(s, result);
-            } catch (UnsupportedEncodingException e){
+            } catch (IOException e){
                 throw new RuntimeException(e);
             }
+            if(profiling){
+                flight.sprite = s;
+                flight.commit();
+            }
         }
         return result;
     }
@@ -138,7 +213,7 @@ public class App extends PApplet {
      */
     public void pause(){
         // If it was paused before
-        if ((time[currentLevel] > (millis() - starttime)/1000) && (!gameWin) ){
+        if ((getLevel().getTime() > (millis() - starttime)/1000) && (!gameWin) ){
             if(paused){
                 starttime += millis() - pausedTime;
                 lastSpawnTime += millis() - pausedTime;
@@ -169,6 +244,7 @@ public class App extends PApplet {
         if(allAbsorbed){
             levelUp = true;
             gameOver = true;
+            int clearedScore = levelScore;
             totalScore += levelScore;
             levelScore = 0;
             // Stop the game for score conversion
@@ -178,9 +254,23 @@ public class App extends PApplet {
             // Update the remaining time
             if(remainingTime == -1){
                 remainingTime = millis() - starttime;
+                events.publish(GameEvent.LEVEL_CLEARED, tickCount, null, 0, currentLevel);
+                levelTimeLeft = Math.max(0, getLevel().getTime() * 1000 - remainingTime);
+                if(!levelScoreSaved){
+                    levelScoreSaved = true;
+                    saveScore(currentLevel, clearedScore, levelTimeLeft);
+                }
+                if(telemetry != null){
+                    telemetry.log(SessionTelemetry.LEVEL_END, tickCount, currentLevel, levelTimeLeft);
+                    telemetry.log(SessionTelemetry.LEVEL_SCORE, tickCount, currentLevel, clearedScore);
+                }
+                // Build the next level while the remaining time is converted
+                if(preloadNextLevel && nextWorld == null && currentLevel + 1 < config.getLevelCount()){
+                    nextWorld = World.buildLater(config, currentLevel + 1);
+                }
             } else if (remainingTime <= 0){
                 // When the calculation is done, update the game
-                if(currentLevel + 1 >= totalLevel){
+                if(currentLevel + 1 >= config.getLevelCount()){
                     gameWin = true;
                 } else {
                     currentLevel += 1;
@@ -190,6 +280,113 @@ public class App extends PApplet {
         }
     }
 
+    /**
+     * Saves a score to the high-score store, if any.
+     *
+     * <p>The score is written on a background thread, so the simulation does not wait for the disk. A
+     * score that cannot be saved is reported and the game goes on without it.
+     *
+     * @param level the level, or {@link HighScoreStore#OVERALL} for the score of the whole game
+     * @param score the score
+     * @param timeLeft the time left in milliseconds
+     */
+    private void saveScore(int level, int score, int timeLeft){
+        if(highScores == null){
+            return;
+        }
+        highScores.recordLater(level, score, timeLeft, seed);
+    }
+
+    /**
+     * Creates a copy of the current game that can be played on without a window.
+     *
+     * <p>The level data read from the config file, the holes and the spawners never change during
+     * play and are shared with the copy. The balls, walls, cells and lines are copied, so the copy
+     * can be played on another thread without affecting this game. The copy derives its time from
+     * the simulated frames, with its timers shifted so that it continues exactly where this game is.
+     *
+     * @param seed the seed of the spawn positions and ball velocities of the copy
+     * @return the copy of the game
+     */
+    public App fork(long seed){
+        App copy = new App();
+        copy.clock = new VirtualClock();
+        copy.rewindBuffer = null;
+        copy.random = new Random(seed);
+        copy.preloadNextLevel = false;
+
+        // Share the level data
+        copy.configPath = configPath;
+        copy.config = config;
+        copy.currentLevel = currentLevel;
+        copy.holes = holes;
+        copy.useHoleField = useHoleField;
+        copy.holeField = holeField;
+        copy.spawners = spawners;
+
+        // Copy the board and the walls on it
+        IdentityHashMap<Wall, Wall> wallCopies = new IdentityHashMap<Wall, Wall>();
+        for (int rowNum = 0; rowNum < App.BOARD_HEIGHT; rowNum++){
+            for (int colNum = 0; colNum < App.BOARD_WIDTH; colNum++){
+                GameObject object = board[rowNum][colNum].getGameObject();
+                if(object instanceof Wall){
+                    Wall wallCopy = new Wall((Wall) object);
+                    wallCopies.put((Wall) object, wallCopy);
+                    object = wallCopy;
+                }
+                copy.board[rowNum][colNum] = new Cell(colNum * App.CELLSIZE, rowNum * App.CELLSIZE + App.TOPBAR);
+                copy.board[rowNum][colNum].setGameObject(object);
+            }
+        }
+        copy.walls = new WallSet();
+        for(Wall w: walls){
+            copy.walls.add(wallCopies.get(w));
+        }
+        copy.rotateBlock = new ArrayList<Wall>();
+        for(Wall w: rotateBlock){
+            copy.rotateBlock.add(new Wall(w));
+        }
+
+        // Copy the balls keeping their order in each collection
+        IdentityHashMap<Ball, Ball> ballCopies = new IdentityHashMap<Ball, Ball>();
+        copy.balls = new ArrayList<Ball>();
+        for(Ball b: balls){
+            Ball ballCopy = new Ball(b);
+            ballCopies.put(b, ballCopy);
+            copy.balls.add(ballCopy);
+        }
+        copy.ballQueue = new LinkedList<Ball>();
+        for(Ball b: ballQueue){
+            copy.ballQueue.add(ballCopies.get(b));
+        }
+        copy.ballsOnBoard = new ArrayList<Ball>();
+        for(Ball b: ballsOnBoard){
+            copy.ballsOnBoard.add(ballCopies.get(b));
+        }
+
+        // Copy every line, as the line being drawn keeps growing and a rewind cuts lines back
+        copy.lines = new ArrayList<InkStroke>();
+        for(InkStroke line: lines){
+            copy.lines.add(new InkStroke(line));
+        }
+
+        // Copy the game attributes, moving the timers to the clock of the copy
+        int offset = copy.millis() - millis();
+        copy.starttime = starttime + offset;
+        copy.lastSpawnTime = lastSpawnTime + offset;
+        copy.pausedTime = pausedTime + offset;
+        copy.gameOver = gameOver;
+        copy.gameWin = gameWin;
+        copy.totalScore = totalScore;
+        copy.levelScore = levelScore;
+        copy.paused = paused;
+        copy.levelUp = levelUp;
+        copy.remainingTime = remainingTime;
+        copy.numFrameForConversion = numFrameForConversion;
+        copy.remainFrameForConversion = remainFrameForConversion;
+        return copy;
+    }
+
    /**
      * Resets the game to its initial state or to the beginning of the current level.
      *
@@ -197,17 +394,17 @@ public class App extends PApplet {
      * game states such as score and time.
      */
     public void reset(){
+        FlightEvents.LevelReset flight = new FlightEvents.LevelReset();
+        boolean profiling = flight.isEnabled();
+        if(profiling){
+            flight.begin();
+        }
         if(gameWin){
             currentLevel = 0;
         }
-        // Reset the Balls, Walls and Holes
-        balls = new ArrayList<Ball>();
-        holes = new ArrayList<Hole>();
-        walls = new ArrayList<Wall>();
-        spawners = new ArrayList<Spawner>();
-        ballQueue = new LinkedList<Ball>();
-        ballsOnBoard = new ArrayList<Ball>();
-        lines = new ArrayList<ArrayList<Point>>();
+        // Reset the lines
+        brokenBricks.clear();
+        lines = new ArrayList<InkStroke>();
 
         // Reset the game attributes
         starttime = millis();
@@ -218,136 +415,121 @@ public class App extends PApplet {
         paused = false;
         remainingTime = -1;
         levelUp = false;
+        scoreSaved = false;
+        levelScoreSaved = false;
+        if(telemetry != null){
+            telemetry.log(SessionTelemetry.LEVEL_START, tickCount, currentLevel, 0);
+        }
         rotateBlock = new ArrayList<Wall>();
         rotateBlock.add(new Wall(0,App.TOPBAR,4,false));
         rotateBlock.add(new Wall(App.WIDTH - App.CELLSIZE,App.HEIGHT - App.CELLSIZE,4,false));
         numFrameForConversion = (int)0.067 * App.FPS;
         remainFrameForConversion = 0;
+        hint = null;
 
 
-        // Clean & Reset the board
-        for (int rowNum = 0; rowNum < App.BOARD_HEIGHT; rowNum++){
-            for (int colNum = 0; colNum < App.BOARD_WIDTH; colNum++){
-                board[rowNum][colNum] = new Cell(
-                    colNum * App.CELLSIZE,
-                    rowNum * App.CELLSIZE + App.TOPBAR);                
-            }
-        }
-
-        // Load the balls queue of the current level
-        for(String ballstr: ballsRaw.get(currentLevel)){
-            int color = 0;
-            switch(ballstr){
-                case "grey":
-                    color = 0;
-                    break;
-                case "orange":
-                    color = 1;
-                    break;
-                case "blue":
-                    color = 2;
-                    break;
-                case "green":
-                    color = 3;
-                    break;
-                case "yellow":
-                    color = 4;
-                    break;
-            }
-            Ball newBall = new Ball(-10, -10,color);
-            balls.add(newBall);
-            ballQueue.add(newBall);
+        // Put the objects of the level in place, using the world built during the score conversion if there is one
+        World world = null;
+        if(nextWorld != null){
+            World prepared = World.await(nextWorld);
+            if(prepared != null && prepared.level == currentLevel && prepared.config == config){
+                world = prepared;
+            }
+            nextWorld = null;
         }
-        
-        // Read the gameboard of the current level
-        for (int rowNum = 0; rowNum < App.BOARD_HEIGHT ; rowNum++){
-            // If the next row is not empty
-            if(rowNum < layouts[currentLevel].length && layouts[currentLevel][rowNum] != null){
-                for(int colNum = 0; colNum < App.BOARD_WIDTH; colNum++){
-                    // If the next character in line is not empty
-                    if (colNum < layouts[currentLevel][rowNum].trim().length()){
-                        switch(layouts[currentLevel][rowNum].charAt(colNum)){
-                            case ' ':
-                                if(board[rowNum][colNum].getGameObject() == null){
-                                    board[rowNum][colNum].setGameObject(null);
-                                }
-                                break;
-                            case 'X':
-                                Wall newWall = new Wall(
-                                    colNum * App.CELLSIZE,
-                                    rowNum * App.CELLSIZE + App.TOPBAR,
-                                    0,false);
-                                board[rowNum][colNum].setGameObject(newWall);;
-                                walls.add(newWall);
-                                break;                                    
-                            case '1':
-                            case '2':
-                            case '3':
-                            case '4':
-                                int c1 = layouts[currentLevel][rowNum].charAt(colNum) - '0';    
-                                Wall newWall1 = new Wall(
-                                    colNum * App.CELLSIZE,
-                                    rowNum * App.CELLSIZE + App.TOPBAR,
-                                    c1,false);
-                                board[rowNum][colNum].setGameObject(newWall1);;
-                                walls.add(newWall1);
-                                break;
-                            case '5':
-                            case '6':
-                            case '7':
-                            case '8':
-                            case '9':
-                                int c4 = layouts[currentLevel][rowNum].charAt(colNum) - '5';    
-                                Wall newBrick = new Wall(
-                                    colNum * App.CELLSIZE,
-                                    rowNum * App.CELLSIZE + App.TOPBAR,
-                                    c4,true);
-                                board[rowNum][colNum].setGameObject(newBrick);;
-                                walls.add(newBrick);
-                                break;
-                            case 'S':
-                                Spawner newSpawner = new Spawner(
-                                    colNum * App.CELLSIZE,
-                                    rowNum * App.CELLSIZE + App.TOPBAR);
-                                board[rowNum][colNum].setGameObject(newSpawner);
-                                spawners.add(newSpawner);
-                                break;
-                            case 'H':
-                                int c2 = layouts[currentLevel][rowNum].charAt(colNum+1) - '0';
-                                Hole newHole = new Hole(
-                                    colNum * App.CELLSIZE,
-                                    rowNum * App.CELLSIZE + App.TOPBAR,
-                                    c2);
-                                board[rowNum][colNum].setGameObject(newHole);
-                                board[rowNum][colNum+1].setGameObject(newHole);
-                                board[rowNum+1][colNum].setGameObject(newHole);
-                                board[rowNum+1][colNum+1].setGameObject(newHole);
-                                holes.add(newHole);
-                                colNum++;
-                                break;
-                            case 'B':
-                                int c3 = layouts[currentLevel][rowNum].charAt(colNum+1) - '0';
-                                board[rowNum][colNum].setGameObject(null);
-                                board[rowNum][colNum+1].setGameObject(null);
-                                Ball newBall = new Ball(
-                                    colNum * App.CELLSIZE,
-                                    rowNum * App.CELLSIZE + App.TOPBAR,
-                                    c3);
-                                balls.add(newBall);
-                                ballsOnBoard.add(newBall);
-                                newBall.randomVelocity();
-                                colNum++;
-                                break;
-                        }
-                    } else {
-                        // If the next character in line is empty
-                        board[rowNum][colNum].setGameObject(null);
-                    }
+        boolean preloaded = world != null;
+        if(world == null){
+            world = new World(config, currentLevel);
+        }
+        install(world);
+        // Work out the pull of the holes once for the whole level
+        holeField = useHoleField ? new HoleField(holes) : null;
+
+        if(profiling){
+            flight.level = currentLevel;
+            flight.preloaded = preloaded;
+            flight.balls = balls.size();
+            flight.commit();
+        }
+    }
+
+    /**
+     * Makes a freshly built world the world of the game.
+     *
+     * <p>The balls on the board are given their velocities here rather than when the world is built,
+     * so they are drawn from the random source of the game in the same order wherever it was built.
+     *
+     * @param world the world of the current level
+     */
+    public void install(World world){
+        board = world.board;
+        balls = world.balls;
+        ballQueue = world.ballQueue;
+        ballsOnBoard = world.ballsOnBoard;
+        holes = world.holes;
+        walls = world.walls;
+        spawners = world.spawners;
+        for(Ball b: ballsOnBoard){
+            b.randomVelocity(random);
+        }
+    }
+
+    /**
+     * Updates the score and the ball queue for an event read by the scoring of the game.
+     *
+     * @param event the event
+     */
+    private void score(GameEvent event){
+        switch(event.type){
+            case GameEvent.CAPTURE:
+                levelScore += getLevel().getIncreaseModifier() * config.getCaptureScore(event.color);
+                break;
+            case GameEvent.WRONG_HOLE:
+                levelScore -= getLevel().getDecreaseModifier() * config.getWrongHolePenalty(event.color);
+                break;
+            case GameEvent.REQUEUE:
+                ballQueue.add((Ball) event.subject);
+                if(ballQueue.size()==1){
+                    lastSpawnTime = millis();
                 }
-            } else {
-                // If the next row is empty
-                for(int colNum = 0; colNum < App.BOARD_WIDTH;colNum++){
-                    board[rowNum][colNum].setGameObject(null);
+                break;
+        }
+    }
+
+    /**
+     * Logs a capture or a miss read by the telemetry of the session.
+     *
+     * @param event the event
+     */
+    private void logEvent(GameEvent event){
+        if(event.type == GameEvent.CAPTURE){
+            telemetry.log(SessionTelemetry.CAPTURE, event.tick, currentLevel, event.color);
+        } else if(event.type == GameEvent.WRONG_HOLE){
+            telemetry.log(SessionTelemetry.MISS, event.tick, currentLevel, event.color);
+        }
+    }
+
+    /**
+     * Queues a brick that has taken its last hit for removal at the end of the collisions of this frame.
+     *
+     * @param brick the broken brick
+     */
+    public void brickBroken(Wall brick){
+        brokenBricks.add(brick);
+    }
+
+    /**
+     * Updates the neighbour masks of the walls around a cell whose content has changed.
+     *
+     * @param row the row of the changed cell
+     * @param col the column of the changed cell
+     */
+    public void updateWallNeighbours(int row, int col){
+        for(int r = Math.max(0, row - 1); r <= Math.min(App.BOARD_HEIGHT - 1, row + 1); r++){
+            for(int c = Math.max(0, col - 1); c <= Math.min(App.BOARD_WIDTH - 1, col + 1); c++){
+                GameObject object = board[r][c].getGameObject();
+                if(object instanceof Wall){
+                    ((Wall) object).updateNeighbours(board);
                 }
             }
         }
@@ -372,103 +554,14 @@ public class App extends PApplet {
 	@Override
     public void setup() {
         frameRate(App.FPS);
-		//See PApplet javadoc:
-		//loadJSONObject(configPath)
-        // Load the JSON file
-        JSONObject json = loadJSONObject(configPath);
-        JSONArray levelsArray = json.getJSONArray("levels");
-
-        // Load the levels' attributes from the config JSON file
-        totalLevel = levelsArray.size();
-        layoutDir = new String[totalLevel];
-        time = new int[totalLevel];
-        spawn_interval = new int[totalLevel];
-        score_increase_from_hole_capture_modifier = new float[totalLevel];
-        score_decrease_from_wrong_hole_modifier = new float[totalLevel];
-        ballsRaw = new ArrayList<ArrayList<String>>(totalLevel);
-        for (int i = 0; i < totalLevel; i++){
-            JSONObject leveljson = levelsArray.getJSONObject(i);
-            layoutDir[i] = leveljson.getString("layout");
-            time[i] = leveljson.getInt("time");
-            spawn_interval[i] = leveljson.getInt("spawn_interval");
-            score_increase_from_hole_capture_modifier[i] = leveljson.getFloat("score_increase_from_hole_capture_modifier");
-            score_decrease_from_wrong_hole_modifier[i] = leveljson.getFloat("score_decrease_from_wrong_hole_modifier");
-            JSONArray ballArray = leveljson.getJSONArray("balls");
-            ArrayList<String> ballsSeries = new ArrayList<String>();
-            for(int j = 0; j < ballArray.size(); j++){
-                ballsSeries.add(ballArray.getString(j));
-            }
-            ballsRaw.add(ballsSeries);
-        }
-
-        // Load the balls attributes from config JSON file
-        JSONObject scoreIncreaseJSON = json.getJSONObject("score_increase_from_hole_capture");
-        score_increase_from_hole_capture = new HashMap<>();
-        for (Object keyObj : scoreIncreaseJSON.keys()) {
-            Integer key = -1;
-            switch((String)keyObj){
-                case "grey":
-                    key = 0;
-                    break;
-                case "orange":
-                    key = 1;
-                    break;
-                case "blue":
-                    key = 2;
-                    break;
-                case "green":
-                    key = 3;
-                    break;
-                case "yellow":
-                    key = 4;
-                    break;
-            }
-            score_increase_from_hole_capture.put(key, scoreIncreaseJSON.getInt((String)keyObj));
-        }
-        JSONObject scoreDecreaseJSON = json.getJSONObject("score_decrease_from_wrong_hole");
-        score_decrease_from_wrong_hole = new HashMap<>();
-        for (Object keyObj : scoreDecreaseJSON.keys()) {
-            Integer key = -1;
-            switch((String)keyObj){
-                case "grey":
-                    key = 0;
-                    break;
-                case "orange":
-                    key = 1;
-                    break;
-                case "blue":
-                    key = 2;
-                    break;
-                case "green":
-                    key = 3;
-                    break;
-                case "yellow":
-                    key = 4;
-                    break;
-            }
-            score_decrease_from_wrong_hole.put(key, scoreDecreaseJSON.getInt((String)keyObj));
-        }
-
-        // Load the levels into the attribute
-        layouts = new String[totalLevel][App.BOARD_HEIGHT];
-        for (int i = 0; i < totalLevel ; i++){
-            try {
-                File f = new File(layoutDir[i]);
-                Scanner scan = new Scanner(f);
-                int j = 0;
-                while(scan.hasNext() && j < App.BOARD_HEIGHT){
-                    layouts[i][j] = scan.nextLine();
-                    j++;
-                }
-                scan.close();
-            } catch(FileNotFoundException e){
-                e.printStackTrace();
-            }
+        // Load the levels from the config file unless a stress board is used instead
+        if(stressTest != null){
+            frameRate(stressTest.frameRateCap);
+            stressTest.apply(this);
+        } else {
+            loadConfig();
         }
 
-        // Set the current level
-        currentLevel = 0;
-
 		// the image is loaded from relative path: "src/main/resources/inkball/..."
         // Pre-load the images to the App
         loadSprite("ball", 5);
@@ -481,6 +574,43 @@ public class App extends PApplet {
 
         // Use reset() to set up the game attributes
         reset();
+        // Show the best scores for a while when the game starts
+        if(highScores != null){
+            leaderboardUntil = millis() + HINT_DURATION;
+        }
+        if(stressTest != null){
+            stressTest.populate(this);
+        }
+
+        // Hand the game over to the simulation thread if requested
+        if(threaded){
+            simulation = new SimulationThread(this, stressTest != null ? stressTest.frameRateCap : App.FPS);
+            simulation.start();
+        }
+    }
+
+    /**
+     * Loads the level settings, score tables and layouts from the config file.
+     *
+     * <p>This does not touch any graphics, so it can be used before running the game without a window.
+     * The config is shared with every other game of the same file, which is only read the first time.
+     *
+     * @throws IllegalArgumentException if the config file or a layout file cannot be read or is not valid
+     */
+    public void loadConfig() {
+        config = GameConfig.load(configPath);
+
+        // Set the current level
+        currentLevel = 0;
+    }
+
+    /**
+     * Returns the level being played.
+     *
+     * @return the definition of the current level
+     */
+    public LevelDefinition getLevel(){
+        return config.getLevel(currentLevel);
     }
 
     /**
@@ -498,20 +628,91 @@ public class App extends PApplet {
     public void keyReleased(){
         // Restart the game if R / r is pressed
         if(key == 'R' || key == 'r'){
-            reset();
+            inkInput(App.INPUT_RESTART, 0, 0);
         } 
         // Pause / Resume the game if space is pressed 
         else if(key == ' '){
-            pause();
+            inkInput(App.INPUT_PAUSE, 0, 0);
+        }
+        // Switch between erasing whole lines and erasing parts of lines if E / e is pressed
+        else if(key == 'E' || key == 'e'){
+            partialErase = !partialErase;
+        }
+        // Show or hide the debug overlay if D / d is pressed
+        else if(key == 'D' || key == 'd'){
+            showDebug = !showDebug;
+        }
+        // Show or hide the best scores if L / l is pressed
+        else if(key == 'L' || key == 'l'){
+            showLeaderboard = !showLeaderboard;
+            leaderboardUntil = 0;
         }
+        // Hints, rewinding and speeds would put a two-player game out of step
+        else if(lockstep != null){
+            return;
+        }
+        // Search for lines that lead the balls to their holes if H / h is pressed
+        else if(key == 'H' || key == 'h'){
+            inkInput(App.INPUT_HINT, 0, 0);
+        }
+        // Go back one second if Z / z is pressed
+        else if(key == 'Z' || key == 'z'){
+            inkInput(App.INPUT_REWIND, 0, 0);
+        }
+        // Change the speed of the game if a number key is pressed
+        else if(key >= '1' && key < '1' + SPEEDS.length){
+            inkInput(App.INPUT_SPEED, key - '1', 0);
+        }
+    }
+
+    /**
+     * Starts searching for lines that lead the balls on the board to matching holes.
+     *
+     * <p>The search runs in the background on a copy of the game, so the game keeps running. When it
+     * finishes, the suggested lines are shown for a few seconds.
+     */
+    public void requestHint(){
+        if(hintSearch != null && !hintSearch.isDone()){
+            return;
+        }
+        final App start = fork(random.nextLong());
+        final ArrayList<Ball> startBalls = balls;
+        hintSearch = InkSolver.background().submit(() -> {
+            InkSolver solver = new InkSolver();
+            ArrayList<InkStroke> strokes = solver.solve(start);
+            // Drop the hint if the level was restarted in the meantime
+            if(balls == startBalls){
+                hint = strokes;
+                hintUntil = millis() + App.HINT_DURATION;
+            }
+        });
+    }
+
+    /**
+     * Puts the current level back into the state it had a number of frames ago.
+     *
+     * <p>Up to {@link #REWIND_SECONDS} seconds of play can be undone, one step at a time. Rewinding
+     * never goes back into a previous level.
+     *
+     * @param frames the number of frames to go back
+     * @return {@code true} if the game was rewound
+     */
+    public boolean rewind(int frames){
+        if(rewindBuffer == null || !rewindBuffer.rewind(this, frames)){
+            return false;
+        }
+        hint = null;
+        if(recorder != null){
+            recorder.requestKeyframe();
+        }
+        return true;
     }
 
     @Override
     public void mousePressed(MouseEvent e) {
         // create a new player-drawn line object
         if(mouseButton == LEFT){
-            ArrayList<Point> newLine = new ArrayList<Point>();
-            lines.add(newLine);
+            inkInput(App.INK_BEGIN, mouseX, mouseY);
         }
     }
 	
@@ -519,35 +720,203 @@ public class App extends PApplet {
     public void mouseDragged(MouseEvent e) {
         // add line segments to player-drawn line object if left mouse button is held
 		if(mouseButton == LEFT){
-            Point newPoint = new Point(mouseX,mouseY);
-            if(lines.size()>0){
-                lines.get(lines.size()-1).add(newPoint);
-            }
+            inkInput(App.INK_POINT, mouseX, mouseY);
         }
 		// remove player-drawn line object if right mouse button is held 
 		// and mouse position collides with the line
         if(mouseButton == RIGHT){
-            boolean hitted = false;
-            for(ArrayList<Point> line: lines){
-                for(Point point: line){
-                    if(mouseX > point.getXF() - App.POINTSIZE/2 && mouseX < point.getXF() + App.POINTSIZE/2 && mouseY > point.getYF() - App.POINTSIZE/2 && mouseY < point.getYF() + App.POINTSIZE/2){
-                        hitted = true;
-                        break;
-                    }
-                }
-                if(hitted){
-                    lines.remove(line);
-                    break;
-                }
-            }
+            inkInput(partialErase ? App.INK_ERASE_SPAN : App.INK_ERASE, mouseX, mouseY);
         }
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
-		if(mouseButton == LEFT && lines.size()>0){
-            if(lines.get(lines.size()-1).size()==0){
-                lines.remove(lines.get(lines.size()-1));
+		if(mouseButton == LEFT){
+            inkInput(App.INK_END, mouseX, mouseY);
+        }
+    }
+
+    /**
+     * Handles an action of the local player from the mouse or the keyboard.
+     *
+     * <p>When the game is simulated on its own thread, the action is queued for that thread.
+     *
+     * @param op the action, one of the {@code INK_} or {@code INPUT_} constants
+     * @param x  the x-coordinate of the mouse
+     * @param y  the y-coordinate of the mouse
+     */
+    public void inkInput(int op, int x, int y){
+        if(simulation != null){
+            simulation.addInput(op, x, y);
+        } else {
+            localInput(op, x, y);
+        }
+    }
+
+    /**
+     * Applies an action of the local player on the thread simulating the game.
+     *
+     * <p>In a two-player game the action is sent to the lockstep session, which applies it on both
+     * sides at the same frame. Otherwise it is applied straight away.
+     *
+     * @param op the action, one of the {@code INK_} or {@code INPUT_} constants
+     * @param x  the x-coordinate of the mouse
+     * @param y  the y-coordinate of the mouse
+     */
+    public void localInput(int op, int x, int y){
+        if(lockstep != null){
+            lockstep.addInput(op, x, y);
+        } else {
+            applyInput(0, op, x, y);
+        }
+    }
+
+    /**
+     * Applies an action of a player to the game.
+     *
+     * @param player the player performing the action, 0 or 1
+     * @param op     the action, one of the {@code INK_} constants
+     * @param x      the x-coordinate of the action
+     * @param y      the y-coordinate of the action
+     */
+    public void applyInput(int player, int op, float x, float y){
+        switch(op){
+            case App.INK_BEGIN:
+                beginStroke(player);
+                break;
+            case App.INK_POINT:
+                addInkPoint(player, x, y);
+                break;
+            case App.INK_END:
+                endStroke(player);
+                break;
+            case App.INK_ERASE:
+                eraseAt(x, y);
+                break;
+            case App.INK_ERASE_SPAN:
+                eraseSpanAt(x, y);
+                break;
+            case App.INPUT_PAUSE:
+                if(telemetry != null){
+                    telemetry.log(SessionTelemetry.PAUSE, tickCount, currentLevel, paused ? 0 : 1);
+                }
+                pause();
+                break;
+            case App.INPUT_RESTART:
+                if(telemetry != null){
+                    telemetry.log(SessionTelemetry.RESTART, tickCount, currentLevel, 0);
+                }
+                reset();
+                break;
+            case App.INPUT_HINT:
+                requestHint();
+                break;
+            case App.INPUT_REWIND:
+                rewind(App.FPS);
+                break;
+            case App.INPUT_SPEED:
+                setSpeed((int)x);
+                break;
+        }
+    }
+
+    /**
+     * Starts a new line for a player.
+     *
+     * @param player the player drawing the line
+     */
+    public void beginStroke(int player){
+        InkStroke newLine = new InkStroke();
+        lines.add(newLine);
+        currentStroke[player] = newLine;
+    }
+
+    /**
+     * Adds a point to the line a player is drawing.
+     *
+     * <p>If a ball has already removed the line, the point starts a new one.
+     *
+     * @param player the player drawing the line
+     * @param x      the x-coordinate of the point
+     * @param y      the y-coordinate of the point
+     */
+    public void addInkPoint(int player, float x, float y){
+        if(currentStroke[player] == null){
+            return;
+        }
+        if(!lines.contains(currentStroke[player])){
+            beginStroke(player);
+        }
+        currentStroke[player].add(x, y);
+    }
+
+    /**
+     * Finishes the line a player is drawing, removing it if it has no points.
+     *
+     * @param player the player drawing the line
+     */
+    public void endStroke(int player){
+        if(currentStroke[player] != null && currentStroke[player].size() == 0){
+            lines.remove(currentStroke[player]);
+        } else if(currentStroke[player] != null && telemetry != null){
+            telemetry.log(SessionTelemetry.INK, tickCount, currentLevel, currentStroke[player].size());
+        }
+        currentStroke[player] = null;
+    }
+
+    /**
+     * Removes the first line with a point under the given position.
+     *
+     * @param x the x-coordinate of the eraser
+     * @param y the y-coordinate of the eraser
+     */
+    public void eraseAt(float x, float y){
+        inkIndex.sync(lines);
+        int index = inkIndex.findFirst(x, y, App.POINTSIZE/2);
+        if(index >= 0){
+            lines.remove(index);
+        }
+    }
+
+    /**
+     * Removes the points under the given position from the first line that has any, splitting it in two.
+     *
+     * <p>The run of points under the eraser is cut out of the line, and the parts before and after it
+     * take its place. Both parts are new lines, so a rewind can still bring back the whole line. If
+     * the line is being drawn, drawing continues on the part after the cut.
+     *
+     * @param x the x-coordinate of the eraser
+     * @param y the y-coordinate of the eraser
+     */
+    public void eraseSpanAt(float x, float y){
+        inkIndex.sync(lines);
+        float half = App.POINTSIZE/2;
+        int index = inkIndex.findFirst(x, y, half);
+        if(index < 0){
+            return;
+        }
+        InkStroke line = lines.get(index);
+        // Find the run of points under the eraser
+        int start = 0;
+        while(!InkIndex.inside(line, start, x, y, half)){
+            start++;
+        }
+        int end = start + 1;
+        while(end < line.size() && InkIndex.inside(line, end, x, y, half)){
+            end++;
+        }
+        InkStroke before = new InkStroke(line, 0, start);
+        InkStroke after = new InkStroke(line, end, line.size());
+        lines.remove(index);
+        if(!after.isEmpty()){
+            lines.add(index, after);
+        }
+        if(!before.isEmpty()){
+            lines.add(index, before);
+        }
+        for(int player = 0; player < currentStroke.length; player++){
+            if(currentStroke[player] == line){
+                currentStroke[player] = after;
             }
         }
     }
@@ -557,147 +926,455 @@ public class App extends PApplet {
      */
 	@Override
     public void draw() {
-        
-        // Clean the background
-        background(123);
+        long frameStart = System.nanoTime();
+        // The simulation thread advances the game by itself when threaded
+        if(simulation == null){
+            // Leave a quarter of the frame for drawing when running as fast as possible
+            if(tickFrame(1_000_000_000L / App.FPS * 3 / 4) > 0){
+                renderBuffer.publish(this);
+            }
+        }
+        long tickEnd = System.nanoTime();
+        render();
+        recordFrame(tickEnd - frameStart, System.nanoTime() - tickEnd);
+    }
+
+    /**
+     * Counts the time of a drawn frame, of which only the drawing decides the quality level.
+     *
+     * <p>The frames simulated before drawing are left out, as they take most of the frame on purpose
+     * at fast speeds, and drawing less would not make them any quicker.
+     *
+     * @param tickNanos   the time spent simulating before drawing, in nanoseconds
+     * @param renderNanos the time spent drawing, in nanoseconds
+     */
+    public void recordFrame(long tickNanos, long renderNanos){
+        lastFrameNanos = tickNanos + renderNanos;
+        governor.record(renderNanos);
+        if(stressTest != null && simulation == null){
+            stressTest.recordFrame(this, tickNanos, lastFrameNanos);
+        }
+    }
+
+    /**
+     * Advances the game by the frames due in one frame drawn at the current speed.
+     *
+     * <p>At slow speeds a frame is only simulated every few frames drawn, and at fast speeds several
+     * are simulated back to back. When running as fast as possible, frames are simulated until the
+     * given time is used up, so the game is only drawn once for all of them.
+     *
+     * @param budget the nanoseconds that may be spent when running as fast as possible
+     * @return the number of frames simulated
+     */
+    public int tickFrame(long budget){
+        float rate = SPEEDS[speed];
+        int frames = 0;
+        if(rate == 0){
+            long end = System.nanoTime() + budget;
+            do {
+                tick();
+                frames++;
+            } while(System.nanoTime() < end);
+            return frames;
+        }
+        framesDue += rate;
+        while(framesDue >= 1){
+            tick();
+            frames++;
+            framesDue -= 1;
+        }
+        return frames;
+    }
+
+    /**
+     * Changes the speed of the game.
+     *
+     * <p>Away from normal speed, the time of the game follows the simulated frames instead of the
+     * wall clock, so the spawn interval, the time limit, the pause accounting and the score
+     * conversion all speed up or slow down with the balls. The new clock starts from the time of the
+     * old one, so no timer jumps.
+     *
+     * @param index the index of the speed in {@code SPEEDS}
+     */
+    public void setSpeed(int index){
+        if(index < 0 || index >= SPEEDS.length || index == speed){
+            return;
+        }
+        if(index != SPEED_NORMAL && clock instanceof SystemClock){
+            clock = new VirtualClock(millis());
+            speedFromWallClock = true;
+        } else if(index == SPEED_NORMAL && speedFromWallClock){
+            clock = new SystemClock(millis());
+            speedFromWallClock = false;
+        }
+        framesDue = 0;
+        speed = index;
+    }
+
+    /**
+     * Advances the game by one frame, in step with the other player in a two-player game.
+     */
+    public void tick() {
+        if(lockstep != null){
+            lockstep.step(this);
+        } else {
+            update();
+        }
+    }
+
+    /**
+     * Advances the game by one frame without drawing anything.
+     *
+     * <p>This moves the balls, resolves the collisions with lines, walls and holes, spawns the
+     * queued balls, checks for the end of the level and steps the score conversion. It does not
+     * touch any graphics, so it can also be used to run the game without a window.
+     */
+    public void update() {
+        tickCount++;
+        clock.tick();
+        boolean moving = !paused;
+
+        // Time the phases of this frame if a flight recording asks for it
+        FlightEvents.Tick flight = new FlightEvents.Tick();
+        boolean profiling = flight.isEnabled();
+        if(profiling){
+            flight.begin();
+            flight.tick = tickCount;
+            flight.balls = ballsOnBoard.size();
+            flight.startPhases();
+        }
 
         //----------------------------------
         //Update the movement of balls if it is not paused
         //----------------------------------
         if (!paused){
-            for(Ball b: ballsOnBoard){
-                b.updatePos();
-                b.beingAbsorbed = false;
-                b.lineCollided = false;
-                b.wallCollided = false;
-                for(ArrayList<Point> line: lines){
-                    if(b.checkLineCollision(line)){
-                        lines.remove(line);
-                        break;
+            // Split the balls of a large board across the cores, with the same results as the loops below
+            boolean split = parallelCollisions != null && parallelCollisions.worthSplitting(ballsOnBoard.size());
+            // Move all the balls at once if there is a kernel for it
+            boolean moved = ballKernel != null;
+            if(moved){
+                ballKernel.move(ballsOnBoard);
+            }
+            if(profiling){
+                flight.parallel = split;
+                flight.movePhase = flight.lap();
+                flight.lineTests = (long) ballsOnBoard.size() * lines.size();
+            }
+            if(split){
+                parallelCollisions.collideLines(this, moved);
+            } else {
+                for(Ball b: ballsOnBoard){
+                    if(!moved){
+                        b.updatePos();
+                    }
+                    b.beingAbsorbed = false;
+                    b.lineCollided = false;
+                    b.wallCollided = false;
+                    for(InkStroke line: lines){
+                        if(b.checkLineCollision(line)){
+                            lines.remove(line);
+                            break;
+                        }
                     }
                 }
             }
+            if(profiling){
+                flight.linePhase = flight.lap();
+                flight.wallTests = (long) ballsOnBoard.size() * walls.size();
+            }
             // Check if the next cell has walls, if yes trigger the collision with wall
-            for(Wall w: walls){
-                for(Ball b:ballsOnBoard){
-                    if(!b.wallCollided){
-                        w.checkCollision(b,this);
+            if(split){
+                parallelCollisions.collideWalls(this);
+            } else {
+                for(Wall w: walls){
+                    for(Ball b:ballsOnBoard){
+                        if(!b.wallCollided){
+                            w.checkCollision(b,this);
+                        }
                     }
                 }
             }
-            // Check if the bricks need to be removed because of too many hits
-            ArrayList<Wall> bricksToRemove = new ArrayList<Wall>();
-            for(Wall w:walls){
-                if(w.checkBrickBroken()){
-                    bricksToRemove.add(w);
-                }
-            }
-            for(Wall brick:bricksToRemove){
+            // Remove the bricks broken by the hits of this frame
+            for(Wall brick: brokenBricks){
                 int xIndex = brick.getX()/App.CELLSIZE;
                 int yIndex = (brick.getY()-App.TOPBAR)/App.CELLSIZE;
                 walls.remove(brick);
                 board[yIndex][xIndex].setGameObject(null);
+                updateWallNeighbours(yIndex, xIndex);
+            }
+            brokenBricks.clear();
+            if(profiling){
+                flight.wallPhase = flight.lap();
+                flight.holeTests = (long) ballsOnBoard.size() * holes.size();
             }
 
             // Check if the next cell has holes, if yes trigger the collision with holes
-            for(Hole h: holes){
-                for(Ball b: balls){
-                    if(ballsOnBoard.contains(b)){
-                        h.checkAbsorb(b, this);
+            if(useHoleField){
+                if(holeField == null || holeField.holes != holes){
+                    holeField = new HoleField(holes);
+                }
+                holeField.collide(this, holeFallen);
+            } else if(split){
+                parallelCollisions.collideHoles(this);
+            } else {
+                for(Hole h: holes){
+                    for(Ball b: balls){
+                        if(ballsOnBoard.contains(b)){
+                            h.checkAbsorb(b, this);
+                        }
                     }
                 }
             }
-            
+            if(profiling){
+                flight.holePhase = flight.lap();
+            }
+            // Score the captures and requeue the missed balls before the next spawn
+            events.drain(scoring, scoringHandler);
+            if(scoring.getDropped() != 0){
+                throw new IllegalStateException("The scoring of the game missed " + scoring.getDropped() + " events");
+            }
+            if(telemetry != null){
+                events.drain(telemetryEvents, telemetryHandler);
+            }
+
             // Spawn the balls in the queue
-            Random random = new Random();
-            if(millis() - lastSpawnTime >= spawn_interval[currentLevel] * 1000 && (!ballQueue.isEmpty())){
+            if(millis() - lastSpawnTime >= getLevel().getSpawnInterval() * 1000 && (!ballQueue.isEmpty())){
                 int index = random.nextInt(spawners.size());
-                spawners.get(index).spawn(ballQueue, ballsOnBoard);
+                spawners.get(index).spawn(ballQueue, ballsOnBoard, random);
                 lastSpawnTime = millis();
+                Ball spawned = ballsOnBoard.get(ballsOnBoard.size() - 1);
+                events.publish(GameEvent.SPAWN, tickCount, spawned, spawned.getColor(), index);
+            }
+            if(profiling){
+                flight.spawnPhase = flight.lap();
             }
         }
 
         // Check Win
         checkWin();
+
+        // Bounce the balls back from the edges of the board
+        if(ballKernel != null){
+            ballKernel.bounceOffEdges(balls);
+        } else {
+            for (Ball ball: balls){
+                ball.checkBoundaryCollision();
+            }
+        }
+
+        // Score conversion and roate teh yellow blocks if the level is finished
+        // if the game ends, calculate the conversion
+        if(levelUp && remainingTime >= 0){
+            if(remainFrameForConversion - 1 <= 0){
+                remainingTime -=1000;
+                totalScore += 1;
+                // Move the flashing wall
+                for(Wall w:rotateBlock){
+                    w.rotate();
+                }
+                remainFrameForConversion = numFrameForConversion;
+            } else {
+                remainFrameForConversion -= 1;
+            }
+        }
+
+        // Check whether the time is already up
+        if(!paused){
+            if(getLevel().getTime() <= (millis() - starttime)/1000){
+                gameOver = true;
+            }
+        } else if(!levelUp && getLevel().getTime() <= (pausedTime - starttime)/1000){
+            gameOver = true;
+        }
+
+        // Stop the game when it is ended or the time is up
+        if(gameWin || (gameOver && (!levelUp) && (getLevel().getTime() <= (millis() - starttime)/1000))){
+            if(!paused){
+                paused = true;
+                pausedTime = millis();
+            }
+            // Save the score of the whole game
+            if(!scoreSaved){
+                scoreSaved = true;
+                saveScore(HighScoreStore.OVERALL, totalScore, gameWin ? levelTimeLeft : 0);
+            }
+        }
+
+        // Keep the recent states of the level for rewinding
+        if(rewindBuffer != null && moving){
+            rewindBuffer.record(this);
+        }
+
+        // Record the changes of this frame
+        if(recorder != null){
+            recorder.record(this, moving);
+        }
+
+        if(profiling){
+            flight.commit();
+        }
+    }
+
+    /**
+     * Closes the session recording, if any, when the game window is closed.
+     */
+    @Override
+    public void dispose() {
+        if(simulation != null){
+            simulation.stop();
+        }
+        if(telemetry != null){
+            try {
+                telemetry.close();
+            } catch (IOException e){
+                e.printStackTrace();
+            }
+            telemetry = null;
+        }
+        if(highScores != null){
+            try {
+                highScores.close();
+            } catch (IOException e){
+                e.printStackTrace();
+            }
+            highScores = null;
+        }
+        if(recorder != null){
+            try {
+                recorder.close();
+                System.out.println(String.format("Recorded %d bytes, %.1f us per frame", recorder.bytesRecorded(), recorder.microsPerTick()));
+            } catch (IOException e){
+                e.printStackTrace();
+            }
+            recorder = null;
+        }
+        super.dispose();
+    }
+
+    /**
+     * Draws the latest snapshot of the game into an off-screen canvas instead of the window.
+     *
+     * @param target the canvas to draw into
+     */
+    public void renderTo(PGraphics target){
+        PGraphics screen = g;
+        g = target;
+        target.beginDraw();
+        try {
+            render();
+        } finally {
+            target.endDraw();
+            g = screen;
+        }
+    }
+
+    /**
+     * Draws the board, the balls, the lines and the top bar of the latest snapshot of the game.
+     *
+     * <p>Only the snapshot is read, so the game can be simulated on another thread meanwhile.
+     */
+    public void render() {
+        RenderSnapshot frame = renderBuffer.latest();
+        int quality = governor.getLevel();
+        
+        // Clean the background
+        background(123);
+        if(frame == null){
+            return;
+        }
+
         //----------------------------------
         //display Board for current level:
         //----------------------------------
         // Display the cells
-        for (Cell []row: board){
-            for(Cell c: row){
-                c.draw(this);
+        for (int rowNum = 0; rowNum < App.BOARD_HEIGHT; rowNum++){
+            for (int colNum = 0; colNum < App.BOARD_WIDTH; colNum++){
+                if(frame.tiles[rowNum * App.BOARD_WIDTH + colNum]){
+                    image(getSprite("tile"), colNum * App.CELLSIZE, rowNum * App.CELLSIZE + App.TOPBAR);
+                }
             }
         }
         
         // Display the walls
-        for (Wall wall: walls){
-            wall.draw(this);
+        for (int i = 0; i < frame.wallCount; i++){
+            if(frame.wallBrick[i]){
+                image(getSprite("brick" + String.valueOf(frame.wallColour[i])), frame.wallX[i], frame.wallY[i]);
+            } else {
+                image(getSprite("wall" + String.valueOf(frame.wallColour[i])), frame.wallX[i], frame.wallY[i]);
+            }
         }
         // Display the holes
-        for (Hole hole: holes){
+        for (Hole hole: frame.holes){
             hole.draw(this);
         }
         // Display the spawners
-        for (Spawner spawner: spawners){
+        for (Spawner spawner: frame.spawners){
             spawner.draw(this);
         }
         //Display the lines
-        for (ArrayList<Point> line: lines){
-            for(Point point: line){
-                fill(0);
-                noStroke();
-                ellipse(point.getXF(),point.getYF(),App.POINTSIZE,App.POINTSIZE);
+        fill(0);
+        noStroke();
+        if(quality == QualityGovernor.LEVEL_FULL){
+            for (int i = 0; i < frame.lineStart[frame.lineCount]; i++){
+                ellipse(frame.pointX[i], frame.pointY[i], App.POINTSIZE, App.POINTSIZE);
+            }
+        } else {
+            // Draw each line as one polyline instead of a circle per point
+            pushStyle();
+            noFill();
+            stroke(0);
+            strokeWeight(App.POINTSIZE);
+            for (int l = 0; l < frame.lineCount; l++){
+                beginShape();
+                for (int i = frame.lineStart[l]; i < frame.lineStart[l + 1]; i++){
+                    vertex(frame.pointX[i], frame.pointY[i]);
+                }
+                endShape();
+            }
+            popStyle();
+        }
+        // Display the suggested lines of the last hint
+        ArrayList<InkStroke> shownHint = hint;
+        if(shownHint != null && millis() < hintUntil){
+            pushStyle();
+            stroke(0, 120, 255, 160);
+            strokeWeight(App.POINTSIZE / 2);
+            for (InkStroke line: shownHint){
+                for(int i = 0; i < line.size() - 1; i++){
+                    line(line.getX(i), line.getY(i), line.getX(i + 1), line.getY(i + 1));
+                }
             }
+            popStyle();
         }
         // Display the balls
-        for (Ball ball: balls){
-            ball.draw(this);
+        for (int i = 0; i < frame.ballCount; i++){
+            PImage ballRawImage = getSprite("ball" + String.valueOf(frame.ballColour[i]));
+            if(quality == QualityGovernor.LEVEL_MINIMAL){
+                image(ballRawImage, frame.ballX[i], frame.ballY[i]);
+            } else {
+                image(ballRawImage, frame.ballX[i], frame.ballY[i], ballRawImage.width * frame.ballScale[i], ballRawImage.height * frame.ballScale[i]);
+            }
         }
 
         // Display the unspawned balls
         fill(0);
         rect(App.CELLSIZE/2,(App.TOPBAR - App.CELLSIZE)/2,5 * App.CELLSIZE, App.CELLSIZE);
-        int displayedQueue = 0;
-        for (Ball ball: ballQueue){
-            if(displayedQueue > 4){
-                break;
-            }
-            ball.drawUnspawned(this, displayedQueue * App.CELLSIZE + App.CELLSIZE - App.BALLSIZE/2, (App.TOPBAR - App.BALLSIZE)/2);
-            displayedQueue ++;
+        for (int i = 0; i < frame.queueCount; i++){
+            image(getSprite("ball" + String.valueOf(frame.queueColour[i])), i * App.CELLSIZE + App.CELLSIZE - App.BALLSIZE/2, (App.TOPBAR - App.BALLSIZE)/2);
         }
 
         // Display the countdown to the next spawn
-        if(!ballQueue.isEmpty()){ 
+        if(frame.showCountdown){ 
             fill(0);
             textSize(16);
             textAlign(LEFT,CENTER);
-            float timeToNextSpawn = 1f;
-            if(paused){
-                timeToNextSpawn = ((float)(spawn_interval[currentLevel] * 1000 - pausedTime + lastSpawnTime)) / 1000f;
-            } else {
-                timeToNextSpawn = ((float)(spawn_interval[currentLevel] * 1000 - millis() + lastSpawnTime)) / 1000f;
-            }
-            text(String.format("%.1f",timeToNextSpawn),6 * App.CELLSIZE,App.TOPBAR/2);
+            text(String.format("%.1f",frame.countdown),6 * App.CELLSIZE,App.TOPBAR/2);
         }
 
-
-        // Score conversion and roate teh yellow blocks if the level is finished
-        // if the game ends, calculate the conversion
-        if(levelUp && remainingTime >= 0){
-            if(remainFrameForConversion - 1 <= 0){
-                remainingTime -=1000;
-                totalScore += 1;
-                // Move the flashing wall
-                for(Wall w:rotateBlock){
-                    w.rotate();
-                }
-                remainFrameForConversion = numFrameForConversion;
-            } else {
-                remainFrameForConversion -= 1;
-            }
-            for(Wall w:rotateBlock){
-                w.draw(this);
-            }
+        // Display the rotating yellow blocks of the score conversion
+        if(frame.showRotateBlocks && quality == QualityGovernor.LEVEL_FULL){
+            image(getSprite("wall4"), frame.rotateBlocks[0], frame.rotateBlocks[1]);
+            image(getSprite("wall4"), frame.rotateBlocks[2], frame.rotateBlocks[3]);
         }
         //----------------------------------
         //display score & time
@@ -705,62 +1382,222 @@ public class App extends PApplet {
         fill(0);
         textSize(16);
         textAlign(RIGHT,BOTTOM);
-        text("Score: " + String.valueOf(totalScore + levelScore), App.WIDTH-(App.CELLSIZE/2),App.TOPBAR/2);
-        // Show the time depending on whether the time is already up
-        if(!paused){
-            if(time[currentLevel] <= (millis() - starttime)/1000){
-                gameOver = true;
-                text("Time: " + 0, App.WIDTH-(App.CELLSIZE/2),App.TOPBAR);
-            } else {
-                text("Time: " + String.valueOf(time[currentLevel] - (millis() - starttime)/1000), App.WIDTH-(App.CELLSIZE/2),App.TOPBAR);
-            }
-        } 
-        // If the game is paused
-        else {
-            if(levelUp){
-                text("Time: " + remainingTime/1000, App.WIDTH-(App.CELLSIZE/2),App.TOPBAR);
-            }
-            else if(time[currentLevel] <= (pausedTime - starttime)/1000){
-                gameOver = true;
-                text("Time: " + 0, App.WIDTH-(App.CELLSIZE/2),App.TOPBAR);
-            } else {
-                text("Time: " + String.valueOf(time[currentLevel] - (pausedTime - starttime)/1000), App.WIDTH-(App.CELLSIZE/2),App.TOPBAR);
-            }
-        }
+        text("Score: " + String.valueOf(frame.score), App.WIDTH-(App.CELLSIZE/2),App.TOPBAR/2);
+        text("Time: " + String.valueOf(frame.timeLeft), App.WIDTH-(App.CELLSIZE/2),App.TOPBAR);
         
 		//----------------------------------
         //display game end message or game paused message
         //----------------------------------
-        if(gameWin){
+        if(frame.message != RenderSnapshot.MESSAGE_NONE){
             fill(0);
             textSize(16);
             textAlign(CENTER,CENTER);
-            text("=== ENDED ===",App.WIDTH/2 + App.CELLSIZE,App.TOPBAR/2);
-            if(!paused){
-                paused = true;
-                pausedTime = millis();
+            if(frame.message == RenderSnapshot.MESSAGE_ENDED){
+                text("=== ENDED ===",App.WIDTH/2 + App.CELLSIZE,App.TOPBAR/2);
+            } else if(frame.message == RenderSnapshot.MESSAGE_TIME_UP){
+                text("=== TIME'S UP ===",App.WIDTH/2 + App.CELLSIZE,App.TOPBAR/2);
+            } else {
+                text("*** PAUSED ***",App.WIDTH/2 + App.CELLSIZE,App.TOPBAR/2);
             }
         }
-        else if (gameOver && (!levelUp) && (time[currentLevel] <= (millis() - starttime)/1000)){
+
+        // Display the speed of the game unless it is normal
+        if(frame.speed != App.SPEED_NORMAL){
             fill(0);
-            textSize(16);
-            textAlign(CENTER,CENTER);
-            text("=== TIME'S UP ===",App.WIDTH/2 + App.CELLSIZE,App.TOPBAR/2);
-            if(!paused){
-                paused = true;
-                pausedTime = millis();
+            textSize(12);
+            textAlign(CENTER,BOTTOM);
+            text("Speed: " + App.SPEED_NAMES[frame.speed], App.WIDTH/2 + App.CELLSIZE, App.TOPBAR);
+        }
+
+        // Display the player and the state of the connection in a two-player game
+        if(frame.player >= 0){
+            fill(0);
+            textSize(12);
+            textAlign(LEFT,BOTTOM);
+            String status = "Player " + (frame.player + 1);
+            if(frame.disconnected){
+                status += " - DISCONNECTED";
+            } else if(frame.desynced){
+                status += " - OUT OF STEP";
             }
-        } 
-        else if (paused && (!levelUp)){
+            text(status, App.CELLSIZE/2, App.TOPBAR);
+        }
+
+        // Count the events published since the last frame drawn
+        events.drain(overlayEvents, overlayHandler);
+
+        // Display the frame time, the quality level and the event counts if the debug overlay is shown
+        if(showDebug){
+            pushStyle();
+            noStroke();
+            fill(255, 200);
+            rect(0, App.HEIGHT - 36, 300, 36);
             fill(0);
-            textSize(16);
-            textAlign(CENTER,CENTER);
-            text("*** PAUSED ***",App.WIDTH/2 + App.CELLSIZE,App.TOPBAR/2);
+            textSize(12);
+            textAlign(LEFT,CENTER);
+            text(String.format("draw %.1f ms  quality %s  speed %s", governor.averageNanos() / 1e6,
+                QualityGovernor.LEVEL_NAMES[quality], App.SPEED_NAMES[frame.speed]), 4, App.HEIGHT - 26);
+            text(String.format("captured %d  missed %d  spawned %d  bricks %d  dropped %d",
+                eventCounts[GameEvent.CAPTURE], eventCounts[GameEvent.WRONG_HOLE], eventCounts[GameEvent.SPAWN],
+                eventCounts[GameEvent.BRICK_BROKEN], overlayEvents.getDropped()), 4, App.HEIGHT - 10);
+            popStyle();
+        }
+
+        // Display the best scores of all games and of the current level
+        if(highScores != null && (showLeaderboard || millis() < leaderboardUntil)){
+            drawLeaderboard(frame.level);
+        }
+    }
+
+    /**
+     * Draws a panel with the best scores of all games and of a level.
+     *
+     * @param level the index of the level
+     */
+    private void drawLeaderboard(int level){
+        List<HighScoreStore.Entry> overall = highScores.top(HighScoreStore.OVERALL);
+        List<HighScoreStore.Entry> best = highScores.top(level);
+        int rows = Math.max(1, overall.size()) + Math.max(1, Math.min(5, best.size())) + 2;
+        int top = App.TOPBAR + App.CELLSIZE;
+        pushStyle();
+        noStroke();
+        fill(255, 220);
+        rect(App.CELLSIZE * 2, top, App.WIDTH - App.CELLSIZE * 4, rows * 18 + 12);
+        fill(0);
+        textSize(13);
+        textAlign(LEFT,TOP);
+        int y = top + 6;
+        text("BEST GAMES", App.CELLSIZE * 2 + 8, y);
+        y += 18;
+        y = drawScores(overall, overall.size(), y);
+        text("BEST OF LEVEL " + (level + 1), App.CELLSIZE * 2 + 8, y);
+        y += 18;
+        drawScores(best, 5, y);
+        popStyle();
+    }
+
+    /**
+     * Draws the rows of a table of best scores.
+     *
+     * @param entries the scores, highest first
+     * @param limit the number of rows to draw at most
+     * @param y the y coordinate of the first row
+     * @return the y coordinate after the last row
+     */
+    private int drawScores(List<HighScoreStore.Entry> entries, int limit, int y){
+        if(entries.isEmpty()){
+            text("  no scores yet", App.CELLSIZE * 2 + 8, y);
+            return y + 18;
+        }
+        for(int i = 0; i < Math.min(limit, entries.size()); i++){
+            HighScoreStore.Entry e = entries.get(i);
+            text(String.format("%2d. %6d   %3ds left   seed %d", i + 1, e.score, e.remaining / 1000, e.seed),
+                App.CELLSIZE * 2 + 8, y);
+            y += 18;
         }
+        return y;
+    }
+
+    /**
+     * Returns the number of milliseconds since the game started.
+     *
+     * <p>The time is read from the clock of the game. With a {@link VirtualClock} it is derived from
+     * the number of simulated frames instead of the wall clock, so the game can be run faster than
+     * real time.
+     *
+     * @return the elapsed time in milliseconds
+     */
+    @Override
+    public int millis() {
+        return clock.millis();
     }
 
     public static void main(String[] args) {
-        PApplet.main("inkball.App");
+        // Generate new levels instead of playing if requested
+        LevelGenerator generator = LevelGenerator.fromArgs(args);
+        if(generator != null){
+            try {
+                generator.run();
+            } catch (IOException | InterruptedException e){
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+        // Save the frames of a level as images instead of playing if requested
+        FrameExporter exporter = FrameExporter.fromArgs(args);
+        if(exporter != null){
+            try {
+                exporter.run();
+            } catch (IOException e){
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+        // Time the ball kernels instead of playing if requested
+        KernelBenchmark bench = KernelBenchmark.fromArgs(args);
+        if(bench != null){
+            System.out.print(bench.run());
+            return;
+        }
+        // Play the levels with the solver instead of a player if requested
+        InkSolver solver = InkSolver.fromArgs(args);
+        if(solver != null){
+            solver.runBatch();
+            return;
+        }
+        // Run the stress test instead of the game if requested
+        StressTest stress = StressTest.fromArgs(args);
+        if(stress != null){
+            if(stress.headless){
+                stress.runHeadless();
+            } else {
+                App app = new App();
+                app.stressTest = stress;
+                app.threaded = stress.threaded;
+                PApplet.runSketch(new String[] {"inkball.App"}, app);
+            }
+            return;
+        }
+        // Play against another player over the network if requested
+        App app = new App();
+        try {
+            LockstepSession session = LockstepSession.fromArgs(args);
+            if(session != null){
+                session.attach(app);
+            }
+        } catch (IOException e){
+            throw new RuntimeException(e);
+        }
+        // Play the levels of another config file and keep the scores in another folder if given
+        String scoresPath = "scores";
+        for(String arg: args){
+            if(arg.equals("--threaded")){
+                app.threaded = true;
+            } else if(arg.startsWith("--config=")){
+                app.configPath = arg.substring("--config=".length());
+            } else if(arg.startsWith("--telemetry=")){
+                try {
+                    app.telemetry = new SessionTelemetry(Paths.get(arg.substring("--telemetry=".length())));
+                } catch (IOException e){
+                    throw new RuntimeException(e);
+                }
+            } else if(arg.startsWith("--scores=")){
+                scoresPath = arg.substring("--scores=".length());
+            } else if(arg.startsWith("--record=")){
+                try {
+                    app.recorder = new SessionRecorder(Paths.get(arg.substring("--record=".length())));
+                } catch (IOException e){
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        // Keep the scores of the games played
+        try {
+            app.highScores = HighScoreStore.open(Paths.get(scoresPath));
+        } catch (IOException e){
+            System.err.println("Could not open the high scores, playing without them: " + e.getMessage());
+        }
+        PApplet.runSketch(new String[] {"inkball.App"}, app);
     }
 
 }
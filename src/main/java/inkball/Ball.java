@@ -28,6 +28,10 @@ public class Ball extends GameObject{
     public boolean beingAbsorbed;
     public boolean lineCollided;
     public boolean wallCollided;
+    int collisionIndex = -1; // For marking the balls on the board during the parallel collisions
+
+    public static final int STATE_FLOATS = 11; // For the number of floats written by saveState()
+    public static final int STATE_INTS = 2; // For the number of integers written by saveState()
 
     /**
      * Creates a new {@code Ball} at the specified coordinates with the given color.
@@ -54,6 +58,85 @@ public class Ball extends GameObject{
 
     }
 
+    /**
+     * Creates a copy of another ball with the same position, velocity, colour and state.
+     *
+     * @param other the ball to copy
+     */
+    public Ball(Ball other){
+        super(other.x, other.y);
+        this.type = "ball";
+        this.color = other.color;
+        this.velocityX = other.velocityX;
+        this.velocityY = other.velocityY;
+        this.xFloat = other.xFloat;
+        this.yFloat = other.yFloat;
+        this.lastXF = other.lastXF;
+        this.lastYF = other.lastYF;
+        this.nextXF = other.nextXF;
+        this.nextYF = other.nextYF;
+        this.absorbed = other.absorbed;
+        this.displayProp = other.displayProp;
+        this.beingAbsorbed = other.beingAbsorbed;
+        this.lineCollided = other.lineCollided;
+        this.wallCollided = other.wallCollided;
+    }
+
+    /**
+     * Copies the position, velocity and state of the ball into the given arrays.
+     *
+     * <p>{@link #STATE_FLOATS} floats and {@link #STATE_INTS} integers are written, so the state of
+     * many balls can be packed one after another into the same pair of arrays.
+     *
+     * @param floats    the array receiving the positions, velocities and display size
+     * @param offset    the index of the first float to write
+     * @param ints      the array receiving the colour and the flags
+     * @param intOffset the index of the first integer to write
+     */
+    public void saveState(float[] floats, int offset, int[] ints, int intOffset){
+        floats[offset] = x;
+        floats[offset + 1] = y;
+        floats[offset + 2] = xFloat;
+        floats[offset + 3] = yFloat;
+        floats[offset + 4] = lastXF;
+        floats[offset + 5] = lastYF;
+        floats[offset + 6] = nextXF;
+        floats[offset + 7] = nextYF;
+        floats[offset + 8] = velocityX;
+        floats[offset + 9] = velocityY;
+        floats[offset + 10] = displayProp;
+        ints[intOffset] = color;
+        ints[intOffset + 1] = (absorbed ? 1 : 0) | (beingAbsorbed ? 2 : 0) | (lineCollided ? 4 : 0) | (wallCollided ? 8 : 0);
+    }
+
+    /**
+     * Restores the position, velocity and state of the ball saved by {@link #saveState}.
+     *
+     * @param floats    the array holding the positions, velocities and display size
+     * @param offset    the index of the first float to read
+     * @param ints      the array holding the colour and the flags
+     * @param intOffset the index of the first integer to read
+     */
+    public void restoreState(float[] floats, int offset, int[] ints, int intOffset){
+        x = (int) floats[offset];
+        y = (int) floats[offset + 1];
+        xFloat = floats[offset + 2];
+        yFloat = floats[offset + 3];
+        lastXF = floats[offset + 4];
+        lastYF = floats[offset + 5];
+        nextXF = floats[offset + 6];
+        nextYF = floats[offset + 7];
+        velocityX = floats[offset + 8];
+        velocityY = floats[offset + 9];
+        displayProp = floats[offset + 10];
+        color = ints[intOffset];
+        int flags = ints[intOffset + 1];
+        absorbed = (flags & 1) != 0;
+        beingAbsorbed = (flags & 2) != 0;
+        lineCollided = (flags & 4) != 0;
+        wallCollided = (flags & 8) != 0;
+    }
+
     /**
      * Returns the current x-axis velocity of the ball.
      *
@@ -149,11 +232,21 @@ public class Ball extends GameObject{
      * @param s the spawner from which to spawn the ball
      */
     public void spawn(Spawner s){
+        spawn(s, new Random());
+    }
+
+    /**
+     * Spawns the ball at the location of the specified spawner and sets a velocity drawn from the given random source.
+     *
+     * @param s      the spawner from which to spawn the ball
+     * @param random the random source for the velocity
+     */
+    public void spawn(Spawner s, Random random){
         this.xFloat = s.getX();
         this.yFloat = s.getY();
         this.lastXF = x;
         this.lastYF = y;
-        randomVelocity();
+        randomVelocity(random);
         updateNextPos();
     }
 
@@ -163,7 +256,6 @@ public class Ball extends GameObject{
      * @param app the {@code App} instance on which to draw the ball
      */
     public void draw(App app){
-        checkBoundaryCollision();
         if((x >= 0 && x + App.BALLSIZE < App.WIDTH && y >= App.TOPBAR && y + App.BALLSIZE <= App.HEIGHT) && (!absorbed)){
             PImage ballRawImage = app.getSprite("ball" + String.valueOf(color));
             app.image(ballRawImage,xFloat,yFloat,ballRawImage.width * displayProp, ballRawImage.height * displayProp);
@@ -196,6 +288,22 @@ public class Ball extends GameObject{
         }
     }
 
+    /**
+     * Moves the ball to a position computed elsewhere from its velocity, as {@link #updatePos()} would.
+     *
+     * @param newX the new x position
+     * @param newY the new y position
+     */
+    void moveTo(float newX, float newY){
+        lastXF = xFloat;
+        lastYF = yFloat;
+        xFloat = newX;
+        yFloat = newY;
+        x = (int) xFloat;
+        y = (int) yFloat;
+        updateNextPos();
+    }
+
     /**
      * Updates the ball's next position based on its current velocity.
      */
@@ -226,7 +334,15 @@ public class Ball extends GameObject{
      * Sets a random initial velocity for the ball.
      */
     public void randomVelocity(){
-        Random random = new Random();
+        randomVelocity(new Random());
+    }
+
+    /**
+     * Sets a random initial velocity for the ball drawn from the given random source.
+     *
+     * @param random the random source for the velocity
+     */
+    public void randomVelocity(Random random){
         // Randomise the selection of X velocity
         if(random.nextBoolean()){
             this.velocityX = 2;
@@ -283,57 +399,96 @@ public class Ball extends GameObject{
    /**
      * Checks if the ball collides with a given line.
      *
-     * @param line the list of points representing the line
+     * @param line the line to check against
      * @return {@code true} if a collision occurs, otherwise {@code false}
      */
-    public boolean checkLineCollision(ArrayList<Point> line){
-        // Check each part of the line to see if there is any collision
-        for(int i = 0; i < line.size()-1; i++){
-            float p1x = line.get(i).getXF();
-            float p1y = line.get(i).getYF();
-            float p2x = line.get(i + 1).getXF();
-            float p2y = line.get(i + 1).getYF();
-            float ballCentreX = xFloat + App.BALLSIZE / 2;
-            float ballCentreY = yFloat + App.BALLSIZE / 2;
+    public boolean checkLineCollision(InkStroke line){
+        int segment = findLineContact(line);
+        if(segment < 0){
+            return false;
+        }
+        bounceOffLine(line, segment);
+        return true;
+    }
+
+    /**
+     * Finds the first part of a line the ball touches, without changing the ball.
+     *
+     * @param line the line to check against
+     * @return the index of the first point of the touched part, or -1 if the ball does not touch the line
+     */
+    public int findLineContact(InkStroke line){
+        float ballCentreX = xFloat + App.BALLSIZE / 2;
+        float ballCentreY = yFloat + App.BALLSIZE / 2;
+        // Skip the line if the ball is nowhere near it
+        if(!line.mayTouch(ballCentreX, ballCentreY)){
+            return -1;
+        }
+        // Check each part of the line near the ball to see if there is any collision
+        for(int i = line.nextCandidate(0, ballCentreX, ballCentreY); i >= 0; i = line.nextCandidate(i + 1, ballCentreX, ballCentreY)){
+            float p1x = line.getX(i);
+            float p1y = line.getY(i);
+            float p2x = line.getX(i + 1);
+            float p2y = line.getY(i + 1);
             
-            // Check if there is a collision
-            double distanceP1 = Math.sqrt(Math.pow((p1x - ballCentreX), 2) + Math.pow((p1y - ballCentreY), 2));
-            double distanceP2 = Math.sqrt(Math.pow((p2x - ballCentreX), 2) + Math.pow((p2y - ballCentreY), 2));
-            double lineLength = Math.sqrt(Math.pow((p2x - p1x), 2) + Math.pow((p2y - p1y), 2)) + App.BALLSIZE / 2;
-            if(distanceP1 + distanceP2 < lineLength + App.BALLSIZE){
-                lineCollided = true;
-                // Calculate vector N1 and N2
-                float dx = p2x - p1x;
-                float dy = p2y - p1y;
-                float nLength = (float) Math.sqrt(dx * dx + dy * dy);
-                // Calculate the normalised n1 and n2
-                float n1x = -dy / nLength;
-                float n1y = dx / nLength;
-                float n2x = dy / nLength;
-                float n2y = -dx / nLength;
-                // Calculate midpoints for checking which normal to use
-                float midx = (p1x + p2x) / 2f;
-                float midy = (p1y + p2y) / 2f;
-                // Check which normal vector is closer to the ball's position
-                double distanceN1 = Math.sqrt(Math.pow((midx + n1x - ballCentreX), 2) + Math.pow((midy + n1y - ballCentreY), 2));
-                double distanceN2 = Math.sqrt(Math.pow((midx + n2x - ballCentreX), 2) + Math.pow((midy + n2y - ballCentreY), 2));
-                
-                if(distanceN1 < distanceN2){
-                    float dotProduct = velocityX * n1x + velocityY * n1y;
-                    float ux = velocityX - 2 * dotProduct * n1x;
-                    float uy = velocityY - 2 * dotProduct * n1y;
-                    updateVelocity(ux, uy);
-                } else if (distanceN1 > distanceN2) {
-                    float dotProduct = velocityX * n2x + velocityY * n2y;
-                    float ux = velocityX - 2 * dotProduct * n2x;
-                    float uy = velocityY - 2 * dotProduct * n2y;
-                    updateVelocity(ux, uy);
-                }
-
-                return true;
+            // Check if there is a collision, skipping the square roots when one end alone is out of reach
+            double d1x = p1x - ballCentreX;
+            double d1y = p1y - ballCentreY;
+            double d2x = p2x - ballCentreX;
+            double d2y = p2y - ballCentreY;
+            double squareP1 = d1x * d1x + d1y * d1y;
+            double squareP2 = d2x * d2x + d2y * d2y;
+            double reach = line.getReach(i);
+            double squareReach = reach * reach;
+            if(squareP1 > squareReach || squareP2 > squareReach){
+                continue;
+            }
+            double distanceP1 = Math.sqrt(squareP1);
+            double distanceP2 = Math.sqrt(squareP2);
+            if(distanceP1 + distanceP2 < reach){
+                return i;
             }
         }
-        return false;
+        return -1;
+    }
+
+    /**
+     * Bounces the ball off a part of a line it touches.
+     *
+     * @param line the line the ball touches
+     * @param i the index of the first point of the touched part
+     */
+    public void bounceOffLine(InkStroke line, int i){
+        float ballCentreX = xFloat + App.BALLSIZE / 2;
+        float ballCentreY = yFloat + App.BALLSIZE / 2;
+        lineCollided = true;
+        // The normalised n1 and n2 were calculated when the point was added
+        float n1x = line.getNormalX(i);
+        float n1y = line.getNormalY(i);
+        float n2x = -n1x;
+        float n2y = -n1y;
+        // Use the midpoints for checking which normal to use
+        float midx = line.getMidX(i);
+        float midy = line.getMidY(i);
+        // Check which normal vector is closer to the ball's position
+        double d1x = midx + n1x - ballCentreX;
+        double d1y = midy + n1y - ballCentreY;
+        double d2x = midx + n2x - ballCentreX;
+        double d2y = midy + n2y - ballCentreY;
+        double distanceN1 = Math.sqrt(d1x * d1x + d1y * d1y);
+        double distanceN2 = Math.sqrt(d2x * d2x + d2y * d2y);
+        
+        if(distanceN1 < distanceN2){
+            float dotProduct = velocityX * n1x + velocityY * n1y;
+            float ux = velocityX - 2 * dotProduct * n1x;
+            float uy = velocityY - 2 * dotProduct * n1y;
+            updateVelocity(ux, uy);
+        } else if (distanceN1 > distanceN2) {
+            float dotProduct = velocityX * n2x + velocityY * n2y;
+            float ux = velocityX - 2 * dotProduct * n2x;
+            float uy = velocityY - 2 * dotProduct * n2y;
+            updateVelocity(ux, uy);
+        }
     }
     
 }
@@ -0,0 +1,151 @@
+package inkball;
+
+import java.util.List;
+
+/**
+ * Moves the balls and bounces them off the edges of the board many at a time.
+ * <p>
+ * The {@code BallKernel} class copies the positions and velocities of the balls into plain float
+ * arrays, runs the arithmetic of {@link Ball#updatePos()} and {@link Ball#checkBoundaryCollision()}
+ * over the arrays and copies the results back. The arithmetic is done by a subclass: the
+ * {@link ScalarBallKernel} goes through the arrays one ball at a time, while the
+ * {@link VectorBallKernel} handles a lane of balls per instruction with the incubating Vector API.
+ * Both give exactly the same floats as the methods of {@link Ball}.
+ *
+ * <p>The Vector API is only available when the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}, as the Gradle build does. {@link #create} looks the
+ * vector kernel up by name, so the game still runs on the scalar kernel without the module.
+ */
+public abstract class BallKernel {
+
+    public static final String SCALAR = "scalar";
+    public static final String VECTOR = "vector";
+
+    // The balls copied into arrays, grown as needed
+    protected float[] xs = new float[0];
+    protected float[] ys = new float[0];
+    protected float[] vxs = new float[0];
+    protected float[] vys = new float[0];
+    private Ball[] moving = new Ball[0]; // For the balls copied in, as absorbed balls are left out
+
+    /**
+     * Creates the kernel with the given name, falling back to the scalar kernel if the Vector API is missing.
+     *
+     * @param name {@link #VECTOR} or {@link #SCALAR}
+     * @return the kernel
+     * @throws IllegalArgumentException if the name is not recognised
+     */
+    public static BallKernel create(String name){
+        if(name.equals(VECTOR)){
+            try {
+                return (BallKernel) Class.forName("inkball.VectorBallKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e){
+                System.err.println("The Vector API is not available, using the scalar ball kernel: " + e);
+                return new ScalarBallKernel();
+            }
+        } else if(name.equals(SCALAR)){
+            return new ScalarBallKernel();
+        }
+        throw new IllegalArgumentException("Unknown ball kernel: " + name);
+    }
+
+    /**
+     * Returns the name of the kernel.
+     *
+     * @return {@link #VECTOR} or {@link #SCALAR}
+     */
+    public abstract String getName();
+
+    /**
+     * Adds the velocities to the positions of the first balls of the arrays.
+     *
+     * @param xs the x positions
+     * @param ys the y positions
+     * @param vxs the x velocities
+     * @param vys the y velocities
+     * @param n the number of balls
+     */
+    public abstract void integrate(float[] xs, float[] ys, float[] vxs, float[] vys, int n);
+
+    /**
+     * Reverses the velocities of the first balls of the arrays that are past an edge of the board.
+     *
+     * @param xs the x positions
+     * @param ys the y positions
+     * @param vxs the x velocities
+     * @param vys the y velocities
+     * @param n the number of balls
+     */
+    public abstract void reflect(float[] xs, float[] ys, float[] vxs, float[] vys, int n);
+
+    /**
+     * Moves the balls that are not absorbed by their velocity, as {@link Ball#updatePos()} does.
+     *
+     * @param balls the balls to move
+     */
+    public void move(List<Ball> balls){
+        int n = gather(balls, true);
+        integrate(xs, ys, vxs, vys, n);
+        for(int i = 0; i < n; i++){
+            moving[i].moveTo(xs[i], ys[i]);
+            moving[i] = null;
+        }
+    }
+
+    /**
+     * Bounces the balls back from the edges of the board, as {@link Ball#checkBoundaryCollision()} does.
+     *
+     * @param balls the balls to bounce
+     */
+    public void bounceOffEdges(List<Ball> balls){
+        int n = gather(balls, false);
+        reflect(xs, ys, vxs, vys, n);
+        for(int i = 0; i < n; i++){
+            Ball b = moving[i];
+            b.velocityX = vxs[i];
+            b.velocityY = vys[i];
+            b.updateNextPos();
+            moving[i] = null;
+        }
+    }
+
+    /**
+     * Copies the positions and velocities of balls into the arrays.
+     *
+     * @param balls the balls to copy
+     * @param skipAbsorbed {@code true} to leave out the absorbed balls
+     * @return the number of balls copied
+     */
+    private int gather(List<Ball> balls, boolean skipAbsorbed){
+        ensureCapacity(balls.size());
+        int n = 0;
+        for(Ball b: balls){
+            if(skipAbsorbed && b.IsAbsorbed()){
+                continue;
+            }
+            moving[n] = b;
+            xs[n] = b.getXF();
+            ys[n] = b.getYF();
+            vxs[n] = b.velocityX;
+            vys[n] = b.velocityY;
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Makes the arrays large enough for a number of balls.
+     *
+     * @param n the number of balls
+     */
+    protected void ensureCapacity(int n){
+        if(xs.length < n){
+            int size = Math.max(n, xs.length * 2);
+            xs = new float[size];
+            ys = new float[size];
+            vxs = new float[size];
+            vys = new float[size];
+            moving = new Ball[size];
+        }
+    }
+}
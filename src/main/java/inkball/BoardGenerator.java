@@ -0,0 +1,130 @@
+package inkball;
+
+import java.util.Random;
+
+/**
+ * Generates random level layouts in the same text format as the level files.
+ * <p>
+ * The {@code BoardGenerator} class surrounds the board with a wall border and scatters holes,
+ * spawners, balls, walls and bricks over the remaining cells. The amount of each element is
+ * controlled by its public attributes, and every layout is reproducible from the given random source.
+ */
+public class BoardGenerator {
+
+    // Cell reserved by an element spanning more than one cell
+    private static final char RESERVED = '\0';
+
+    public float wallDensity = 0.1f; // For the proportion of the free cells turned into walls
+    public float brickRatio = 0.3f; // For the proportion of the walls that are breakable bricks
+    public float colourRatio = 0.5f; // For the proportion of the solid walls that are coloured
+    public int holes = 2; // For the number of holes
+    public int spawners = 2; // For the number of spawners
+    public int boardBalls = 0; // For the number of balls placed on the layout with B<c>
+
+    private Random random;
+
+    /**
+     * Constructs a generator drawing its layouts from the given random source.
+     *
+     * @param random the random source used for placing the elements
+     */
+    public BoardGenerator(Random random){
+        this.random = random;
+    }
+
+    /**
+     * Generates a new layout.
+     *
+     * @return the rows of the layout, one string of {@code App.BOARD_WIDTH} characters per row
+     */
+    public String[] generate(){
+        char[][] grid = new char[App.BOARD_HEIGHT][App.BOARD_WIDTH];
+        // Surround the board with walls
+        for (int rowNum = 0; rowNum < App.BOARD_HEIGHT; rowNum++){
+            for (int colNum = 0; colNum < App.BOARD_WIDTH; colNum++){
+                boolean border = rowNum == 0 || colNum == 0 || rowNum == App.BOARD_HEIGHT - 1 || colNum == App.BOARD_WIDTH - 1;
+                grid[rowNum][colNum] = border ? 'X' : ' ';
+            }
+        }
+
+        // Place the holes on free 2x2 areas
+        for(int i = 0; i < holes; i++){
+            int[] cell = findFree(grid, 2, 2);
+            if(cell == null){
+                break;
+            }
+            grid[cell[0]][cell[1]] = 'H';
+            grid[cell[0]][cell[1] + 1] = (char)('0' + random.nextInt(5));
+            grid[cell[0] + 1][cell[1]] = RESERVED;
+            grid[cell[0] + 1][cell[1] + 1] = RESERVED;
+        }
+
+        // Place the spawners
+        for(int i = 0; i < spawners; i++){
+            int[] cell = findFree(grid, 1, 1);
+            if(cell == null){
+                break;
+            }
+            grid[cell[0]][cell[1]] = 'S';
+        }
+
+        // Place the balls on free 1x2 areas
+        for(int i = 0; i < boardBalls; i++){
+            int[] cell = findFree(grid, 1, 2);
+            if(cell == null){
+                break;
+            }
+            grid[cell[0]][cell[1]] = 'B';
+            grid[cell[0]][cell[1] + 1] = (char)('0' + random.nextInt(5));
+        }
+
+        // Turn some of the remaining cells into walls and bricks
+        for (int rowNum = 1; rowNum < App.BOARD_HEIGHT - 1; rowNum++){
+            for (int colNum = 1; colNum < App.BOARD_WIDTH - 1; colNum++){
+                if(grid[rowNum][colNum] == ' ' && random.nextFloat() < wallDensity){
+                    if(random.nextFloat() < brickRatio){
+                        grid[rowNum][colNum] = (char)('5' + random.nextInt(5));
+                    } else if(random.nextFloat() < colourRatio){
+                        grid[rowNum][colNum] = (char)('1' + random.nextInt(4));
+                    } else {
+                        grid[rowNum][colNum] = 'X';
+                    }
+                }
+            }
+        }
+
+        String[] layout = new String[App.BOARD_HEIGHT];
+        for (int rowNum = 0; rowNum < App.BOARD_HEIGHT; rowNum++){
+            layout[rowNum] = new String(grid[rowNum]).replace(RESERVED, ' ');
+        }
+        return layout;
+    }
+
+    /**
+     * Finds a random free area of the given size inside the border.
+     *
+     * @param grid   the layout being generated
+     * @param height the number of rows of the area
+     * @param width  the number of columns of the area
+     * @return the row and column of the top left cell, or {@code null} if no free area is found
+     */
+    private int[] findFree(char[][] grid, int height, int width){
+        for(int attempt = 0; attempt < 200; attempt++){
+            int rowNum = 1 + random.nextInt(App.BOARD_HEIGHT - 1 - height);
+            int colNum = 1 + random.nextInt(App.BOARD_WIDTH - 1 - width);
+            boolean free = true;
+            for(int r = rowNum; r < rowNum + height && free; r++){
+                for(int c = colNum; c < colNum + width; c++){
+                    if(grid[r][c] != ' '){
+                        free = false;
+                        break;
+                    }
+                }
+            }
+            if(free){
+                return new int[] {rowNum, colNum};
+            }
+        }
+        return null;
+    }
+}
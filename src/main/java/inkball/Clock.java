@@ -0,0 +1,28 @@
+package inkball;
+
+/**
+ * Represents the source of time read by the timers of the game.
+ * <p>
+ * The spawn interval, the time limit of a level, the pause accounting and the score conversion all
+ * read the time through the {@code Clock} of the game. A {@link SystemClock} follows the wall
+ * clock, as the game in a window does. A {@link VirtualClock} only moves when a frame is simulated,
+ * so a game run without a window can be played faster than real time and gives the same result on
+ * every run.
+ */
+public interface Clock {
+
+    /**
+     * Returns the time since the clock started.
+     *
+     * @return the elapsed time in milliseconds
+     */
+    int millis();
+
+    /**
+     * Moves the clock on by one simulated frame.
+     *
+     * <p>This is called at the start of every frame by {@link App#update()}. Clocks that follow the
+     * wall clock ignore it.
+     */
+    void tick();
+}
@@ -0,0 +1,207 @@
+package inkball;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Passes the events of the game from the simulation to any number of subscribers without locking.
+ * <p>
+ * The {@code EventBus} class keeps the events in a ring of preallocated arrays, one array per field,
+ * so publishing an event only writes a few array slots and moves the head on. Only the thread
+ * simulating the game publishes. Every {@link Subscription} keeps its own position in the ring and
+ * reads at its own pace, on any thread: the scoring of the game reads after the collisions of every
+ * frame, while the debug overlay reads when a frame is drawn.
+ *
+ * <p>Publishing never waits for the subscribers. A subscriber that falls more than a ring behind
+ * skips the events that have been written over and counts them as dropped. An event is checked again
+ * after its fields have been copied, so a subscriber on another thread never sees a half-written one.
+ * The one exception is the subscriber created with {@link #subscribeEvery}, the scoring of the game,
+ * which reads on the publishing thread: its unread events are handed to it before they would be
+ * written over, so it never drops one however many events a frame brings.
+ */
+public class EventBus {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int mask;
+    private final int[] types;
+    private final int[] ticks;
+    private final int[] colors;
+    private final int[] targets;
+    private final int[] xs;
+    private final int[] ys;
+    private final GameObject[] subjects;
+    private volatile long head = 0; // For the number of events published so far
+    private Subscription every = null; // For the subscriber that must read every event, on the publishing thread
+    private Handler everyHandler = null;
+
+    /**
+     * Represents the reading position of one subscriber.
+     */
+    public static class Subscription {
+        long next; // For the index of the next event to read
+        long dropped = 0; // For the events written over before they were read
+        final GameEvent event = new GameEvent(); // For the event handed to the handler, filled again for each event
+
+        Subscription(long next){
+            this.next = next;
+        }
+
+        /**
+         * Returns the number of events this subscriber missed by falling behind.
+         *
+         * @return the number of dropped events
+         */
+        public long getDropped(){
+            return dropped;
+        }
+    }
+
+    /**
+     * Represents the code run by a subscriber for every event it reads.
+     */
+    public interface Handler {
+        /**
+         * Handles an event.
+         *
+         * @param event the event, which is only valid during the call
+         */
+        void onEvent(GameEvent event);
+    }
+
+    /**
+     * Creates a bus holding the default number of unread events.
+     */
+    public EventBus(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a bus.
+     *
+     * @param capacity the number of events kept for the subscribers, rounded up to a power of two
+     */
+    public EventBus(int capacity){
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        types = new int[size];
+        ticks = new int[size];
+        colors = new int[size];
+        targets = new int[size];
+        xs = new int[size];
+        ys = new int[size];
+        subjects = new GameObject[size];
+    }
+
+    /**
+     * Publishes an event. Must only be called from the thread simulating the game.
+     *
+     * @param type the type of the event, one of the constants of {@link GameEvent}
+     * @param tick the frame the event happened in
+     * @param subject the ball or brick the event is about
+     * @param color the colour of the ball or brick
+     * @param target the colour of the hole, the hits taken by the brick, the index of the spawner or the level
+     */
+    public void publish(int type, int tick, GameObject subject, int color, int target){
+        long h = head;
+        // Hand the unread events to the subscriber that must read every event while the ring is one short
+        // of full, as a slot next to the one being written is taken as possibly written over
+        if(every != null && h - every.next >= mask){
+            drain(every, everyHandler);
+        }
+        // Keep the slot writes below the head written by the last publish. A volatile write only keeps
+        // the writes before it in place, so without the fence a reader on another thread could see the
+        // slot being written over while the head still reads h, and take a half-written event as whole
+        VarHandle.storeStoreFence();
+        int slot = (int) h & mask;
+        types[slot] = type;
+        ticks[slot] = tick;
+        colors[slot] = color;
+        targets[slot] = target;
+        xs[slot] = subject == null ? 0 : subject.getX();
+        ys[slot] = subject == null ? 0 : subject.getY();
+        subjects[slot] = subject;
+        // Writing the head makes the fields above visible to the subscribers, and the fence of the next
+        // publish keeps its writes after this one
+        head = h + 1;
+    }
+
+    /**
+     * Subscribes to the events published from now on.
+     *
+     * @return the reading position of the new subscriber
+     */
+    public Subscription subscribe(){
+        return new Subscription(head);
+    }
+
+    /**
+     * Subscribes a reader that must read every event published from now on.
+     *
+     * <p>The subscriber must only be drained on the thread publishing the events. Whenever one of its
+     * unread events is about to be written over, {@link #publish} first hands it all its unread events,
+     * so it may be called in the middle of a frame rather than only when it is drained.
+     *
+     * @param handler the code to run for each event, both when it is drained and when publishing would write over one
+     * @return the reading position of the new subscriber
+     * @throws IllegalStateException if the bus already has a subscriber that must read every event
+     */
+    public Subscription subscribeEvery(Handler handler){
+        if(every != null){
+            throw new IllegalStateException("The bus already has a subscriber reading every event");
+        }
+        every = new Subscription(head);
+        everyHandler = handler;
+        return every;
+    }
+
+    /**
+     * Hands every unread event of a subscriber to its handler, oldest first.
+     *
+     * @param subscription the subscriber
+     * @param handler the code to run for each event
+     * @return the number of events handled
+     */
+    public int drain(Subscription subscription, Handler handler){
+        int handled = 0;
+        long end = head;
+        GameEvent event = subscription.event;
+        while(subscription.next < end){
+            long n = subscription.next;
+            // Skip the events that have already been written over
+            if(end - n > mask + 1){
+                subscription.dropped += end - n - (mask + 1);
+                subscription.next = end - (mask + 1);
+                continue;
+            }
+            int slot = (int) n & mask;
+            event.type = types[slot];
+            event.tick = ticks[slot];
+            event.color = colors[slot];
+            event.target = targets[slot];
+            event.x = xs[slot];
+            event.y = ys[slot];
+            event.subject = subjects[slot];
+            // Check that the slot was not written over while it was copied, counting it as dropped if it may have been
+            VarHandle.loadLoadFence();
+            end = head;
+            subscription.next = n + 1;
+            if(end - n >= mask + 1){
+                subscription.dropped++;
+                continue;
+            }
+            handler.onEvent(event);
+            handled++;
+        }
+        event.subject = null;
+        return handled;
+    }
+
+    /**
+     * Returns the number of events published so far.
+     *
+     * @return the number of events
+     */
+    public long published(){
+        return head;
+    }
+}
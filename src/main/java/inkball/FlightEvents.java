@@ -0,0 +1,175 @@
+package inkball;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Holds the events the game writes to JDK Flight Recorder.
+ * <p>
+ * The {@code FlightEvents} class groups the event types shown under "Inkball" in JDK Mission
+ * Control: one event per simulated frame with the time of each phase, captures and misses, broken
+ * bricks, level resets and sprite loads. Every place that writes one first creates it and checks
+ * {@link Event#isEnabled()}, and reads the clock or fills the fields only if it is. When no recording
+ * is running the check is a constant and the unused event is never allocated, so the game runs as if
+ * the events were not there.
+ */
+public final class FlightEvents {
+
+    private FlightEvents(){
+    }
+
+    /**
+     * Represents one frame simulated by {@link App#update()}.
+     *
+     * <p>The duration of the event is the whole frame. Moving the balls is only timed on its own when
+     * a ball kernel moves them, otherwise it is part of the line phase.
+     */
+    @Name("inkball.Tick")
+    @Label("Tick")
+    @Category("Inkball")
+    @Description("One frame simulated by the game, with the time of each phase")
+    @StackTrace(false)
+    public static class Tick extends Event {
+        @Label("Tick")
+        public int tick;
+
+        @Label("Balls On Board")
+        public int balls;
+
+        @Label("Move Phase")
+        @Timespan(Timespan.NANOSECONDS)
+        public long movePhase;
+
+        @Label("Line Phase")
+        @Timespan(Timespan.NANOSECONDS)
+        public long linePhase;
+
+        @Label("Wall Phase")
+        @Timespan(Timespan.NANOSECONDS)
+        public long wallPhase;
+
+        @Label("Hole Phase")
+        @Timespan(Timespan.NANOSECONDS)
+        public long holePhase;
+
+        @Label("Events And Spawn")
+        @Timespan(Timespan.NANOSECONDS)
+        public long spawnPhase;
+
+        @Label("Ball-Line Tests")
+        @Description("Pairs of a ball and a line considered by the line phase")
+        public long lineTests;
+
+        @Label("Ball-Wall Tests")
+        @Description("Pairs of a ball and a wall considered by the wall phase")
+        public long wallTests;
+
+        @Label("Ball-Hole Tests")
+        @Description("Pairs of a ball and a hole considered by the hole phase")
+        public long holeTests;
+
+        @Label("Parallel")
+        public boolean parallel;
+
+        private transient long last; // For the time the last phase ended
+
+        /**
+         * Starts timing the phases.
+         */
+        void startPhases(){
+            last = System.nanoTime();
+        }
+
+        /**
+         * Returns the time since the last phase ended, and makes now the end of the current phase.
+         *
+         * @return the time of the current phase in nanoseconds
+         */
+        long lap(){
+            long now = System.nanoTime();
+            long time = now - last;
+            last = now;
+            return time;
+        }
+    }
+
+    /**
+     * Represents a ball falling into a hole, of its colour or not.
+     */
+    @Name("inkball.Capture")
+    @Label("Capture")
+    @Category("Inkball")
+    @Description("A ball fell into a hole")
+    @StackTrace(false)
+    public static class Capture extends Event {
+        @Label("Tick")
+        public int tick;
+
+        @Label("Ball Colour")
+        public int ballColour;
+
+        @Label("Hole Colour")
+        public int holeColour;
+
+        @Label("Correct Hole")
+        public boolean correct;
+    }
+
+    /**
+     * Represents a brick taking its last hit.
+     */
+    @Name("inkball.BrickBroken")
+    @Label("Brick Broken")
+    @Category("Inkball")
+    @Description("A brick took its last hit and is removed at the end of the frame")
+    @StackTrace(false)
+    public static class BrickBroken extends Event {
+        @Label("Tick")
+        public int tick;
+
+        @Label("Colour")
+        public int colour;
+
+        @Label("X")
+        public int x;
+
+        @Label("Y")
+        public int y;
+    }
+
+    /**
+     * Represents putting a level in place with {@link App#reset()}.
+     */
+    @Name("inkball.LevelReset")
+    @Label("Level Reset")
+    @Category("Inkball")
+    @Description("A level was set up, from a world built in the background or built on the spot")
+    public static class LevelReset extends Event {
+        @Label("Level")
+        public int level;
+
+        @Label("Preloaded")
+        @Description("Whether the world was built in the background during the score conversion")
+        public boolean preloaded;
+
+        @Label("Balls")
+        public int balls;
+    }
+
+    /**
+     * Represents loading an image the first time it is asked for by {@link App#getSprite(String)}.
+     */
+    @Name("inkball.SpriteLoad")
+    @Label("Sprite Load")
+    @Category("Inkball")
+    @Description("An image was loaded the first time it was asked for")
+    public static class SpriteLoad extends Event {
+        @Label("Sprite")
+        public String sprite;
+    }
+}
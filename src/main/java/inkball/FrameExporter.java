@@ -0,0 +1,252 @@
+package inkball;
+
+import processing.awt.PGraphicsJava2D;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Plays a level without a window and saves the drawn frames as a sequence of PNG images.
+ * <p>
+ * The {@code FrameExporter} class simulates the level on a {@link VirtualClock} and draws every
+ * exported frame with {@link App#render()} into an off-screen canvas of the size of the window. The
+ * pixels of each frame are copied into a buffer and put on a bounded queue, from which a pool of
+ * threads encodes and writes the PNG files. Drawing only waits for the encoders when the queue is
+ * full, and the buffers are handed back once written, so a long export does not keep allocating.
+ *
+ * <p>It is started from the command line, for example
+ * {@code gradle run --args="--export=clip --level=2 --frames=600 --solve"}. The images can then be
+ * joined into a video with a tool such as {@code ffmpeg -framerate 30 -i clip/frame-%05d.png clip.mp4}.
+ */
+public class FrameExporter {
+
+    // Attributes of the export
+    public Path output = Paths.get("export"); // For the folder the images are written to
+    public String configPath = "config.json";
+    public int level = 0; // For the level to play, starting from 0
+    public int frames = 10 * App.FPS; // For the number of frames to simulate
+    public int every = 1; // For saving only every nth frame
+    public long seed = 1;
+    public boolean solve = false; // For letting the solver draw lines during the level
+    public int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1); // For the number of encoding threads
+    public int queueSize = 16; // For the number of frames that may wait to be encoded
+
+    /**
+     * Represents a drawn frame waiting to be encoded.
+     */
+    private static class Frame {
+        final int index;
+        final int[] pixels;
+
+        Frame(int index, int[] pixels){
+            this.index = index;
+            this.pixels = pixels;
+        }
+    }
+
+    private static final Frame END = new Frame(-1, null); // For telling an encoder that no more frames follow
+
+    private BlockingQueue<Frame> queue;
+    private BlockingQueue<int[]> freeBuffers;
+    private volatile IOException failure = null;
+    private long waitNanos = 0; // For the time drawing spent waiting for a free place in the queue
+
+    /**
+     * Creates an exporter from the command line arguments.
+     *
+     * <p>The folder is given with {@code --export=folder}. The attributes can be set with
+     * {@code --name=value}: {@code config}, {@code level} (starting from 1), {@code frames},
+     * {@code every}, {@code seed}, {@code threads} and {@code queue}, and the solver is turned on with
+     * {@code --solve}.
+     *
+     * @param args the command line arguments
+     * @return the exporter, or {@code null} if there is no {@code --export} argument
+     * @throws IllegalArgumentException if an argument is not recognised
+     */
+    public static FrameExporter fromArgs(String[] args){
+        FrameExporter exporter = null;
+        for(String arg: args){
+            if(arg.startsWith("--export=")){
+                exporter = new FrameExporter();
+                exporter.output = Paths.get(arg.substring("--export=".length()));
+            }
+        }
+        if(exporter == null){
+            return null;
+        }
+        for(String arg: args){
+            if(arg.startsWith("--export=")){
+                continue;
+            } else if(arg.equals("--solve")){
+                exporter.solve = true;
+                continue;
+            }
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            if(pair.length != 2){
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+            String value = pair[1];
+            switch(pair[0]){
+                case "config":
+                    exporter.configPath = value;
+                    break;
+                case "level":
+                    exporter.level = Integer.parseInt(value) - 1;
+                    break;
+                case "frames":
+                    exporter.frames = Integer.parseInt(value);
+                    break;
+                case "every":
+                    exporter.every = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "seed":
+                    exporter.seed = Long.parseLong(value);
+                    break;
+                case "threads":
+                    exporter.threads = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "queue":
+                    exporter.queueSize = Math.max(1, Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        return exporter;
+    }
+
+    /**
+     * Plays the level and writes the images of its frames, then prints how long it took.
+     *
+     * @return the number of images written
+     * @throws IOException if the folder cannot be created or an image cannot be written
+     */
+    public int run() throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        Files.createDirectories(output);
+
+        App app = new App();
+        app.configPath = configPath;
+        app.clock = new VirtualClock();
+        app.random = new Random(seed);
+        app.rewindBuffer = null;
+        app.loadConfig();
+        app.currentLevel = Math.max(0, Math.min(level, app.config.getLevelCount() - 1));
+        app.reset();
+        InkSolver solver = null;
+        if(solve){
+            solver = new InkSolver();
+            solver.seed = seed;
+        }
+        PGraphicsJava2D canvas = createCanvas(app);
+
+        queue = new ArrayBlockingQueue<Frame>(queueSize);
+        freeBuffers = new ArrayBlockingQueue<int[]>(queueSize + threads + 1);
+        ArrayList<Thread> encoders = new ArrayList<Thread>();
+        for(int i = 0; i < threads; i++){
+            Thread encoder = new Thread(this::encode, "inkball-encoder-" + i);
+            encoder.setDaemon(true);
+            encoder.start();
+            encoders.add(encoder);
+        }
+
+        long start = System.nanoTime();
+        int written = 0;
+        try {
+            for(int f = 0; f < frames && failure == null; f++){
+                if(solver != null && f % solver.replanInterval == 0 && !app.ballsOnBoard.isEmpty()){
+                    for(InkStroke stroke: solver.solve(app)){
+                        app.lines.add(new InkStroke(stroke));
+                    }
+                }
+                app.update();
+                if(f % every != 0){
+                    continue;
+                }
+                app.renderBuffer.publish(app);
+                app.renderTo(canvas);
+                canvas.loadPixels();
+                int[] pixels = freeBuffers.poll();
+                if(pixels == null || pixels.length != canvas.pixels.length){
+                    pixels = new int[canvas.pixels.length];
+                }
+                System.arraycopy(canvas.pixels, 0, pixels, 0, pixels.length);
+                long waitStart = System.nanoTime();
+                queue.put(new Frame(written++, pixels));
+                waitNanos += System.nanoTime() - waitStart;
+            }
+            for(int i = 0; i < threads; i++){
+                queue.put(END);
+            }
+            for(Thread encoder: encoders){
+                encoder.join();
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            for(Thread encoder: encoders){
+                encoder.interrupt();
+            }
+        }
+        if(failure != null){
+            throw failure;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("exported %d frames to %s in %.1fs (%.0f frames/sec, %.1fs waiting for %d encoders)",
+            written, output, seconds, written / seconds, waitNanos / 1e9, threads));
+        return written;
+    }
+
+    /**
+     * Creates an off-screen canvas of the size of the window to draw the game into.
+     *
+     * @param app the game that draws into the canvas
+     * @return the canvas
+     */
+    private static PGraphicsJava2D createCanvas(App app){
+        PGraphicsJava2D canvas = new PGraphicsJava2D();
+        canvas.setParent(app);
+        canvas.setPrimary(false);
+        canvas.setSize(App.WIDTH, App.HEIGHT);
+        // Give the canvas its own image, as the screen it would be made compatible with does not exist
+        canvas.image = new BufferedImage(App.WIDTH, App.HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        return canvas;
+    }
+
+    /**
+     * Encodes and writes frames from the queue until told to stop.
+     */
+    private void encode(){
+        BufferedImage image = new BufferedImage(App.WIDTH, App.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        try {
+            while(true){
+                Frame frame = queue.take();
+                if(frame == END){
+                    return;
+                }
+                // Keep taking frames after a failure so that drawing is never left waiting on a full queue
+                if(failure != null){
+                    continue;
+                }
+                image.setRGB(0, 0, App.WIDTH, App.HEIGHT, frame.pixels, 0, App.WIDTH);
+                freeBuffers.offer(frame.pixels);
+                Path file = output.resolve(String.format("frame-%05d.png", frame.index));
+                try {
+                    if(!ImageIO.write(image, "png", file.toFile())){
+                        throw new IOException("No PNG encoder available");
+                    }
+                } catch (IOException e){
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package inkball;
+
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Represents a config file: its levels and the score of each ball colour.
+ * <p>
+ * The {@code GameConfig} class reads and checks the config file and the layout files of its levels
+ * once, into {@link LevelDefinition}s and two score tables indexed by colour. A config cannot be
+ * changed after it is created, so every game playing it, with or without a window and on any thread,
+ * shares the same object. {@link #load} keeps the configs it has read and only reads a file again
+ * when it has been changed, so starting many games of one config file costs a single read.
+ */
+public final class GameConfig {
+
+    public static final String[] COLOUR_NAMES = {"grey", "orange", "blue", "green", "yellow"};
+
+    private static final ConcurrentHashMap<Path, GameConfig> loaded = new ConcurrentHashMap<Path, GameConfig>();
+
+    private final List<LevelDefinition> levels;
+    private final int[] captureScores; // For the score of a ball in the right hole, by colour
+    private final int[] wrongHolePenalties; // For the score lost for a ball in the wrong hole, by colour
+    private final long modified; // For the time the config file was last changed, 0 if it was not read from a file
+
+    /**
+     * Creates a config.
+     *
+     * @param levels             the levels, in the order they are played
+     * @param captureScores      the score of a ball in the right hole, by colour
+     * @param wrongHolePenalties the score lost for a ball in the wrong hole, by colour
+     * @throws IllegalArgumentException if there are no levels or a score table does not have a score for every colour
+     */
+    public GameConfig(List<LevelDefinition> levels, int[] captureScores, int[] wrongHolePenalties){
+        this(levels, captureScores, wrongHolePenalties, 0);
+    }
+
+    /**
+     * Creates a config with the same scores for every colour.
+     *
+     * @param levels           the levels, in the order they are played
+     * @param captureScore     the score of a ball in the right hole
+     * @param wrongHolePenalty the score lost for a ball in the wrong hole
+     */
+    public GameConfig(List<LevelDefinition> levels, int captureScore, int wrongHolePenalty){
+        this(levels, filled(captureScore), filled(wrongHolePenalty), 0);
+    }
+
+    private GameConfig(List<LevelDefinition> levels, int[] captureScores, int[] wrongHolePenalties, long modified){
+        if(levels.isEmpty()){
+            throw new IllegalArgumentException("A config needs at least one level");
+        }
+        if(captureScores.length != COLOUR_NAMES.length || wrongHolePenalties.length != COLOUR_NAMES.length){
+            throw new IllegalArgumentException("A score table needs a score for each of the " + COLOUR_NAMES.length + " colours");
+        }
+        this.levels = Collections.unmodifiableList(new ArrayList<LevelDefinition>(levels));
+        this.captureScores = captureScores.clone();
+        this.wrongHolePenalties = wrongHolePenalties.clone();
+        this.modified = modified;
+    }
+
+    private static int[] filled(int score){
+        int[] scores = new int[COLOUR_NAMES.length];
+        Arrays.fill(scores, score);
+        return scores;
+    }
+
+    /**
+     * Returns the colour index of a colour name.
+     *
+     * @param name the colour name, such as {@code "orange"}
+     * @return the colour, from 0 to 4, or -1 if the name is not a colour
+     */
+    public static int colourOf(String name){
+        for(int c = 0; c < COLOUR_NAMES.length; c++){
+            if(COLOUR_NAMES[c].equals(name)){
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the config of a file, reading it only if it has not been read before or has changed since.
+     *
+     * @param configPath the config file
+     * @return the config, shared with every other caller of the same file
+     * @throws IllegalArgumentException if the file or a layout file cannot be read or is not valid
+     */
+    public static GameConfig load(String configPath){
+        Path path = new File(configPath).toPath().toAbsolutePath().normalize();
+        long modified = path.toFile().lastModified();
+        GameConfig config = loaded.get(path);
+        if(config == null || config.modified != modified){
+            config = read(path, modified);
+            loaded.put(path, config);
+        }
+        return config;
+    }
+
+    /**
+     * Reads and checks a config file and the layout files of its levels.
+     *
+     * @param path the config file
+     * @param modified the time the file was last changed
+     * @return the config
+     * @throws IllegalArgumentException if a file cannot be read or is not valid
+     */
+    private static GameConfig read(Path path, long modified){
+        JSONObject json;
+        try(Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)){
+            json = new JSONObject(reader);
+        } catch (IOException | RuntimeException e){
+            throw new IllegalArgumentException("Could not read the config file " + path + ": " + e.getMessage(), e);
+        }
+
+        // Read the levels and their layouts
+        JSONArray levelsArray = json.getJSONArray("levels");
+        List<LevelDefinition> levels = new ArrayList<LevelDefinition>();
+        for(int i = 0; i < levelsArray.size(); i++){
+            JSONObject leveljson = levelsArray.getJSONObject(i);
+            String layoutPath = leveljson.getString("layout");
+            JSONArray ballArray = leveljson.getJSONArray("balls");
+            List<String> balls = new ArrayList<String>();
+            for(int j = 0; j < ballArray.size(); j++){
+                balls.add(ballArray.getString(j));
+            }
+            levels.add(new LevelDefinition(layoutPath, readLayout(layoutPath),
+                leveljson.getInt("time"),
+                leveljson.getInt("spawn_interval"),
+                leveljson.getFloat("score_increase_from_hole_capture_modifier"),
+                leveljson.getFloat("score_decrease_from_wrong_hole_modifier"),
+                balls));
+        }
+
+        return new GameConfig(levels,
+            readScores(json.getJSONObject("score_increase_from_hole_capture"), "score_increase_from_hole_capture"),
+            readScores(json.getJSONObject("score_decrease_from_wrong_hole"), "score_decrease_from_wrong_hole"),
+            modified);
+    }
+
+    /**
+     * Reads the rows of a layout file, at most {@link App#BOARD_HEIGHT} of them.
+     *
+     * <p>Layout paths are relative to the working directory, as they always have been.
+     *
+     * @param layoutPath the layout file
+     * @return the rows
+     * @throws IllegalArgumentException if the file cannot be read
+     */
+    private static String[] readLayout(String layoutPath){
+        try {
+            List<String> rows = Files.readAllLines(new File(layoutPath).toPath(), StandardCharsets.UTF_8);
+            return rows.subList(0, Math.min(rows.size(), App.BOARD_HEIGHT)).toArray(new String[0]);
+        } catch (IOException e){
+            throw new IllegalArgumentException("Could not read the layout file " + layoutPath, e);
+        }
+    }
+
+    /**
+     * Reads a score table of the config file, which must have a score for every colour.
+     *
+     * @param table the table
+     * @param name  the name of the table, for the error message
+     * @return the scores by colour
+     * @throws IllegalArgumentException if a colour is unknown or missing
+     */
+    private static int[] readScores(JSONObject table, String name){
+        int[] scores = new int[COLOUR_NAMES.length];
+        boolean[] found = new boolean[COLOUR_NAMES.length];
+        for(Object keyObj: table.keys()){
+            int colour = colourOf((String) keyObj);
+            if(colour < 0){
+                throw new IllegalArgumentException(name + ": unknown colour \"" + keyObj + "\"");
+            }
+            scores[colour] = table.getInt((String) keyObj);
+            found[colour] = true;
+        }
+        for(int c = 0; c < COLOUR_NAMES.length; c++){
+            if(!found[c]){
+                throw new IllegalArgumentException(name + ": no score for " + COLOUR_NAMES[c]);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Returns the number of levels.
+     *
+     * @return the number of levels
+     */
+    public int getLevelCount(){
+        return levels.size();
+    }
+
+    /**
+     * Returns a level.
+     *
+     * @param level the index of the level
+     * @return the level
+     */
+    public LevelDefinition getLevel(int level){
+        return levels.get(level);
+    }
+
+    /**
+     * Returns the levels.
+     *
+     * @return the levels, which cannot be changed
+     */
+    public List<LevelDefinition> getLevels(){
+        return levels;
+    }
+
+    /**
+     * Returns the score of a ball in the right hole.
+     *
+     * @param colour the colour of the ball
+     * @return the score before the modifier of the level
+     */
+    public int getCaptureScore(int colour){
+        return captureScores[colour];
+    }
+
+    /**
+     * Returns the score lost for a ball in the wrong hole.
+     *
+     * @param colour the colour of the ball
+     * @return the score lost before the modifier of the level
+     */
+    public int getWrongHolePenalty(int colour){
+        return wrongHolePenalties[colour];
+    }
+}
@@ -0,0 +1,30 @@
+package inkball;
+
+/**
+ * Represents something that happened during a frame of the game, such as a ball falling into a hole.
+ * <p>
+ * The {@code GameEvent} class holds the fields of one event read from an {@link EventBus}. The same
+ * object is filled again for every event a subscriber reads, so a subscriber that needs an event
+ * after handling it should copy the fields it needs.
+ */
+public class GameEvent {
+
+    // Types of events
+    public static final int CAPTURE = 0; // For a ball absorbed by a hole of its colour
+    public static final int WRONG_HOLE = 1; // For a ball that fell into a hole of another colour
+    public static final int REQUEUE = 2; // For a ball put back at the end of the queue
+    public static final int SPAWN = 3; // For a ball leaving the queue through a spawner
+    public static final int BRICK_HIT = 4;
+    public static final int BRICK_BROKEN = 5;
+    public static final int LEVEL_CLEARED = 6;
+    public static final int TYPE_COUNT = 7;
+    public static final String[] TYPE_NAMES = {"capture", "wrong hole", "requeue", "spawn", "brick hit", "brick broken", "level cleared"};
+
+    public int type; // For one of the type constants
+    public int tick; // For the frame the event happened in
+    public int color; // For the colour of the ball, or of the brick for brick events
+    public int target; // For the colour of the hole, the hits taken by the brick, the index of the spawner or the cleared level
+    public int x;
+    public int y;
+    public GameObject subject; // For the ball or brick the event is about
+}
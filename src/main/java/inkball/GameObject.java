@@ -43,4 +43,15 @@ public abstract class GameObject {
         return y;
     }
 
+    /**
+     * Moves the game object to the specified coordinates.
+     *
+     * @param x the new x-coordinate of the game object
+     * @param y the new y-coordinate of the game object
+     */
+    public void setPosition(int x, int y){
+        this.x = x;
+        this.y = y;
+    }
+
 }
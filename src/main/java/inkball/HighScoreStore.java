@@ -0,0 +1,349 @@
+package inkball;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the scores of every game played on this machine, with the best ones ready to show.
+ * <p>
+ * The {@code HighScoreStore} class writes every score to the end of a record file, {@code scores.log},
+ * as a fixed-size record that is never changed afterwards. The best scores of the whole game and of
+ * each level are kept in a second file, {@code scores.idx}, of a fixed size, which is mapped into
+ * memory: every level has a table of the {@link #TOP} best scores, kept sorted as scores are added.
+ * Showing a leaderboard only reads one table, so it costs the same after a hundred or a hundred
+ * thousand games.
+ *
+ * <p>The index also holds the number of records it has taken in. When the store is opened, only the
+ * records written after that, such as the last one of a game that was killed, are read from the
+ * record file. The whole record file is only read when the index is missing or does not match.
+ *
+ * <p>The game saves its scores with {@link #recordLater}, which hands the writing to a background
+ * thread so the simulation never waits for the disk.
+ */
+public class HighScoreStore implements Closeable {
+
+    public static final int TOP = 10; // For the number of scores kept per table
+    public static final int MAX_LEVELS = 63; // For the number of levels with a table of their own
+    public static final int OVERALL = -1; // For the level of the score of a whole game
+
+    private static final int MAGIC = 0x494e4b53; // "INKS"
+    private static final int VERSION = 1;
+    private static final int RECORD_BYTES = 32;
+    private static final int HEADER_BYTES = 32;
+    private static final int ENTRY_BYTES = 32;
+    private static final int TABLE_BYTES = 8 + TOP * ENTRY_BYTES;
+    private static final int TABLES = MAX_LEVELS + 1;
+    private static final int INDEX_BYTES = HEADER_BYTES + TABLES * TABLE_BYTES;
+
+    /**
+     * Represents one score in a table of best scores.
+     */
+    public static class Entry {
+        public final int level; // For the level, or OVERALL for a whole game
+        public final int score;
+        public final int remaining; // For the time left in milliseconds
+        public final long seed; // For the seed of the game, to play it again
+        public final long time; // For when the score was made, in milliseconds since 1970
+        public final long record; // For the number of the record in the record file
+
+        Entry(int level, int score, int remaining, long seed, long time, long record){
+            this.level = level;
+            this.score = score;
+            this.remaining = remaining;
+            this.seed = seed;
+            this.time = time;
+            this.record = record;
+        }
+    }
+
+    private final FileChannel log;
+    private final FileChannel indexFile;
+    private final MappedByteBuffer index;
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_BYTES);
+    private long records; // For the number of records in the record file
+    private ExecutorService writer = null; // For the thread writing the scores saved with recordLater, started on first use
+    private final ArrayList<List<Entry>> cache; // For the tables already read since they last changed, null for the others
+
+    /**
+     * Opens the store in a folder, creating it if needed.
+     *
+     * @param folder the folder of the record and index files
+     * @return the store
+     * @throws IOException if the files cannot be opened or read
+     */
+    public static HighScoreStore open(Path folder) throws IOException {
+        Files.createDirectories(folder);
+        return new HighScoreStore(folder.resolve("scores.log"), folder.resolve("scores.idx"));
+    }
+
+    /**
+     * Opens the store from its two files and brings the index up to date with the record file.
+     *
+     * @param logPath the record file
+     * @param indexPath the index file
+     * @throws IOException if the files cannot be opened or read
+     */
+    public HighScoreStore(Path logPath, Path indexPath) throws IOException {
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indexFile = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean fresh = indexFile.size() != INDEX_BYTES;
+        index = indexFile.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_BYTES);
+        cache = new ArrayList<List<Entry>>(Collections.nCopies(TABLES, (List<Entry>) null));
+
+        // Drop the end of a record that was cut off while it was being written
+        records = log.size() / RECORD_BYTES;
+        if(log.size() != records * RECORD_BYTES){
+            log.truncate(records * RECORD_BYTES);
+        }
+
+        long indexed = index.getLong(16);
+        if(fresh || index.getInt(0) != MAGIC || index.getInt(4) != VERSION || index.getInt(8) != TOP
+            || index.getInt(12) != TABLES || indexed < 0 || indexed > records){
+            // Start a new index and read the whole record file into it
+            for(int i = 0; i < INDEX_BYTES; i++){
+                index.put(i, (byte) 0);
+            }
+            index.putInt(0, MAGIC);
+            index.putInt(4, VERSION);
+            index.putInt(8, TOP);
+            index.putInt(12, TABLES);
+            indexed = 0;
+        }
+        replay(indexed);
+    }
+
+    /**
+     * Adds the records the index has not taken in yet.
+     *
+     * @param from the number of the first record to add
+     * @throws IOException if the record file cannot be read
+     */
+    private void replay(long from) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(RECORD_BYTES * 1024);
+        long n = from;
+        while(n < records){
+            chunk.clear();
+            int read = log.read(chunk, n * RECORD_BYTES);
+            if(read <= 0){
+                break;
+            }
+            chunk.flip();
+            while(chunk.remaining() >= RECORD_BYTES && n < records){
+                long time = chunk.getLong();
+                int level = chunk.getInt();
+                int score = chunk.getInt();
+                int remaining = chunk.getInt();
+                long seed = chunk.getLong();
+                int check = chunk.getInt();
+                // Stop at a record that was not written completely
+                if(check != checksum(time, level, score, remaining, seed)){
+                    records = n;
+                    log.truncate(records * RECORD_BYTES);
+                    break;
+                }
+                insert(new Entry(level, score, remaining, seed, time, n));
+                n++;
+                index.putLong(16, n);
+            }
+        }
+        index.putLong(16, records);
+    }
+
+    /**
+     * Saves a score.
+     *
+     * @param level the level, or {@link #OVERALL} for the score of a whole game
+     * @param score the score
+     * @param remaining the time left in milliseconds
+     * @param seed the seed of the game
+     * @throws IOException if the record cannot be written
+     */
+    public void record(int level, int score, int remaining, long seed) throws IOException {
+        write(System.currentTimeMillis(), level, score, remaining, seed);
+    }
+
+    /**
+     * Saves a score on a background thread, reporting it if it cannot be written.
+     *
+     * <p>The scores are written in the order they are handed over, and all of them have been written
+     * once {@link #close} returns.
+     *
+     * @param level the level, or {@link #OVERALL} for the score of a whole game
+     * @param score the score
+     * @param remaining the time left in milliseconds
+     * @param seed the seed of the game
+     */
+    public synchronized void recordLater(int level, int score, int remaining, long seed){
+        if(writer == null){
+            writer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "inkball-scores");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long time = System.currentTimeMillis();
+        writer.execute(() -> {
+            try {
+                write(time, level, score, remaining, seed);
+            } catch (IOException e){
+                System.err.println("Could not save the score: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Writes a record to the end of the record file and takes it into the index.
+     *
+     * @param time when the score was made, in milliseconds since 1970
+     * @param level the level, or {@link #OVERALL} for the score of a whole game
+     * @param score the score
+     * @param remaining the time left in milliseconds
+     * @param seed the seed of the game
+     * @throws IOException if the record cannot be written
+     */
+    private synchronized void write(long time, int level, int score, int remaining, long seed) throws IOException {
+        recordBuffer.clear();
+        recordBuffer.putLong(time).putInt(level).putInt(score).putInt(remaining).putLong(seed);
+        recordBuffer.putInt(checksum(time, level, score, remaining, seed));
+        recordBuffer.flip();
+        long position = records * RECORD_BYTES;
+        while(recordBuffer.hasRemaining()){
+            position += log.write(recordBuffer, position);
+        }
+        insert(new Entry(level, score, remaining, seed, time, records));
+        records++;
+        index.putLong(16, records);
+    }
+
+    /**
+     * Puts a score into the table of its level and into no other, keeping the table sorted.
+     *
+     * @param entry the score
+     */
+    private void insert(Entry entry){
+        int table = entry.level + 1;
+        if(table < 0 || table >= TABLES){
+            return;
+        }
+        int base = HEADER_BYTES + table * TABLE_BYTES;
+        int count = index.getInt(base);
+        // Skip a record taken in before the index count was saved
+        for(int i = 0; i < count; i++){
+            if(index.getLong(entryAt(base, i) + 24) == entry.record){
+                return;
+            }
+        }
+        // Find the place after every score at least as high
+        int place = 0;
+        while(place < count && index.getInt(entryAt(base, place)) >= entry.score){
+            place++;
+        }
+        if(place >= TOP){
+            return;
+        }
+        int last = Math.min(count, TOP - 1);
+        for(int i = last; i > place; i--){
+            copyEntry(entryAt(base, i - 1), entryAt(base, i));
+        }
+        int at = entryAt(base, place);
+        index.putInt(at, entry.score);
+        index.putInt(at + 4, entry.remaining);
+        index.putLong(at + 8, entry.seed);
+        index.putLong(at + 16, entry.time);
+        index.putLong(at + 24, entry.record);
+        index.putInt(base, Math.min(count + 1, TOP));
+        cache.set(table, null);
+    }
+
+    /**
+     * Returns the best scores of a level, highest first.
+     *
+     * @param level the level, or {@link #OVERALL} for the scores of whole games
+     * @return the scores, at most {@link #TOP} of them
+     */
+    public synchronized List<Entry> top(int level){
+        int table = level + 1;
+        if(table < 0 || table >= TABLES){
+            return Collections.emptyList();
+        }
+        if(cache.get(table) == null){
+            int base = HEADER_BYTES + table * TABLE_BYTES;
+            int count = index.getInt(base);
+            ArrayList<Entry> entries = new ArrayList<Entry>(count);
+            for(int i = 0; i < count; i++){
+                int at = entryAt(base, i);
+                entries.add(new Entry(level, index.getInt(at), index.getInt(at + 4), index.getLong(at + 8),
+                    index.getLong(at + 16), index.getLong(at + 24)));
+            }
+            cache.set(table, Collections.unmodifiableList(entries));
+        }
+        return cache.get(table);
+    }
+
+    /**
+     * Returns the number of scores saved.
+     *
+     * @return the number of records in the record file
+     */
+    public synchronized long size(){
+        return records;
+    }
+
+    /**
+     * Writes the index to disk and closes the files.
+     *
+     * @throws IOException if the files cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        // Let the scores handed to the background thread be written first
+        ExecutorService pending;
+        synchronized(this){
+            pending = writer;
+            writer = null;
+        }
+        if(pending != null){
+            pending.shutdown();
+            try {
+                pending.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized(this){
+            index.force();
+            log.close();
+            indexFile.close();
+        }
+    }
+
+    private static int entryAt(int base, int i){
+        return base + 8 + i * ENTRY_BYTES;
+    }
+
+    private void copyEntry(int from, int to){
+        for(int k = 0; k < ENTRY_BYTES; k += 8){
+            index.putLong(to + k, index.getLong(from + k));
+        }
+    }
+
+    private static int checksum(long time, int level, int score, int remaining, long seed){
+        long h = time * 31 + level;
+        h = h * 31 + score;
+        h = h * 31 + remaining;
+        h = h * 31 + seed;
+        return (int) (h ^ (h >>> 32)) ^ MAGIC;
+    }
+}
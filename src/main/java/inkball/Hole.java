@@ -37,35 +37,45 @@ public class Hole extends GameObject{
         app.image(app.getSprite("hole" + String.valueOf(color)),x,y);
     }
 
+    /**
+     * Gets the colour identifier of the hole.
+     *
+     * @return the colour identifier of this hole
+     */
+    public int getColor(){
+        return color;
+    }
+
     /**
      * Checks if a ball is within absorbing range of the hole, and absorbs it if certain
-     * conditions are met (e.g., matching colours). Updates the game score based on the
-     * success or failure of the absorption.
+     * conditions are met (e.g., matching colours). Publishes the success or failure of the
+     * absorption as an event, from which the game updates the score and the queue.
      *
      * @param ball the ball object to check for absorption
      * @param app  the application window managing the game state
      */
     public void checkAbsorb(Ball ball, App app){
+        int result = tryAbsorb(ball);
+        if(result >= 0){
+            finishAbsorb(ball, result, app);
+        }
+    }
+
+    /**
+     * Checks if a ball is within absorbing range of the hole and absorbs it, or pulls it towards
+     * the hole if it is close. Only the ball is changed, so balls can be checked on several threads.
+     *
+     * @param ball the ball object to check for absorption
+     * @return {@link GameEvent#CAPTURE} or {@link GameEvent#WRONG_HOLE} if the ball fell into the hole, otherwise -1
+     */
+    public int tryAbsorb(Ball ball){
         float ballCentreX = ball.getXF() + App.BALLSIZE/2;
         float ballCentreY = ball.getYF() + App.BALLSIZE/2;
         float holeCentreX = x + App.CELLSIZE;
         float holeCentreY = y + App.CELLSIZE;
         // Check if the ball can be absorbed
         if((int)ballCentreX < (int)holeCentreX + 10 && (int)ballCentreX > (int)holeCentreX - 10 && (int)ballCentreY < (int)holeCentreY + 10 && (int)ballCentreY > (int)holeCentreY - 10){
-            app.ballsOnBoard.remove(ball);
-            // Check if the color is matched
-            if(color == 0 || ball.getColor() == 0 || color == ball.getColor()){
-                ball.absorb();
-                // Add the score
-                app.levelScore += app.score_increase_from_hole_capture_modifier[app.currentLevel] * app.score_increase_from_hole_capture.get(ball.getColor());
-            } else {
-                app.ballQueue.add(ball);
-                ball.backToQueue();
-                app.levelScore -= app.score_decrease_from_wrong_hole_modifier[app.currentLevel] * app.score_decrease_from_wrong_hole.get(ball.getColor());
-                if(app.ballQueue.size()==1){
-                    app.lastSpawnTime = app.millis();
-                }
-            }
+            return fall(ball);
         }
         // If the ball cannot be absorbed but near the hole to adjust the velocity
         else if(Math.sqrt((ballCentreX- holeCentreX)* (ballCentreX- holeCentreX) + (ballCentreY - holeCentreY)*(ballCentreY - holeCentreY)) <= (double)App.CELLSIZE){
@@ -79,6 +89,48 @@ public class Hole extends GameObject{
                 ball.displayProp = 1;
             }
         }
-        
+        return -1;
+    }
+
+    /**
+     * Absorbs a ball that reached the middle of the hole if the colours match, or sends it back to the queue.
+     *
+     * @param ball the ball in the middle of the hole
+     * @return {@link GameEvent#CAPTURE} if the colours match, otherwise {@link GameEvent#WRONG_HOLE}
+     */
+    public int fall(Ball ball){
+        // Check if the color is matched
+        if(color == 0 || ball.getColor() == 0 || color == ball.getColor()){
+            ball.absorb();
+            return GameEvent.CAPTURE;
+        }
+        ball.backToQueue();
+        return GameEvent.WRONG_HOLE;
+    }
+
+    /**
+     * Takes a ball that fell into the hole off the board and publishes the outcome.
+     *
+     * @param ball   the ball that fell into the hole
+     * @param result the outcome returned by {@link #tryAbsorb}
+     * @param app    the application window managing the game state
+     */
+    public void finishAbsorb(Ball ball, int result, App app){
+        app.ballsOnBoard.remove(ball);
+        FlightEvents.Capture flight = new FlightEvents.Capture();
+        if(flight.isEnabled()){
+            flight.tick = app.tickCount;
+            flight.ballColour = ball.getColor();
+            flight.holeColour = color;
+            flight.correct = result == GameEvent.CAPTURE;
+            flight.commit();
+        }
+        if(result == GameEvent.CAPTURE){
+            app.events.publish(GameEvent.CAPTURE, app.tickCount, ball, ball.getColor(), color);
+        } else {
+            // The score and the queue are updated by the scoring of the game when it reads these events
+            app.events.publish(GameEvent.WRONG_HOLE, app.tickCount, ball, ball.getColor(), color);
+            app.events.publish(GameEvent.REQUEUE, app.tickCount, ball, ball.getColor(), color);
+        }
     }
 }
@@ -0,0 +1,241 @@
+package inkball;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds the pull of the holes of a level over the whole board, worked out once when the level starts.
+ * <p>
+ * The {@code HoleField} class samples the board every {@link #STEP} pixels and keeps, for each
+ * sample, the nearest hole, the change of velocity that hole gives a ball whose centre is there and
+ * the size the ball is drawn at, as a share of its full size. A ball reads the four samples around
+ * its centre and blends them, instead of working out its distance to every hole with two square
+ * roots each. The change of velocity grows in a straight line across the board, so blending gives it
+ * back exactly up to rounding; the size is off by less than a hundredth, and the edge of the pull, by
+ * less than a pixel. Where the four samples are nearest to different holes, such as between two
+ * holes side by side, they cannot be blended, and the ball is checked against every hole instead.
+ *
+ * <p>Whether a ball falls into a hole is decided from the whole pixels of its centre, so it is kept
+ * for every pixel of the board and gives the same answer as {@link Hole#tryAbsorb}.
+ *
+ * <p>A field is never changed after it is worked out, so the copies of a game share it, even when
+ * they are played on other threads. What changes during a frame is kept by each game in a
+ * {@link Fallen}.
+ */
+public class HoleField {
+
+    public static final int STEP = 4; // For the pixels between samples, 8 samples per cell
+    public static final float PULL = 0.005f; // For the share of the distance to the hole added to the velocity each frame
+    public static final int CAPTURE_RANGE = 10; // For the pixels from the middle of a hole within which a ball falls in
+
+    public final List<Hole> holes; // For the holes the field was worked out for, to tell if they have been replaced since
+
+    private final int cols;
+    private final int rows;
+    private final float[] ax; // For the change of the x velocity at each sample
+    private final float[] ay; // For the change of the y velocity at each sample
+    private final float[] scale; // For the distance to the nearest hole at each sample, in cells
+    private final byte[] nearest; // For the index of the nearest hole at each sample
+    private final byte[] capture; // For the index of the hole plus one of each pixel in its middle, 0 for none
+
+    /**
+     * Represents the balls of one game that fell into a hole during the current frame, taken off the
+     * board afterwards in the order of the holes.
+     */
+    public static class Fallen {
+        private Ball[] balls = new Ball[16];
+        private int[] holes = new int[16];
+        private int[] results = new int[16];
+        private int count = 0;
+
+        /**
+         * Holds back a ball that fell into a hole, keeping the list sorted by hole and then by ball.
+         */
+        private void add(Ball ball, int hole, int result){
+            if(count == balls.length){
+                balls = Arrays.copyOf(balls, count * 2);
+                holes = Arrays.copyOf(holes, count * 2);
+                results = Arrays.copyOf(results, count * 2);
+            }
+            int k = count++;
+            while(k > 0 && holes[k - 1] > hole){
+                balls[k] = balls[k - 1];
+                holes[k] = holes[k - 1];
+                results[k] = results[k - 1];
+                k--;
+            }
+            balls[k] = ball;
+            holes[k] = hole;
+            results[k] = result;
+        }
+    }
+
+    /**
+     * Works out the field of the holes of a level.
+     *
+     * @param holes the holes of the level, at most 127 of them
+     * @throws IllegalArgumentException if there are more than 127 holes
+     */
+    public HoleField(List<Hole> holes){
+        if(holes.size() > Byte.MAX_VALUE){
+            throw new IllegalArgumentException("Too many holes for a field: " + holes.size());
+        }
+        this.holes = holes;
+        cols = App.WIDTH / STEP + 1;
+        rows = (App.HEIGHT - App.TOPBAR) / STEP + 1;
+        ax = new float[cols * rows];
+        ay = new float[cols * rows];
+        scale = new float[cols * rows];
+        nearest = new byte[cols * rows];
+        capture = new byte[App.WIDTH * App.HEIGHT];
+
+        for(int j = 0; j < rows; j++){
+            float py = App.TOPBAR + j * STEP;
+            for(int i = 0; i < cols; i++){
+                float px = i * STEP;
+                int s = j * cols + i;
+                // Find the nearest hole of the sample
+                double best = Double.MAX_VALUE;
+                for(int h = 0; h < holes.size(); h++){
+                    float dx = centreX(holes.get(h)) - px;
+                    float dy = centreY(holes.get(h)) - py;
+                    double distance = Math.sqrt(dx * dx + dy * dy);
+                    if(distance < best){
+                        best = distance;
+                        nearest[s] = (byte) h;
+                        ax[s] = dx * PULL;
+                        ay[s] = dy * PULL;
+                    }
+                }
+                scale[s] = (float) (best / (double) App.CELLSIZE);
+            }
+        }
+
+        // Mark the pixels in the middle of each hole, as the whole pixels of the centres are compared
+        for(int h = 0; h < holes.size(); h++){
+            int cx = (int) centreX(holes.get(h));
+            int cy = (int) centreY(holes.get(h));
+            for(int y = Math.max(0, cy - CAPTURE_RANGE + 1); y < Math.min(App.HEIGHT, cy + CAPTURE_RANGE); y++){
+                for(int x = Math.max(0, cx - CAPTURE_RANGE + 1); x < Math.min(App.WIDTH, cx + CAPTURE_RANGE); x++){
+                    capture[y * App.WIDTH + x] = (byte) (h + 1);
+                }
+            }
+        }
+    }
+
+    private static float centreX(Hole hole){
+        return hole.getX() + App.CELLSIZE;
+    }
+
+    private static float centreY(Hole hole){
+        return hole.getY() + App.CELLSIZE;
+    }
+
+    /**
+     * Returns the hole a ball centred at a position falls into.
+     *
+     * @param x the x-coordinate of the centre of the ball
+     * @param y the y-coordinate of the centre of the ball
+     * @return the index of the hole, or -1 if the ball is not in the middle of a hole
+     */
+    public int captureAt(float x, float y){
+        int px = (int) x;
+        int py = (int) y;
+        if(px < 0 || py < 0 || px >= App.WIDTH || py >= App.HEIGHT){
+            return -1;
+        }
+        return capture[py * App.WIDTH + px] - 1;
+    }
+
+    /**
+     * Pulls a ball towards the nearest hole if it is close, or finds the hole it falls into if it is in the middle.
+     *
+     * <p>This is what checking the ball against every hole with {@link Hole#tryAbsorb} does, with one
+     * look-up in place of the distance to each hole.
+     *
+     * @param ball the ball to check
+     * @return the index of the hole the ball fell into, or -1 if it did not fall into one
+     */
+    public int tryAbsorb(Ball ball){
+        if(holes.isEmpty()){
+            return -1;
+        }
+        float centreX = ball.getXF() + App.BALLSIZE/2;
+        float centreY = ball.getYF() + App.BALLSIZE/2;
+        int hole = captureAt(centreX, centreY);
+        if(hole >= 0){
+            return hole;
+        }
+
+        // Blend the four samples around the centre of the ball
+        float fx = centreX / STEP;
+        float fy = (centreY - App.TOPBAR) / STEP;
+        if(fx >= 0 && fy >= 0 && fx < cols - 1 && fy < rows - 1){
+            int i = (int) fx;
+            int j = (int) fy;
+            float tx = fx - i;
+            float ty = fy - j;
+            int s = j * cols + i;
+            // Samples nearer to different holes cannot be blended, so work out the pull of every hole there
+            if(nearest[s] != nearest[s + 1] || nearest[s] != nearest[s + cols] || nearest[s] != nearest[s + cols + 1]){
+                for(Hole h: holes){
+                    h.tryAbsorb(ball);
+                }
+                return -1;
+            }
+            float distance = blend(scale, s, tx, ty);
+            if(distance <= 1f){
+                ball.updateVelocity(ball.getVX() + blend(ax, s, tx, ty), ball.getVY() + blend(ay, s, tx, ty));
+                ball.displayProp = distance;
+                ball.beingAbsorbed = true;
+                return -1;
+            }
+        }
+        if(!ball.beingAbsorbed){
+            ball.displayProp = 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Blends the values of the four samples of a square of the field.
+     */
+    private float blend(float[] values, int s, float tx, float ty){
+        float top = values[s] + (values[s + 1] - values[s]) * tx;
+        float bottom = values[s + cols] + (values[s + cols + 1] - values[s + cols]) * tx;
+        return top + (bottom - top) * ty;
+    }
+
+    /**
+     * Checks every ball on the board against the holes of the game, in place of the loop over the holes.
+     *
+     * <p>The balls that fall in are taken off the board afterwards in the order of the holes, then of
+     * the balls, as the loop over the holes would have, so the events come out in the same order.
+     *
+     * @param app    the game
+     * @param fallen the list of fallen balls of the game, empty before and after the call
+     */
+    public void collide(App app, Fallen fallen){
+        for(Ball b: app.balls){
+            b.collisionIndex = -1;
+        }
+        for(Ball b: app.ballsOnBoard){
+            b.collisionIndex = 0;
+        }
+        fallen.count = 0;
+        for(Ball b: app.balls){
+            if(b.collisionIndex != 0){
+                continue;
+            }
+            int hole = tryAbsorb(b);
+            if(hole >= 0){
+                fallen.add(b, hole, holes.get(hole).fall(b));
+            }
+        }
+        for(int k = 0; k < fallen.count; k++){
+            holes.get(fallen.holes[k]).finishAbsorb(fallen.balls[k], fallen.results[k], app);
+            fallen.balls[k] = null;
+        }
+        fallen.count = 0;
+    }
+}
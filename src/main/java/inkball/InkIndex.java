@@ -0,0 +1,237 @@
+package inkball;
+
+import java.util.*;
+
+/**
+ * Finds the points of the lines on the board that lie under a position.
+ * <p>
+ * The {@code InkIndex} class keeps a grid with one bucket per board cell, and every point of every
+ * line is stored in the bucket of the cell it lies in. A query only looks at the few buckets around
+ * the position, so its cost does not grow with the amount of ink on the board.
+ *
+ * <p>The lines of the game are changed from many places, so the index is not told about changes.
+ * Instead, {@link #sync} compares the list of lines with what has been indexed before each query:
+ * the new points of lines that only grew are added, the entries of removed lines are dropped from
+ * a bucket the next time it is looked at, and the index is rebuilt if a line was cut back, even if
+ * it has grown again since, or too many entries have gone stale. This costs one step per line rather than one per point.
+ */
+public class InkIndex {
+
+    private static final int COLUMNS = (App.WIDTH + App.CELLSIZE - 1) / App.CELLSIZE;
+    private static final int ROWS = (App.HEIGHT + App.CELLSIZE - 1) / App.CELLSIZE;
+
+    /**
+     * Represents the entries of one grid cell, each a line and the index of one of its points.
+     */
+    private static class Bucket {
+        InkStroke[] strokes = new InkStroke[8];
+        int[] points = new int[8];
+        int count = 0;
+
+        void add(InkStroke stroke, int point){
+            if(count == points.length){
+                strokes = Arrays.copyOf(strokes, count * 2);
+                points = Arrays.copyOf(points, count * 2);
+            }
+            strokes[count] = stroke;
+            points[count] = point;
+            count++;
+        }
+
+        void clear(){
+            Arrays.fill(strokes, 0, count, null);
+            count = 0;
+        }
+    }
+
+    /**
+     * Represents what is known about an indexed line.
+     */
+    private static class Tracked {
+        int indexedSize; // For the number of points of the line already in the grid
+        int truncations; // For the number of times the line had been cut back when it was indexed
+        int order; // For the position of the line in the list of lines
+        int seen; // For the last sync that found the line in the list
+    }
+
+    private final Bucket[] buckets = new Bucket[COLUMNS * ROWS];
+    private final IdentityHashMap<InkStroke, Tracked> tracked = new IdentityHashMap<InkStroke, Tracked>();
+    private List<InkStroke> lines = null; // For the list of lines the index was built from
+    private int syncCount = 0;
+    private int livePoints = 0;
+    private int entries = 0;
+
+    /**
+     * Creates an empty index.
+     */
+    public InkIndex(){
+        for(int i = 0; i < buckets.length; i++){
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Brings the index up to date with the given lines.
+     *
+     * @param lines the lines of the game, in the order they are checked
+     */
+    public void sync(List<InkStroke> lines){
+        boolean rebuild = lines != this.lines || entries > 2 * livePoints + 4096;
+        syncCount++;
+        livePoints = 0;
+        for(int i = 0; i < lines.size() && !rebuild; i++){
+            InkStroke line = lines.get(i);
+            Tracked t = tracked.get(line);
+            if(t == null){
+                t = new Tracked();
+                tracked.put(line, t);
+            } else if(t.seen == syncCount){
+                // A line listed twice keeps its first position
+                continue;
+            } else if(line.getTruncations() != t.truncations){
+                // Entries past the cut could point at different points once the line grows again
+                rebuild = true;
+                break;
+            }
+            t.order = i;
+            t.seen = syncCount;
+            for(int k = t.indexedSize; k < line.size(); k++){
+                bucket(line.getX(k), line.getY(k)).add(line, k);
+                entries++;
+            }
+            t.indexedSize = line.size();
+            t.truncations = line.getTruncations();
+            livePoints += line.size();
+        }
+        if(rebuild){
+            rebuild(lines);
+            return;
+        }
+        // Forget the removed lines, whose entries are dropped when their buckets are next looked at
+        tracked.values().removeIf(t -> t.seen != syncCount);
+    }
+
+    /**
+     * Indexes all the points of the given lines from scratch.
+     *
+     * @param lines the lines of the game
+     */
+    private void rebuild(List<InkStroke> lines){
+        this.lines = lines;
+        for(Bucket b: buckets){
+            b.clear();
+        }
+        tracked.clear();
+        entries = 0;
+        livePoints = 0;
+        for(int i = 0; i < lines.size(); i++){
+            InkStroke line = lines.get(i);
+            Tracked t = new Tracked();
+            t.order = i;
+            t.seen = syncCount;
+            t.indexedSize = line.size();
+            t.truncations = line.getTruncations();
+            // A line listed twice keeps its first position
+            if(tracked.putIfAbsent(line, t) != null){
+                continue;
+            }
+            for(int k = 0; k < line.size(); k++){
+                bucket(line.getX(k), line.getY(k)).add(line, k);
+            }
+            entries += line.size();
+            livePoints += line.size();
+        }
+    }
+
+    /**
+     * Finds the first line with a point inside a square around a position.
+     *
+     * <p>A point counts when it lies strictly inside the square, as the eraser always checked.
+     * {@link #sync} must have been called since the lines last changed.
+     *
+     * @param x    the x-coordinate of the centre of the square
+     * @param y    the y-coordinate of the centre of the square
+     * @param half half the side of the square
+     * @return the position of the line in the list of lines, or -1 if no point is inside
+     */
+    public int findFirst(float x, float y, float half){
+        int first = Integer.MAX_VALUE;
+        // Look one pixel further so that rounding never leaves out a point on the edge of a cell
+        int minColumn = column(x - half - 1);
+        int maxColumn = column(x + half + 1);
+        int minRow = row(y - half - 1);
+        int maxRow = row(y + half + 1);
+        for(int r = minRow; r <= maxRow; r++){
+            for(int c = minColumn; c <= maxColumn; c++){
+                Bucket b = buckets[r * COLUMNS + c];
+                int kept = 0;
+                for(int e = 0; e < b.count; e++){
+                    InkStroke line = b.strokes[e];
+                    int k = b.points[e];
+                    Tracked t = tracked.get(line);
+                    // Drop the entries of removed lines and of points cut off a line
+                    if(t == null || k >= line.size()){
+                        continue;
+                    }
+                    b.strokes[kept] = line;
+                    b.points[kept] = k;
+                    kept++;
+                    if(t.order < first && inside(line, k, x, y, half)){
+                        first = t.order;
+                    }
+                }
+                Arrays.fill(b.strokes, kept, b.count, null);
+                entries -= b.count - kept;
+                b.count = kept;
+            }
+        }
+        return first == Integer.MAX_VALUE ? -1 : first;
+    }
+
+    /**
+     * Checks whether a point of a line lies strictly inside a square around a position.
+     *
+     * @param line the line
+     * @param k    the index of the point
+     * @param x    the x-coordinate of the centre of the square
+     * @param y    the y-coordinate of the centre of the square
+     * @param half half the side of the square
+     * @return {@code true} if the point is inside
+     */
+    public static boolean inside(InkStroke line, int k, float x, float y, float half){
+        float px = line.getX(k);
+        float py = line.getY(k);
+        return x > px - half && x < px + half && y > py - half && y < py + half;
+    }
+
+    /**
+     * Returns the bucket of the cell a position lies in.
+     *
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @return the bucket of the cell
+     */
+    private Bucket bucket(float x, float y){
+        return buckets[row(y) * COLUMNS + column(x)];
+    }
+
+    /**
+     * Returns the grid column of an x-coordinate, keeping positions off the board in the edge columns.
+     *
+     * @param x the x-coordinate
+     * @return the column
+     */
+    private static int column(float x){
+        return Math.max(0, Math.min(COLUMNS - 1, (int) Math.floor(x / App.CELLSIZE)));
+    }
+
+    /**
+     * Returns the grid row of a y-coordinate, keeping positions off the board in the edge rows.
+     *
+     * @param y the y-coordinate
+     * @return the row
+     */
+    private static int row(float y){
+        return Math.max(0, Math.min(ROWS - 1, (int) Math.floor(y / App.CELLSIZE)));
+    }
+}
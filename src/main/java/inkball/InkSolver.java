@@ -0,0 +1,383 @@
+package inkball;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches for lines that lead the balls on the board into matching holes.
+ * <p>
+ * The {@code InkSolver} class runs a beam search over short straight lines placed ahead of each
+ * ball. Every candidate set of lines is scored by drawing it on a copy of the game made with
+ * {@link App#fork(long)} and playing the copy for a few seconds without a window. The copies are
+ * played in parallel on a thread pool, and all of them use the same seed so that the candidates
+ * are compared on the same spawns.
+ *
+ * <p>It is used by the hint key in the game, and from the command line to play whole levels for
+ * level testing, for example {@code gradle run --args="--solve --level=1"}.
+ */
+public class InkSolver {
+
+    private static ExecutorService sharedPool = null;
+    private static ExecutorService backgroundThread = null;
+
+    // Attributes of the search
+    public int beamWidth = 4; // For the number of plans kept after each step
+    public int depth = 2; // For the maximum number of lines in a plan
+    public int horizon = 150; // For the number of frames played to score a plan
+    public int strokeLength = 48; // For the length of each line in pixels
+    public int pointSpacing = 4; // For the distance between the points of a line
+    public long seed = 1;
+
+    // Attributes of the batch run
+    public String configPath = "config.json";
+    public int level = -1; // For the only level to play, or -1 for every level
+    public int replanInterval = 2 * App.FPS; // For the number of frames between two searches
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    private ExecutorService pool = null;
+    private AtomicLong simulatedTicks = new AtomicLong();
+    private long searchNanos = 0;
+
+    /**
+     * A set of lines together with the score of the game after drawing them.
+     */
+    private static class Plan {
+        final ArrayList<InkStroke> strokes;
+        double score;
+
+        Plan(ArrayList<InkStroke> strokes){
+            this.strokes = strokes;
+        }
+
+        Plan extend(InkStroke stroke){
+            ArrayList<InkStroke> extended = new ArrayList<InkStroke>(strokes);
+            extended.add(stroke);
+            return new Plan(extended);
+        }
+    }
+
+    /**
+     * Returns the thread on which the hint searches of the game are started.
+     *
+     * @return the executor running the hint searches one at a time
+     */
+    public static synchronized ExecutorService background(){
+        if(backgroundThread == null){
+            backgroundThread = Executors.newSingleThreadExecutor(daemon("inkball-hint"));
+        }
+        return backgroundThread;
+    }
+
+    /**
+     * Returns the thread pool shared by the solvers that do not have their own.
+     *
+     * @return the shared thread pool with one thread per core
+     */
+    private static synchronized ExecutorService sharedPool(){
+        if(sharedPool == null){
+            sharedPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemon("inkball-solver"));
+        }
+        return sharedPool;
+    }
+
+    /**
+     * Creates threads that do not keep the game running when the window is closed.
+     *
+     * @param name the name of the threads
+     * @return the thread factory
+     */
+    private static ThreadFactory daemon(String name){
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates a batch solver from the command line arguments.
+     *
+     * <p>The attributes can be set with {@code --name=value}: {@code config}, {@code level} (starting
+     * from 1), {@code seed}, {@code beam}, {@code depth}, {@code horizon}, {@code replan} and {@code threads}.
+     *
+     * @param args the command line arguments
+     * @return the solver, or {@code null} if {@code --solve} is not among the arguments
+     * @throws IllegalArgumentException if an argument is not recognised
+     */
+    public static InkSolver fromArgs(String[] args){
+        if(!Arrays.asList(args).contains("--solve")){
+            return null;
+        }
+        InkSolver solver = new InkSolver();
+        for(String arg: args){
+            if(arg.equals("--solve")){
+                continue;
+            }
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            if(pair.length != 2){
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+            String value = pair[1];
+            switch(pair[0]){
+                case "config":
+                    solver.configPath = value;
+                    break;
+                case "level":
+                    solver.level = Integer.parseInt(value) - 1;
+                    break;
+                case "seed":
+                    solver.seed = Long.parseLong(value);
+                    break;
+                case "beam":
+                    solver.beamWidth = Integer.parseInt(value);
+                    break;
+                case "depth":
+                    solver.depth = Integer.parseInt(value);
+                    break;
+                case "horizon":
+                    solver.horizon = Integer.parseInt(value);
+                    break;
+                case "replan":
+                    solver.replanInterval = Integer.parseInt(value);
+                    break;
+                case "threads":
+                    solver.threads = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        return solver;
+    }
+
+    /**
+     * Searches for the lines to draw on the given game.
+     *
+     * @param start the game to search from, which is not changed
+     * @return the lines of the best plan, or an empty list if no lines improve on drawing nothing
+     */
+    public ArrayList<InkStroke> solve(App start){
+        long searchStart = System.nanoTime();
+        // Search on a running game even if the player has paused it
+        if(start.paused && !start.levelUp && !start.gameWin){
+            start = start.fork(seed);
+            start.pause();
+        }
+        final App from = start;
+
+        Plan best = new Plan(new ArrayList<InkStroke>());
+        best.score = evaluate(from, best.strokes);
+        ArrayList<InkStroke> candidates = candidateStrokes(from);
+        ArrayList<Plan> beam = new ArrayList<Plan>();
+        beam.add(best);
+        for(int step = 0; step < depth && !candidates.isEmpty(); step++){
+            // Extend every plan of the beam by one more line
+            ArrayList<Plan> extended = new ArrayList<Plan>();
+            for(Plan plan: beam){
+                for(InkStroke stroke: candidates){
+                    if(!plan.strokes.contains(stroke)){
+                        extended.add(plan.extend(stroke));
+                    }
+                }
+            }
+            // Score the extended plans in parallel
+            ArrayList<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+            for(Plan plan: extended){
+                tasks.add(() -> evaluate(from, plan.strokes));
+            }
+            try {
+                List<Future<Double>> scores = pool().invokeAll(tasks);
+                for(int i = 0; i < extended.size(); i++){
+                    extended.get(i).score = scores.get(i).get();
+                }
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e){
+                throw new RuntimeException(e.getCause());
+            }
+            extended.sort((a, b) -> Double.compare(b.score, a.score));
+            beam = new ArrayList<Plan>(extended.subList(0, Math.min(beamWidth, extended.size())));
+            if(!beam.isEmpty() && beam.get(0).score > best.score){
+                best = beam.get(0);
+            }
+        }
+        searchNanos += System.nanoTime() - searchStart;
+        return best.strokes;
+    }
+
+    /**
+     * Scores a plan by drawing its lines on a copy of the game and playing the copy.
+     *
+     * <p>Captures and a finished level raise the score, while wrong holes and the distance of the
+     * remaining balls to their nearest matching hole lower it.
+     *
+     * @param start   the game to copy
+     * @param strokes the lines to draw on the copy
+     * @return the score of the plan
+     */
+    public double evaluate(App start, List<InkStroke> strokes){
+        App sim = start.fork(seed);
+        for(InkStroke stroke: strokes){
+            sim.lines.add(new InkStroke(stroke));
+        }
+        int scoreBefore = start.totalScore + start.levelScore;
+        int tick = 0;
+        while(tick < horizon && !sim.levelUp && !sim.gameOver){
+            sim.update();
+            tick++;
+        }
+        simulatedTicks.addAndGet(tick);
+
+        double score = sim.totalScore + sim.levelScore - scoreBefore;
+        if(sim.levelUp){
+            score += 10000 + (horizon - tick);
+        }
+        for(Ball b: sim.ballsOnBoard){
+            score -= 0.05 * nearestHoleDistance(sim, b);
+        }
+        // Prefer plans with fewer lines
+        return score - strokes.size();
+    }
+
+    /**
+     * Creates the candidate lines, placed across the path of each ball on the board.
+     *
+     * @param start the game to create the lines for
+     * @return the candidate lines
+     */
+    public ArrayList<InkStroke> candidateStrokes(App start){
+        ArrayList<InkStroke> candidates = new ArrayList<InkStroke>();
+        for(Ball b: start.ballsOnBoard){
+            float speed = (float)Math.sqrt(b.getVX() * b.getVX() + b.getVY() * b.getVY());
+            if(speed == 0){
+                continue;
+            }
+            float ux = b.getVX() / speed;
+            float uy = b.getVY() / speed;
+            float ballCentreX = b.getXF() + App.BALLSIZE / 2;
+            float ballCentreY = b.getYF() + App.BALLSIZE / 2;
+            for(int distance = App.CELLSIZE; distance <= 3 * App.CELLSIZE; distance += App.CELLSIZE){
+                float px = ballCentreX + ux * distance;
+                float py = ballCentreY + uy * distance;
+                for(int angle = 0; angle < 180; angle += 45){
+                    float dx = (float)Math.cos(Math.toRadians(angle)) * strokeLength / 2;
+                    float dy = (float)Math.sin(Math.toRadians(angle)) * strokeLength / 2;
+                    InkStroke stroke = segment(px - dx, py - dy, px + dx, py + dy);
+                    if(stroke != null){
+                        candidates.add(stroke);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Creates a straight line of evenly spaced points between two positions.
+     *
+     * @param x1 the x-coordinate of the start of the line
+     * @param y1 the y-coordinate of the start of the line
+     * @param x2 the x-coordinate of the end of the line
+     * @param y2 the y-coordinate of the end of the line
+     * @return the points of the line, or {@code null} if the line leaves the board
+     */
+    private InkStroke segment(float x1, float y1, float x2, float y2){
+        if(Math.min(x1, x2) < 0 || Math.max(x1, x2) > App.WIDTH || Math.min(y1, y2) < App.TOPBAR || Math.max(y1, y2) > App.HEIGHT){
+            return null;
+        }
+        int steps = Math.max(1, strokeLength / pointSpacing);
+        InkStroke stroke = new InkStroke(steps + 1);
+        for(int i = 0; i <= steps; i++){
+            stroke.add(x1 + (x2 - x1) * i / steps, y1 + (y2 - y1) * i / steps);
+        }
+        return stroke;
+    }
+
+    /**
+     * Measures the distance from a ball to the nearest hole that accepts its colour.
+     *
+     * @param app  the game containing the ball
+     * @param ball the ball to measure from
+     * @return the distance between the centres, or the board width if no hole accepts the ball
+     */
+    private static double nearestHoleDistance(App app, Ball ball){
+        double nearest = App.WIDTH;
+        for(Hole h: app.holes){
+            if(h.getColor() == 0 || ball.getColor() == 0 || h.getColor() == ball.getColor()){
+                double dx = h.getX() + App.CELLSIZE - (ball.getXF() + App.BALLSIZE / 2);
+                double dy = h.getY() + App.CELLSIZE - (ball.getYF() + App.BALLSIZE / 2);
+                nearest = Math.min(nearest, Math.sqrt(dx * dx + dy * dy));
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Returns the thread pool the candidate plans are played on.
+     *
+     * @return the thread pool of this solver, or the shared one
+     */
+    private ExecutorService pool(){
+        return pool != null ? pool : sharedPool();
+    }
+
+    /**
+     * Returns the number of frames played per second of searching on each thread.
+     *
+     * @return the search throughput in simulated frames per second per core
+     */
+    public double ticksPerSecondPerCore(){
+        int cores = pool != null ? threads : Runtime.getRuntime().availableProcessors();
+        return simulatedTicks.get() / (searchNanos / 1e9) / cores;
+    }
+
+    /**
+     * Plays the levels of the config file with the solver drawing the lines, and prints the results.
+     *
+     * <p>The solver searches again every {@code replanInterval} frames and draws the lines it finds.
+     */
+    public void runBatch(){
+        pool = Executors.newFixedThreadPool(threads, daemon("inkball-solver"));
+        try {
+            App app = new App();
+            app.configPath = configPath;
+            app.clock = new VirtualClock();
+            app.random = new Random(seed);
+            app.loadConfig();
+            int first = level >= 0 ? level : 0;
+            int last = level >= 0 ? level : app.config.getLevelCount() - 1;
+            int solved = 0;
+            for(int l = first; l <= last; l++){
+                app.currentLevel = l;
+                app.gameWin = false;
+                app.reset();
+                int strokes = 0;
+                int maxTicks = (app.config.getLevel(l).getTime() + 1) * App.FPS;
+                int tick = 0;
+                while(tick < maxTicks && !app.levelUp && !app.gameOver){
+                    if(tick % replanInterval == 0 && !app.ballsOnBoard.isEmpty()){
+                        for(InkStroke stroke: solve(app)){
+                            app.lines.add(new InkStroke(stroke));
+                            strokes++;
+                        }
+                    }
+                    app.update();
+                    tick++;
+                }
+                if(app.levelUp){
+                    solved++;
+                }
+                System.out.println(String.format("level %d (%s): %s after %.1fs, %d lines, score %d",
+                    l + 1, app.config.getLevel(l).getName(), app.levelUp ? "SOLVED" : "FAILED", tick / (float)App.FPS,
+                    strokes, app.totalScore + app.levelScore));
+            }
+            System.out.println(String.format("solved %d of %d levels, search throughput %.0f ticks/sec/core on %d threads",
+                solved, last - first + 1, ticksPerSecondPerCore(), threads));
+        } finally {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package inkball;
+
+import java.util.Arrays;
+
+/**
+ * Represents a line drawn with ink on the game board.
+ * <p>
+ * The {@code InkStroke} class keeps the points of the line in growable arrays of coordinates
+ * instead of one object per point. When a point is appended, the geometry of the segment it
+ * closes is worked out once and kept: the unit normal, the distance within which a ball touches
+ * the segment and the midpoint. A ball then only has to compare its position against these values
+ * to skip the segments that are too far away, and the bounding box of the whole line lets it skip
+ * the line altogether. A point takes 8 bytes and a segment 24 bytes, against the point objects and
+ * their references the lines were stored as before.
+ *
+ * <p>Once a line has more than {@link #HIERARCHY_THRESHOLD} segments, it also keeps a hierarchy of
+ * boxes over its segments: each box at the lowest level covers the area from which a ball can touch
+ * {@link #BRANCH} neighbouring segments, and each box above covers {@code BRANCH} boxes of the level
+ * below. {@link #nextCandidate} uses it to step over whole runs of segments with one test, so a line
+ * across the whole board costs a ball only a few tests away from where it is.
+ *
+ * <p>Points are only ever appended, or cut back from the end by {@link #truncate(int)}.
+ */
+public class InkStroke {
+
+    public static final int HIERARCHY_THRESHOLD = 32;
+    public static final int BRANCH = 8;
+    private static final int BRANCH_BITS = 3;
+
+    private float[] xs;
+    private float[] ys;
+    private int size = 0;
+    private int truncations = 0; // For the number of times the line has been cut back
+
+    // Geometry of segment i, from point i to point i + 1
+    private float[] normalX; // For the x-component of the unit normal to the left of the segment
+    private float[] normalY;
+    private float[] midX;
+    private float[] midY;
+    private double[] reach; // For the sum of the distances to both ends below which a ball touches the segment
+
+    // Bounding box of the points, grown by the largest distance a ball can touch a segment from
+    private float minX = Float.MAX_VALUE;
+    private float minY = Float.MAX_VALUE;
+    private float maxX = -Float.MAX_VALUE;
+    private float maxY = -Float.MAX_VALUE;
+    private double maxHalfReach = 0;
+
+    // Boxes of the hierarchy, four values per box in the order min x, min y, max x, max y
+    private double[][] boxes = null; // For the boxes of each level, or null while the line is short
+
+    /**
+     * Creates an empty line.
+     */
+    public InkStroke(){
+        this(16);
+    }
+
+    /**
+     * Creates an empty line with room for the given number of points.
+     *
+     * @param capacity the number of points that can be added before the arrays grow
+     */
+    public InkStroke(int capacity){
+        capacity = Math.max(2, capacity);
+        xs = new float[capacity];
+        ys = new float[capacity];
+        normalX = new float[capacity - 1];
+        normalY = new float[capacity - 1];
+        midX = new float[capacity - 1];
+        midY = new float[capacity - 1];
+        reach = new double[capacity - 1];
+    }
+
+    /**
+     * Creates a copy of a line that can be extended without changing the original.
+     *
+     * @param other the line to copy
+     */
+    public InkStroke(InkStroke other){
+        this(other, 0, other.size);
+    }
+
+    /**
+     * Creates a line from a run of the points of another line.
+     *
+     * @param other the line to copy from
+     * @param from  the index of the first point to copy
+     * @param to    the index after the last point to copy
+     */
+    public InkStroke(InkStroke other, int from, int to){
+        this(to - from);
+        for(int i = from; i < to; i++){
+            add(other.xs[i], other.ys[i]);
+        }
+    }
+
+    /**
+     * Appends a point to the end of the line.
+     *
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     */
+    public void add(float x, float y){
+        if(size == xs.length){
+            grow();
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        if(size > 1){
+            int s = size - 2;
+            float p1x = xs[s];
+            float p1y = ys[s];
+            // Calculate the same values a ball used to work out for every segment on every frame
+            reach[s] = Math.sqrt(Math.pow((x - p1x), 2) + Math.pow((y - p1y), 2)) + App.BALLSIZE / 2 + App.BALLSIZE;
+            float dx = x - p1x;
+            float dy = y - p1y;
+            float nLength = (float) Math.sqrt(dx * dx + dy * dy);
+            normalX[s] = -dy / nLength;
+            normalY[s] = dx / nLength;
+            midX[s] = (p1x + x) / 2f;
+            midY[s] = (p1y + y) / 2f;
+            maxHalfReach = Math.max(maxHalfReach, reach[s] / 2);
+            if(boxes != null){
+                addToHierarchy(s);
+            } else if(s + 1 > HIERARCHY_THRESHOLD){
+                buildHierarchy();
+            }
+        }
+    }
+
+    /**
+     * Builds the hierarchy of boxes over the segments of the line.
+     */
+    private void buildHierarchy(){
+        boxes = new double[1][];
+        boxes[0] = new double[0];
+        for(int s = 0; s < size - 1; s++){
+            addToHierarchy(s);
+        }
+    }
+
+    /**
+     * Grows the boxes containing a segment so that they cover the area from which it can be touched.
+     *
+     * @param s the index of the segment
+     */
+    private void addToHierarchy(int s){
+        // Add a level on top while the top level has more boxes than one box can hold
+        while((s >> (BRANCH_BITS * boxes.length)) >= BRANCH){
+            boxes = Arrays.copyOf(boxes, boxes.length + 1);
+            double[] below = boxes[boxes.length - 2];
+            double[] level = new double[0];
+            for(int b = 0; b < below.length / 4; b++){
+                level = include(level, b >> BRANCH_BITS, below[4 * b], below[4 * b + 1], below[4 * b + 2], below[4 * b + 3]);
+            }
+            boxes[boxes.length - 1] = level;
+        }
+        double margin = reach[s] / 2 + 1;
+        for(int l = 0; l < boxes.length; l++){
+            boxes[l] = include(boxes[l], s >> (BRANCH_BITS * (l + 1)),
+                midX[s] - margin, midY[s] - margin, midX[s] + margin, midY[s] + margin);
+        }
+    }
+
+    /**
+     * Grows a box of a level to include another box, adding the box to the level if needed.
+     *
+     * <p>Boxes that have not been grown yet are empty, so the first box included sets them.
+     *
+     * @param level the boxes of the level
+     * @param b     the index of the box to grow
+     * @param x1    the minimum x-coordinate of the box to include
+     * @param y1    the minimum y-coordinate of the box to include
+     * @param x2    the maximum x-coordinate of the box to include
+     * @param y2    the maximum y-coordinate of the box to include
+     * @return the boxes of the level, which are a new array if the level had to grow
+     */
+    private static double[] include(double[] level, int b, double x1, double y1, double x2, double y2){
+        if(4 * b >= level.length){
+            int old = level.length;
+            level = Arrays.copyOf(level, Math.max(4 * (b + 1), old * 2));
+            for(int i = old; i < level.length; i += 4){
+                level[i] = Double.MAX_VALUE;
+                level[i + 1] = Double.MAX_VALUE;
+                level[i + 2] = -Double.MAX_VALUE;
+                level[i + 3] = -Double.MAX_VALUE;
+            }
+        }
+        level[4 * b] = Math.min(level[4 * b], x1);
+        level[4 * b + 1] = Math.min(level[4 * b + 1], y1);
+        level[4 * b + 2] = Math.max(level[4 * b + 2], x2);
+        level[4 * b + 3] = Math.max(level[4 * b + 3], y2);
+        return level;
+    }
+
+    /**
+     * Doubles the room for points and segments.
+     */
+    private void grow(){
+        int capacity = xs.length * 2;
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        normalX = Arrays.copyOf(normalX, capacity - 1);
+        normalY = Arrays.copyOf(normalY, capacity - 1);
+        midX = Arrays.copyOf(midX, capacity - 1);
+        midY = Arrays.copyOf(midY, capacity - 1);
+        reach = Arrays.copyOf(reach, capacity - 1);
+    }
+
+    /**
+     * Cuts the line back to its first points.
+     *
+     * <p>The bounding boxes are kept as they were, so they may be larger than the remaining points need.
+     *
+     * @param newSize the number of points to keep
+     */
+    public void truncate(int newSize){
+        if(newSize < size){
+            size = Math.max(0, newSize);
+            truncations++;
+        }
+    }
+
+    /**
+     * Returns the number of times the line has been cut back by {@link #truncate(int)}.
+     *
+     * <p>A line cut back and grown again can have as many points as before but different ones, so
+     * its size alone does not tell whether points have changed.
+     *
+     * @return the number of times the line has been cut back
+     */
+    public int getTruncations(){
+        return truncations;
+    }
+
+    /**
+     * Returns the number of points in the line.
+     *
+     * @return the number of points
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Checks whether the line has no points.
+     *
+     * @return {@code true} if no point has been added
+     */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * Returns the x-coordinate of a point.
+     *
+     * @param i the index of the point
+     * @return the x-coordinate of the point
+     */
+    public float getX(int i){
+        return xs[i];
+    }
+
+    /**
+     * Returns the y-coordinate of a point.
+     *
+     * @param i the index of the point
+     * @return the y-coordinate of the point
+     */
+    public float getY(int i){
+        return ys[i];
+    }
+
+    /**
+     * Returns the x-component of the unit normal of a segment, pointing to its left.
+     *
+     * @param s the index of the segment, from point {@code s} to point {@code s + 1}
+     * @return the x-component of the normal
+     */
+    public float getNormalX(int s){
+        return normalX[s];
+    }
+
+    /**
+     * Returns the y-component of the unit normal of a segment, pointing to its left.
+     *
+     * @param s the index of the segment, from point {@code s} to point {@code s + 1}
+     * @return the y-component of the normal
+     */
+    public float getNormalY(int s){
+        return normalY[s];
+    }
+
+    /**
+     * Returns the x-coordinate of the midpoint of a segment.
+     *
+     * @param s the index of the segment
+     * @return the x-coordinate of the midpoint
+     */
+    public float getMidX(int s){
+        return midX[s];
+    }
+
+    /**
+     * Returns the y-coordinate of the midpoint of a segment.
+     *
+     * @param s the index of the segment
+     * @return the y-coordinate of the midpoint
+     */
+    public float getMidY(int s){
+        return midY[s];
+    }
+
+    /**
+     * Returns the sum of the distances to both ends of a segment below which a ball touches it.
+     *
+     * @param s the index of the segment
+     * @return the length of the segment plus the reach of a ball
+     */
+    public double getReach(int s){
+        return reach[s];
+    }
+
+    /**
+     * Checks whether a position is close enough to the line for a ball centred there to touch it.
+     *
+     * <p>A ball touches a segment only inside an ellipse around it, and that ellipse fits in a circle
+     * of half the reach around the midpoint, so this may report positions that touch nothing but
+     * never misses one that does.
+     *
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @return {@code false} if no segment of the line can be touched from the position
+     */
+    public boolean mayTouch(float x, float y){
+        double margin = maxHalfReach + 1;
+        return size > 1 && x > minX - margin && x < maxX + margin && y > minY - margin && y < maxY + margin;
+    }
+
+    /**
+     * Checks whether a position is close enough to a segment for a ball centred there to touch it.
+     *
+     * @param s the index of the segment
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @return {@code false} if the segment cannot be touched from the position
+     */
+    public boolean mayTouch(int s, float x, float y){
+        double margin = reach[s] / 2 + 1;
+        return Math.abs(x - midX[s]) < margin && Math.abs(y - midY[s]) < margin;
+    }
+
+    /**
+     * Finds the next segment that a ball centred at a position may touch.
+     *
+     * <p>Segments are returned in the order of the line, so the first segment a ball touches is found
+     * before any later one. Runs of segments whose box of the hierarchy does not contain the position
+     * are skipped as a whole.
+     *
+     * @param from the index of the first segment to consider
+     * @param x    the x-coordinate of the position
+     * @param y    the y-coordinate of the position
+     * @return the index of the next segment that may be touched, or -1 if there is none
+     */
+    public int nextCandidate(int from, float x, float y){
+        int segments = size - 1;
+        int s = from;
+        while(s < segments){
+            boolean skipped = false;
+            // Check the boxes containing the segment from the top level down
+            for(int l = boxes == null ? -1 : boxes.length - 1; l >= 0; l--){
+                int shift = BRANCH_BITS * (l + 1);
+                int b = s >> shift;
+                double[] level = boxes[l];
+                if(!(x > level[4 * b] && x < level[4 * b + 2] && y > level[4 * b + 1] && y < level[4 * b + 3])){
+                    s = (b + 1) << shift;
+                    skipped = true;
+                    break;
+                }
+            }
+            if(skipped){
+                continue;
+            }
+            if(mayTouch(s, x, y)){
+                return s;
+            }
+            s++;
+        }
+        return -1;
+    }
+}
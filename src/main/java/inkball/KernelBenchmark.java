@@ -0,0 +1,175 @@
+package inkball;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the ball kernels against moving the balls one by one.
+ * <p>
+ * The {@code KernelBenchmark} class fills a list with balls spread over the board and times a
+ * number of frames of moving them and bouncing them off the edges, first through the methods of
+ * {@link Ball}, then through each {@link BallKernel}, both with the copying to and from the arrays
+ * and on the arrays alone. Every path is checked to leave the balls exactly where the methods of
+ * {@link Ball} do.
+ *
+ * <p>It is started from the command line, for example
+ * {@code gradle run --args="--kernel-bench --balls=10000 --rounds=2000"}.
+ */
+public class KernelBenchmark {
+
+    public int balls = 10000;
+    public int rounds = 2000; // For the number of frames timed on each path
+    public int warmup = 500; // For the number of frames run before timing
+    public long seed = 1;
+
+    /**
+     * Creates a benchmark from the command line arguments.
+     *
+     * <p>Every public attribute can be set with {@code --name=value}, for example {@code --balls=50000}.
+     *
+     * @param args the command line arguments
+     * @return the benchmark, or {@code null} if {@code --kernel-bench} is not among the arguments
+     * @throws IllegalArgumentException if an argument is not recognised
+     */
+    public static KernelBenchmark fromArgs(String[] args){
+        if(!Arrays.asList(args).contains("--kernel-bench")){
+            return null;
+        }
+        KernelBenchmark bench = new KernelBenchmark();
+        for(String arg: args){
+            if(arg.equals("--kernel-bench")){
+                continue;
+            }
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            if(pair.length != 2){
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+            String value = pair[1];
+            switch(pair[0]){
+                case "balls":
+                    bench.balls = Integer.parseInt(value);
+                    break;
+                case "rounds":
+                    bench.rounds = Integer.parseInt(value);
+                    break;
+                case "warmup":
+                    bench.warmup = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    bench.seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        return bench;
+    }
+
+    /**
+     * Creates the balls of the benchmark.
+     *
+     * @return the balls, the same for every call
+     */
+    private ArrayList<Ball> createBalls(){
+        Random random = new Random(seed);
+        ArrayList<Ball> list = new ArrayList<Ball>();
+        for(int i = 0; i < balls; i++){
+            Ball b = new Ball(random.nextInt(App.WIDTH - App.BALLSIZE), App.TOPBAR + random.nextInt(App.HEIGHT - App.TOPBAR - App.BALLSIZE), random.nextInt(5));
+            b.updateVelocity(random.nextFloat() * 6 - 3, random.nextFloat() * 6 - 3);
+            list.add(b);
+        }
+        return list;
+    }
+
+    /**
+     * Runs frames of moving and bouncing the balls through the methods of {@link Ball}.
+     */
+    private static void runObjects(ArrayList<Ball> list, int frames){
+        for(int f = 0; f < frames; f++){
+            for(Ball b: list){
+                b.updatePos();
+            }
+            for(Ball b: list){
+                b.checkBoundaryCollision();
+            }
+        }
+    }
+
+    /**
+     * Runs frames of moving and bouncing the balls through a kernel, copying them in and out every frame.
+     */
+    private static void runKernel(BallKernel kernel, ArrayList<Ball> list, int frames){
+        for(int f = 0; f < frames; f++){
+            kernel.move(list);
+            kernel.bounceOffEdges(list);
+        }
+    }
+
+    /**
+     * Runs frames of a kernel on arrays only, as a game keeping its balls in arrays would.
+     */
+    private static void runArrays(BallKernel kernel, float[] xs, float[] ys, float[] vxs, float[] vys, int frames){
+        for(int f = 0; f < frames; f++){
+            kernel.integrate(xs, ys, vxs, vys, xs.length);
+            kernel.reflect(xs, ys, vxs, vys, xs.length);
+        }
+    }
+
+    /**
+     * Runs the benchmark and prints the time per ball of each path.
+     *
+     * @return the report
+     * @throws IllegalStateException if a kernel does not leave the balls where the methods of {@link Ball} do
+     */
+    public String run(){
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("=== BALL KERNELS === balls=%d rounds=%d%n", balls, rounds));
+        ArrayList<Ball> reference = createBalls();
+        runObjects(reference, warmup);
+        long start = System.nanoTime();
+        runObjects(reference, rounds);
+        sb.append(line("objects", System.nanoTime() - start));
+
+        for(String name: new String[] {BallKernel.SCALAR, BallKernel.VECTOR}){
+            BallKernel kernel = BallKernel.create(name);
+            ArrayList<Ball> list = createBalls();
+            runKernel(kernel, list, warmup);
+            start = System.nanoTime();
+            runKernel(kernel, list, rounds);
+            sb.append(line(kernel.getName() + " with copying", System.nanoTime() - start));
+            for(int i = 0; i < balls; i++){
+                Ball expected = reference.get(i);
+                Ball actual = list.get(i);
+                if(expected.getXF() != actual.getXF() || expected.getYF() != actual.getYF()
+                    || expected.getVX() != actual.getVX() || expected.getVY() != actual.getVY()){
+                    throw new IllegalStateException("The " + kernel.getName() + " kernel moved ball " + i + " differently");
+                }
+            }
+
+            float[] xs = new float[balls];
+            float[] ys = new float[balls];
+            float[] vxs = new float[balls];
+            float[] vys = new float[balls];
+            ArrayList<Ball> fresh = createBalls();
+            for(int i = 0; i < balls; i++){
+                xs[i] = fresh.get(i).getXF();
+                ys[i] = fresh.get(i).getYF();
+                vxs[i] = fresh.get(i).getVX();
+                vys[i] = fresh.get(i).getVY();
+            }
+            runArrays(kernel, xs, ys, vxs, vys, warmup);
+            start = System.nanoTime();
+            runArrays(kernel, xs, ys, vxs, vys, rounds);
+            sb.append(line(kernel.getName() + " arrays only", System.nanoTime() - start));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formats the time of one path.
+     */
+    private String line(String name, long nanos){
+        return String.format("%-22s %8.2f ns/ball/frame  %8.3f ms/frame%n", name, nanos / (double) rounds / balls, nanos / 1e6 / rounds);
+    }
+}
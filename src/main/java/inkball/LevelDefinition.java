@@ -0,0 +1,153 @@
+package inkball;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents one level of a config file, read and checked once and never changed afterwards.
+ * <p>
+ * The {@code LevelDefinition} class holds the layout, time limit, spawn interval, score modifiers and
+ * queued balls of a level. The colour names of the balls are turned into colour indices when the
+ * level is created, so building the level with {@link World} only reads numbers and characters.
+ * Because nothing can change it, one definition is shared by every game playing the level, on any
+ * thread, without copying it.
+ */
+public final class LevelDefinition {
+
+    private final String name; // For the layout file the level was read from, or a name for a made-up level
+    private final String[] layout; // For the rows of the layout, exactly BOARD_HEIGHT of them
+    private final int time; // For the time limit in seconds
+    private final int spawnInterval; // For the seconds between spawns
+    private final float increaseModifier;
+    private final float decreaseModifier;
+    private final int[] ballColours; // For the colours of the queued balls, in order
+
+    /**
+     * Creates a level.
+     *
+     * @param name             the layout file the level was read from, or a name for a made-up level
+     * @param layout           the rows of the layout; missing rows are taken as empty
+     * @param time             the time limit in seconds
+     * @param spawnInterval    the seconds between spawns
+     * @param increaseModifier the modifier of the score for a ball in the right hole
+     * @param decreaseModifier the modifier of the score for a ball in the wrong hole
+     * @param balls            the colour names of the queued balls, in order
+     * @throws IllegalArgumentException if the time or spawn interval is not positive, the layout is
+     *                                  too tall or too wide, or a ball has an unknown colour
+     */
+    public LevelDefinition(String name, String[] layout, int time, int spawnInterval,
+                           float increaseModifier, float decreaseModifier, List<String> balls){
+        if(time <= 0){
+            throw new IllegalArgumentException(name + ": the time must be positive, not " + time);
+        }
+        if(spawnInterval <= 0){
+            throw new IllegalArgumentException(name + ": the spawn interval must be positive, not " + spawnInterval);
+        }
+        if(layout.length > App.BOARD_HEIGHT){
+            throw new IllegalArgumentException(name + ": the layout has " + layout.length + " rows, more than " + App.BOARD_HEIGHT);
+        }
+        this.name = name;
+        this.layout = new String[App.BOARD_HEIGHT];
+        for(int row = 0; row < App.BOARD_HEIGHT; row++){
+            String line = row < layout.length && layout[row] != null ? layout[row] : "";
+            if(line.trim().length() > App.BOARD_WIDTH){
+                throw new IllegalArgumentException(name + ": row " + (row + 1) + " is wider than " + App.BOARD_WIDTH + " cells");
+            }
+            this.layout[row] = line;
+        }
+        this.time = time;
+        this.spawnInterval = spawnInterval;
+        this.increaseModifier = increaseModifier;
+        this.decreaseModifier = decreaseModifier;
+        ballColours = new int[balls.size()];
+        for(int i = 0; i < ballColours.length; i++){
+            ballColours[i] = GameConfig.colourOf(balls.get(i));
+            if(ballColours[i] < 0){
+                throw new IllegalArgumentException(name + ": unknown ball colour \"" + balls.get(i) + "\"");
+            }
+        }
+    }
+
+    /**
+     * Returns the layout file the level was read from, or the name of a made-up level.
+     *
+     * @return the name
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Returns a row of the layout.
+     *
+     * @param row the index of the row, from 0 to {@link App#BOARD_HEIGHT} - 1
+     * @return the row, empty if the layout has no such row
+     */
+    public String getRow(int row){
+        return layout[row];
+    }
+
+    /**
+     * Returns the rows of the layout.
+     *
+     * @return a copy of the rows
+     */
+    public String[] getLayout(){
+        return Arrays.copyOf(layout, layout.length);
+    }
+
+    /**
+     * Returns the time limit of the level.
+     *
+     * @return the time limit in seconds
+     */
+    public int getTime(){
+        return time;
+    }
+
+    /**
+     * Returns the time between spawns.
+     *
+     * @return the spawn interval in seconds
+     */
+    public int getSpawnInterval(){
+        return spawnInterval;
+    }
+
+    /**
+     * Returns the modifier of the score for a ball in the right hole.
+     *
+     * @return the modifier
+     */
+    public float getIncreaseModifier(){
+        return increaseModifier;
+    }
+
+    /**
+     * Returns the modifier of the score for a ball in the wrong hole.
+     *
+     * @return the modifier
+     */
+    public float getDecreaseModifier(){
+        return decreaseModifier;
+    }
+
+    /**
+     * Returns the number of queued balls.
+     *
+     * @return the number of balls
+     */
+    public int getBallCount(){
+        return ballColours.length;
+    }
+
+    /**
+     * Returns the colour of a queued ball.
+     *
+     * @param i the index of the ball in the queue
+     * @return the colour, from 0 to 4
+     */
+    public int getBallColour(int i){
+        return ballColours[i];
+    }
+}
@@ -0,0 +1,364 @@
+package inkball;
+
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Generates new levels from a seed and keeps only those the balls can actually finish.
+ * <p>
+ * The {@code LevelGenerator} class creates candidate layouts with a {@link BoardGenerator} and
+ * validates each of them by playing the level many times without a window, in parallel across
+ * all cores. A candidate is accepted when enough of these runs capture every ball in a matching
+ * hole before the time runs out. The accepted layouts are written as level files together with a
+ * {@code config.json} that lists them.
+ *
+ * <p>It is started from the command line, for example
+ * {@code gradle run --args="--generate --count=50 --difficulty=0.5 --out=generated"}.
+ */
+public class LevelGenerator {
+
+    private static final String[] COLOURS = {"grey", "orange", "blue", "green", "yellow"};
+
+    // Attributes of the generated levels
+    public long seed = 1;
+    public float wallDensity = 0.1f;
+    public float brickRatio = 0.2f;
+    public int holes = 2;
+    public int spawners = 2;
+    public int balls = 5; // For the number of balls in the queue
+    public int time = 120;
+    public int spawnInterval = 8;
+    public float increaseModifier = 1f;
+    public float decreaseModifier = 1f;
+
+    // Attributes of the validation
+    public int count = 10; // For the number of levels to generate
+    public int simulations = 16; // For the number of runs played for each candidate
+    public float minSuccessRate = 0.25f; // For the proportion of the runs that must capture every ball
+    public String outDir = "generated";
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    private int candidates = 0; // For counting the candidates validated so far
+
+    /**
+     * A generated layout together with the balls of its queue.
+     */
+    public static class Candidate {
+        public final long seed;
+        public final String[] layout;
+        public final ArrayList<String> balls;
+
+        /**
+         * Constructs a candidate level.
+         *
+         * @param seed   the seed the candidate was generated from
+         * @param layout the rows of the layout
+         * @param balls  the colour names of the balls in the queue
+         */
+        public Candidate(long seed, String[] layout, ArrayList<String> balls){
+            this.seed = seed;
+            this.layout = layout;
+            this.balls = balls;
+        }
+    }
+
+    /**
+     * Creates a level generator from the command line arguments.
+     *
+     * <p>Every public attribute can be set with {@code --name=value}. {@code --difficulty} sets the
+     * walls, bricks, balls, time and spawn interval together, and can be refined by the other options
+     * given after it.
+     *
+     * @param args the command line arguments
+     * @return the level generator, or {@code null} if {@code --generate} is not among the arguments
+     * @throws IllegalArgumentException if an argument is not recognised
+     */
+    public static LevelGenerator fromArgs(String[] args){
+        if(!Arrays.asList(args).contains("--generate")){
+            return null;
+        }
+        LevelGenerator generator = new LevelGenerator();
+        for(String arg: args){
+            if(arg.equals("--generate")){
+                continue;
+            }
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            if(pair.length != 2){
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+            String value = pair[1];
+            switch(pair[0]){
+                case "seed":
+                    generator.seed = Long.parseLong(value);
+                    break;
+                case "difficulty":
+                    generator.setDifficulty(Float.parseFloat(value));
+                    break;
+                case "walls":
+                    generator.wallDensity = Float.parseFloat(value);
+                    break;
+                case "bricks":
+                    generator.brickRatio = Float.parseFloat(value);
+                    break;
+                case "holes":
+                    generator.holes = Integer.parseInt(value);
+                    break;
+                case "spawners":
+                    generator.spawners = Integer.parseInt(value);
+                    break;
+                case "balls":
+                    generator.balls = Integer.parseInt(value);
+                    break;
+                case "time":
+                    generator.time = Integer.parseInt(value);
+                    break;
+                case "interval":
+                    generator.spawnInterval = Integer.parseInt(value);
+                    break;
+                case "count":
+                    generator.count = Integer.parseInt(value);
+                    break;
+                case "sims":
+                    generator.simulations = Integer.parseInt(value);
+                    break;
+                case "success":
+                    generator.minSuccessRate = Float.parseFloat(value);
+                    break;
+                case "threads":
+                    generator.threads = Integer.parseInt(value);
+                    break;
+                case "out":
+                    generator.outDir = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        return generator;
+    }
+
+    /**
+     * Sets the attributes of the levels from a single difficulty.
+     *
+     * @param difficulty the difficulty from 0 (easiest) to 1 (hardest)
+     */
+    public void setDifficulty(float difficulty){
+        difficulty = Math.max(0f, Math.min(1f, difficulty));
+        wallDensity = 0.05f + 0.15f * difficulty;
+        brickRatio = 0.1f + 0.3f * difficulty;
+        holes = 2 + Math.round(2 * difficulty);
+        balls = 3 + Math.round(7 * difficulty);
+        time = 180 - Math.round(90 * difficulty);
+        spawnInterval = 10 - Math.round(6 * difficulty);
+        increaseModifier = 1f + 0.3f * difficulty;
+        decreaseModifier = 1f + 0.3f * difficulty;
+    }
+
+    /**
+     * Creates a candidate level.
+     *
+     * <p>The colours of the balls are restricted to the colours of the holes, unless there is a grey
+     * hole which accepts every ball.
+     *
+     * @param candidateSeed the seed of the candidate
+     * @return the candidate level
+     */
+    public Candidate createCandidate(long candidateSeed){
+        Random random = new Random(candidateSeed);
+        BoardGenerator board = new BoardGenerator(random);
+        board.wallDensity = wallDensity;
+        board.brickRatio = brickRatio;
+        board.holes = holes;
+        board.spawners = Math.max(1, spawners);
+        String[] layout = board.generate();
+
+        // Find the colours accepted by the holes
+        ArrayList<Integer> colours = new ArrayList<Integer>();
+        colours.add(0);
+        boolean greyHole = false;
+        for(String row: layout){
+            for(int i = row.indexOf('H'); i >= 0; i = row.indexOf('H', i + 1)){
+                int c = row.charAt(i + 1) - '0';
+                greyHole |= c == 0;
+                if(!colours.contains(c)){
+                    colours.add(c);
+                }
+            }
+        }
+        ArrayList<String> queue = new ArrayList<String>();
+        for(int i = 0; i < balls; i++){
+            int c = greyHole ? random.nextInt(COLOURS.length) : colours.get(random.nextInt(colours.size()));
+            queue.add(COLOURS[c]);
+        }
+        return new Candidate(candidateSeed, layout, queue);
+    }
+
+    /**
+     * Loads a candidate into a game without a window, ready to be played.
+     *
+     * @param candidate the candidate to load
+     * @param runSeed   the seed of the spawn positions and ball velocities
+     * @return the game with the candidate as its only level
+     */
+    public App createSimulation(Candidate candidate, long runSeed){
+        App app = new App();
+        app.clock = new VirtualClock();
+        app.random = new Random(runSeed);
+        app.currentLevel = 0;
+        LevelDefinition level = new LevelDefinition("generated", candidate.layout, time, spawnInterval,
+            increaseModifier, decreaseModifier, candidate.balls);
+        app.config = new GameConfig(Collections.singletonList(level), 50, 25);
+        app.reset();
+        return app;
+    }
+
+    /**
+     * Plays a candidate once without drawing any lines.
+     *
+     * @param candidate the candidate to play
+     * @param runSeed   the seed of the spawn positions and ball velocities
+     * @return {@code true} if every ball was captured before the time ran out
+     */
+    public boolean simulate(Candidate candidate, long runSeed){
+        App app = createSimulation(candidate, runSeed);
+        int maxTicks = (time + 1) * App.FPS;
+        for(int tick = 0; tick < maxTicks; tick++){
+            app.update();
+            if(app.levelUp){
+                return true;
+            }
+            if(app.gameOver){
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generates and validates candidates until {@code count} levels have been accepted.
+     *
+     * <p>Candidates are validated in batches so that the runs of several candidates keep all the
+     * threads busy at once.
+     *
+     * @return the accepted candidates in the order they were generated
+     * @throws InterruptedException if the validation is interrupted
+     */
+    public ArrayList<Candidate> generate() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Candidate> accepted = new ArrayList<Candidate>();
+        Random seeds = new Random(seed);
+        int required = (int)Math.ceil(minSuccessRate * simulations);
+        int batchSize = Math.max(1, threads);
+        try {
+            while(accepted.size() < count){
+                // Submit every run of the next batch of candidates
+                ArrayList<Candidate> batch = new ArrayList<Candidate>();
+                ArrayList<Future<Boolean>> runs = new ArrayList<Future<Boolean>>();
+                for(int i = 0; i < batchSize; i++){
+                    final Candidate candidate = createCandidate(seeds.nextLong());
+                    batch.add(candidate);
+                    for(int j = 0; j < simulations; j++){
+                        final long runSeed = candidate.seed * 31 + j;
+                        runs.add(pool.submit(() -> simulate(candidate, runSeed)));
+                    }
+                }
+                // Keep the candidates that were finished often enough
+                for(int i = 0; i < batch.size(); i++){
+                    int successes = 0;
+                    int failures = 0;
+                    for(int j = 0; j < simulations; j++){
+                        Future<Boolean> run = runs.get(i * simulations + j);
+                        // Skip the remaining runs once the result of the candidate is known
+                        if(successes >= required || failures > simulations - required || accepted.size() >= count){
+                            run.cancel(false);
+                            continue;
+                        }
+                        try {
+                            if(run.get()){
+                                successes++;
+                            } else {
+                                failures++;
+                            }
+                        } catch (ExecutionException e){
+                            throw new RuntimeException(e.getCause());
+                        }
+                    }
+                    if(accepted.size() >= count){
+                        continue;
+                    }
+                    candidates++;
+                    if(successes >= required){
+                        accepted.add(batch.get(i));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return accepted;
+    }
+
+    /**
+     * Writes the levels as layout files and a {@code config.json} listing them into {@code outDir}.
+     *
+     * @param levels the levels to write
+     * @throws IOException if a file cannot be written
+     */
+    public void write(List<Candidate> levels) throws IOException {
+        File dir = new File(outDir);
+        dir.mkdirs();
+        JSONArray levelsArray = new JSONArray();
+        for(int i = 0; i < levels.size(); i++){
+            Candidate level = levels.get(i);
+            File layoutFile = new File(dir, "level" + (i + 1) + ".txt");
+            try (PrintWriter writer = new PrintWriter(new FileWriter(layoutFile))){
+                for(String row: level.layout){
+                    writer.println(row);
+                }
+            }
+            JSONObject leveljson = new JSONObject();
+            leveljson.setString("layout", outDir + "/" + layoutFile.getName());
+            leveljson.setInt("time", time);
+            leveljson.setInt("spawn_interval", spawnInterval);
+            leveljson.setFloat("score_increase_from_hole_capture_modifier", increaseModifier);
+            leveljson.setFloat("score_decrease_from_wrong_hole_modifier", decreaseModifier);
+            JSONArray ballArray = new JSONArray();
+            for(String ball: level.balls){
+                ballArray.append(ball);
+            }
+            leveljson.setJSONArray("balls", ballArray);
+            leveljson.setLong("seed", level.seed);
+            levelsArray.append(leveljson);
+        }
+        JSONObject json = new JSONObject();
+        json.setJSONArray("levels", levelsArray);
+        JSONObject increase = new JSONObject();
+        JSONObject decrease = new JSONObject();
+        for(String colour: COLOURS){
+            increase.setInt(colour, 50);
+            decrease.setInt(colour, 25);
+        }
+        json.setJSONObject("score_increase_from_hole_capture", increase);
+        json.setJSONObject("score_decrease_from_wrong_hole", decrease);
+        json.save(new File(dir, "config.json"), null);
+    }
+
+    /**
+     * Generates the levels, writes them and prints how fast they were produced.
+     *
+     * @throws IOException          if a file cannot be written
+     * @throws InterruptedException if the validation is interrupted
+     */
+    public void run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ArrayList<Candidate> levels = generate();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        write(levels);
+        System.out.println(String.format("Generated %d levels from %d candidates in %.1fs (%.0f levels/min) into %s/",
+            levels.size(), candidates, seconds, levels.size() / seconds * 60, outDir));
+    }
+}
@@ -0,0 +1,433 @@
+package inkball;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+
+/**
+ * Keeps a two-player game in step over a network connection.
+ * <p>
+ * The {@code LockstepSession} class runs the same level with the same seed on both sides and only
+ * exchanges the actions of the players, never the state of the balls. Every frame each side sends
+ * the actions its player made during that frame, to be applied {@link #INPUT_DELAY} frames later. A
+ * frame is only simulated once the actions of both players for it have arrived, and they are
+ * always applied in player order, so both games go through exactly the same states. The games run
+ * on a {@link VirtualClock}, so the time never differs between the sides.
+ *
+ * <p>Every {@link #HASH_INTERVAL} frames a hash of the game state is sent along with the actions.
+ * If it does not match the hash of the other side, the game is marked as out of step.
+ *
+ * <p>Messages: the host starts with the seed as 8 bytes. After that each message is the frame
+ * number, the frame of the attached hash (or -1), the hash, the number of actions and each action
+ * as an operation byte and two 2-byte coordinates.
+ */
+public class LockstepSession {
+
+    public static final int INPUT_DELAY = 1; // For the frames between an action and its application
+    public static final int HASH_INTERVAL = 30; // For the frames between state hash checks
+
+    private static final int WINDOW = 64; // For the frames of actions kept in the ring buffers
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 2;
+    private static final int ACTION_SIZE = 5;
+    private static final int MAX_ACTIONS = 1024;
+
+    public final int player; // For the player of this side, 0 for the host and 1 for the guest
+    public final long seed;
+    private final SocketChannel channel;
+
+    // Actions of each frame in a ring buffer, for the local and the remote player
+    private final byte[][] localActions = new byte[WINDOW][];
+    private final byte[][] remoteActions = new byte[WINDOW][];
+    private final int[] remoteFrame = new int[WINDOW];
+    private final long[] localHashes = new long[WINDOW];
+    private final int[] localHashFrame = new int[WINDOW];
+    private final long[] remoteHashes = new long[WINDOW];
+    private final int[] remoteHashFrame = new int[WINDOW];
+    private ByteBuffer pending = ByteBuffer.allocate(ACTION_SIZE * 64); // For the actions of the current frame
+    private int pendingCount = 0;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+
+    public int maxCatchUp = 2; // For the frames simulated at most in one call of step()
+    public int frame = 0; // For the next frame to simulate
+    private int sentFrame; // For the next frame whose actions are sent
+    private int hashToSend = -1;
+    private long hashValue;
+    public boolean desynced = false; // For a state hash that did not match the other side
+    public int desyncFrame = -1;
+    public int stalls = 0; // For the number of calls to step() that had to wait for the other side
+    public boolean disconnected = false;
+
+    /**
+     * Creates a session on a connected channel.
+     *
+     * @param channel the connection to the other player
+     * @param player  the player of this side
+     * @param seed    the seed shared by both sides
+     * @throws IOException if the channel cannot be configured
+     */
+    private LockstepSession(SocketChannel channel, int player, long seed) throws IOException {
+        this.channel = channel;
+        this.player = player;
+        this.seed = seed;
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+        writeBuffer.flip();
+        // Nobody can act during the first frames, so their actions are known to be empty
+        for(int f = 0; f < INPUT_DELAY; f++){
+            localActions[f] = new byte[0];
+            remoteActions[f] = new byte[0];
+            remoteFrame[f] = f;
+        }
+        for(int i = 0; i < WINDOW; i++){
+            localHashFrame[i] = -1;
+            remoteHashFrame[i] = -1;
+            if(i >= INPUT_DELAY){
+                remoteFrame[i] = -1;
+            }
+        }
+        sentFrame = INPUT_DELAY;
+    }
+
+    /**
+     * Waits for the other player to connect and sends them the seed.
+     *
+     * @param server the server channel to accept the connection on
+     * @param seed   the seed of the game
+     * @return the session of the host, playing as player 0
+     * @throws IOException if the connection fails
+     */
+    public static LockstepSession host(ServerSocketChannel server, long seed) throws IOException {
+        SocketChannel channel = server.accept();
+        ByteBuffer hello = ByteBuffer.allocate(8);
+        hello.putLong(seed);
+        hello.flip();
+        while(hello.hasRemaining()){
+            channel.write(hello);
+        }
+        return new LockstepSession(channel, 0, seed);
+    }
+
+    /**
+     * Connects to a host and receives the seed of the game.
+     *
+     * @param address the address of the host
+     * @return the session of the guest, playing as player 1
+     * @throws IOException if the connection fails
+     */
+    public static LockstepSession join(SocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        ByteBuffer hello = ByteBuffer.allocate(8);
+        while(hello.hasRemaining()){
+            if(channel.read(hello) < 0){
+                throw new IOException("Connection closed before the game started");
+            }
+        }
+        hello.flip();
+        return new LockstepSession(channel, 1, hello.getLong());
+    }
+
+    /**
+     * Creates a session from the command line arguments.
+     *
+     * <p>{@code --host=PORT} waits for a player on the given port and {@code --join=HOST:PORT}
+     * connects to a waiting host. The host picks the seed, which can be given with {@code --seed=N}.
+     *
+     * @param args the command line arguments
+     * @return the connected session, or {@code null} if neither argument is given
+     * @throws IOException if the connection fails
+     */
+    public static LockstepSession fromArgs(String[] args) throws IOException {
+        long seed = new Random().nextLong();
+        for(String arg: args){
+            if(arg.startsWith("--seed=")){
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            }
+        }
+        for(String arg: args){
+            if(arg.startsWith("--host=")){
+                int port = Integer.parseInt(arg.substring("--host=".length()));
+                try (ServerSocketChannel server = ServerSocketChannel.open()){
+                    server.bind(new InetSocketAddress(port));
+                    System.out.println("Waiting for the other player on port " + port);
+                    return host(server, seed);
+                }
+            } else if(arg.startsWith("--join=")){
+                String address = arg.substring("--join=".length());
+                int colon = address.lastIndexOf(':');
+                return join(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Prepares a game to be played in this session.
+     *
+     * <p>This must be called before the level is reset for the first time.
+     *
+     * @param app the game of this side
+     */
+    public void attach(App app){
+        app.lockstep = this;
+        app.clock = new VirtualClock();
+        app.seed = seed;
+        app.random = new Random(seed);
+        app.rewindBuffer = null;
+    }
+
+    /**
+     * Adds an action of the local player to the current frame.
+     *
+     * @param op the action, one of the {@code INK_} or {@code INPUT_} constants of {@link App}
+     * @param x  the x-coordinate of the action
+     * @param y  the y-coordinate of the action
+     */
+    public void addInput(int op, int x, int y){
+        if(pendingCount >= MAX_ACTIONS){
+            return;
+        }
+        if(pending.remaining() < ACTION_SIZE){
+            ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        pending.put((byte) op);
+        pending.putShort((short) x);
+        pending.putShort((short) y);
+        pendingCount++;
+    }
+
+    /**
+     * Exchanges actions with the other side and simulates the frames that are ready.
+     *
+     * <p>This never blocks. The actions made since the last call are sent for the frame
+     * {@link #INPUT_DELAY} frames ahead. If the game has fallen behind the other side, up to
+     * {@link #maxCatchUp} frames are simulated at once.
+     *
+     * @param app the game of this side
+     * @return the number of frames simulated
+     */
+    public int step(App app){
+        if(disconnected){
+            return 0;
+        }
+        try {
+            flush();
+            receive();
+        } catch (IOException e){
+            disconnected = true;
+            return 0;
+        }
+
+        int simulated = 0;
+        while(simulated < maxCatchUp && remoteFrame[frame % WINDOW] == frame){
+            // Send the actions of this frame before simulating, so the other side is never kept waiting
+            if(sentFrame <= frame + INPUT_DELAY){
+                sendActions();
+            }
+            applyActions(app, 0, frame);
+            applyActions(app, 1, frame);
+            app.update();
+            if(frame % HASH_INTERVAL == 0){
+                long hash = stateHash(app);
+                localHashes[frame % WINDOW] = hash;
+                localHashFrame[frame % WINDOW] = frame;
+                hashToSend = frame;
+                hashValue = hash;
+                checkHash(frame);
+            }
+            remoteFrame[frame % WINDOW] = -1;
+            frame++;
+            simulated++;
+        }
+        if(simulated == 0){
+            stalls++;
+            // Still send the actions of the first frames so that the other side can start
+            if(sentFrame <= frame + INPUT_DELAY){
+                sendActions();
+            }
+        }
+        try {
+            flush();
+        } catch (IOException e){
+            disconnected = true;
+        }
+        return simulated;
+    }
+
+    /**
+     * Applies the actions of one player for a frame to the game.
+     *
+     * @param app    the game of this side
+     * @param who    the player whose actions are applied
+     * @param target the frame being simulated
+     */
+    private void applyActions(App app, int who, int target){
+        byte[] actions = who == player ? localActions[target % WINDOW] : remoteActions[target % WINDOW];
+        if(actions == null){
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(actions);
+        while(buffer.remaining() >= ACTION_SIZE){
+            int op = buffer.get();
+            int x = buffer.getShort();
+            int y = buffer.getShort();
+            app.applyInput(who, op, x, y);
+        }
+    }
+
+    /**
+     * Queues the actions of the current frame, with the latest hash if there is one, for sending.
+     */
+    private void sendActions(){
+        byte[] actions = new byte[pendingCount * ACTION_SIZE];
+        pending.flip();
+        pending.get(actions);
+        pending.clear();
+        pendingCount = 0;
+        localActions[sentFrame % WINDOW] = actions;
+
+        writeBuffer.compact();
+        if(writeBuffer.remaining() < HEADER_SIZE + actions.length){
+            // The other side has stopped reading, drop the connection rather than block
+            writeBuffer.flip();
+            disconnected = true;
+            return;
+        }
+        writeBuffer.putInt(sentFrame);
+        writeBuffer.putInt(hashToSend);
+        writeBuffer.putLong(hashValue);
+        writeBuffer.putShort((short) (actions.length / ACTION_SIZE));
+        writeBuffer.put(actions);
+        writeBuffer.flip();
+        hashToSend = -1;
+        sentFrame++;
+    }
+
+    /**
+     * Writes as much of the queued messages as the connection accepts without blocking.
+     *
+     * @throws IOException if the connection fails
+     */
+    private void flush() throws IOException {
+        if(writeBuffer.hasRemaining()){
+            channel.write(writeBuffer);
+        }
+    }
+
+    /**
+     * Reads the messages that have arrived and stores the actions they carry.
+     *
+     * @throws IOException if the connection fails or is closed
+     */
+    private void receive() throws IOException {
+        if(channel.read(readBuffer) < 0){
+            throw new IOException("Connection closed by the other player");
+        }
+        readBuffer.flip();
+        while(readBuffer.remaining() >= HEADER_SIZE){
+            int start = readBuffer.position();
+            int messageFrame = readBuffer.getInt();
+            int hashFrame = readBuffer.getInt();
+            long hash = readBuffer.getLong();
+            int count = readBuffer.getShort() & 0xFFFF;
+            if(readBuffer.remaining() < count * ACTION_SIZE){
+                readBuffer.position(start);
+                break;
+            }
+            byte[] actions = new byte[count * ACTION_SIZE];
+            readBuffer.get(actions);
+            remoteActions[messageFrame % WINDOW] = actions;
+            remoteFrame[messageFrame % WINDOW] = messageFrame;
+            if(hashFrame >= 0){
+                remoteHashes[hashFrame % WINDOW] = hash;
+                remoteHashFrame[hashFrame % WINDOW] = hashFrame;
+                checkHash(hashFrame);
+            }
+        }
+        readBuffer.compact();
+    }
+
+    /**
+     * Compares the state hashes of both sides for a frame once both are known.
+     *
+     * @param hashFrame the frame the hashes were taken after
+     */
+    private void checkHash(int hashFrame){
+        int slot = hashFrame % WINDOW;
+        if(localHashFrame[slot] == hashFrame && remoteHashFrame[slot] == hashFrame
+            && localHashes[slot] != remoteHashes[slot] && !desynced){
+            desynced = true;
+            desyncFrame = hashFrame;
+            System.err.println("Game out of step with the other player at frame " + hashFrame);
+        }
+    }
+
+    /**
+     * Closes the connection.
+     */
+    public void close(){
+        try {
+            channel.close();
+        } catch (IOException e){
+            e.printStackTrace();
+        }
+        disconnected = true;
+    }
+
+    /**
+     * Computes a hash of the state that both sides of a game must agree on.
+     *
+     * @param app the game to hash
+     * @return the hash of the balls, walls, lines, score and timers
+     */
+    public static long stateHash(App app){
+        long h = 0xcbf29ce484222325L;
+        for(Ball b: app.balls){
+            h = mix(h, Float.floatToIntBits(b.getXF()));
+            h = mix(h, Float.floatToIntBits(b.getYF()));
+            h = mix(h, Float.floatToIntBits(b.getVX()));
+            h = mix(h, Float.floatToIntBits(b.getVY()));
+            h = mix(h, b.getColor());
+            h = mix(h, b.IsAbsorbed() ? 1 : 0);
+        }
+        for(Wall w: app.walls){
+            h = mix(h, w.getX() * 31 + w.getY());
+            h = mix(h, w.getNumHits());
+        }
+        for(InkStroke line: app.lines){
+            h = mix(h, line.size());
+        }
+        h = mix(h, app.ballsOnBoard.size());
+        h = mix(h, app.ballQueue.size());
+        h = mix(h, app.levelScore);
+        h = mix(h, app.totalScore);
+        h = mix(h, app.currentLevel);
+        h = mix(h, app.starttime);
+        h = mix(h, app.lastSpawnTime);
+        return h;
+    }
+
+    /**
+     * Mixes a value into a hash with the FNV-1a scheme.
+     *
+     * @param h     the hash so far
+     * @param value the value to mix in
+     * @return the new hash
+     */
+    private static long mix(long h, int value){
+        for(int i = 0; i < 4; i++){
+            h ^= (value >>> (8 * i)) & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
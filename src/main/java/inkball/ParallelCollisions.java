@@ -0,0 +1,409 @@
+package inkball;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the collisions of the balls of a large board across the cores of the machine.
+ * <p>
+ * The {@code ParallelCollisions} class runs the line, wall and hole phases of {@link App#update()}
+ * on a {@link ForkJoinPool}, with the balls on the board divided into slices. During a phase each
+ * ball only changes itself. Everything shared is held back in the buffers of the slice: the line a
+ * ball hit, the walls it hit and the hole it fell into. After the phase the buffers are merged on the
+ * calling thread in the order in which the sequential loops would have made the same changes, so
+ * the game ends up exactly as if the phase had run on one core.
+ *
+ * <p>The lines are the only shared state a ball can change for the balls after it, by removing the
+ * line it bounced off. The first line each ball touches is found in parallel, and when merging in
+ * the order of the balls, a ball whose line has already been removed by an earlier ball looks on
+ * through the remaining lines.
+ */
+public class ParallelCollisions {
+
+    public int threshold = 256; // For the fewest balls on the board for which the phases are split
+    public int grain = 64; // For the fewest balls in one slice
+
+    private final ForkJoinPool pool;
+
+    // Buffers of the phases, reused from frame to frame
+    private Ball[] order = new Ball[0]; // For the balls of the phase, in the order of the sequential loop
+    private int[] orderIndex = new int[0]; // For the index of each ball in the list the sequential loop goes through
+    private int count = 0;
+    private InkStroke[] lines = new InkStroke[0];
+    private int lineCount = 0;
+    private boolean moved = false; // For skipping the move of the balls done by a kernel
+    private boolean[] removed = new boolean[0];
+    private int[] lineHit = new int[0]; // For the index of the first line each ball touches, or -1
+    private int[] segmentHit = new int[0]; // For the part of that line the ball touches
+    private Wall[] walls = new Wall[0];
+    private int wallCount = 0;
+    private Hole[] holes = new Hole[0];
+    private int holeCount = 0;
+    private Slice[] slices = new Slice[0];
+    private int sliceCount = 0;
+    private long[] keys = new long[16];
+    private GameObject[] merged = new GameObject[16];
+    private int[] mergedResult = new int[16];
+
+    private static final int LINES = 0;
+    private static final int WALLS = 1;
+    private static final int HOLES = 2;
+    private static final int INDEX_BITS = 21; // For the bits of each part of a merge key
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    /**
+     * Represents a run of balls handled by one task, with the changes to shared state it holds back.
+     */
+    private class Slice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        int phase;
+        int from;
+        int to;
+        App app;
+        final List<GameObject> targets = new ArrayList<GameObject>(); // For the walls hit or the balls fallen into a hole
+        int[] ball = new int[16]; // For the position in the order of the ball behind each target
+        int[] source = new int[16]; // For the index of the wall or hole the ball collided with
+        int[] result = new int[16]; // For the outcome of a fall into a hole
+
+        @Override
+        protected void compute(){
+            targets.clear();
+            for(int i = from; i < to; i++){
+                if(phase == LINES){
+                    findLine(i);
+                } else if(phase == WALLS){
+                    hitWalls(i, app, this);
+                } else {
+                    fallIntoHoles(i, this);
+                }
+            }
+        }
+
+        /**
+         * Notes the ball and the wall or hole behind the targets added since a given position.
+         */
+        void mark(int first, int ballIndex, int sourceIndex, int outcome){
+            int n = targets.size();
+            if(n > ball.length){
+                int size = Math.max(n, ball.length * 2);
+                ball = Arrays.copyOf(ball, size);
+                source = Arrays.copyOf(source, size);
+                result = Arrays.copyOf(result, size);
+            }
+            for(int k = first; k < n; k++){
+                ball[k] = ballIndex;
+                source[k] = sourceIndex;
+                result[k] = outcome;
+            }
+        }
+    }
+
+    /**
+     * Creates a phase splitter running on the common pool of the JVM.
+     */
+    public ParallelCollisions(){
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a phase splitter running on a pool of its own.
+     *
+     * @param threads the number of threads of the pool
+     */
+    public ParallelCollisions(int threads){
+        this(new ForkJoinPool(Math.max(1, threads)));
+    }
+
+    /**
+     * Creates a phase splitter running on the given pool.
+     *
+     * @param pool the pool running the slices
+     */
+    public ParallelCollisions(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    /**
+     * Checks if a board has enough balls for splitting the phases to pay off.
+     *
+     * @param balls the number of balls on the board
+     * @return {@code true} if the phases should be split
+     */
+    public boolean worthSplitting(int balls){
+        return balls >= threshold && pool.getParallelism() > 1;
+    }
+
+    /**
+     * Moves the balls on the board and bounces each off the first line it touches, removing that line.
+     *
+     * @param app the game
+     * @param moved {@code true} if the balls have already been moved by a {@link BallKernel}
+     */
+    public void collideLines(App app, boolean moved){
+        setOrder(app.ballsOnBoard);
+        int lineCount = app.lines.size();
+        if(lines.length < lineCount){
+            lines = new InkStroke[lineCount * 2];
+            removed = new boolean[lineCount * 2];
+        }
+        app.lines.toArray(lines);
+        Arrays.fill(removed, 0, lineCount, false);
+        this.lineCount = lineCount;
+        this.moved = moved;
+        runSlices(LINES, app);
+
+        // Bounce the balls off their lines in order, as a line is gone for the balls after the one that removed it
+        for(int i = 0; i < count; i++){
+            int l = lineHit[i];
+            if(l < 0){
+                continue;
+            }
+            int segment = segmentHit[i];
+            if(removed[l]){
+                segment = -1;
+                for(l = l + 1; l < lineCount && segment < 0; l++){
+                    if(!removed[l]){
+                        segment = order[i].findLineContact(lines[l]);
+                    }
+                }
+                if(segment < 0){
+                    continue;
+                }
+                l--;
+            }
+            order[i].bounceOffLine(lines[l], segment);
+            app.lines.remove(lines[l]);
+            removed[l] = true;
+        }
+        Arrays.fill(lines, 0, lineCount, null);
+    }
+
+    /**
+     * Moves a ball and finds the first line it touches.
+     *
+     * @param i the position of the ball in the order
+     */
+    private void findLine(int i){
+        Ball b = order[i];
+        if(!moved){
+            b.updatePos();
+        }
+        b.beingAbsorbed = false;
+        b.lineCollided = false;
+        b.wallCollided = false;
+        lineHit[i] = -1;
+        for(int l = 0; l < lineCount; l++){
+            int segment = b.findLineContact(lines[l]);
+            if(segment >= 0){
+                lineHit[i] = l;
+                segmentHit[i] = segment;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Bounces the balls on the board off the walls and records the hits on the walls in the order of the walls.
+     *
+     * @param app the game
+     */
+    public void collideWalls(App app){
+        setOrder(app.ballsOnBoard);
+        int wallCount = app.walls.size();
+        if(walls.length < wallCount){
+            walls = new Wall[wallCount * 2];
+        }
+        int w = 0;
+        for(Wall wall: app.walls){
+            walls[w++] = wall;
+        }
+        this.wallCount = wallCount;
+        runSlices(WALLS, app);
+
+        // Record the hits as the loop over the walls, then over the balls, would have
+        int n = gather();
+        for(int k = 0; k < n; k++){
+            ((Wall) merged[(int) (keys[k] & INDEX_MASK)]).hit(app);
+        }
+        Arrays.fill(walls, 0, wallCount, null);
+        Arrays.fill(merged, 0, n, null);
+    }
+
+    /**
+     * Bounces a ball off the first wall it collides with, holding back the hits on the walls.
+     *
+     * @param i the position of the ball in the order
+     * @param app the game
+     * @param slice the slice holding back the hits
+     */
+    private void hitWalls(int i, App app, Slice slice){
+        Ball b = order[i];
+        for(int w = 0; w < wallCount && !b.wallCollided; w++){
+            int before = slice.targets.size();
+            walls[w].checkCollision(b, app, slice.targets);
+            slice.mark(before, i, w, -1);
+        }
+    }
+
+    /**
+     * Lets the holes absorb the balls on the board, taking the absorbed balls off the board in the order of the holes.
+     *
+     * @param app the game
+     */
+    public void collideHoles(App app){
+        // The sequential loop goes through all balls and skips those not on the board
+        count = 0;
+        for(Ball b: app.balls){
+            b.collisionIndex = -1;
+        }
+        for(Ball b: app.ballsOnBoard){
+            b.collisionIndex = 0;
+        }
+        grow(app.balls.size());
+        int index = 0;
+        for(Ball b: app.balls){
+            if(b.collisionIndex == 0){
+                order[count] = b;
+                orderIndex[count++] = index;
+            }
+            index++;
+        }
+        int holeCount = app.holes.size();
+        if(holes.length < holeCount){
+            holes = new Hole[holeCount * 2];
+        }
+        app.holes.toArray(holes);
+        this.holeCount = holeCount;
+        runSlices(HOLES, app);
+
+        // Take the balls off the board as the loop over the holes, then over the balls, would have
+        int n = gather();
+        for(int k = 0; k < n; k++){
+            int j = (int) (keys[k] & INDEX_MASK);
+            Ball b = (Ball) merged[j];
+            holes[(int) (keys[k] >>> (2 * INDEX_BITS))].finishAbsorb(b, mergedResult[j], app);
+        }
+        Arrays.fill(holes, 0, holeCount, null);
+        Arrays.fill(merged, 0, n, null);
+        Arrays.fill(order, 0, count, null);
+    }
+
+    /**
+     * Checks a ball against the holes in order until one absorbs it, holding back taking it off the board.
+     *
+     * @param i the position of the ball in the order
+     * @param slice the slice holding back the absorbed ball
+     */
+    private void fallIntoHoles(int i, Slice slice){
+        Ball b = order[i];
+        for(int h = 0; h < holeCount; h++){
+            int result = holes[h].tryAbsorb(b);
+            if(result >= 0){
+                slice.targets.add(b);
+                slice.mark(slice.targets.size() - 1, i, h, result);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copies the balls of a list into the order of the phase.
+     *
+     * @param balls the balls in the order of the sequential loop
+     */
+    private void setOrder(ArrayList<Ball> balls){
+        count = balls.size();
+        grow(count);
+        balls.toArray(order);
+        for(int i = 0; i < count; i++){
+            orderIndex[i] = i;
+        }
+    }
+
+    /**
+     * Makes the buffers of the balls large enough.
+     *
+     * @param balls the number of balls
+     */
+    private void grow(int balls){
+        if(order.length < balls){
+            int size = balls * 2;
+            order = new Ball[size];
+            orderIndex = new int[size];
+            lineHit = new int[size];
+            segmentHit = new int[size];
+        }
+    }
+
+    /**
+     * Runs a phase over the balls of the order, split into slices.
+     *
+     * @param phase the phase to run
+     * @param app the game
+     */
+    private void runSlices(int phase, App app){
+        int n = Math.max(1, Math.min(pool.getParallelism() * 4, count / Math.max(1, grain)));
+        if(slices.length < n){
+            Slice[] grown = Arrays.copyOf(slices, n);
+            for(int i = slices.length; i < n; i++){
+                grown[i] = new Slice();
+            }
+            slices = grown;
+        }
+        Slice[] tasks = new Slice[n];
+        for(int i = 0; i < n; i++){
+            Slice slice = slices[i];
+            slice.reinitialize();
+            slice.phase = phase;
+            slice.from = (int) ((long) count * i / n);
+            slice.to = (int) ((long) count * (i + 1) / n);
+            slice.app = app;
+            tasks[i] = slice;
+        }
+        pool.invoke(new RecursiveAction(){
+            @Override
+            protected void compute(){
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+        for(int i = 0; i < n; i++){
+            slices[i].app = null;
+        }
+        this.sliceCount = n;
+    }
+
+    /**
+     * Collects the changes held back by the slices and sorts them by the collided wall or hole, then by ball.
+     *
+     * @return the number of changes, whose targets are in {@code merged} at the index in the low bits of their key
+     */
+    private int gather(){
+        int n = 0;
+        for(int s = 0; s < sliceCount; s++){
+            n += slices[s].targets.size();
+        }
+        if(keys.length < n){
+            keys = new long[n * 2];
+            merged = new GameObject[n * 2];
+            mergedResult = new int[n * 2];
+        }
+        int j = 0;
+        for(int s = 0; s < sliceCount; s++){
+            Slice slice = slices[s];
+            for(int k = 0; k < slice.targets.size(); k++){
+                merged[j] = slice.targets.get(k);
+                mergedResult[j] = slice.result[k];
+                keys[j] = ((long) slice.source[k] << (2 * INDEX_BITS)) | ((long) orderIndex[slice.ball[k]] << INDEX_BITS) | j;
+                j++;
+            }
+            slice.targets.clear();
+        }
+        Arrays.sort(keys, 0, n);
+        return n;
+    }
+}
@@ -0,0 +1,85 @@
+package inkball;
+
+/**
+ * Lowers the drawing quality of the game when drawing frames takes longer than the frame budget.
+ * <p>
+ * The {@code QualityGovernor} class averages the time spent drawing the recent frames, leaving out
+ * the time spent simulating them, which drawing less would not change. When the average goes
+ * over the budget of one frame at {@link App#FPS}, it drops a quality level, so that the optional
+ * parts of drawing are left out: first the lines are drawn as plain polylines instead of a circle
+ * per point and the rotating blocks of the score conversion are skipped, then the balls are also
+ * drawn at full size instead of shrinking into the holes. When the average falls well below the
+ * budget, the level is raised again. After every change a full window of frames is measured before
+ * the next one, so the level does not flicker between two values.
+ */
+public class QualityGovernor {
+
+    // Quality levels
+    public static final int LEVEL_MINIMAL = 0;
+    public static final int LEVEL_REDUCED = 1;
+    public static final int LEVEL_FULL = 2;
+    public static final String[] LEVEL_NAMES = {"minimal", "reduced", "full"};
+
+    public static final long FRAME_BUDGET = 1_000_000_000L / App.FPS; // For the nanoseconds one frame may take
+
+    private final long[] window = new long[App.FPS]; // For the times of the recent frames
+    private int count = 0;
+    private int next = 0;
+    private long sum = 0;
+    private volatile int level = LEVEL_FULL;
+
+    /**
+     * Counts the time of a drawn frame and changes the quality level if needed.
+     *
+     * @param frameNanos the time spent drawing the frame in nanoseconds
+     */
+    public void record(long frameNanos){
+        if(count == window.length){
+            sum -= window[next];
+        } else {
+            count++;
+        }
+        window[next] = frameNanos;
+        sum += frameNanos;
+        next = (next + 1) % window.length;
+        if(count < window.length){
+            return;
+        }
+        long average = sum / count;
+        if(average > FRAME_BUDGET && level > LEVEL_MINIMAL){
+            setLevel(level - 1);
+        } else if(average < FRAME_BUDGET / 2 && level < LEVEL_FULL){
+            setLevel(level + 1);
+        }
+    }
+
+    /**
+     * Sets the quality level and starts measuring again.
+     *
+     * @param newLevel the quality level, one of the {@code LEVEL_} constants
+     */
+    public void setLevel(int newLevel){
+        level = Math.max(LEVEL_MINIMAL, Math.min(LEVEL_FULL, newLevel));
+        count = 0;
+        next = 0;
+        sum = 0;
+    }
+
+    /**
+     * Returns the current quality level.
+     *
+     * @return the quality level, one of the {@code LEVEL_} constants
+     */
+    public int getLevel(){
+        return level;
+    }
+
+    /**
+     * Returns the average time of the frames measured since the last change of level.
+     *
+     * @return the average frame time in nanoseconds, or 0 if no frame has been measured
+     */
+    public long averageNanos(){
+        return count == 0 ? 0 : sum / count;
+    }
+}
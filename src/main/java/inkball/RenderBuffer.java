@@ -0,0 +1,50 @@
+package inkball;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the snapshots of the game from the simulation to the drawing of the frames without locking.
+ * <p>
+ * The {@code RenderBuffer} class keeps three {@link RenderSnapshot}s: one being written by the
+ * simulation, one being drawn, and the latest complete one in between. Publishing swaps the
+ * written snapshot with the one in between, and drawing swaps the drawn snapshot with it when a
+ * newer one is there. Neither side ever waits for the other, and a snapshot is never written
+ * while it is drawn.
+ */
+public class RenderBuffer {
+
+    private RenderSnapshot back = new RenderSnapshot(); // For the snapshot owned by the simulation
+    private final AtomicReference<RenderSnapshot> middle = new AtomicReference<RenderSnapshot>(new RenderSnapshot());
+    private RenderSnapshot front = new RenderSnapshot(); // For the snapshot owned by the drawing
+    private boolean started = false; // For whether a snapshot has been drawn yet
+
+    /**
+     * Captures the state of the game and makes it the latest snapshot.
+     *
+     * <p>This must only be called by the thread simulating the game.
+     *
+     * @param app the game to capture
+     */
+    public void publish(App app){
+        back.capture(app);
+        back.fresh = true;
+        back = middle.getAndSet(back);
+    }
+
+    /**
+     * Returns the latest published snapshot for drawing.
+     *
+     * <p>This must only be called by the thread drawing the frames. The returned snapshot stays
+     * unchanged until the next call.
+     *
+     * @return the latest snapshot, or {@code null} if none has been published yet
+     */
+    public RenderSnapshot latest(){
+        if(middle.get().fresh){
+            front = middle.getAndSet(front);
+            front.fresh = false;
+            started = true;
+        }
+        return started ? front : null;
+    }
+}
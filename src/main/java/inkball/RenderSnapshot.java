@@ -0,0 +1,187 @@
+package inkball;
+
+import java.util.*;
+
+/**
+ * Represents everything needed to draw one frame of the game.
+ * <p>
+ * The {@code RenderSnapshot} class copies the visible state of the game into its own arrays: the
+ * tiles, walls, lines and balls on the board, the queued balls and the values shown in the top bar.
+ * Drawing a frame only reads the snapshot, so the game can be simulated on another thread while a
+ * frame is drawn. The arrays are reused from one capture to the next and only grow when needed.
+ * The holes and spawners never change during a level, so the lists of the level are shared.
+ */
+public class RenderSnapshot {
+
+    // Messages shown in the top bar
+    public static final int MESSAGE_NONE = 0;
+    public static final int MESSAGE_ENDED = 1;
+    public static final int MESSAGE_TIME_UP = 2;
+    public static final int MESSAGE_PAUSED = 3;
+
+    volatile boolean fresh = false; // For a snapshot that has been published but not drawn yet
+    public int frameNumber; // For the number of frames simulated when the snapshot was taken
+
+    // Board
+    public boolean[] tiles = new boolean[App.BOARD_HEIGHT * App.BOARD_WIDTH]; // For the cells without an object, row by row
+    public int wallCount;
+    public int[] wallX = new int[0];
+    public int[] wallY = new int[0];
+    public int[] wallColour = new int[0];
+    public boolean[] wallBrick = new boolean[0];
+    public ArrayList<Hole> holes = null;
+    public ArrayList<Spawner> spawners = null;
+
+    // Lines, with the points of line i from lineStart[i] to lineStart[i + 1]
+    public int lineCount;
+    public int[] lineStart = new int[1];
+    public float[] pointX = new float[0];
+    public float[] pointY = new float[0];
+
+    // Balls drawn on the board
+    public int ballCount;
+    public float[] ballX = new float[0];
+    public float[] ballY = new float[0];
+    public float[] ballScale = new float[0];
+    public int[] ballColour = new int[0];
+
+    // Top bar
+    public int queueCount; // For the number of queued balls shown, at most five
+    public int[] queueColour = new int[5];
+    public boolean showCountdown;
+    public float countdown; // For the seconds until the next spawn
+    public int score;
+    public int timeLeft; // For the seconds shown as the remaining time
+    public int level; // For the index of the level shown
+    public int message;
+    public boolean showRotateBlocks;
+    public int[] rotateBlocks = new int[4]; // For the x and y coordinates of the two rotating blocks
+    public int speed = App.SPEED_NORMAL; // For the index of the speed of the game in App.SPEEDS
+    public int player = -1; // For the player of a two-player game, -1 otherwise
+    public boolean desynced;
+    public boolean disconnected;
+
+    /**
+     * Copies the visible state of the game into this snapshot.
+     *
+     * @param app the game to copy
+     */
+    public void capture(App app){
+        int now = app.millis();
+        int level = app.currentLevel;
+        frameNumber = app.tickCount;
+        this.level = level;
+
+        // Board
+        for (int rowNum = 0; rowNum < App.BOARD_HEIGHT; rowNum++){
+            for (int colNum = 0; colNum < App.BOARD_WIDTH; colNum++){
+                tiles[rowNum * App.BOARD_WIDTH + colNum] = app.board[rowNum][colNum].getGameObject() == null;
+            }
+        }
+        wallCount = app.walls.size();
+        if(wallX.length < wallCount){
+            int size = wallCount * 2;
+            wallX = new int[size];
+            wallY = new int[size];
+            wallColour = new int[size];
+            wallBrick = new boolean[size];
+        }
+        for(int i = 0; i < wallCount; i++){
+            Wall w = app.walls.get(i);
+            wallX[i] = w.getX();
+            wallY[i] = w.getY();
+            wallColour[i] = w.getColor();
+            wallBrick[i] = w.isBrick();
+        }
+        holes = app.holes;
+        spawners = app.spawners;
+
+        // Lines
+        lineCount = app.lines.size();
+        if(lineStart.length < lineCount + 1){
+            lineStart = new int[lineCount * 2 + 1];
+        }
+        int points = 0;
+        for(int i = 0; i < lineCount; i++){
+            lineStart[i] = points;
+            InkStroke line = app.lines.get(i);
+            if(pointX.length < points + line.size()){
+                pointX = Arrays.copyOf(pointX, (points + line.size()) * 2);
+                pointY = Arrays.copyOf(pointY, (points + line.size()) * 2);
+            }
+            for(int k = 0; k < line.size(); k++){
+                pointX[points] = line.getX(k);
+                pointY[points] = line.getY(k);
+                points++;
+            }
+        }
+        lineStart[lineCount] = points;
+
+        // Balls inside the board that have not been absorbed
+        ballCount = 0;
+        if(ballX.length < app.balls.size()){
+            int size = app.balls.size() * 2;
+            ballX = new float[size];
+            ballY = new float[size];
+            ballScale = new float[size];
+            ballColour = new int[size];
+        }
+        for(Ball ball: app.balls){
+            if(ball.getX() >= 0 && ball.getX() + App.BALLSIZE < App.WIDTH && ball.getY() >= App.TOPBAR
+                && ball.getY() + App.BALLSIZE <= App.HEIGHT && !ball.IsAbsorbed()){
+                ballX[ballCount] = ball.getXF();
+                ballY[ballCount] = ball.getYF();
+                ballScale[ballCount] = ball.displayProp;
+                ballColour[ballCount] = ball.getColor();
+                ballCount++;
+            }
+        }
+
+        // Queue and countdown to the next spawn
+        queueCount = 0;
+        for(Ball ball: app.ballQueue){
+            if(queueCount > 4){
+                break;
+            }
+            queueColour[queueCount++] = ball.getColor();
+        }
+        showCountdown = !app.ballQueue.isEmpty();
+        if(app.paused){
+            countdown = ((float)(app.config.getLevel(level).getSpawnInterval() * 1000 - app.pausedTime + app.lastSpawnTime)) / 1000f;
+        } else {
+            countdown = ((float)(app.config.getLevel(level).getSpawnInterval() * 1000 - now + app.lastSpawnTime)) / 1000f;
+        }
+
+        // Score, time and messages
+        score = app.totalScore + app.levelScore;
+        int limit = app.config.getLevel(level).getTime();
+        if(!app.paused){
+            timeLeft = limit <= (now - app.starttime)/1000 ? 0 : limit - (now - app.starttime)/1000;
+        } else if(app.levelUp){
+            timeLeft = app.remainingTime/1000;
+        } else {
+            timeLeft = limit <= (app.pausedTime - app.starttime)/1000 ? 0 : limit - (app.pausedTime - app.starttime)/1000;
+        }
+        if(app.gameWin){
+            message = MESSAGE_ENDED;
+        } else if(app.gameOver && (!app.levelUp) && (limit <= (now - app.starttime)/1000)){
+            message = MESSAGE_TIME_UP;
+        } else if(app.paused && (!app.levelUp)){
+            message = MESSAGE_PAUSED;
+        } else {
+            message = MESSAGE_NONE;
+        }
+        showRotateBlocks = app.levelUp && app.remainingTime >= 0;
+        for(int i = 0; i < 2 && i < app.rotateBlock.size(); i++){
+            rotateBlocks[2 * i] = app.rotateBlock.get(i).getX();
+            rotateBlocks[2 * i + 1] = app.rotateBlock.get(i).getY();
+        }
+
+        speed = app.speed;
+
+        LockstepSession lockstep = app.lockstep;
+        player = lockstep == null ? -1 : lockstep.player;
+        desynced = lockstep != null && lockstep.desynced;
+        disconnected = lockstep != null && lockstep.disconnected;
+    }
+}
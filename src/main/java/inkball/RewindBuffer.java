@@ -0,0 +1,308 @@
+package inkball;
+
+import java.util.*;
+
+/**
+ * Keeps the recent states of the current level so that the game can be rewound.
+ * <p>
+ * The {@code RewindBuffer} class takes a snapshot of the game every few frames into a fixed ring of
+ * slots. Each slot holds preallocated primitive arrays for the balls, the hits of the walls, the
+ * order of the ball queue and the lines, so taking a snapshot allocates nothing once the slots have
+ * been sized for the level. The board, the walls, the holes and the spawners are shared with the
+ * game: only which bricks are still standing and how often they were hit are stored. Lines are
+ * stored as references together with their length, because the points of a line are only ever
+ * appended while it is drawn. Timers are stored relative to the time of the snapshot, so a restored
+ * level continues with the time it had left back then.
+ *
+ * <p>The buffer only covers the current level and is cleared whenever a new level starts.
+ */
+public class RewindBuffer {
+
+    /**
+     * Represents one saved state of the game.
+     */
+    private static class Snapshot {
+        int frame; // For the frame counter of the buffer when the snapshot was taken
+        float[] ballFloats = new float[0];
+        int[] ballInts = new int[0];
+        int[] queue = new int[0]; // For the indices of the queued balls in queue order
+        int queueSize;
+        int[] onBoard = new int[0]; // For the indices of the balls on the board in their order
+        int onBoardSize;
+        int[] wallHits = new int[0]; // For the hits of each wall of the level, -1 once a brick is broken
+        InkStroke[] lines = new InkStroke[16];
+        int[] lineSizes = new int[16];
+        int lineCount;
+        int starttime; // For the timers relative to the time of the snapshot
+        int lastSpawnTime;
+        int pausedTime;
+        int totalScore;
+        int levelScore;
+        int remainingTime;
+        int numFrameForConversion;
+        int remainFrameForConversion;
+        int[] rotateBlock = new int[4];
+        boolean gameOver;
+        boolean gameWin;
+        boolean paused;
+        boolean levelUp;
+    }
+
+    private final Snapshot[] slots;
+    private final int interval;
+    private int head = -1; // For the slot of the newest snapshot
+    private int count = 0;
+    private int frame = 0; // For the frames played on the current level, moved back on a rewind
+
+    // The level the snapshots belong to
+    private ArrayList<Ball> trackedBalls = null;
+    private Wall[] levelWalls = new Wall[0];
+    private IdentityHashMap<Ball, Integer> ballIndex = new IdentityHashMap<Ball, Integer>();
+    private IdentityHashMap<Wall, Integer> wallIndex = new IdentityHashMap<Wall, Integer>();
+
+    /**
+     * Creates a rewind buffer.
+     *
+     * @param frames   the number of frames that can be rewound
+     * @param interval the number of frames between snapshots
+     */
+    public RewindBuffer(int frames, int interval){
+        this.interval = Math.max(1, interval);
+        this.slots = new Snapshot[Math.max(1, frames / this.interval) + 1];
+        for(int i = 0; i < slots.length; i++){
+            slots[i] = new Snapshot();
+        }
+    }
+
+    /**
+     * Counts a played frame and takes a snapshot if one is due.
+     *
+     * <p>This should be called at the end of every frame in which the balls moved.
+     *
+     * @param app the game to save
+     */
+    public void record(App app){
+        if(app.balls != trackedBalls){
+            track(app);
+        }
+        if(frame % interval == 0){
+            head = (head + 1) % slots.length;
+            count = Math.min(count + 1, slots.length);
+            save(app, slots[head]);
+        }
+        frame++;
+    }
+
+    /**
+     * Checks whether there is an earlier state to go back to.
+     *
+     * @param app the game to rewind
+     * @return {@code true} if {@link #rewind} would restore a state
+     */
+    public boolean canRewind(App app){
+        return app.balls == trackedBalls && count > 0;
+    }
+
+    /**
+     * Restores the newest snapshot that is at least the given number of frames old.
+     *
+     * <p>If there is no snapshot that old, the oldest one is restored. The snapshots newer than the
+     * restored one are dropped, so rewinding again goes further back.
+     *
+     * @param app    the game to rewind
+     * @param frames the number of frames to go back
+     * @return {@code true} if a snapshot was restored
+     */
+    public boolean rewind(App app, int frames){
+        if(!canRewind(app)){
+            return false;
+        }
+        int target = frame - frames;
+        // Walk back from the newest snapshot, keeping at least the oldest one
+        while(count > 1 && slots[head].frame > target){
+            head = (head - 1 + slots.length) % slots.length;
+            count--;
+        }
+        Snapshot snapshot = slots[head];
+        restore(app, snapshot);
+        frame = snapshot.frame;
+        // The restored snapshot is taken again on the next frame
+        head = (head - 1 + slots.length) % slots.length;
+        count--;
+        return true;
+    }
+
+    /**
+     * Returns the number of seconds that can currently be rewound.
+     *
+     * @return the age of the oldest snapshot in seconds
+     */
+    public float secondsAvailable(){
+        if(count == 0){
+            return 0;
+        }
+        int oldest = (head - count + 1 + slots.length) % slots.length;
+        return (frame - slots[oldest].frame) / (float) App.FPS;
+    }
+
+    /**
+     * Starts tracking a new level, dropping the snapshots of the previous one.
+     *
+     * @param app the game whose level has started
+     */
+    private void track(App app){
+        trackedBalls = app.balls;
+        head = -1;
+        count = 0;
+        frame = 0;
+        ballIndex.clear();
+        for(int i = 0; i < app.balls.size(); i++){
+            ballIndex.put(app.balls.get(i), i);
+        }
+        levelWalls = app.walls.toArray(new Wall[0]);
+        wallIndex.clear();
+        for(int i = 0; i < levelWalls.length; i++){
+            wallIndex.put(levelWalls[i], i);
+        }
+
+        // Size the slots for this level so that saving never allocates
+        int balls = app.balls.size();
+        for(Snapshot slot: slots){
+            if(slot.queue.length < balls){
+                slot.ballFloats = new float[balls * Ball.STATE_FLOATS];
+                slot.ballInts = new int[balls * Ball.STATE_INTS];
+                slot.queue = new int[balls];
+                slot.onBoard = new int[balls];
+            }
+            if(slot.wallHits.length < levelWalls.length){
+                slot.wallHits = new int[levelWalls.length];
+            }
+        }
+    }
+
+    /**
+     * Copies the state of the game into a snapshot.
+     *
+     * @param app      the game to save
+     * @param snapshot the slot to save into
+     */
+    private void save(App app, Snapshot snapshot){
+        snapshot.frame = frame;
+        ArrayList<Ball> balls = app.balls;
+        for(int i = 0; i < balls.size(); i++){
+            balls.get(i).saveState(snapshot.ballFloats, i * Ball.STATE_FLOATS, snapshot.ballInts, i * Ball.STATE_INTS);
+        }
+        snapshot.queueSize = 0;
+        for(Ball b: app.ballQueue){
+            snapshot.queue[snapshot.queueSize++] = ballIndex.get(b);
+        }
+        snapshot.onBoardSize = 0;
+        for(Ball b: app.ballsOnBoard){
+            snapshot.onBoard[snapshot.onBoardSize++] = ballIndex.get(b);
+        }
+
+        // Mark every wall as broken, then record the hits of those still standing
+        Arrays.fill(snapshot.wallHits, 0, levelWalls.length, -1);
+        for(Wall w: app.walls){
+            Integer index = wallIndex.get(w);
+            if(index != null){
+                snapshot.wallHits[index] = w.getNumHits();
+            }
+        }
+
+        if(snapshot.lines.length < app.lines.size()){
+            snapshot.lines = new InkStroke[app.lines.size() * 2];
+            snapshot.lineSizes = new int[app.lines.size() * 2];
+        }
+        snapshot.lineCount = app.lines.size();
+        for(int i = 0; i < snapshot.lineCount; i++){
+            InkStroke line = app.lines.get(i);
+            snapshot.lines[i] = line;
+            snapshot.lineSizes[i] = line.size();
+        }
+        // Release the lines of an earlier use of this slot
+        Arrays.fill(snapshot.lines, snapshot.lineCount, snapshot.lines.length, null);
+
+        int now = app.millis();
+        snapshot.starttime = app.starttime - now;
+        snapshot.lastSpawnTime = app.lastSpawnTime - now;
+        snapshot.pausedTime = app.pausedTime - now;
+        snapshot.totalScore = app.totalScore;
+        snapshot.levelScore = app.levelScore;
+        snapshot.remainingTime = app.remainingTime;
+        snapshot.numFrameForConversion = app.numFrameForConversion;
+        snapshot.remainFrameForConversion = app.remainFrameForConversion;
+        for(int i = 0; i < 2 && i < app.rotateBlock.size(); i++){
+            snapshot.rotateBlock[2 * i] = app.rotateBlock.get(i).getX();
+            snapshot.rotateBlock[2 * i + 1] = app.rotateBlock.get(i).getY();
+        }
+        snapshot.gameOver = app.gameOver;
+        snapshot.gameWin = app.gameWin;
+        snapshot.paused = app.paused;
+        snapshot.levelUp = app.levelUp;
+    }
+
+    /**
+     * Puts the game back into the state of a snapshot.
+     *
+     * @param app      the game to restore
+     * @param snapshot the snapshot to restore
+     */
+    private void restore(App app, Snapshot snapshot){
+        ArrayList<Ball> balls = app.balls;
+        for(int i = 0; i < balls.size(); i++){
+            balls.get(i).restoreState(snapshot.ballFloats, i * Ball.STATE_FLOATS, snapshot.ballInts, i * Ball.STATE_INTS);
+        }
+        app.ballQueue.clear();
+        for(int i = 0; i < snapshot.queueSize; i++){
+            app.ballQueue.add(balls.get(snapshot.queue[i]));
+        }
+        app.ballsOnBoard.clear();
+        for(int i = 0; i < snapshot.onBoardSize; i++){
+            app.ballsOnBoard.add(balls.get(snapshot.onBoard[i]));
+        }
+
+        // Put the broken bricks back on the board, keeping the walls in their original order
+        app.walls.clear();
+        for(int i = 0; i < levelWalls.length; i++){
+            Wall w = levelWalls[i];
+            int xIndex = w.getX() / App.CELLSIZE;
+            int yIndex = (w.getY() - App.TOPBAR) / App.CELLSIZE;
+            if(snapshot.wallHits[i] >= 0){
+                w.setNumHits(snapshot.wallHits[i]);
+                app.walls.add(w);
+                app.board[yIndex][xIndex].setGameObject(w);
+            } else {
+                app.board[yIndex][xIndex].setGameObject(null);
+            }
+        }
+        for(Wall w: app.walls){
+            w.updateNeighbours(app.board);
+        }
+
+        // Lines drawn since the snapshot are dropped and extended lines are cut back
+        app.lines.clear();
+        for(int i = 0; i < snapshot.lineCount; i++){
+            InkStroke line = snapshot.lines[i];
+            line.truncate(snapshot.lineSizes[i]);
+            app.lines.add(line);
+        }
+
+        int now = app.millis();
+        app.starttime = snapshot.starttime + now;
+        app.lastSpawnTime = snapshot.lastSpawnTime + now;
+        app.pausedTime = snapshot.pausedTime + now;
+        app.totalScore = snapshot.totalScore;
+        app.levelScore = snapshot.levelScore;
+        app.remainingTime = snapshot.remainingTime;
+        app.numFrameForConversion = snapshot.numFrameForConversion;
+        app.remainFrameForConversion = snapshot.remainFrameForConversion;
+        for(int i = 0; i < 2 && i < app.rotateBlock.size(); i++){
+            app.rotateBlock.get(i).setPosition(snapshot.rotateBlock[2 * i], snapshot.rotateBlock[2 * i + 1]);
+        }
+        app.gameOver = snapshot.gameOver;
+        app.gameWin = snapshot.gameWin;
+        app.paused = snapshot.paused;
+        app.levelUp = snapshot.levelUp;
+    }
+}
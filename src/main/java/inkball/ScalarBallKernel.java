@@ -0,0 +1,36 @@
+package inkball;
+
+/**
+ * Moves the balls and bounces them off the edges one ball at a time.
+ * <p>
+ * The {@code ScalarBallKernel} class is the plain loop version of the {@link BallKernel}, used when
+ * the Vector API is not available and as the reference the vector kernel is measured against.
+ */
+public class ScalarBallKernel extends BallKernel {
+
+    @Override
+    public String getName(){
+        return SCALAR;
+    }
+
+    @Override
+    public void integrate(float[] xs, float[] ys, float[] vxs, float[] vys, int n){
+        for(int i = 0; i < n; i++){
+            xs[i] += vxs[i];
+            ys[i] += vys[i];
+        }
+    }
+
+    @Override
+    public void reflect(float[] xs, float[] ys, float[] vxs, float[] vys, int n){
+        for(int i = 0; i < n; i++){
+            // A ball past a corner goes back on both axes, which is each axis checked on its own
+            if(xs[i] < 0 || xs[i] + App.BALLSIZE > App.WIDTH){
+                vxs[i] *= -1;
+            }
+            if(ys[i] < App.TOPBAR || ys[i] + App.BALLSIZE > App.HEIGHT){
+                vys[i] *= -1;
+            }
+        }
+    }
+}
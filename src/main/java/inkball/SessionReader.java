@@ -0,0 +1,415 @@
+package inkball;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads a session recorded by {@link SessionRecorder}, one frame at a time.
+ * <p>
+ * The {@code SessionReader} class rebuilds the state of the balls, walls and lines after every
+ * record, and can jump to any frame through the keyframe index at the end of the file. If the
+ * recording was not closed properly, the index is rebuilt by scanning the records.
+ *
+ * <p>The state of the current frame is held in the public attributes. A ball's status is one of
+ * queued (0), on the board (1) or absorbed (2), so captures and wrong holes can be found by
+ * comparing the status of consecutive frames.
+ */
+public class SessionReader implements AutoCloseable {
+
+    // State of the current frame
+    public int tick = 0;
+    public int level = 0;
+    public int score = 0;
+    public boolean moving = false;
+    public int ballCount = 0;
+    public float[] ballX = new float[0];
+    public float[] ballY = new float[0];
+    public float[] ballVX = new float[0];
+    public float[] ballVY = new float[0];
+    public int[] ballColour = new int[0];
+    public int[] ballStatus = new int[0];
+    public int wallCount = 0;
+    public int[] wallCell = new int[0]; // For the index of the cell, row * App.BOARD_WIDTH + column
+    public int[] wallColour = new int[0];
+    public boolean[] wallBrick = new boolean[0];
+    public int[] wallHits = new int[0];
+
+    private int[] qx = new int[0];
+    private int[] qy = new int[0];
+    private int[] qvx = new int[0];
+    private int[] qvy = new int[0];
+    private ArrayList<int[]> lines = new ArrayList<int[]>();
+
+    private FileChannel channel;
+    private ByteBuffer data;
+    private int end;
+    private long[] indexTicks;
+    private long[] indexPositions;
+
+    /**
+     * Opens a recording and reads its keyframe index.
+     *
+     * @param path the recorded file
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public SessionReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if(data.limit() < 5 || data.get(0) != 'I' || data.get(1) != 'N' || data.get(2) != 'K' || data.get(3) != 'R'){
+            throw new IOException("Not an inkball recording: " + path);
+        }
+        if(data.get(4) != SessionRecorder.VERSION){
+            throw new IOException("Unsupported recording version " + data.get(4));
+        }
+        end = data.limit();
+        if(!readIndex()){
+            scanIndex();
+        }
+        data.position(5);
+    }
+
+    /**
+     * Reads the keyframe index written when the recording was closed.
+     *
+     * @return {@code true} if the index was found
+     */
+    private boolean readIndex(){
+        int n = data.limit();
+        if(n < 17 || data.get(n - 4) != 'I' || data.get(n - 3) != 'N' || data.get(n - 2) != 'K' || data.get(n - 1) != 'I'){
+            return false;
+        }
+        long indexPosition = data.getLong(n - 12);
+        data.position((int) indexPosition);
+        if(data.get() != SessionRecorder.TAG_INDEX){
+            return false;
+        }
+        int count = (int) readVarint();
+        indexTicks = new long[count];
+        indexPositions = new long[count];
+        for(int i = 0; i < count; i++){
+            indexTicks[i] = readVarint();
+            indexPositions[i] = readVarint();
+        }
+        end = (int) indexPosition;
+        return true;
+    }
+
+    /**
+     * Rebuilds the keyframe index by reading every record of the file.
+     */
+    private void scanIndex(){
+        ArrayList<long[]> found = new ArrayList<long[]>();
+        data.position(5);
+        int lastComplete = 5;
+        try {
+            while(data.position() < end){
+                int start = data.position();
+                if(data.get(start) == SessionRecorder.TAG_KEYFRAME){
+                    found.add(new long[] {0, start});
+                }
+                if(!next()){
+                    break;
+                }
+                if(!found.isEmpty() && found.get(found.size() - 1)[1] == start){
+                    found.get(found.size() - 1)[0] = tick;
+                }
+                lastComplete = data.position();
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e){
+            // The last record was cut off
+        }
+        end = lastComplete;
+        if(!found.isEmpty() && found.get(found.size() - 1)[1] >= end){
+            found.remove(found.size() - 1);
+        }
+        indexTicks = new long[found.size()];
+        indexPositions = new long[found.size()];
+        for(int i = 0; i < found.size(); i++){
+            indexTicks[i] = found.get(i)[0];
+            indexPositions[i] = found.get(i)[1];
+        }
+    }
+
+    /**
+     * Returns the number of keyframes in the recording.
+     *
+     * @return the number of keyframes
+     */
+    public int keyframeCount(){
+        return indexTicks.length;
+    }
+
+    /**
+     * Moves to the given frame, starting from the last keyframe before it.
+     *
+     * @param target the frame to move to
+     * @return {@code false} if the recording has no frame at or before the target
+     */
+    public boolean seek(int target){
+        int i = Arrays.binarySearch(indexTicks, target);
+        if(i < 0){
+            i = -i - 2;
+        }
+        if(i < 0){
+            return false;
+        }
+        data.position((int) indexPositions[i]);
+        next();
+        while(peekTick() <= target){
+            next();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the frame of the next record without reading it.
+     *
+     * @return the frame of the next record, or {@code Integer.MAX_VALUE} at the end of the recording
+     */
+    private int peekTick(){
+        if(data.position() >= end){
+            return Integer.MAX_VALUE;
+        }
+        int start = data.position();
+        int tag = data.get();
+        long next = Integer.MAX_VALUE;
+        if(tag == SessionRecorder.TAG_KEYFRAME){
+            next = readVarint();
+        } else if(tag == SessionRecorder.TAG_TICK){
+            next = tick + readVarint();
+        }
+        data.position(start);
+        return (int) next;
+    }
+
+    /**
+     * Reads the next record and applies it to the current state.
+     *
+     * @return {@code false} at the end of the recording
+     */
+    public boolean next(){
+        if(data.position() >= end){
+            return false;
+        }
+        int tag = data.get();
+        if(tag == SessionRecorder.TAG_KEYFRAME){
+            readKeyframe();
+        } else if(tag == SessionRecorder.TAG_TICK){
+            readFrame();
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the full state of a keyframe.
+     */
+    private void readKeyframe(){
+        tick = (int) readVarint();
+        level = (int) readVarint();
+        score = (int) readZigZag();
+        moving = false;
+        ballCount = (int) readVarint();
+        qx = new int[ballCount];
+        qy = new int[ballCount];
+        qvx = new int[ballCount];
+        qvy = new int[ballCount];
+        ballColour = new int[ballCount];
+        ballStatus = new int[ballCount];
+        for(int i = 0; i < ballCount; i++){
+            ballStatus[i] = data.get();
+            ballColour[i] = data.get();
+            qx[i] = (int) readZigZag();
+            qy[i] = (int) readZigZag();
+            qvx[i] = (int) readZigZag();
+            qvy[i] = (int) readZigZag();
+        }
+        wallCount = (int) readVarint();
+        wallCell = new int[wallCount];
+        wallColour = new int[wallCount];
+        wallBrick = new boolean[wallCount];
+        wallHits = new int[wallCount];
+        for(int i = 0; i < wallCount; i++){
+            wallCell[i] = (int) readVarint();
+            int flags = data.get();
+            wallBrick[i] = (flags & 8) != 0;
+            wallColour[i] = flags & 7;
+            wallHits[i] = (int) readVarint();
+        }
+        lines.clear();
+        int lineCount = (int) readVarint();
+        for(int i = 0; i < lineCount; i++){
+            lines.add(readPoints(new int[0]));
+        }
+        data.get();
+        updateFloats();
+    }
+
+    /**
+     * Reads the changes of a frame.
+     */
+    private void readFrame(){
+        tick += (int) readVarint();
+        moving = data.get() != 0;
+        // Move the balls on the board by their velocity
+        if(moving){
+            for(int i = 0; i < ballCount; i++){
+                if(ballStatus[i] == SessionRecorder.ON_BOARD){
+                    qx[i] += SessionRecorder.predictedStep(qvx[i]);
+                    qy[i] += SessionRecorder.predictedStep(qvy[i]);
+                }
+            }
+        }
+        while(true){
+            int section = data.get();
+            if(section == SessionRecorder.TAG_END){
+                break;
+            } else if(section == SessionRecorder.SECTION_BALLS){
+                int count = (int) readVarint();
+                int i = -1;
+                for(int k = 0; k < count; k++){
+                    i += (int) readVarint() + 1;
+                    int flags = data.get();
+                    if((flags & SessionRecorder.BALL_STATUS) != 0){
+                        ballStatus[i] = data.get();
+                    }
+                    if((flags & SessionRecorder.BALL_COLOUR) != 0){
+                        ballColour[i] = data.get();
+                    }
+                    if((flags & SessionRecorder.BALL_ABS) != 0){
+                        qx[i] = (int) readZigZag();
+                        qy[i] = (int) readZigZag();
+                        qvx[i] = (int) readZigZag();
+                        qvy[i] = (int) readZigZag();
+                    }
+                    if((flags & SessionRecorder.BALL_POS) != 0){
+                        qx[i] += (int) readZigZag();
+                        qy[i] += (int) readZigZag();
+                    }
+                    if((flags & SessionRecorder.BALL_VEL) != 0){
+                        qvx[i] += (int) readZigZag();
+                        qvy[i] += (int) readZigZag();
+                    }
+                }
+            } else if(section == SessionRecorder.SECTION_WALLS){
+                int count = (int) readVarint();
+                for(int k = 0; k < count; k++){
+                    int i = (int) readVarint();
+                    wallHits[i] = (int) readVarint();
+                }
+            } else if(section == SessionRecorder.SECTION_INK){
+                int count = (int) readVarint();
+                for(int k = 0; k < count; k++){
+                    int op = data.get();
+                    if(op == SessionRecorder.INK_REMOVE){
+                        lines.remove((int) readVarint());
+                    } else if(op == SessionRecorder.INK_ADD){
+                        lines.add(readPoints(new int[0]));
+                    } else {
+                        int i = (int) readVarint();
+                        lines.set(i, readPoints(lines.get(i)));
+                    }
+                }
+            } else if(section == SessionRecorder.SECTION_SCORE){
+                score += (int) readZigZag();
+            }
+        }
+        updateFloats();
+    }
+
+    /**
+     * Reads points and appends them to a line.
+     *
+     * @param line the fixed point coordinates of the line so far
+     * @return the extended line
+     */
+    private int[] readPoints(int[] line){
+        int n = (int) readVarint();
+        int[] extended = Arrays.copyOf(line, line.length + 2 * n);
+        int px = line.length > 0 ? line[line.length - 2] : 0;
+        int py = line.length > 0 ? line[line.length - 1] : 0;
+        for(int k = 0; k < n; k++){
+            px += (int) readZigZag();
+            py += (int) readZigZag();
+            extended[line.length + 2 * k] = px;
+            extended[line.length + 2 * k + 1] = py;
+        }
+        return extended;
+    }
+
+    /**
+     * Converts the fixed point state of the balls to pixels.
+     */
+    private void updateFloats(){
+        if(ballX.length != ballCount){
+            ballX = new float[ballCount];
+            ballY = new float[ballCount];
+            ballVX = new float[ballCount];
+            ballVY = new float[ballCount];
+        }
+        for(int i = 0; i < ballCount; i++){
+            ballX[i] = qx[i] / SessionRecorder.POS_SCALE;
+            ballY[i] = qy[i] / SessionRecorder.POS_SCALE;
+            ballVX[i] = qvx[i] / SessionRecorder.VEL_SCALE;
+            ballVY[i] = qvy[i] / SessionRecorder.VEL_SCALE;
+        }
+    }
+
+    /**
+     * Returns the number of lines on the board.
+     *
+     * @return the number of lines
+     */
+    public int lineCount(){
+        return lines.size();
+    }
+
+    /**
+     * Returns the points of a line on the board.
+     *
+     * @param i the index of the line
+     * @return the coordinates of the points as x, y pairs in pixels
+     */
+    public float[] line(int i){
+        int[] q = lines.get(i);
+        float[] points = new float[q.length];
+        for(int k = 0; k < q.length; k++){
+            points[k] = q[k] / SessionRecorder.POS_SCALE;
+        }
+        return points;
+    }
+
+    private long readVarint(){
+        long value = 0;
+        int shift = 0;
+        while(true){
+            int b = data.get();
+            value |= (long)(b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private long readZigZag(){
+        long v = readVarint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Closes the recording.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
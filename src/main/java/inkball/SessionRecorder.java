@@ -0,0 +1,583 @@
+package inkball;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Records a game session as a compact stream of per-frame changes.
+ * <p>
+ * The {@code SessionRecorder} class is called at the end of every frame. It writes a keyframe with
+ * the full state of the balls, walls and lines at regular intervals and whenever a level starts,
+ * and in between only the changes of each frame. Positions are stored as the difference from the
+ * position predicted by the previous velocity, so a ball moving in a straight line costs nothing.
+ * All numbers are written as zig-zag varints. Captures, wrong holes and spawns appear as changes of
+ * a ball's status, and brick hits as changes of a wall's hit count.
+ *
+ * <p>The encoded frames are handed to a background thread which writes them through a buffered
+ * {@link FileChannel}, so the game never waits for the disk. When closed, an index of the keyframe
+ * positions is appended so that {@link SessionReader} can seek to any frame.
+ *
+ * <p>File layout: the header {@code "INKR"} and a version byte, followed by keyframe and frame
+ * records, the keyframe index, the position of the index as 8 bytes and {@code "INKI"}.
+ */
+public class SessionRecorder implements AutoCloseable {
+
+    static final int VERSION = 1;
+    static final int TAG_END = 0x00;
+    static final int TAG_KEYFRAME = 0x01;
+    static final int TAG_TICK = 0x02;
+    static final int TAG_INDEX = 0x7F;
+    static final int SECTION_BALLS = 0x10;
+    static final int SECTION_WALLS = 0x20;
+    static final int SECTION_INK = 0x30;
+    static final int SECTION_SCORE = 0x40;
+
+    // Flags of a ball in a frame record
+    static final int BALL_POS = 1;
+    static final int BALL_VEL = 2;
+    static final int BALL_COLOUR = 4;
+    static final int BALL_STATUS = 8;
+    static final int BALL_ABS = 16;
+
+    // Status of a ball
+    static final int QUEUED = 0;
+    static final int ON_BOARD = 1;
+    static final int ABSORBED = 2;
+
+    // Operations on the lines in a frame record
+    static final int INK_REMOVE = 1;
+    static final int INK_ADD = 2;
+    static final int INK_APPEND = 3;
+
+    // Fixed point scales of the positions and velocities
+    static final float POS_SCALE = 16f;
+    static final float VEL_SCALE = 256f;
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    public int keyframeInterval = 10 * App.FPS; // For the number of frames between keyframes
+
+    // State of the last recorded frame
+    private int tick = 0;
+    private int lastTick = 0;
+    private int lastKeyframe = 0;
+    private ArrayList<Ball> trackedBalls = null;
+    private int trackedLevel = -1;
+    private IdentityHashMap<Ball, Integer> ballIndex = new IdentityHashMap<Ball, Integer>();
+    private int[] qx = new int[0];
+    private int[] qy = new int[0];
+    private int[] qvx = new int[0];
+    private int[] qvy = new int[0];
+    private int[] colour = new int[0];
+    private int[] status = new int[0];
+    private int[] nowStatus = new int[0];
+    private Wall[] trackedWalls = new Wall[0];
+    private int[] wallHits = new int[0];
+    private ArrayList<InkStroke> trackedLines = new ArrayList<InkStroke>();
+    private ArrayList<Integer> lineSizes = new ArrayList<Integer>();
+    private int score = 0;
+
+    // Scratch buffers for the sections of a frame
+    private ByteSink balls = new ByteSink(1024);
+    private ByteSink walls = new ByteSink(256);
+    private ByteSink ink = new ByteSink(256);
+
+    // Writing
+    private ByteSink current = new ByteSink(CHUNK_SIZE);
+    private long position = 0; // For the position in the file of the end of the current chunk
+    private ArrayList<long[]> index = new ArrayList<long[]>();
+    private BlockingQueue<ByteSink> pending = new LinkedBlockingQueue<ByteSink>();
+    private BlockingQueue<ByteSink> free = new ArrayBlockingQueue<ByteSink>(8);
+    private final ByteSink endOfStream = new ByteSink(0);
+    private Thread writer;
+    private FileChannel channel;
+    private volatile IOException failure = null;
+    private long recordNanos = 0;
+    private boolean closed = false;
+
+    /**
+     * A growable byte buffer with varint encoding.
+     */
+    static class ByteSink {
+        byte[] data;
+        int length = 0;
+
+        ByteSink(int capacity){
+            data = new byte[capacity];
+        }
+
+        void write(int b){
+            if(length == data.length){
+                data = Arrays.copyOf(data, Math.max(16, data.length * 2));
+            }
+            data[length++] = (byte) b;
+        }
+
+        void writeVarint(long value){
+            while((value & ~0x7FL) != 0){
+                write((int)((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeZigZag(long value){
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void write(ByteSink other){
+            for(int i = 0; i < other.length; i++){
+                write(other.data[i]);
+            }
+        }
+    }
+
+    /**
+     * Opens a new recording, replacing the file if it exists.
+     *
+     * @param path the file to record into
+     * @throws IOException if the file cannot be opened
+     */
+    public SessionRecorder(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        current.write('I');
+        current.write('N');
+        current.write('K');
+        current.write('R');
+        current.write(VERSION);
+        writer = new Thread(this::writeLoop, "inkball-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records the state of the game at the end of a frame.
+     *
+     * @param app    the game being recorded
+     * @param moving {@code true} if the balls moved during this frame
+     */
+    public void record(App app, boolean moving){
+        if(closed){
+            return;
+        }
+        long start = System.nanoTime();
+        tick++;
+        if(app.balls != trackedBalls || app.balls.size() != qx.length || app.currentLevel != trackedLevel
+            || tick - lastKeyframe >= keyframeInterval){
+            writeKeyframe(app);
+        } else {
+            writeFrame(app, moving);
+        }
+        // Hand the chunk to the writer once it is large enough
+        if(current.length >= CHUNK_SIZE / 2){
+            handOff();
+        }
+        recordNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Makes the next recorded frame a keyframe, used when the state of the game jumps, for example
+     * after a rewind.
+     */
+    public void requestKeyframe(){
+        lastKeyframe = tick - keyframeInterval;
+    }
+
+    /**
+     * Writes the full state of the game and adds it to the keyframe index.
+     *
+     * @param app the game being recorded
+     */
+    private void writeKeyframe(App app){
+        index.add(new long[] {tick, position + current.length});
+        lastKeyframe = tick;
+        lastTick = tick;
+        trackedBalls = app.balls;
+        trackedLevel = app.currentLevel;
+        int n = app.balls.size();
+        qx = new int[n];
+        qy = new int[n];
+        qvx = new int[n];
+        qvy = new int[n];
+        colour = new int[n];
+        status = new int[n];
+        nowStatus = new int[n];
+        ballIndex.clear();
+        for(int i = 0; i < n; i++){
+            ballIndex.put(app.balls.get(i), i);
+        }
+        updateStatus(app);
+        score = app.totalScore + app.levelScore;
+
+        current.write(TAG_KEYFRAME);
+        current.writeVarint(tick);
+        current.writeVarint(app.currentLevel);
+        current.writeZigZag(score);
+        current.writeVarint(n);
+        for(int i = 0; i < n; i++){
+            Ball b = app.balls.get(i);
+            status[i] = nowStatus[i];
+            colour[i] = b.getColor();
+            qx[i] = Math.round(b.getXF() * POS_SCALE);
+            qy[i] = Math.round(b.getYF() * POS_SCALE);
+            qvx[i] = Math.round(b.getVX() * VEL_SCALE);
+            qvy[i] = Math.round(b.getVY() * VEL_SCALE);
+            current.write(status[i]);
+            current.write(colour[i]);
+            current.writeZigZag(qx[i]);
+            current.writeZigZag(qy[i]);
+            current.writeZigZag(qvx[i]);
+            current.writeZigZag(qvy[i]);
+        }
+
+        trackedWalls = app.walls.toArray(new Wall[0]);
+        wallHits = new int[trackedWalls.length];
+        current.writeVarint(trackedWalls.length);
+        for(int i = 0; i < trackedWalls.length; i++){
+            Wall w = trackedWalls[i];
+            wallHits[i] = w.getNumHits();
+            current.writeVarint((w.getY() - App.TOPBAR) / App.CELLSIZE * App.BOARD_WIDTH + w.getX() / App.CELLSIZE);
+            current.write((w.isBrick() ? 8 : 0) | w.getColor());
+            current.writeVarint(wallHits[i]);
+        }
+
+        trackedLines = new ArrayList<InkStroke>(app.lines);
+        lineSizes.clear();
+        current.writeVarint(trackedLines.size());
+        for(InkStroke line: trackedLines){
+            lineSizes.add(line.size());
+            writePoints(current, line, 0);
+        }
+        current.write(TAG_END);
+    }
+
+    /**
+     * Writes the changes of the game since the last recorded frame.
+     *
+     * @param app    the game being recorded
+     * @param moving {@code true} if the balls moved during this frame
+     */
+    private void writeFrame(App app, boolean moving){
+        updateStatus(app);
+
+        // Balls, listed by the distance from the previous changed ball
+        balls.length = 0;
+        int changed = 0;
+        int previous = -1;
+        for(int i = 0; i < qx.length; i++){
+            Ball b = trackedBalls.get(i);
+            int flags = 0;
+            int nx = 0;
+            int ny = 0;
+            int nvx = 0;
+            int nvy = 0;
+            if(nowStatus[i] != status[i]){
+                flags |= BALL_STATUS;
+            }
+            if(b.getColor() != colour[i]){
+                flags |= BALL_COLOUR;
+            }
+            if(nowStatus[i] == ON_BOARD){
+                nx = Math.round(b.getXF() * POS_SCALE);
+                ny = Math.round(b.getYF() * POS_SCALE);
+                nvx = Math.round(b.getVX() * VEL_SCALE);
+                nvy = Math.round(b.getVY() * VEL_SCALE);
+                if(status[i] != ON_BOARD){
+                    flags |= BALL_ABS;
+                } else {
+                    if(moving){
+                        qx[i] += predictedStep(qvx[i]);
+                        qy[i] += predictedStep(qvy[i]);
+                    }
+                    if(nx != qx[i] || ny != qy[i]){
+                        flags |= BALL_POS;
+                    }
+                    if(nvx != qvx[i] || nvy != qvy[i]){
+                        flags |= BALL_VEL;
+                    }
+                }
+            }
+            if(flags == 0){
+                continue;
+            }
+            changed++;
+            balls.writeVarint(i - previous - 1);
+            previous = i;
+            balls.write(flags);
+            if((flags & BALL_STATUS) != 0){
+                balls.write(nowStatus[i]);
+                status[i] = nowStatus[i];
+            }
+            if((flags & BALL_COLOUR) != 0){
+                balls.write(b.getColor());
+                colour[i] = b.getColor();
+            }
+            if((flags & BALL_ABS) != 0){
+                balls.writeZigZag(nx);
+                balls.writeZigZag(ny);
+                balls.writeZigZag(nvx);
+                balls.writeZigZag(nvy);
+            }
+            if((flags & BALL_POS) != 0){
+                balls.writeZigZag(nx - qx[i]);
+                balls.writeZigZag(ny - qy[i]);
+            }
+            if((flags & BALL_VEL) != 0){
+                balls.writeZigZag(nvx - qvx[i]);
+                balls.writeZigZag(nvy - qvy[i]);
+            }
+            if(nowStatus[i] == ON_BOARD){
+                qx[i] = nx;
+                qy[i] = ny;
+                qvx[i] = nvx;
+                qvy[i] = nvy;
+            }
+        }
+
+        // Walls whose number of hits changed
+        walls.length = 0;
+        int hitWalls = 0;
+        for(int i = 0; i < trackedWalls.length; i++){
+            int hits = trackedWalls[i].getNumHits();
+            if(hits != wallHits[i]){
+                hitWalls++;
+                walls.writeVarint(i);
+                walls.writeVarint(hits);
+                wallHits[i] = hits;
+            }
+        }
+
+        // Lines removed, added or extended, found by walking both lists in order
+        ink.length = 0;
+        int inkOps = 0;
+        int j = 0;
+        for(int i = 0; i < trackedLines.size(); i++){
+            InkStroke line = trackedLines.get(i);
+            if(j < app.lines.size() && app.lines.get(j) == line){
+                if(line.size() != lineSizes.get(i)){
+                    inkOps++;
+                    ink.write(INK_APPEND);
+                    ink.writeVarint(j);
+                    writePoints(ink, line, lineSizes.get(i));
+                }
+                j++;
+            } else {
+                inkOps++;
+                ink.write(INK_REMOVE);
+                ink.writeVarint(j);
+            }
+        }
+        for(; j < app.lines.size(); j++){
+            inkOps++;
+            ink.write(INK_ADD);
+            writePoints(ink, app.lines.get(j), 0);
+        }
+        if(inkOps > 0){
+            trackedLines = new ArrayList<InkStroke>(app.lines);
+            lineSizes.clear();
+            for(InkStroke line: trackedLines){
+                lineSizes.add(line.size());
+            }
+        }
+
+        int newScore = app.totalScore + app.levelScore;
+
+        current.write(TAG_TICK);
+        current.writeVarint(tick - lastTick);
+        current.write(moving ? 1 : 0);
+        lastTick = tick;
+        if(changed > 0){
+            current.write(SECTION_BALLS);
+            current.writeVarint(changed);
+            current.write(balls);
+        }
+        if(hitWalls > 0){
+            current.write(SECTION_WALLS);
+            current.writeVarint(hitWalls);
+            current.write(walls);
+        }
+        if(inkOps > 0){
+            current.write(SECTION_INK);
+            current.writeVarint(inkOps);
+            current.write(ink);
+        }
+        if(newScore != score){
+            current.write(SECTION_SCORE);
+            current.writeZigZag(newScore - score);
+            score = newScore;
+        }
+        current.write(TAG_END);
+    }
+
+    /**
+     * Returns the fixed point step of a ball predicted from its fixed point velocity.
+     *
+     * @param qv the velocity in {@code VEL_SCALE} units
+     * @return the step in {@code POS_SCALE} units
+     */
+    static int predictedStep(int qv){
+        return Math.round(qv * POS_SCALE / VEL_SCALE);
+    }
+
+    /**
+     * Finds the current status of every tracked ball.
+     *
+     * @param app the game being recorded
+     */
+    private void updateStatus(App app){
+        for(int i = 0; i < nowStatus.length; i++){
+            nowStatus[i] = trackedBalls.get(i).IsAbsorbed() ? ABSORBED : QUEUED;
+        }
+        for(Ball b: app.ballsOnBoard){
+            Integer i = ballIndex.get(b);
+            if(i != null){
+                nowStatus[i] = ON_BOARD;
+            }
+        }
+    }
+
+    /**
+     * Writes the points of a line from the given point on, each as the difference from the previous one.
+     *
+     * @param sink the buffer to write into
+     * @param line the line to write
+     * @param from the index of the first point to write
+     */
+    private static void writePoints(ByteSink sink, InkStroke line, int from){
+        sink.writeVarint(line.size() - from);
+        int px = from > 0 ? Math.round(line.getX(from - 1) * POS_SCALE) : 0;
+        int py = from > 0 ? Math.round(line.getY(from - 1) * POS_SCALE) : 0;
+        for(int k = from; k < line.size(); k++){
+            int x = Math.round(line.getX(k) * POS_SCALE);
+            int y = Math.round(line.getY(k) * POS_SCALE);
+            sink.writeZigZag(x - px);
+            sink.writeZigZag(y - py);
+            px = x;
+            py = y;
+        }
+    }
+
+    /**
+     * Passes the current chunk to the writer thread and starts a new one.
+     */
+    private void handOff(){
+        if(current.length == 0){
+            return;
+        }
+        position += current.length;
+        pending.add(current);
+        ByteSink next = free.poll();
+        if(next == null){
+            next = new ByteSink(CHUNK_SIZE);
+        }
+        next.length = 0;
+        current = next;
+    }
+
+    /**
+     * Writes the chunks handed off by the game until the end of the recording.
+     */
+    private void writeLoop(){
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while(true){
+                ByteSink chunk = pending.take();
+                if(chunk == endOfStream){
+                    break;
+                }
+                int offset = 0;
+                while(offset < chunk.length){
+                    int n = Math.min(buffer.remaining(), chunk.length - offset);
+                    buffer.put(chunk.data, offset, n);
+                    offset += n;
+                    if(!buffer.hasRemaining()){
+                        flush(buffer);
+                    }
+                }
+                free.offer(chunk);
+            }
+            flush(buffer);
+        } catch (IOException e){
+            failure = e;
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the file.
+     *
+     * @param buffer the buffer to empty
+     * @throws IOException if the file cannot be written
+     */
+    private void flush(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the average time spent recording each frame.
+     *
+     * @return the recording time per frame in microseconds
+     */
+    public double microsPerTick(){
+        return tick == 0 ? 0 : recordNanos / 1000.0 / tick;
+    }
+
+    /**
+     * Returns the number of bytes recorded so far.
+     *
+     * @return the size of the recording without the keyframe index
+     */
+    public long bytesRecorded(){
+        return position + current.length;
+    }
+
+    /**
+     * Writes the keyframe index, waits for the writer to finish and closes the file.
+     *
+     * @throws IOException if the recording could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed){
+            return;
+        }
+        closed = true;
+        long indexPosition = position + current.length;
+        current.write(TAG_INDEX);
+        current.writeVarint(index.size());
+        for(long[] entry: index){
+            current.writeVarint(entry[0]);
+            current.writeVarint(entry[1]);
+        }
+        for(int shift = 56; shift >= 0; shift -= 8){
+            current.write((int)(indexPosition >>> shift));
+        }
+        current.write('I');
+        current.write('N');
+        current.write('K');
+        current.write('I');
+        handOff();
+        pending.add(endOfStream);
+        try {
+            writer.join();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if(failure != null){
+            throw failure;
+        }
+    }
+}
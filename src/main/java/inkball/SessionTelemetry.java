@@ -0,0 +1,237 @@
+package inkball;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes what happens in a session to compressed log files for studying how the game is played.
+ * <p>
+ * The {@code SessionTelemetry} class takes fixed-size records from the thread simulating the game:
+ * levels started and ended, the score of each level, captures, misses, the ink of each line, pauses
+ * and restarts. A record only fills a few slots of preallocated arrays, used as a ring, so the game
+ * never allocates, locks or touches a file for it. A background thread takes the records in batches,
+ * turns them into lines of text and writes them through a {@link GZIPOutputStream}. When a file has
+ * taken {@link #rotateBytes} bytes of text, it is finished and the next one is started.
+ *
+ * <p>If the writer falls a whole ring behind, new records are dropped and counted rather than making
+ * the game wait. Every line holds {@code time,session,tick,type,level,value}, with the time in
+ * milliseconds since 1970 and the session a random number shared by all the files of one run.
+ */
+public class SessionTelemetry implements AutoCloseable {
+
+    public static final int LEVEL_START = 0;
+    public static final int LEVEL_END = 1; // For a cleared level, the value is the time left in milliseconds
+    public static final int LEVEL_SCORE = 2;
+    public static final int CAPTURE = 3; // For a ball in the right hole, the value is its colour
+    public static final int MISS = 4; // For a ball in the wrong hole, the value is its colour
+    public static final int INK = 5; // For a finished line, the value is its number of points
+    public static final int PAUSE = 6;
+    public static final int RESTART = 7;
+    public static final String[] TYPE_NAMES = {"level_start", "level_end", "level_score", "capture", "miss", "ink", "pause", "restart"};
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int BATCH = 256; // For the number of records written at a time
+
+    public long rotateBytes = 1 << 20; // For the bytes of text written to a file before starting the next one
+
+    private final int mask;
+    private final long[] times;
+    private final int[] ticks;
+    private final int[] types;
+    private final int[] levels;
+    private final int[] values;
+    private volatile long head = 0; // For the number of records added, written by the game only
+    private volatile long tail = 0; // For the number of records written, written by the writer only
+    private long dropped = 0;
+
+    private final Path folder;
+    private final String session;
+    private int fileNumber = 0;
+    private long fileBytes = 0;
+    private OutputStream out = null;
+    private final StringBuilder line = new StringBuilder(64);
+    private final Thread writer;
+    private volatile boolean closing = false;
+    private volatile IOException failure = null;
+
+    /**
+     * Starts writing the telemetry of a session into a folder, creating it if needed.
+     *
+     * @param folder the folder of the log files
+     * @throws IOException if the folder cannot be created
+     */
+    public SessionTelemetry(Path folder) throws IOException {
+        this(folder, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Starts writing the telemetry of a session into a folder, creating it if needed.
+     *
+     * @param folder the folder of the log files
+     * @param capacity the number of records waiting to be written, rounded up to a power of two
+     * @throws IOException if the folder cannot be created
+     */
+    public SessionTelemetry(Path folder, int capacity) throws IOException {
+        Files.createDirectories(folder);
+        this.folder = folder;
+        session = Long.toHexString(new Random().nextLong() & Long.MAX_VALUE);
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        times = new long[size];
+        ticks = new int[size];
+        types = new int[size];
+        levels = new int[size];
+        values = new int[size];
+        writer = new Thread(this::writeLoop, "inkball-telemetry");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Adds a record. Only the thread simulating the game may call this.
+     *
+     * @param type the kind of record, one of the constants of this class
+     * @param tick the frame of the game
+     * @param level the index of the level
+     * @param value the value of the record, depending on its kind
+     */
+    public void log(int type, int tick, int level, int value){
+        long h = head;
+        // Drop the record instead of waiting for the writer
+        if(h - tail > mask){
+            dropped++;
+            return;
+        }
+        int i = (int) (h & mask);
+        times[i] = System.currentTimeMillis();
+        ticks[i] = tick;
+        types[i] = type;
+        levels[i] = level;
+        values[i] = value;
+        head = h + 1;
+    }
+
+    /**
+     * Returns the number of records dropped because the writer was a whole ring behind.
+     *
+     * @return the number of dropped records
+     */
+    public long getDropped(){
+        return dropped;
+    }
+
+    /**
+     * Returns the name of the session, shared by its files.
+     *
+     * @return the session
+     */
+    public String getSession(){
+        return session;
+    }
+
+    /**
+     * Writes the records in batches until the telemetry is closed, then writes the rest.
+     */
+    private void writeLoop(){
+        try {
+            while(true){
+                boolean done = closing;
+                int written = writeBatch();
+                if(written == 0){
+                    if(done){
+                        break;
+                    }
+                    flush();
+                    LockSupport.parkNanos(this, 20_000_000L);
+                }
+            }
+            if(out != null){
+                out.close();
+                out = null;
+            }
+        } catch (IOException e){
+            failure = e;
+        }
+    }
+
+    /**
+     * Writes up to a batch of records.
+     *
+     * @return the number of records written
+     * @throws IOException if a file cannot be written
+     */
+    private int writeBatch() throws IOException {
+        long t = tail;
+        long end = Math.min(head, t + BATCH);
+        if(end == t){
+            return 0;
+        }
+        if(out == null){
+            out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(nextFile())), 8192, true);
+            fileBytes = 0;
+        }
+        line.setLength(0);
+        for(long n = t; n < end; n++){
+            int i = (int) (n & mask);
+            line.append(times[i]).append(',').append(session).append(',').append(ticks[i]).append(',')
+                .append(TYPE_NAMES[types[i]]).append(',').append(levels[i]).append(',').append(values[i]).append('\n');
+        }
+        // Give the slots back before the slow part
+        tail = end;
+        byte[] bytes = line.toString().getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes);
+        fileBytes += bytes.length;
+        // Start a new file once this one is large enough
+        if(fileBytes >= rotateBytes){
+            out.close();
+            out = null;
+        }
+        return (int) (end - t);
+    }
+
+    /**
+     * Writes the compressed data so far to the current file, so a crash loses little.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void flush() throws IOException {
+        if(out != null){
+            out.flush();
+        }
+    }
+
+    /**
+     * Returns the path of the next log file of this session.
+     *
+     * @return the path
+     */
+    private Path nextFile(){
+        return folder.resolve(String.format("telemetry-%s-%04d.csv.gz", session, fileNumber++));
+    }
+
+    /**
+     * Writes the remaining records, finishes the current file and stops the writer.
+     *
+     * @throws IOException if a file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        if(failure != null){
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package inkball;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the simulation of the game on its own thread, separate from the drawing of the frames.
+ * <p>
+ * The {@code SimulationThread} class advances the game at a fixed rate and publishes a
+ * {@link RenderSnapshot} after every frame, which {@link App#draw()} picks up without locking. A
+ * slow frame on the screen therefore never holds up the balls, and a heavy frame of simulation never
+ * holds up the screen. The actions of the player arrive through a lock-free queue and are applied
+ * at the start of the next simulated frame, so the state of the game is only ever touched by this
+ * thread.
+ */
+public class SimulationThread implements Runnable {
+
+    private static final int MAX_LAG = 5; // For the frames the simulation may fall behind before skipping ahead
+
+    private final App app;
+    private final long period; // For the nanoseconds between simulated frames
+    private final ConcurrentLinkedQueue<int[]> inputs = new ConcurrentLinkedQueue<int[]>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Creates the simulation thread of a game without starting it.
+     *
+     * @param app  the game to simulate
+     * @param rate the number of frames simulated per second
+     */
+    public SimulationThread(App app, int rate){
+        this.app = app;
+        this.period = 1_000_000_000L / Math.max(1, rate);
+        this.thread = new Thread(this, "inkball-simulation");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts simulating the game.
+     */
+    public void start(){
+        thread.start();
+    }
+
+    /**
+     * Stops simulating the game and waits for the current frame to finish.
+     */
+    public void stop(){
+        running = false;
+        if(Thread.currentThread() != thread){
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queues an action of the player for the next simulated frame.
+     *
+     * @param op the action, one of the {@code INK_} or {@code INPUT_} constants of {@link App}
+     * @param x  the x-coordinate of the action
+     * @param y  the y-coordinate of the action
+     */
+    public void addInput(int op, int x, int y){
+        inputs.offer(new int[] {op, x, y});
+    }
+
+    /**
+     * Simulates frames at the fixed rate until stopped.
+     */
+    @Override
+    public void run(){
+        long next = System.nanoTime();
+        while(running){
+            int[] input;
+            while((input = inputs.poll()) != null){
+                app.localInput(input[0], input[1], input[2]);
+            }
+            long start = System.nanoTime();
+            app.tickFrame(period);
+            long tickTime = System.nanoTime() - start;
+            app.renderBuffer.publish(app);
+            if(app.stressTest != null){
+                app.stressTest.recordFrame(app, tickTime, app.lastFrameNanos);
+            }
+
+            // Wait for the next frame, skipping ahead if the simulation has fallen too far behind
+            next += period;
+            long wait = next - System.nanoTime();
+            if(wait > 0){
+                LockSupport.parkNanos(wait);
+            } else if(-wait > MAX_LAG * period){
+                next = System.nanoTime();
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package inkball;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.Random;
 
 /**
  * Represents a spawner object in the Inkball game that is responsible for spawning balls
@@ -41,10 +42,22 @@ public class Spawner extends GameObject{
      * @param ballsOnBoard the list of balls currently active on the game board
      */
     public void spawn(Queue<Ball> ballQueue, ArrayList<Ball> ballsOnBoard){
+        spawn(ballQueue, ballsOnBoard, new Random());
+    }
+
+    /**
+     * Spawns a ball from the {@code ballQueue} onto the game board at the spawner's position,
+     * drawing its velocity from the given random source.
+     *
+     * @param ballQueue    the queue of balls waiting to be spawned
+     * @param ballsOnBoard the list of balls currently active on the game board
+     * @param random       the random source for the velocity of the ball
+     */
+    public void spawn(Queue<Ball> ballQueue, ArrayList<Ball> ballsOnBoard, Random random){
         if(!ballQueue.isEmpty()){
             Ball nextBall = ballQueue.poll();
             ballsOnBoard.add(nextBall);
-            nextBall.spawn(this);
+            nextBall.spawn(this, random);
         }
     }
 }
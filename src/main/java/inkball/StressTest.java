@@ -0,0 +1,315 @@
+package inkball;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Runs the game on a generated board under heavy load and reports its performance.
+ * <p>
+ * The {@code StressTest} class builds a single level with a {@link BoardGenerator}, fills it with
+ * balls and synthetic ink strokes, and keeps it busy for a fixed duration. The level is restarted
+ * whenever it ends, and the number of lines is topped up as the balls remove them. At the end it
+ * prints the ticks per second, the tick and frame time percentiles and the heap usage.
+ *
+ * <p>It is started from the command line, for example
+ * {@code gradle run --args="--stress --headless --balls=2000 --duration=30"}.
+ */
+public class StressTest {
+
+    private static final String[] COLOURS = {"grey", "orange", "blue", "green", "yellow"};
+
+    // Attributes of the generated board
+    public long seed = 1;
+    public float wallDensity = 0.15f;
+    public float brickRatio = 0.3f;
+    public int holes = 4;
+    public int spawners = 4;
+    public int balls = 1000; // For the balls placed directly on the board
+    public int queuedBalls = 100; // For the balls waiting in the queue
+    public int spawnInterval = 1;
+    public int strokes = 20; // For the number of lines kept on the board
+    public int strokePoints = 40; // For the number of points in each line
+
+    // Attributes of the run
+    public int duration = 20; // For the length of the run in seconds
+    public boolean headless = false; // For running without a window
+    public boolean threaded = false; // For simulating on a separate thread from the drawing
+    public int frameRateCap = 1000; // For the frame rate limit with a window
+    public int threads = Runtime.getRuntime().availableProcessors(); // For the threads sharing the collisions of the balls, 1 for none
+    public String kernel = "none"; // For the ball kernel moving the balls: none, scalar or vector
+    public boolean holeField = false; // For pulling the balls towards the holes with a table instead of the distances
+
+    // Measurements
+    private Random random;
+    private long[] tickNanos = new long[1024];
+    private long[] frameNanos = new long[1024];
+    private int frames = 0;
+    private long startNanos = -1;
+    private long peakHeap = 0;
+    private int restarts = 0;
+    private boolean finished = false;
+
+    /**
+     * Creates a stress test from the command line arguments.
+     *
+     * <p>Every public attribute can be set with {@code --name=value}, for example {@code --balls=2000}.
+     *
+     * @param args the command line arguments
+     * @return the stress test, or {@code null} if {@code --stress} is not among the arguments
+     * @throws IllegalArgumentException if an argument is not recognised
+     */
+    public static StressTest fromArgs(String[] args){
+        if(!Arrays.asList(args).contains("--stress")){
+            return null;
+        }
+        StressTest stress = new StressTest();
+        for(String arg: args){
+            if(arg.equals("--stress")){
+                continue;
+            } else if(arg.equals("--headless")){
+                stress.headless = true;
+                continue;
+            } else if(arg.equals("--threaded")){
+                stress.threaded = true;
+                continue;
+            } else if(arg.equals("--hole-field")){
+                stress.holeField = true;
+                continue;
+            }
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            if(pair.length != 2){
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+            String value = pair[1];
+            switch(pair[0]){
+                case "seed":
+                    stress.seed = Long.parseLong(value);
+                    break;
+                case "walls":
+                    stress.wallDensity = Float.parseFloat(value);
+                    break;
+                case "bricks":
+                    stress.brickRatio = Float.parseFloat(value);
+                    break;
+                case "holes":
+                    stress.holes = Integer.parseInt(value);
+                    break;
+                case "spawners":
+                    stress.spawners = Integer.parseInt(value);
+                    break;
+                case "balls":
+                    stress.balls = Integer.parseInt(value);
+                    break;
+                case "queued":
+                    stress.queuedBalls = Integer.parseInt(value);
+                    break;
+                case "interval":
+                    stress.spawnInterval = Integer.parseInt(value);
+                    break;
+                case "strokes":
+                    stress.strokes = Integer.parseInt(value);
+                    break;
+                case "points":
+                    stress.strokePoints = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    stress.duration = Integer.parseInt(value);
+                    break;
+                case "fps":
+                    stress.frameRateCap = Integer.parseInt(value);
+                    break;
+                case "threads":
+                    stress.threads = Integer.parseInt(value);
+                    break;
+                case "kernel":
+                    stress.kernel = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        return stress;
+    }
+
+    /**
+     * Loads the generated level into the game in place of the levels from the config file.
+     *
+     * @param app the game to load the level into
+     */
+    public void apply(App app){
+        random = new Random(seed);
+        BoardGenerator generator = new BoardGenerator(random);
+        generator.wallDensity = wallDensity;
+        generator.brickRatio = brickRatio;
+        generator.holes = holes;
+        generator.spawners = Math.max(1, spawners);
+
+        app.parallelCollisions = threads > 1 ? new ParallelCollisions(threads) : null;
+        app.ballKernel = kernel.equals("none") ? null : BallKernel.create(kernel);
+        app.useHoleField = holeField;
+        app.currentLevel = 0;
+        String[] layout = generator.generate();
+        ArrayList<String> queue = new ArrayList<String>();
+        for(int i = 0; i < queuedBalls; i++){
+            queue.add(COLOURS[random.nextInt(COLOURS.length)]);
+        }
+        // Leave enough time so that the level never runs out during the test
+        LevelDefinition level = new LevelDefinition("stress", layout, duration * 100 + 60, spawnInterval, 1f, 1f, queue);
+        app.config = new GameConfig(Collections.singletonList(level), 50, 25);
+    }
+
+    /**
+     * Places the balls and lines of the test on the board after the level has been reset.
+     *
+     * @param app the game to populate
+     */
+    public void populate(App app){
+        int placed = 0;
+        for(int attempt = 0; placed < balls && attempt < balls * 20; attempt++){
+            int rowNum = random.nextInt(App.BOARD_HEIGHT);
+            int colNum = random.nextInt(App.BOARD_WIDTH);
+            if(!app.board[rowNum][colNum].getType().equals("tile")){
+                continue;
+            }
+            placed++;
+            Ball ball = new Ball(colNum * App.CELLSIZE, rowNum * App.CELLSIZE + App.TOPBAR, random.nextInt(COLOURS.length));
+            ball.randomVelocity(random);
+            app.balls.add(ball);
+            app.ballsOnBoard.add(ball);
+        }
+        addStrokes(app);
+    }
+
+    /**
+     * Tops up the lines removed by the balls with new random lines.
+     *
+     * @param app the game to draw the lines in
+     */
+    private void addStrokes(App app){
+        while(app.lines.size() < strokes){
+            InkStroke line = new InkStroke(strokePoints);
+            float xf = random.nextFloat() * App.WIDTH;
+            float yf = App.TOPBAR + random.nextFloat() * (App.HEIGHT - App.TOPBAR);
+            for(int i = 0; i < strokePoints; i++){
+                xf = Math.max(0, Math.min(App.WIDTH, xf + random.nextFloat() * 8 - 4));
+                yf = Math.max(App.TOPBAR, Math.min(App.HEIGHT, yf + random.nextFloat() * 8 - 4));
+                line.add(xf, yf);
+            }
+            app.lines.add(line);
+        }
+    }
+
+    /**
+     * Records the time spent on one frame and keeps the game under load.
+     *
+     * <p>When the duration of the test has passed, the report is printed and the game is closed.
+     *
+     * @param app        the game under test
+     * @param tickNanos  the time spent in {@code update()} in nanoseconds
+     * @param frameNanos the time spent on the whole frame in nanoseconds
+     */
+    public void recordFrame(App app, long tickNanos, long frameNanos){
+        if(finished){
+            return;
+        }
+        if(startNanos < 0){
+            startNanos = System.nanoTime();
+        }
+        if(frames == this.tickNanos.length){
+            this.tickNanos = Arrays.copyOf(this.tickNanos, frames * 2);
+            this.frameNanos = Arrays.copyOf(this.frameNanos, frames * 2);
+        }
+        this.tickNanos[frames] = tickNanos;
+        this.frameNanos[frames] = frameNanos;
+        frames++;
+        if(frames % 30 == 0){
+            Runtime runtime = Runtime.getRuntime();
+            peakHeap = Math.max(peakHeap, runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        // Restart the level whenever it ends so that the load stays the same
+        if(app.gameOver || app.gameWin || app.levelUp){
+            app.reset();
+            populate(app);
+            restarts++;
+        }
+        addStrokes(app);
+
+        if(System.nanoTime() - startNanos >= duration * 1_000_000_000L){
+            finished = true;
+            System.out.println(report(app));
+            if(!headless){
+                app.exit();
+            }
+        }
+    }
+
+    /**
+     * Runs the test without a window, simulating the frames back to back.
+     */
+    public void runHeadless(){
+        App app = new App();
+        app.stressTest = this;
+        app.clock = new VirtualClock();
+        app.random = new Random(seed);
+        apply(app);
+        app.reset();
+        populate(app);
+        while(!finished){
+            long tickStart = System.nanoTime();
+            app.update();
+            long tickTime = System.nanoTime() - tickStart;
+            recordFrame(app, tickTime, tickTime);
+        }
+    }
+
+    /**
+     * Summarises the measurements of the test.
+     *
+     * @param app the game under test
+     * @return the report printed at the end of the test
+     */
+    public String report(App app){
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long gcCount = 0;
+        long gcTime = 0;
+        for(GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()){
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+        Runtime runtime = Runtime.getRuntime();
+        StringBuilder sb = new StringBuilder();
+        sb.append("=== STRESS TEST ===\n");
+        sb.append(String.format("board: seed=%d walls=%.2f bricks=%.2f holes=%d spawners=%d%n", seed, wallDensity, brickRatio, holes, spawners));
+        sb.append(String.format("load: balls=%d queued=%d strokes=%dx%d headless=%b threaded=%b collision threads=%d kernel=%s hole field=%b%n", balls, queuedBalls, strokes, strokePoints, headless, threaded, threads,
+            app.ballKernel == null ? "none" : app.ballKernel.getName(), app.useHoleField));
+        sb.append(String.format("ticks: %d in %.1fs (%.1f ticks/sec), restarts=%d%n", frames, seconds, frames / seconds, restarts));
+        sb.append("tick  ms: ").append(percentiles(tickNanos)).append('\n');
+        if(!headless){
+            sb.append("frame ms: ").append(percentiles(frameNanos)).append('\n');
+        }
+        sb.append(String.format("heap: peak=%.1fMB final=%.1fMB max=%.1fMB, gc=%d (%dms)%n",
+            peakHeap / 1048576.0, (runtime.totalMemory() - runtime.freeMemory()) / 1048576.0,
+            runtime.maxMemory() / 1048576.0, gcCount, gcTime));
+        sb.append(String.format("on board: balls=%d walls=%d lines=%d", app.ballsOnBoard.size(), app.walls.size(), app.lines.size()));
+        return sb.toString();
+    }
+
+    /**
+     * Formats the percentiles of the recorded times.
+     *
+     * @param nanos the recorded times in nanoseconds
+     * @return the 50th, 90th, 99th percentiles and maximum in milliseconds
+     */
+    private String percentiles(long[] nanos){
+        if(frames == 0){
+            return "n/a";
+        }
+        long[] sorted = Arrays.copyOf(nanos, frames);
+        Arrays.sort(sorted);
+        return String.format("p50=%.3f p90=%.3f p99=%.3f max=%.3f",
+            sorted[(int)(frames * 0.50)] / 1e6, sorted[(int)(frames * 0.90)] / 1e6,
+            sorted[(int)(frames * 0.99)] / 1e6, sorted[frames - 1] / 1e6);
+    }
+}
@@ -0,0 +1,47 @@
+package inkball;
+
+/**
+ * Represents a clock that follows the wall clock.
+ * <p>
+ * The {@code SystemClock} class counts the real time since it was created, like the
+ * {@code millis()} of a Processing sketch counts the time since the sketch started. It can also
+ * start from a given time, to take over from another clock without a jump in the timers.
+ */
+public class SystemClock implements Clock {
+
+    private final long start = System.nanoTime();
+    private final int offset; // For the time the clock started from
+
+    /**
+     * Creates a clock starting from zero.
+     */
+    public SystemClock(){
+        this(0);
+    }
+
+    /**
+     * Creates a clock starting from the given time.
+     *
+     * @param offset the time the clock starts from in milliseconds
+     */
+    public SystemClock(int offset){
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the real time since the clock was created, added to the time it started from.
+     *
+     * @return the elapsed time in milliseconds
+     */
+    @Override
+    public int millis(){
+        return offset + (int)((System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Does nothing, as the wall clock moves by itself.
+     */
+    @Override
+    public void tick(){
+    }
+}
@@ -0,0 +1,75 @@
+package inkball;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Moves the balls and bounces them off the edges a lane of balls at a time with the Vector API.
+ * <p>
+ * The {@code VectorBallKernel} class loads as many positions and velocities as fit in a vector
+ * register, adds them in one instruction, and finds the balls past an edge with a comparison mask
+ * under which the velocities are negated. The balls left over after the last full lane go through the
+ * scalar loop. Only {@link BallKernel#create} refers to this class, by name, so that it is never
+ * loaded when the {@code jdk.incubator.vector} module is missing.
+ */
+public class VectorBallKernel extends BallKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public String getName(){
+        return VECTOR;
+    }
+
+    @Override
+    public void integrate(float[] xs, float[] ys, float[] vxs, float[] vys, int n){
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()){
+            FloatVector.fromArray(SPECIES, xs, i).add(FloatVector.fromArray(SPECIES, vxs, i)).intoArray(xs, i);
+            FloatVector.fromArray(SPECIES, ys, i).add(FloatVector.fromArray(SPECIES, vys, i)).intoArray(ys, i);
+        }
+        integrateTail(xs, ys, vxs, vys, i, n);
+    }
+
+    @Override
+    public void reflect(float[] xs, float[] ys, float[] vxs, float[] vys, int n){
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()){
+            FloatVector x = FloatVector.fromArray(SPECIES, xs, i);
+            VectorMask<Float> outX = x.lt(0f).or(x.add((float) App.BALLSIZE).compare(VectorOperators.GT, (float) App.WIDTH));
+            FloatVector.fromArray(SPECIES, vxs, i).lanewise(VectorOperators.NEG, outX).intoArray(vxs, i);
+            FloatVector y = FloatVector.fromArray(SPECIES, ys, i);
+            VectorMask<Float> outY = y.lt((float) App.TOPBAR).or(y.add((float) App.BALLSIZE).compare(VectorOperators.GT, (float) App.HEIGHT));
+            FloatVector.fromArray(SPECIES, vys, i).lanewise(VectorOperators.NEG, outY).intoArray(vys, i);
+        }
+        reflectTail(xs, ys, vxs, vys, i, n);
+    }
+
+    /**
+     * Moves the balls after the last full lane.
+     */
+    private void integrateTail(float[] xs, float[] ys, float[] vxs, float[] vys, int from, int n){
+        for(int i = from; i < n; i++){
+            xs[i] += vxs[i];
+            ys[i] += vys[i];
+        }
+    }
+
+    /**
+     * Bounces the balls after the last full lane.
+     */
+    private void reflectTail(float[] xs, float[] ys, float[] vxs, float[] vys, int from, int n){
+        for(int i = from; i < n; i++){
+            if(xs[i] < 0 || xs[i] + App.BALLSIZE > App.WIDTH){
+                vxs[i] *= -1;
+            }
+            if(ys[i] < App.TOPBAR || ys[i] + App.BALLSIZE > App.HEIGHT){
+                vys[i] *= -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package inkball;
+
+/**
+ * Represents a clock that only moves when a frame is simulated.
+ * <p>
+ * The {@code VirtualClock} class derives the time from the number of frames simulated, each frame
+ * lasting {@code 1000 / App.FPS} milliseconds. The game can then be run faster than real time,
+ * without a window, and the timers give the same result on every run. Tests can also move the
+ * clock on by whole frames without simulating them with {@link #advance(int)}.
+ */
+public class VirtualClock implements Clock {
+
+    private long frames = 0; // For the number of frames the clock has moved on by
+    private final int offset; // For the time the clock started from
+
+    /**
+     * Creates a clock starting from zero.
+     */
+    public VirtualClock(){
+        this(0);
+    }
+
+    /**
+     * Creates a clock starting from the given time, to take over from another clock.
+     *
+     * @param offset the time the clock starts from in milliseconds
+     */
+    public VirtualClock(int offset){
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the time of the frames simulated so far, added to the time the clock started from.
+     *
+     * @return the elapsed time in milliseconds
+     */
+    @Override
+    public int millis(){
+        return offset + (int)(frames * 1000 / App.FPS);
+    }
+
+    /**
+     * Moves the clock on by one frame.
+     */
+    @Override
+    public void tick(){
+        frames++;
+    }
+
+    /**
+     * Moves the clock on by a number of frames.
+     *
+     * @param count the number of frames
+     */
+    public void advance(int count){
+        frames += count;
+    }
+
+    /**
+     * Returns the number of frames the clock has moved on by.
+     *
+     * @return the number of frames
+     */
+    public long getFrames(){
+        return frames;
+    }
+}
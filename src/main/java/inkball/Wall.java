@@ -1,5 +1,7 @@
 package inkball;
 
+import java.util.List;
+
 /**
  * Represents a wall or brick object in the Inkball game. This wall can either be a solid wall or a breakable brick,
  * with the ability to detect and respond to collisions with a ball, count hits, and rotate position if applicable.
@@ -12,6 +14,41 @@ public class Wall extends GameObject {
     private int color;
     private boolean isBrick;
     private int numHits;
+    private int neighbours; // For the mask of the neighbouring cells holding a wall
+    int slot = -1; // For the position of the wall in the WallSet holding it
+
+    public static final int BRICK_HITS = 3; // For the number of hits that break a brick
+
+    // Bits of the neighbour mask, clockwise from the cell above
+    public static final int NEIGHBOUR_N = 1;
+    public static final int NEIGHBOUR_NE = 2;
+    public static final int NEIGHBOUR_E = 4;
+    public static final int NEIGHBOUR_SE = 8;
+    public static final int NEIGHBOUR_S = 16;
+    public static final int NEIGHBOUR_SW = 32;
+    public static final int NEIGHBOUR_W = 64;
+    public static final int NEIGHBOUR_NW = 128;
+    private static final int[] NEIGHBOUR_ROWS = {-1, -1, 0, 1, 1, 1, 0, -1};
+    private static final int[] NEIGHBOUR_COLS = {0, 1, 1, 1, 0, -1, -1, -1};
+
+    // Corners of the wall
+    private static final int TOP_LEFT = 0;
+    private static final int TOP_RIGHT = 1;
+    private static final int BOTTOM_LEFT = 2;
+    private static final int BOTTOM_RIGHT = 3;
+    // Neighbours on the same column, on the diagonal and on the same row of each corner
+    private static final int[][] CORNER_NEIGHBOURS = {
+        {NEIGHBOUR_N, NEIGHBOUR_NW, NEIGHBOUR_W},
+        {NEIGHBOUR_N, NEIGHBOUR_NE, NEIGHBOUR_E},
+        {NEIGHBOUR_S, NEIGHBOUR_SW, NEIGHBOUR_W},
+        {NEIGHBOUR_S, NEIGHBOUR_SE, NEIGHBOUR_E}
+    };
+
+    // Bounces off a corner: reverse the x velocity, the y velocity, or decide by the approach
+    private static final int BOUNCE_BY_APPROACH = 0;
+    private static final int BOUNCE_X = 1;
+    private static final int BOUNCE_Y = 2;
+    private static final byte[][] CORNER_BOUNCES = buildCornerBounces();
 
     /**
      * Constructs a wall or brick object at the specified coordinates with a defined colour.
@@ -29,6 +66,17 @@ public class Wall extends GameObject {
         this.numHits = 0;
     }
 
+    /**
+     * Creates a copy of another wall or brick, including the number of hits it has taken.
+     *
+     * @param other the wall to copy
+     */
+    public Wall(Wall other){
+        this(other.x, other.y, other.color, other.isBrick);
+        this.numHits = other.numHits;
+        this.neighbours = other.neighbours;
+    }
+
     /**
      * Draws the wall on the provided game application window. Bricks and walls are drawn differently based on their type.
      *
@@ -52,13 +100,81 @@ public class Wall extends GameObject {
         return color;
     }
 
+    /**
+     * Checks if this wall is a breakable brick.
+     *
+     * @return {@code true} if this wall is a brick; {@code false} if it is a solid wall
+     */
+    public boolean isBrick(){
+        return isBrick;
+    }
+
+    /**
+     * Gets the number of hits this wall has taken.
+     *
+     * @return the number of hits recorded on this wall
+     */
+    public int getNumHits(){
+        return numHits;
+    }
+
+    /**
+     * Sets the number of hits this wall has taken, used when an earlier state of the game is restored.
+     *
+     * @param numHits the number of hits
+     */
+    public void setNumHits(int numHits){
+        this.numHits = numHits;
+    }
+
+    /**
+     * Records a hit on this wall.
+     * <p>
+     * When a brick takes its last hit, the game is told straight away so that it can remove the
+     * brick at the end of the frame, without checking every wall.
+     *
+     * @param app the application window holding the wall
+     */
+    public void hit(App app){
+        numHits++;
+        if(isBrick){
+            app.events.publish(GameEvent.BRICK_HIT, app.tickCount, this, color, numHits);
+            if(numHits == BRICK_HITS){
+                app.brickBroken(this);
+                app.events.publish(GameEvent.BRICK_BROKEN, app.tickCount, this, color, numHits);
+                FlightEvents.BrickBroken flight = new FlightEvents.BrickBroken();
+                if(flight.isEnabled()){
+                    flight.tick = app.tickCount;
+                    flight.colour = color;
+                    flight.x = getX();
+                    flight.y = getY();
+                    flight.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a hit on this wall, or holds it back in a list to be recorded later.
+     *
+     * @param app  the application window holding the wall
+     * @param hits the list to add this wall to, or {@code null} to record the hit straight away
+     */
+    private void hit(App app, List<GameObject> hits){
+        if(hits != null){
+            hits.add(this);
+        } else {
+            hit(app);
+        }
+    }
+
     /**
      * Checks if this brick has broken due to reaching the maximum hit limit.
      *
      * @return {@code true} if the brick is broken; {@code false} otherwise
      */
     public boolean checkBrickBroken(){
-        if(this.isBrick && numHits >= 3){
+        if(this.isBrick && numHits >= BRICK_HITS){
             return true;
         }
         return false;
@@ -90,11 +206,25 @@ public class Wall extends GameObject {
      * and wall colour if necessary, and records the number of hits on this wall.
      * <p>
      * Handles edge and corner cases to prevent the ball from getting trapped at the wall boundaries.
+     * Corners are resolved from the neighbour mask, which must be kept up to date with
+     * {@link #updateNeighbours} whenever a wall is added to or removed from the board.
      *
      * @param ball the ball to check for collision with this wall
      * @param app  the application window for accessing the game board state
      */
     public void checkCollision(Ball ball, App app){
+        checkCollision(ball, app, null);
+    }
+
+    /**
+     * Checks and responds to a collision between this wall and the specified ball, holding back the
+     * hits on the walls so that balls can be checked on several threads.
+     *
+     * @param ball the ball to check for collision with this wall
+     * @param app  the application window for accessing the game board state
+     * @param hits the list to add the hit walls to, or {@code null} to record the hits straight away
+     */
+    public void checkCollision(Ball ball, App app, List<GameObject> hits){
         // Calculate the row index and column index of the cell
         int X = x/App.WALLSIZE;
         int Y = (y-App.TOPBAR) / App.WALLSIZE;
@@ -110,120 +240,16 @@ public class Wall extends GameObject {
             }
             // Record the number of hits
             if(ball.getColor() == color || color == 0){
-                numHits++;
+                hit(app, hits);
             }
             // Check if it hits the top left corner
             if(x > ball.getXF() && x > 0){
-                // Check if the nearby cells have wall
-                // If it sticks to the top boundary of the game board
-                if (Y == 0){
-                    ball.velocityX *= -1;
-                }
-                // If there is a linked wall on the same column, but no diagonal wall
-                else if(app.board[Y-1][X].getType().equals("wall") && (!app.board[Y-1][X-1].getType().equals("wall"))){
-                    ball.velocityX *= -1;
-                }
-                // If there is a linked wall on the same row, but no diagonal wall
-                else if (app.board[Y][X-1].getType().equals("wall") && (!app.board[Y-1][X-1].getType().equals("wall"))){
-                    ball.velocityY *= -1;
-                }
-                // If no walls nearby
-                else if(!app.board[Y][X-1].getType().equals("wall") && (!app.board[Y-1][X].getType().equals("wall"))){
-                    // If it comes from the top side
-                    if (ball.lastX() + App.BALLSIZE >= x){
-                        ball.velocityY *= -1;
-                    } 
-                    // if it comes from the left side
-                    else if (ball.lastY() + App.BALLSIZE >= y){
-                        ball.velocityX *= -1;
-                    }
-                    // if it hits diagonally
-                    else {
-                        ball.velocityY *= -1;
-                        ball.velocityX *= -1;
-                    }
-                }
-                // if there is diagonal wall
-                else {
-                    ball.velocityY *= -1;
-                    ball.velocityX *= -1;
-                }
-
-                //Mark the hit for the walls nearby
-                if(Y>0 && app.board[Y-1][X].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y-1][X].getGameObject();
-                    if(ball.getColor() == nextWall.getColor() || nextWall.getColor() == 0){
-                        nextWall.numHits++;
-                    }
-                }
-                if(Y>0 && app.board[Y-1][X-1].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y-1][X-1].getGameObject();
-                    if(ball.getColor() == nextWall.getColor() || nextWall.getColor() == 0){
-                        nextWall.numHits++;
-                    }
-                }
-                if(app.board[Y][X-1].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y][X-1].getGameObject();
-                    if(ball.getColor() == nextWall.getColor() || nextWall.getColor() == 0){
-                        nextWall.numHits++;
-                    }
-                }
+                // If it sticks to the top boundary of the game board, only bounce sideways
+                hitCorner(ball, app, hits, TOP_LEFT, Y == 0);
             }
             // Check if it hits the top right corner
             else if(x + App.WALLSIZE < ball.getXF() + App.BALLSIZE && x + App.WALLSIZE < App.WIDTH){
-                // Check if the nearby cells have wall
-                // If it sticks to the top boundary of the game board
-                if (Y == 0){
-                    ball.velocityX *= -1;
-                }
-                // If there is a linked wall on the same column, but no diagonal wall
-                else if(app.board[Y-1][X].getType().equals("wall") && (!app.board[Y-1][X+1].getType().equals("wall"))){
-                    ball.velocityX *= -1;
-                }
-                // If there is a linked wall on the same row, but no diagonal wall
-                else if (app.board[Y][X+1].getType().equals("wall") && (!app.board[Y-1][X+1].getType().equals("wall"))){
-                    ball.velocityY *= -1;
-                }
-                // If no walls nearby
-                else if(!app.board[Y][X+1].getType().equals("wall") && (!app.board[Y-1][X].getType().equals("wall"))){
-                    // If it comes from the top side
-                    if (ball.lastX() <= x + App.WALLSIZE){
-                        ball.velocityY *= -1;
-                    } 
-                    // if it comes from the right side
-                    else if (ball.lastY() + App.BALLSIZE >= y){
-                        ball.velocityX *= -1;
-                    }
-                    // if it hits diagonally
-                    else {
-                        ball.velocityY *= -1;
-                        ball.velocityX *= -1;
-                    }
-                }
-                // if there is diagonal wall
-                else {
-                    ball.velocityY *= -1;
-                    ball.velocityX *= -1;
-                }
-                //Mark the hit for the walls nearby
-                if(Y>0 && app.board[Y-1][X].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y-1][X].getGameObject();
-                    if(ball.getColor() == nextWall.getColor() || nextWall.getColor() == 0){
-                        nextWall.numHits++;
-                    }
-                }
-                if(Y>0 && app.board[Y-1][X+1].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y-1][X+1].getGameObject();
-                    if(ball.getColor() == nextWall.getColor()|| nextWall.getColor() == 0){
-                        nextWall.numHits++;
-                    }
-                }
-                if(app.board[Y][X+1].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y][X+1].getGameObject();
-                    if(ball.getColor() == nextWall.getColor()|| nextWall.getColor() == 0){
-                        nextWall.numHits++;
-                    }
-                }
+                hitCorner(ball, app, hits, TOP_RIGHT, Y == 0);
             }
             // Hit in the middle of the top side
             else {
@@ -247,119 +273,16 @@ public class Wall extends GameObject {
             }
             // Record the number of hits
             if(ball.getColor() == color || color == 0){
-                numHits++;
+                hit(app, hits);
             }
             // Check if it hits the bottom left corner
             if(x > ball.getXF() && x > 0){
-                // Check if the nearby cells have wall
-                // If it sticks to the bottom boundary of the game board
-                if (Y == 17){
-                    ball.velocityX *= -1;
-                }
-                // If there is a linked wall on the same column, but no diagonal wall
-                else if(app.board[Y+1][X].getType().equals("wall") && (!app.board[Y+1][X-1].getType().equals("wall"))){
-                    ball.velocityX *= -1;
-                }
-                // If there is a linked wall on the same row, but no diagonal wall
-                else if (app.board[Y][X-1].getType().equals("wall") && (!app.board[Y+1][X-1].getType().equals("wall"))){
-                    ball.velocityY *= -1;
-                }
-                // If no walls nearby
-                else if(!app.board[Y+1][X].getType().equals("wall") && (!app.board[Y][X-1].getType().equals("wall"))){
-                    // If it comes from the bottom side
-                    if (ball.lastX() + App.BALLSIZE >= x){
-                        ball.velocityY *= -1;
-                    } 
-                    // if it comes from the left side
-                    else if (ball.lastY() <= y + App.WALLSIZE){
-                        ball.velocityX *= -1;
-                    }
-                    // if it hits diagonally
-                    else {
-                        ball.velocityY *= -1;
-                        ball.velocityX *= -1;
-                    }
-                }
-                // if there is diagonal wall
-                else {
-                    ball.velocityY *= -1;
-                    ball.velocityX *= -1;
-                }
-                //Mark the hit for the walls nearby
-                if(Y<17 && app.board[Y+1][X].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y+1][X].getGameObject();
-                    if(ball.getColor() == nextWall.getColor() || nextWall.getColor() == 0){
-                        nextWall.numHits++;
-                    }
-                }
-                if(Y<17 && app.board[Y+1][X-1].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y+1][X-1].getGameObject();
-                    if(ball.getColor() == nextWall.getColor()|| nextWall.getColor() == 0){
-                        nextWall.numHits++;
-                    }
-                }
-                if(app.board[Y][X-1].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y][X-1].getGameObject();
-                    if(ball.getColor() == nextWall.getColor()|| nextWall.getColor() == 0){
-                        nextWall.numHits++;
-                    }
-                }
+                // If it sticks to the bottom boundary of the game board, only bounce sideways
+                hitCorner(ball, app, hits, BOTTOM_LEFT, Y == App.BOARD_HEIGHT - 1);
             }
             // Check if it hits the bottom right corner
             else if(x + App.WALLSIZE < ball.getXF() + App.BALLSIZE && x + App.WALLSIZE < App.WIDTH){
-                // Check if the nearby cells have wall
-                // If it sticks to the bottom boundary of the game board
-                if (Y == 17){
-                    ball.velocityX *= -1;
-                }
-                // If there is a linked wall on the same column, but no diagonal wall
-                else if(app.board[Y+1][X].getType().equals("wall") && (!app.board[Y+1][X+1].getType().equals("wall"))){
-                    ball.velocityX *= -1;
-                }
-                // If there is a linked wall on the same row, but no diagonal wall
-                else if (app.board[Y][X+1].getType().equals("wall") && (!app.board[Y+1][X+1].getType().equals("wall"))){
-                    ball.velocityY *= -1;
-                }
-                // If no walls nearby
-                else if(!app.board[Y+1][X].getType().equals("wall") && (!app.board[Y][X+1].getType().equals("wall"))){
-                    // If it comes from the bottom side
-                    if (ball.lastX() <= x + App.WALLSIZE){
-                        ball.velocityY *= -1;
-                    } 
-                    // if it comes from the right side
-                    else if (ball.lastY() <= y + App.WALLSIZE){
-                        ball.velocityX *= -1;
-                    }
-                    // if it hits diagonally
-                    else {
-                        ball.velocityY *= -1;
-                        ball.velocityX *= -1;
-                    }
-                }
-                // if there is diagonal wall
-                else {
-                    ball.velocityY *= -1;
-                    ball.velocityX *= -1;
-                }
-                //Mark the hit for the walls nearby
-                if(Y<17 && app.board[Y+1][X].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y+1][X].getGameObject();
-                    if(ball.getColor() == nextWall.getColor()){
-                        nextWall.numHits++;
-                    }
-                }
-                if(Y<17 && app.board[Y+1][X+1].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y+1][X+1].getGameObject();
-                    if(ball.getColor() == nextWall.getColor()){
-                        nextWall.numHits++;
-                    }
-                }
-                if(app.board[Y][X+1].getType().equals("wall")){
-                    Wall nextWall = (Wall) app.board[Y][X+1].getGameObject();
-                    if(ball.getColor() == nextWall.getColor()){
-                        nextWall.numHits++;
-                    }
-                }
+                hitCorner(ball, app, hits, BOTTOM_RIGHT, Y == App.BOARD_HEIGHT - 1);
             }
             // Hit in the middle of the top side
             else {
@@ -382,7 +305,7 @@ public class Wall extends GameObject {
             }
             // Record the number of hits
             if(ball.getColor() == color || color == 0){
-                numHits++;
+                hit(app, hits);
             }
             ball.velocityX *= -1;
             //Prevent the ball trapped in the left border
@@ -403,7 +326,7 @@ public class Wall extends GameObject {
             }
             // Record the number of hits
             if(ball.getColor() == color || color == 0){
-                numHits++;
+                hit(app, hits);
             }
             ball.velocityX *= -1;
             // Prevent the ball trapped in the right border
@@ -413,4 +336,116 @@ public class Wall extends GameObject {
         }
         ball.updateNextPos();
     }
+
+    /**
+     * Bounces a ball off a corner of the wall and records the hit on the walls around that corner.
+     * <p>
+     * The bounce is looked up in {@link #CORNER_BOUNCES} from the neighbour mask. A wall on the same
+     * column without a diagonal wall bounces the ball sideways, a wall on the same row without a
+     * diagonal wall bounces it vertically, and a diagonal wall bounces it back. With no wall on the
+     * same row or column, the side the ball came from decides.
+     *
+     * @param ball   the ball hitting the corner
+     * @param app    the application window holding the game board
+     * @param hits   the list to add the hit walls to, or {@code null} to record the hits straight away
+     * @param corner the corner being hit, one of {@code TOP_LEFT}, {@code TOP_RIGHT},
+     *               {@code BOTTOM_LEFT} and {@code BOTTOM_RIGHT}
+     * @param atEdge {@code true} if the wall is on the top or bottom row of the board on the side of the corner
+     */
+    private void hitCorner(Ball ball, App app, List<GameObject> hits, int corner, boolean atEdge){
+        boolean left = corner == TOP_LEFT || corner == BOTTOM_LEFT;
+        boolean top = corner == TOP_LEFT || corner == TOP_RIGHT;
+        int bounce = atEdge ? BOUNCE_X : CORNER_BOUNCES[corner][neighbours];
+        if(bounce == BOUNCE_BY_APPROACH){
+            // If it comes from above or below the wall
+            if(left ? ball.lastX() + App.BALLSIZE >= x : ball.lastX() <= x + App.WALLSIZE){
+                bounce = BOUNCE_Y;
+            }
+            // If it comes from the side of the wall
+            else if(top ? ball.lastY() + App.BALLSIZE >= y : ball.lastY() <= y + App.WALLSIZE){
+                bounce = BOUNCE_X;
+            }
+            // If it hits diagonally
+            else {
+                bounce = BOUNCE_X | BOUNCE_Y;
+            }
+        }
+        if((bounce & BOUNCE_Y) != 0){
+            ball.velocityY *= -1;
+        }
+        if((bounce & BOUNCE_X) != 0){
+            ball.velocityX *= -1;
+        }
+
+        // Mark the hit for the walls on the same column, on the diagonal and on the same row
+        int X = x / App.WALLSIZE;
+        int Y = (y - App.TOPBAR) / App.WALLSIZE;
+        int dy = top ? -1 : 1;
+        int dx = left ? -1 : 1;
+        int[] bits = CORNER_NEIGHBOURS[corner];
+        for(int i = 0; i < 3; i++){
+            if((neighbours & bits[i]) != 0){
+                Wall nextWall = (Wall) app.board[Y + (i < 2 ? dy : 0)][X + (i > 0 ? dx : 0)].getGameObject();
+                // Grey walls around the bottom right corner are only hit by grey balls
+                if(ball.getColor() == nextWall.getColor() || (corner != BOTTOM_RIGHT && nextWall.getColor() == 0)){
+                    nextWall.hit(app, hits);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes which of the eight cells around this wall hold a wall.
+     *
+     * @param board the game board the wall is on
+     */
+    public void updateNeighbours(Cell[][] board){
+        int X = x / App.WALLSIZE;
+        int Y = (y - App.TOPBAR) / App.WALLSIZE;
+        neighbours = 0;
+        for(int i = 0; i < 8; i++){
+            int row = Y + NEIGHBOUR_ROWS[i];
+            int col = X + NEIGHBOUR_COLS[i];
+            if(row >= 0 && row < App.BOARD_HEIGHT && col >= 0 && col < App.BOARD_WIDTH
+                && board[row][col].getGameObject() instanceof Wall){
+                neighbours |= 1 << i;
+            }
+        }
+    }
+
+    /**
+     * Gets the mask of the neighbouring cells holding a wall.
+     *
+     * @return the mask made of the {@code NEIGHBOUR_} bits
+     */
+    public int getNeighbours(){
+        return neighbours;
+    }
+
+    /**
+     * Builds the bounce table of every corner for every neighbour mask.
+     *
+     * @return the bounces indexed by corner and neighbour mask
+     */
+    private static byte[][] buildCornerBounces(){
+        byte[][] bounces = new byte[4][256];
+        for(int corner = 0; corner < 4; corner++){
+            int[] bits = CORNER_NEIGHBOURS[corner];
+            for(int mask = 0; mask < 256; mask++){
+                boolean column = (mask & bits[0]) != 0;
+                boolean diagonal = (mask & bits[1]) != 0;
+                boolean row = (mask & bits[2]) != 0;
+                if(column && !diagonal){
+                    bounces[corner][mask] = BOUNCE_X;
+                } else if(row && !diagonal){
+                    bounces[corner][mask] = BOUNCE_Y;
+                } else if(!row && !column){
+                    bounces[corner][mask] = BOUNCE_BY_APPROACH;
+                } else {
+                    bounces[corner][mask] = BOUNCE_X | BOUNCE_Y;
+                }
+            }
+        }
+        return bounces;
+    }
 }
@@ -0,0 +1,192 @@
+package inkball;
+
+import java.util.*;
+
+/**
+ * Represents the walls of a level in the order they were placed, with constant-time removal.
+ * <p>
+ * The {@code WallSet} class keeps the walls in an array and each wall remembers its slot in it.
+ * Removing a wall only clears its slot, leaving a gap that iteration skips, so the remaining walls
+ * keep their order and the collisions are resolved in the same order as before. The gaps are closed
+ * up when they outnumber the walls, or when a wall is looked up by its index.
+ *
+ * <p>A wall can only be in one {@code WallSet} at a time.
+ */
+public class WallSet extends AbstractList<Wall> {
+
+    private Wall[] items = new Wall[16];
+    private int end = 0; // For the number of slots in use, including the gaps
+    private int size = 0;
+
+    /**
+     * Adds a wall after the existing walls.
+     *
+     * @param wall the wall to add
+     * @return {@code true}
+     */
+    @Override
+    public boolean add(Wall wall){
+        if(end == items.length){
+            compact();
+            if(end == items.length){
+                items = Arrays.copyOf(items, items.length * 2);
+            }
+        }
+        wall.slot = end;
+        items[end++] = wall;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Inserts a wall at the given index, moving the later walls back.
+     *
+     * @param index the index of the new wall
+     * @param wall  the wall to insert
+     */
+    @Override
+    public void add(int index, Wall wall){
+        compact();
+        if(index < 0 || index > size){
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        add(wall);
+        System.arraycopy(items, index, items, index + 1, size - 1 - index);
+        items[index] = wall;
+        for(int i = index; i < size; i++){
+            items[i].slot = i;
+        }
+    }
+
+    /**
+     * Gets the wall at the given index, closing up the gaps first if there are any.
+     *
+     * @param index the index of the wall
+     * @return the wall at the index
+     */
+    @Override
+    public Wall get(int index){
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if(end != size){
+            compact();
+        }
+        return items[index];
+    }
+
+    /**
+     * Gets the number of walls.
+     *
+     * @return the number of walls
+     */
+    @Override
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Checks whether a wall is in this set in constant time.
+     *
+     * @param o the wall to look for
+     * @return {@code true} if the wall is in this set
+     */
+    @Override
+    public boolean contains(Object o){
+        if(!(o instanceof Wall)){
+            return false;
+        }
+        int slot = ((Wall) o).slot;
+        return slot >= 0 && slot < end && items[slot] == o;
+    }
+
+    /**
+     * Removes a wall in constant time, keeping the order of the other walls.
+     *
+     * @param o the wall to remove
+     * @return {@code true} if the wall was in this set
+     */
+    @Override
+    public boolean remove(Object o){
+        if(!contains(o)){
+            return false;
+        }
+        Wall wall = (Wall) o;
+        items[wall.slot] = null;
+        wall.slot = -1;
+        size--;
+        modCount++;
+        // Close up the gaps once they make up most of the array
+        if(end - size > 32 && end - size > size){
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Removes all walls.
+     */
+    @Override
+    public void clear(){
+        for(int i = 0; i < end; i++){
+            if(items[i] != null){
+                items[i].slot = -1;
+                items[i] = null;
+            }
+        }
+        end = 0;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns an iterator over the walls in order, skipping the gaps left by removed walls.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<Wall> iterator(){
+        return new Iterator<Wall>(){
+            private int next = skip(0);
+
+            private int skip(int from){
+                while(from < end && items[from] == null){
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext(){
+                return next < end;
+            }
+
+            @Override
+            public Wall next(){
+                if(next >= end){
+                    throw new NoSuchElementException();
+                }
+                Wall wall = items[next];
+                next = skip(next + 1);
+                return wall;
+            }
+        };
+    }
+
+    /**
+     * Closes up the gaps left by removed walls, keeping the walls in order.
+     */
+    private void compact(){
+        int j = 0;
+        for(int i = 0; i < end; i++){
+            if(items[i] != null){
+                items[j] = items[i];
+                items[j].slot = j;
+                j++;
+            }
+        }
+        Arrays.fill(items, j, end, null);
+        end = j;
+    }
+}
@@ -0,0 +1,181 @@
+package inkball;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Represents the objects of a level as read from its layout, before it is played.
+ * <p>
+ * The {@code World} class builds the cells of the board, the walls, holes, spawners and balls of a
+ * level from its {@link LevelDefinition}. Building does not touch the game, so the next level
+ * can be built on a background thread while the score conversion of the cleared level is still
+ * running, and then put in place in one step by {@link App#reset()}.
+ *
+ * <p>The balls placed on the board by the layout are created without a velocity. The velocities are
+ * drawn from the random source of the game when the world is installed, in the order of the layout,
+ * so a world built early gives the same game as one built at the moment it is needed.
+ */
+public class World {
+
+    private static ExecutorService loader = null;
+
+    public final int level; // For the index of the level this world was built from
+    public final GameConfig config; // For the config the world was built from, to tell if it has been replaced since
+    public final Cell[][] board = new Cell[App.BOARD_HEIGHT][App.BOARD_WIDTH];
+    public final ArrayList<Ball> balls = new ArrayList<Ball>();
+    public final Queue<Ball> ballQueue = new LinkedList<Ball>();
+    public final ArrayList<Ball> ballsOnBoard = new ArrayList<Ball>(); // For the balls placed by the layout, waiting for their velocity
+    public final ArrayList<Hole> holes = new ArrayList<Hole>();
+    public final WallSet walls = new WallSet();
+    public final ArrayList<Spawner> spawners = new ArrayList<Spawner>();
+
+    /**
+     * Builds the world of a level.
+     *
+     * @param config the config holding the level
+     * @param level the index of the level
+     */
+    public World(GameConfig config, int level){
+        this.level = level;
+        this.config = config;
+        LevelDefinition definition = config.getLevel(level);
+
+        // Create the empty board
+        for (int rowNum = 0; rowNum < App.BOARD_HEIGHT; rowNum++){
+            for (int colNum = 0; colNum < App.BOARD_WIDTH; colNum++){
+                board[rowNum][colNum] = new Cell(
+                    colNum * App.CELLSIZE,
+                    rowNum * App.CELLSIZE + App.TOPBAR);
+            }
+        }
+
+        // Load the balls queue of the level
+        for(int i = 0; i < definition.getBallCount(); i++){
+            Ball newBall = new Ball(-10, -10, definition.getBallColour(i));
+            balls.add(newBall);
+            ballQueue.add(newBall);
+        }
+
+        // Read the gameboard of the level
+        for (int rowNum = 0; rowNum < App.BOARD_HEIGHT ; rowNum++){
+            String row = definition.getRow(rowNum);
+            int length = row.trim().length();
+            for(int colNum = 0; colNum < App.BOARD_WIDTH; colNum++){
+                // Clear the cells after the end of the row, including the lower half of a hole above
+                if(colNum >= length){
+                    board[rowNum][colNum].setGameObject(null);
+                    continue;
+                }
+                int x = colNum * App.CELLSIZE;
+                int y = rowNum * App.CELLSIZE + App.TOPBAR;
+                char c = row.charAt(colNum);
+                switch(c){
+                    case 'X':
+                        addWall(rowNum, colNum, new Wall(x, y, 0, false));
+                        break;
+                    case '1':
+                    case '2':
+                    case '3':
+                    case '4':
+                        addWall(rowNum, colNum, new Wall(x, y, c - '0', false));
+                        break;
+                    case '5':
+                    case '6':
+                    case '7':
+                    case '8':
+                    case '9':
+                        addWall(rowNum, colNum, new Wall(x, y, c - '5', true));
+                        break;
+                    case 'S':
+                        Spawner newSpawner = new Spawner(x, y);
+                        board[rowNum][colNum].setGameObject(newSpawner);
+                        spawners.add(newSpawner);
+                        break;
+                    case 'H':
+                        Hole newHole = new Hole(x, y, row.charAt(colNum+1) - '0');
+                        board[rowNum][colNum].setGameObject(newHole);
+                        board[rowNum][colNum+1].setGameObject(newHole);
+                        board[rowNum+1][colNum].setGameObject(newHole);
+                        board[rowNum+1][colNum+1].setGameObject(newHole);
+                        holes.add(newHole);
+                        colNum++;
+                        break;
+                    case 'B':
+                        board[rowNum][colNum].setGameObject(null);
+                        board[rowNum][colNum+1].setGameObject(null);
+                        Ball newBall = new Ball(x, y, row.charAt(colNum+1) - '0');
+                        balls.add(newBall);
+                        ballsOnBoard.add(newBall);
+                        colNum++;
+                        break;
+                }
+            }
+        }
+
+        // Find the neighbouring walls of every wall for resolving corner hits
+        for(Wall w: walls){
+            w.updateNeighbours(board);
+        }
+    }
+
+    /**
+     * Places a wall or brick on the board.
+     *
+     * @param rowNum the row of the cell
+     * @param colNum the column of the cell
+     * @param wall the wall to place
+     */
+    private void addWall(int rowNum, int colNum, Wall wall){
+        board[rowNum][colNum].setGameObject(wall);
+        walls.add(wall);
+    }
+
+    /**
+     * Starts building the world of a level on a background thread.
+     *
+     * @param config the config holding the level
+     * @param level the index of the level
+     * @return the world once it has been built
+     */
+    public static Future<World> buildLater(GameConfig config, int level){
+        return loader().submit(() -> new World(config, level));
+    }
+
+    /**
+     * Returns a world that was started with {@link #buildLater}, waiting for it if it is not built yet.
+     *
+     * @param pending the world being built
+     * @return the world, or {@code null} if building it failed or was interrupted
+     */
+    public static World await(Future<World> pending){
+        try {
+            return pending.get();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e){
+            return null;
+        }
+    }
+
+    /**
+     * Returns the thread on which the worlds of the next levels are built.
+     *
+     * @return the executor building one world at a time
+     */
+    private static synchronized ExecutorService loader(){
+        if(loader == null){
+            loader = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "inkball-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return loader;
+    }
+}
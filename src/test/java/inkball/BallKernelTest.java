@@ -0,0 +1,81 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Tests moving the balls with the scalar and vector kernels.
+ */
+public class BallKernelTest {
+
+    /**
+     * Creates balls all over and around the board, including queued balls off the board.
+     */
+    private static ArrayList<Ball> createBalls(){
+        Random random = new Random(5);
+        ArrayList<Ball> balls = new ArrayList<Ball>();
+        for(int i = 0; i < 203; i++){
+            Ball b = new Ball(random.nextInt(App.WIDTH + 40) - 20, random.nextInt(App.HEIGHT + 40) - 20, random.nextInt(5));
+            b.updateVelocity(random.nextFloat() * 8 - 4, random.nextFloat() * 8 - 4);
+            if(i % 17 == 0){
+                b.backToQueue();
+            }
+            if(i % 29 == 0){
+                b.absorb();
+            }
+            balls.add(b);
+        }
+        return balls;
+    }
+
+    /**
+     * Tests that both kernels leave every ball exactly where the methods of the ball do.
+     */
+    @Test
+    public void testKernelsMatchBall(){
+        ArrayList<Ball> expected = createBalls();
+        for(int f = 0; f < 300; f++){
+            for(Ball b: expected){
+                b.updatePos();
+            }
+            for(Ball b: expected){
+                b.checkBoundaryCollision();
+            }
+        }
+        for(String name: new String[] {BallKernel.SCALAR, BallKernel.VECTOR}){
+            BallKernel kernel = BallKernel.create(name);
+            assertEquals(name, kernel.getName());
+            ArrayList<Ball> actual = createBalls();
+            for(int f = 0; f < 300; f++){
+                kernel.move(actual);
+                kernel.bounceOffEdges(actual);
+            }
+            for(int i = 0; i < expected.size(); i++){
+                assertEquals(expected.get(i).getXF(), actual.get(i).getXF(), name + " ball " + i);
+                assertEquals(expected.get(i).getYF(), actual.get(i).getYF(), name + " ball " + i);
+                assertEquals(expected.get(i).getVX(), actual.get(i).getVX(), name + " ball " + i);
+                assertEquals(expected.get(i).getVY(), actual.get(i).getVY(), name + " ball " + i);
+                assertEquals(expected.get(i).getX(), actual.get(i).getX(), name + " ball " + i);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> BallKernel.create("gpu"));
+    }
+
+    /**
+     * Tests that a game moved by the vector kernel plays out exactly like one moved ball by ball.
+     */
+    @Test
+    public void testGameWithKernelMatches(){
+        App plain = TestGames.createApp();
+        App vector = TestGames.createApp();
+        vector.ballKernel = BallKernel.create(BallKernel.VECTOR);
+        for(int tick = 0; tick < 20 * App.FPS; tick++){
+            plain.update();
+            vector.update();
+            assertEquals(LockstepSession.stateHash(plain), LockstepSession.stateHash(vector), "tick " + tick);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests generating random level layouts.
+ */
+public class BoardGeneratorTest {
+
+    /**
+     * Creates a generator with more of every element than the defaults.
+     */
+    private static BoardGenerator createGenerator(long seed){
+        BoardGenerator generator = new BoardGenerator(new Random(seed));
+        generator.wallDensity = 0.2f;
+        generator.holes = 6;
+        generator.spawners = 3;
+        generator.boardBalls = 10;
+        return generator;
+    }
+
+    /**
+     * Counts the cells of a layout holding a character.
+     */
+    private static int count(String[] layout, char c){
+        int n = 0;
+        for(String row: layout){
+            for(int i = 0; i < row.length(); i++){
+                if(row.charAt(i) == c){
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Tests that the same seed always gives the same layout, and another seed a different one.
+     */
+    @Test
+    public void testSameSeedSameLayout(){
+        String[] first = createGenerator(5).generate();
+        assertArrayEquals(first, createGenerator(5).generate());
+        assertFalse(Arrays.equals(first, createGenerator(6).generate()));
+    }
+
+    /**
+     * Tests that a layout has the requested number of holes, spawners and balls inside a wall border.
+     */
+    @Test
+    public void testLayoutHasRequestedElements(){
+        for(long seed = 0; seed < 20; seed++){
+            String[] layout = createGenerator(seed).generate();
+            assertEquals(App.BOARD_HEIGHT, layout.length);
+            for(int row = 0; row < App.BOARD_HEIGHT; row++){
+                assertEquals(App.BOARD_WIDTH, layout[row].length());
+                assertEquals('X', layout[row].charAt(0));
+                assertEquals('X', layout[row].charAt(App.BOARD_WIDTH - 1));
+            }
+            assertEquals(App.BOARD_WIDTH, count(new String[] {layout[0]}, 'X'));
+            assertEquals(App.BOARD_WIDTH, count(new String[] {layout[App.BOARD_HEIGHT - 1]}, 'X'));
+            assertEquals(6, count(layout, 'H'), "seed " + seed);
+            assertEquals(3, count(layout, 'S'), "seed " + seed);
+            assertEquals(10, count(layout, 'B'), "seed " + seed);
+        }
+    }
+}
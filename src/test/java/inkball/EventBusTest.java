@@ -0,0 +1,159 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+
+/**
+ * Tests passing the events of the game to several subscribers.
+ */
+public class EventBusTest {
+
+    /**
+     * Tests that every subscriber reads the events in order at its own pace and counts the ones it fell behind on.
+     */
+    @Test
+    public void testSubscribersReadInOrder(){
+        EventBus bus = new EventBus(8);
+        EventBus.Subscription fast = bus.subscribe();
+        EventBus.Subscription slow = bus.subscribe();
+        ArrayList<Integer> fastTicks = new ArrayList<Integer>();
+        ArrayList<Integer> slowTicks = new ArrayList<Integer>();
+        for(int tick = 0; tick < 20; tick++){
+            bus.publish(GameEvent.SPAWN, tick, null, tick % 5, tick);
+            bus.drain(fast, event -> fastTicks.add(event.tick));
+        }
+        assertEquals(20, fastTicks.size());
+        assertEquals(0, fast.getDropped());
+        for(int i = 0; i < 20; i++){
+            assertEquals(i, fastTicks.get(i));
+        }
+
+        // The slow subscriber only finds the events still in the ring, short of the one that may be being written over
+        bus.drain(slow, event -> slowTicks.add(event.tick));
+        assertEquals(7, slowTicks.size());
+        assertEquals(13, slowTicks.get(0));
+        assertEquals(19, slowTicks.get(6));
+        assertEquals(13, slow.getDropped());
+
+        // A new subscriber only sees the events published after it subscribed
+        EventBus.Subscription late = bus.subscribe();
+        assertEquals(0, bus.drain(late, event -> fail()));
+    }
+
+    /**
+     * Tests that a subscriber on another thread never reads an event whose fields come from different publishes.
+     */
+    @Test
+    public void testReaderOnAnotherThreadSeesWholeEvents() throws InterruptedException {
+        EventBus bus = new EventBus(16);
+        EventBus.Subscription reader = bus.subscribe();
+        int total = 200_000;
+        Thread producer = new Thread(() -> {
+            for(int i = 0; i < total; i++){
+                bus.publish(i % GameEvent.TYPE_COUNT, i, null, i * 3, i * 7);
+            }
+        });
+        producer.start();
+        long[] read = {0};
+        long[] last = {-1};
+        EventBus.Handler check = event -> {
+            assertEquals(event.tick % GameEvent.TYPE_COUNT, event.type);
+            assertEquals(event.tick * 3, event.color);
+            assertEquals(event.tick * 7, event.target);
+            assertTrue(event.tick > last[0]);
+            last[0] = event.tick;
+            read[0]++;
+        };
+        while(producer.isAlive()){
+            bus.drain(reader, check);
+        }
+        producer.join();
+        bus.drain(reader, check);
+        assertEquals(total, read[0] + reader.getDropped());
+        assertEquals(total - 1, last[0]);
+    }
+
+    /**
+     * Tests that a ball in a hole of the wrong colour is scored and requeued from the events within the same frame.
+     */
+    @Test
+    public void testScoringReadsWrongHoleEvents(){
+        App app = TestGames.createApp();
+        EventBus.Subscription watcher = app.events.subscribe();
+        Hole hole = null;
+        for(Hole h: app.holes){
+            if(h.getColor() != 0){
+                hole = h;
+            }
+        }
+        Ball ball = new Ball(hole.getX() + App.CELLSIZE - App.BALLSIZE/2, hole.getY() + App.CELLSIZE - App.BALLSIZE/2,
+            hole.getColor() == 1 ? 2 : 1);
+        app.balls.add(ball);
+        app.ballsOnBoard.add(ball);
+        int queued = app.ballQueue.size();
+        app.update();
+
+        assertFalse(app.ballsOnBoard.contains(ball));
+        assertEquals(queued + 1, app.ballQueue.size());
+        assertTrue(app.levelScore < 0);
+        ArrayList<Integer> types = new ArrayList<Integer>();
+        app.events.drain(watcher, event -> types.add(event.type));
+        assertEquals(GameEvent.WRONG_HOLE, types.get(0));
+        assertEquals(GameEvent.REQUEUE, types.get(1));
+    }
+
+    /**
+     * Tests that the subscriber reading every event gets them all in order, however far it falls behind.
+     */
+    @Test
+    public void testEverySubscriberNeverDrops(){
+        EventBus bus = new EventBus(8);
+        ArrayList<Integer> ticks = new ArrayList<Integer>();
+        EventBus.Subscription every = bus.subscribeEvery(event -> ticks.add(event.tick));
+        EventBus.Subscription other = bus.subscribe();
+        for(int tick = 0; tick < 100; tick++){
+            bus.publish(GameEvent.BRICK_HIT, tick, null, 0, 0);
+        }
+        bus.drain(every, event -> ticks.add(event.tick));
+        assertEquals(100, ticks.size());
+        for(int i = 0; i < 100; i++){
+            assertEquals(i, ticks.get(i));
+        }
+        assertEquals(0, every.getDropped());
+        assertTrue(bus.drain(other, event -> {}) < 8);
+        assertTrue(other.getDropped() > 0);
+        assertThrows(IllegalStateException.class, () -> bus.subscribeEvery(event -> {}));
+    }
+
+    /**
+     * Tests that more balls falling into a hole of the wrong colour in one frame than the bus holds are
+     * all scored and requeued.
+     */
+    @Test
+    public void testScoringKeepsUpWithManyEvents(){
+        App app = TestGames.createApp();
+        Hole hole = null;
+        for(Hole h: app.holes){
+            if(h.getColor() != 0){
+                hole = h;
+            }
+        }
+        int count = EventBus.DEFAULT_CAPACITY * 2;
+        for(int i = 0; i < count; i++){
+            Ball ball = new Ball(hole.getX() + App.CELLSIZE - App.BALLSIZE/2, hole.getY() + App.CELLSIZE - App.BALLSIZE/2,
+                hole.getColor() == 1 ? 2 : 1);
+            app.balls.add(ball);
+            app.ballsOnBoard.add(ball);
+        }
+        int onBoard = app.ballsOnBoard.size();
+        int queued = app.ballQueue.size();
+        app.update();
+
+        assertEquals(onBoard - count, app.ballsOnBoard.size());
+        assertEquals(queued + count, app.ballQueue.size());
+        assertEquals(-count * app.config.getWrongHolePenalty(hole.getColor() == 1 ? 2 : 1) * app.getLevel().getDecreaseModifier(),
+            app.levelScore, 1f);
+    }
+}
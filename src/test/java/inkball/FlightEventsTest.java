@@ -0,0 +1,71 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests the events the game writes to JDK Flight Recorder.
+ */
+public class FlightEventsTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Tests that a recorded game writes one tick event per frame and a reset event, and plays out
+     * exactly like a game that is not recorded.
+     */
+    @Test
+    public void testRecordedGameWritesEvents() throws IOException {
+        int frames = 20 * App.FPS;
+        App plain = TestGames.createApp();
+        for(int tick = 0; tick < frames; tick++){
+            plain.update();
+        }
+        Path file = folder.resolve("game.jfr");
+        App recorded;
+        try(Recording recording = new Recording()){
+            for(String name: new String[] {"inkball.Tick", "inkball.Capture", "inkball.BrickBroken", "inkball.LevelReset"}){
+                recording.enable(name);
+            }
+            recording.start();
+            recorded = TestGames.createApp();
+            for(int tick = 0; tick < frames; tick++){
+                recorded.update();
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+        assertEquals(LockstepSession.stateHash(plain), LockstepSession.stateHash(recorded));
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Set<Integer> ticks = new HashSet<Integer>();
+        long resets = 0;
+        long holeTests = 0;
+        for(RecordedEvent event: events){
+            String name = event.getEventType().getName();
+            if(name.equals("inkball.Tick")){
+                assertTrue(ticks.add(event.getInt("tick")));
+                assertTrue(event.getLong("linePhase") >= 0);
+                holeTests += event.getLong("holeTests");
+            } else if(name.equals("inkball.LevelReset")){
+                resets++;
+                assertEquals(0, event.getInt("level"));
+            }
+        }
+        assertEquals(frames, ticks.size());
+        assertEquals(1, resets);
+        assertTrue(holeTests > 0);
+    }
+}
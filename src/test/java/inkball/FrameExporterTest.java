@@ -0,0 +1,38 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Tests saving the frames of a level as images without a window.
+ */
+public class FrameExporterTest {
+
+    /**
+     * Tests that every chosen frame is written as an image of the size of the window.
+     *
+     * @param folder a temporary folder for the images
+     * @throws IOException if the images cannot be written or read
+     */
+    @Test
+    public void testExportsFrames(@TempDir Path folder) throws IOException {
+        FrameExporter exporter = FrameExporter.fromArgs(new String[] {"--export=" + folder, "--frames=6", "--every=2", "--threads=2", "--queue=1"});
+        assertNotNull(exporter);
+        assertEquals(3, exporter.run());
+        for(int i = 0; i < 3; i++){
+            Path file = folder.resolve(String.format("frame-%05d.png", i));
+            assertTrue(Files.exists(file));
+            BufferedImage image = ImageIO.read(file.toFile());
+            assertEquals(App.WIDTH, image.getWidth());
+            assertEquals(App.HEIGHT, image.getHeight());
+        }
+        assertFalse(Files.exists(folder.resolve("frame-00003.png")));
+    }
+}
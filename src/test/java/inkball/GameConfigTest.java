@@ -0,0 +1,86 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests reading the config file into levels shared by every game.
+ */
+public class GameConfigTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Tests that the levels and score tables of the config file are read, and that every game of the
+     * same file shares one config.
+     */
+    @Test
+    public void testConfigReadOnceAndShared(){
+        GameConfig config = GameConfig.load("config.json");
+        assertEquals(3, config.getLevelCount());
+        LevelDefinition first = config.getLevel(0);
+        assertEquals("level1.txt", first.getName());
+        assertEquals(120, first.getTime());
+        assertEquals(10, first.getSpawnInterval());
+        assertEquals(1.0f, first.getIncreaseModifier());
+        assertEquals(6, first.getBallCount());
+        assertEquals(2, first.getBallColour(0));
+        assertEquals(1, first.getBallColour(1));
+        assertEquals(1.2f, config.getLevel(1).getIncreaseModifier());
+        assertEquals(70, config.getCaptureScore(0));
+        assertEquals(100, config.getCaptureScore(4));
+        assertEquals(0, config.getWrongHolePenalty(0));
+        assertEquals(25, config.getWrongHolePenalty(1));
+
+        App a = TestGames.createApp();
+        App b = TestGames.createApp();
+        assertSame(config, a.config);
+        assertSame(config, b.config);
+        assertSame(config, a.fork(1).config);
+        assertThrows(UnsupportedOperationException.class, () -> config.getLevels().clear());
+        String[] layout = first.getLayout();
+        layout[0] = "changed";
+        assertNotEquals("changed", first.getRow(0));
+    }
+
+    /**
+     * Tests that a config file is read again after it has been changed, and that mistakes are reported.
+     */
+    @Test
+    public void testReloadAndValidation() throws IOException {
+        Path layout = folder.resolve("level.txt");
+        Files.write(layout, Arrays.asList("XXXX", "S  H1"));
+        Path file = folder.resolve("config.json");
+        String level = "{\"layout\": \"" + layout.toString().replace("\\", "\\\\") + "\", \"time\": %d, \"spawn_interval\": 5,"
+            + " \"score_increase_from_hole_capture_modifier\": 1.0, \"score_decrease_from_wrong_hole_modifier\": 1.0,"
+            + " \"balls\": [%s]}";
+        String scores = "\"score_increase_from_hole_capture\": {\"grey\": 1, \"orange\": 2, \"blue\": 3, \"green\": 4, \"yellow\": 5},"
+            + " \"score_decrease_from_wrong_hole\": {\"grey\": 1, \"orange\": 2, \"blue\": 3, \"green\": 4, \"yellow\": 5}";
+        Files.write(file, Collections.singletonList("{\"levels\": [" + String.format(level, 60, "\"blue\"") + "], " + scores + "}"));
+        GameConfig config = GameConfig.load(file.toString());
+        assertSame(config, GameConfig.load(file.toString()));
+        assertEquals(60, config.getLevel(0).getTime());
+        assertEquals("S  H1", config.getLevel(0).getRow(1));
+        assertEquals("", config.getLevel(0).getRow(2));
+
+        Files.write(file, Collections.singletonList("{\"levels\": [" + String.format(level, 90, "\"blue\"") + "], " + scores + "}"));
+        file.toFile().setLastModified(file.toFile().lastModified() + 2000);
+        GameConfig changed = GameConfig.load(file.toString());
+        assertNotSame(config, changed);
+        assertEquals(90, changed.getLevel(0).getTime());
+
+        Files.write(file, Collections.singletonList("{\"levels\": [" + String.format(level, 60, "\"purple\"") + "], " + scores + "}"));
+        file.toFile().setLastModified(file.toFile().lastModified() + 4000);
+        assertThrows(IllegalArgumentException.class, () -> GameConfig.load(file.toString()));
+        assertThrows(IllegalArgumentException.class, () -> new LevelDefinition("bad", new String[0], 0, 5, 1f, 1f, Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> new GameConfig(Collections.emptyList(), 50, 25));
+    }
+}
@@ -0,0 +1,186 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests saving scores and reading the best ones back from the high-score store.
+ */
+public class HighScoreStoreTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Saves random scores of a few levels and whole games, keeping a copy of every score.
+     */
+    private static List<int[]> fill(HighScoreStore store, int count, long seed) throws IOException {
+        Random random = new Random(seed);
+        List<int[]> saved = new ArrayList<int[]>();
+        for(int i = 0; i < count; i++){
+            int level = random.nextInt(4) - 1;
+            int score = random.nextInt(50);
+            store.record(level, score, random.nextInt(60000), seed + i);
+            saved.add(new int[] {level, score, i});
+        }
+        return saved;
+    }
+
+    /**
+     * Checks that the best scores of every level are the highest saved, the earlier first on a tie.
+     */
+    private static void assertTop(HighScoreStore store, List<int[]> saved){
+        for(int level = -1; level < 3; level++){
+            final int l = level;
+            List<int[]> expected = new ArrayList<int[]>();
+            for(int[] s: saved){
+                if(s[0] == l){
+                    expected.add(s);
+                }
+            }
+            expected.sort(Comparator.<int[]>comparingInt(s -> -s[1]).thenComparingInt(s -> s[2]));
+            List<HighScoreStore.Entry> top = store.top(level);
+            assertEquals(Math.min(HighScoreStore.TOP, expected.size()), top.size(), "level " + level);
+            for(int i = 0; i < top.size(); i++){
+                assertEquals(expected.get(i)[1], top.get(i).score, "level " + level + " place " + i);
+                assertEquals(expected.get(i)[2], top.get(i).record, "level " + level + " place " + i);
+            }
+        }
+    }
+
+    /**
+     * Tests that the best scores match sorting every score, also after opening the store again.
+     */
+    @Test
+    public void testTopMatchesAllScores() throws IOException {
+        HighScoreStore store = HighScoreStore.open(folder);
+        List<int[]> saved = fill(store, 500, 1);
+        assertEquals(500, store.size());
+        assertTop(store, saved);
+        store.close();
+
+        store = HighScoreStore.open(folder);
+        assertEquals(500, store.size());
+        assertTop(store, saved);
+        saved.addAll(fill(store, 100, 2));
+        for(int i = 500; i < saved.size(); i++){
+            saved.get(i)[2] = i;
+        }
+        assertTop(store, saved);
+        store.close();
+    }
+
+    /**
+     * Tests that scores the index missed are read from the record file, and a cut-off record dropped.
+     */
+    @Test
+    public void testReplaysRecordsAfterIndex() throws IOException {
+        HighScoreStore store = HighScoreStore.open(folder);
+        List<int[]> saved = fill(store, 40, 3);
+        store.close();
+
+        // Go back to an index that took in only 30 records, as if the game was killed
+        try(RandomAccessFile index = new RandomAccessFile(folder.resolve("scores.idx").toFile(), "rw")){
+            index.seek(16);
+            index.writeLong(30);
+        }
+        // Add half of a record to the end
+        try(RandomAccessFile log = new RandomAccessFile(folder.resolve("scores.log").toFile(), "rw")){
+            log.seek(log.length());
+            log.write(new byte[12]);
+        }
+
+        store = HighScoreStore.open(folder);
+        assertEquals(40, store.size());
+        assertEquals(40 * 32, Files.size(folder.resolve("scores.log")));
+        assertTop(store, saved);
+        store.close();
+    }
+
+    /**
+     * Tests that a damaged index is built again from the record file.
+     */
+    @Test
+    public void testRebuildsDamagedIndex() throws IOException {
+        HighScoreStore store = HighScoreStore.open(folder);
+        List<int[]> saved = fill(store, 80, 4);
+        store.close();
+
+        try(RandomAccessFile index = new RandomAccessFile(folder.resolve("scores.idx").toFile(), "rw")){
+            index.writeInt(0);
+        }
+
+        store = HighScoreStore.open(folder);
+        assertEquals(80, store.size());
+        assertTop(store, saved);
+        assertTrue(store.top(HighScoreStore.MAX_LEVELS).isEmpty());
+        store.close();
+    }
+
+    /**
+     * Tests that the scores handed to the background thread are all written by the time the store is closed.
+     */
+    @Test
+    public void testRecordLaterWritesBeforeClose() throws IOException {
+        HighScoreStore store = HighScoreStore.open(folder);
+        List<int[]> saved = new ArrayList<int[]>();
+        for(int i = 0; i < 200; i++){
+            store.recordLater(i % 3, i * 7 % 50, 1000, i);
+            saved.add(new int[] {i % 3, i * 7 % 50, i});
+        }
+        store.close();
+
+        store = HighScoreStore.open(folder);
+        assertEquals(200, store.size());
+        assertTop(store, saved);
+        store.close();
+    }
+
+    /**
+     * Tests that a level cleared again after rewinding into its score conversion is saved only once,
+     * and that the next play of the level is saved again.
+     */
+    @Test
+    public void testLevelSavedOnceAfterRewind() throws IOException {
+        App app = TestGames.createApp();
+        app.highScores = HighScoreStore.open(folder);
+        for(int tick = 0; tick < 2 * App.FPS; tick++){
+            app.update();
+        }
+        for(Ball b: app.balls){
+            b.absorb();
+        }
+        app.checkWin();
+        assertTrue(app.levelUp);
+        assertTrue(app.rewind(App.FPS));
+        assertEquals(-1, app.remainingTime);
+        for(Ball b: app.balls){
+            b.absorb();
+        }
+        app.checkWin();
+        assertTrue(app.levelUp);
+
+        // Playing the level again from the start saves it again
+        app.reset();
+        for(Ball b: app.balls){
+            b.absorb();
+        }
+        app.checkWin();
+        app.highScores.close();
+
+        HighScoreStore store = HighScoreStore.open(folder);
+        assertEquals(2, store.size());
+        assertEquals(2, store.top(0).size());
+        store.close();
+    }
+}
@@ -0,0 +1,200 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests pulling the balls towards the holes with the precomputed field.
+ */
+public class HoleFieldTest {
+
+    /**
+     * Creates a ball centred at a position.
+     */
+    private static Ball createBall(float centreX, float centreY, int colour, float vx, float vy){
+        Ball b = new Ball(0, 0, colour);
+        b.moveTo(centreX - App.BALLSIZE/2, centreY - App.BALLSIZE/2);
+        b.updateVelocity(vx, vy);
+        return b;
+    }
+
+    /**
+     * Checks the field of some holes against checking every ball against every hole, for balls put
+     * at random across the board and around the holes.
+     * @param holes The holes on the board
+     * @param seed The seed of the positions and velocities of the balls
+     * @return The number of balls pulled and the number captured
+     */
+    private static int[] assertMatches(List<Hole> holes, long seed){
+        HoleField field = new HoleField(holes);
+        Random random = new Random(seed);
+        int pulled = 0;
+        int captured = 0;
+        for(int n = 0; n < 200000; n++){
+            // Put half of the balls near a hole, where the field matters
+            float x;
+            float y;
+            if(n % 2 == 0){
+                Hole h = holes.get(random.nextInt(holes.size()));
+                x = h.getX() + App.CELLSIZE + random.nextFloat() * 80 - 40;
+                y = h.getY() + App.CELLSIZE + random.nextFloat() * 80 - 40;
+            } else {
+                x = random.nextFloat() * App.WIDTH;
+                y = App.TOPBAR + random.nextFloat() * (App.HEIGHT - App.TOPBAR);
+            }
+            int colour = random.nextInt(5);
+            float vx = random.nextFloat() * 4 - 2;
+            float vy = random.nextFloat() * 4 - 2;
+            Ball expected = createBall(x, y, colour, vx, vy);
+            Ball actual = createBall(x, y, colour, vx, vy);
+
+            int expectedHole = -1;
+            int expectedResult = -1;
+            for(int h = 0; h < holes.size() && expectedHole < 0; h++){
+                expectedResult = holes.get(h).tryAbsorb(expected);
+                if(expectedResult >= 0){
+                    expectedHole = h;
+                }
+            }
+            int actualHole = field.tryAbsorb(actual);
+            assertEquals(expectedHole, actualHole, "ball at " + x + ", " + y);
+            if(actualHole >= 0){
+                assertEquals(expectedResult, holes.get(actualHole).fall(actual));
+                assertEquals(expected.IsAbsorbed(), actual.IsAbsorbed());
+                captured++;
+                continue;
+            }
+
+            // Leave out the balls within half a pixel of the edge of the pull
+            double nearest = Double.MAX_VALUE;
+            for(Hole h: holes){
+                float dx = x - (h.getX() + App.CELLSIZE);
+                float dy = y - (h.getY() + App.CELLSIZE);
+                nearest = Math.min(nearest, Math.sqrt(dx * dx + dy * dy));
+            }
+            if(Math.abs(nearest - App.CELLSIZE) < 0.5){
+                continue;
+            }
+            assertEquals(expected.beingAbsorbed, actual.beingAbsorbed, "ball at " + x + ", " + y);
+            assertEquals(expected.getVX(), actual.getVX(), 1e-5f, "ball at " + x + ", " + y);
+            assertEquals(expected.getVY(), actual.getVY(), 1e-5f, "ball at " + x + ", " + y);
+            assertEquals(expected.displayProp, actual.displayProp, 0.01f, "ball at " + x + ", " + y);
+            if(actual.beingAbsorbed){
+                pulled++;
+            }
+        }
+        return new int[]{pulled, captured};
+    }
+
+    /**
+     * Tests that the field gives the capture of every ball exactly, and its pull and size within a
+     * small tolerance, compared to checking it against every hole.
+     */
+    @Test
+    public void testFieldMatchesHoles(){
+        App app = TestGames.createApp();
+        assertFalse(app.holes.isEmpty());
+        int[] counts = assertMatches(app.holes, 11);
+        assertTrue(counts[0] > 10000);
+        assertTrue(counts[1] > 1000);
+    }
+
+    /**
+     * Tests that the field pulls the balls between two holes side by side, across, down and
+     * diagonally, where the nearest hole changes between the samples around a ball.
+     */
+    @Test
+    public void testFieldMatchesHolesSideBySide(){
+        List<Hole> holes = new ArrayList<>();
+        holes.add(new Hole(2 * App.CELLSIZE, App.TOPBAR + 2 * App.CELLSIZE, 1));
+        holes.add(new Hole(4 * App.CELLSIZE, App.TOPBAR + 2 * App.CELLSIZE, 2));
+        holes.add(new Hole(2 * App.CELLSIZE, App.TOPBAR + 4 * App.CELLSIZE, 3));
+        holes.add(new Hole(10 * App.CELLSIZE, App.TOPBAR + 10 * App.CELLSIZE, 4));
+        holes.add(new Hole(12 * App.CELLSIZE, App.TOPBAR + 12 * App.CELLSIZE, 0));
+        int[] counts = assertMatches(holes, 13);
+        assertTrue(counts[0] > 10000);
+        assertTrue(counts[1] > 1000);
+    }
+
+    /**
+     * Tests that a level played with the field scores the same as without it, with every ball within
+     * two pixels after 100 seconds.
+     */
+    @Test
+    public void testGameWithFieldStaysClose(){
+        App plain = TestGames.createApp();
+        App table = TestGames.createApp();
+        table.useHoleField = true;
+        // Start both levels again so that they draw the same random numbers
+        plain.reset();
+        table.reset();
+        for(int tick = 0; tick < 100 * App.FPS; tick++){
+            plain.update();
+            table.update();
+        }
+        assertTrue(plain.levelScore > 0);
+        assertEquals(plain.levelScore, table.levelScore);
+        assertEquals(plain.ballsOnBoard.size(), table.ballsOnBoard.size());
+        for(int i = 0; i < plain.balls.size(); i++){
+            assertEquals(plain.balls.get(i).getXF(), table.balls.get(i).getXF(), 2f, "ball " + i);
+            assertEquals(plain.balls.get(i).getYF(), table.balls.get(i).getYF(), 2f, "ball " + i);
+        }
+    }
+
+    /**
+     * Plays a copy of a game for a number of frames and sums up where it ended.
+     */
+    private static double playCopy(App app, long seed, int frames){
+        App copy = app.fork(seed);
+        for(int tick = 0; tick < frames; tick++){
+            copy.update();
+        }
+        double sum = copy.levelScore * 1000.0 + copy.ballsOnBoard.size() * 100.0 + copy.ballQueue.size();
+        for(Ball b: copy.balls){
+            sum += b.getXF() + b.getYF() * 3;
+        }
+        return sum;
+    }
+
+    /**
+     * Tests that copies of a game sharing its field play the same on several threads at once as one
+     * after the other.
+     */
+    @Test
+    public void testCopiesShareFieldAcrossThreads() throws Exception {
+        // Fill a board with many holes and balls, so that balls fall in on most frames
+        StressTest stress = StressTest.fromArgs(new String[] {"--stress", "--holes=12", "--balls=800", "--threads=1", "--hole-field"});
+        App app = new App();
+        app.clock = new VirtualClock();
+        app.random = new Random(stress.seed);
+        stress.apply(app);
+        app.reset();
+        stress.populate(app);
+        int copies = 16;
+        int frames = 10 * App.FPS;
+        double[] expected = new double[copies];
+        for(int i = 0; i < copies; i++){
+            expected[i] = playCopy(app, i, frames);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Double>> results = new ArrayList<Future<Double>>();
+            for(int i = 0; i < copies; i++){
+                final long seed = i;
+                results.add(pool.submit(() -> playCopy(app, seed, frames)));
+            }
+            for(int i = 0; i < copies; i++){
+                assertEquals(expected[i], results.get(i).get(), "copy " + i);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Tests the grid of ink points used by the eraser.
+ */
+public class InkIndexTest {
+
+    /**
+     * Creates a line of evenly spaced points.
+     */
+    private static InkStroke line(float x, float y, float dx, float dy, int points){
+        InkStroke line = new InkStroke();
+        for(int i = 0; i < points; i++){
+            line.add(x + dx * i, y + dy * i);
+        }
+        return line;
+    }
+
+    /**
+     * Finds the first line with a point under a position by checking every point.
+     */
+    private static int scan(ArrayList<InkStroke> lines, float x, float y){
+        for(int i = 0; i < lines.size(); i++){
+            for(int k = 0; k < lines.get(i).size(); k++){
+                if(InkIndex.inside(lines.get(i), k, x, y, App.POINTSIZE/2)){
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tests that the index finds the same line as checking every point while lines grow, go and come back.
+     */
+    @Test
+    public void testMatchesFullScan(){
+        Random random = new Random(11);
+        ArrayList<InkStroke> lines = new ArrayList<InkStroke>();
+        InkIndex index = new InkIndex();
+        for(int round = 0; round < 300; round++){
+            int change = random.nextInt(4);
+            if(change == 0 || lines.isEmpty()){
+                lines.add(line(random.nextFloat() * App.WIDTH, random.nextFloat() * App.HEIGHT,
+                    random.nextFloat() * 8 - 4, random.nextFloat() * 8 - 4, 1 + random.nextInt(40)));
+            } else if(change == 1){
+                InkStroke grown = lines.get(random.nextInt(lines.size()));
+                grown.add(random.nextFloat() * App.WIDTH, random.nextFloat() * App.HEIGHT);
+            } else if(change == 2){
+                lines.remove(random.nextInt(lines.size()));
+            } else {
+                // Cut a line back and put it at the front, as a rewind might
+                InkStroke cut = lines.remove(random.nextInt(lines.size()));
+                cut.truncate(cut.size() / 2);
+                lines.add(0, cut);
+            }
+            index.sync(lines);
+            for(int probe = 0; probe < 50; probe++){
+                float x = random.nextFloat() * App.WIDTH;
+                float y = random.nextFloat() * App.HEIGHT;
+                assertEquals(scan(lines, x, y), index.findFirst(x, y, App.POINTSIZE/2));
+            }
+            // Probe on the points themselves so that hits are checked as well as misses
+            InkStroke some = lines.isEmpty() ? null : lines.get(random.nextInt(lines.size()));
+            if(some != null && !some.isEmpty()){
+                float x = some.getX(some.size() - 1);
+                float y = some.getY(some.size() - 1);
+                assertEquals(scan(lines, x, y), index.findFirst(x, y, App.POINTSIZE/2));
+            }
+        }
+    }
+
+    /**
+     * Tests that a line cut back and grown again between two syncs is indexed with its new points,
+     * as happens when the line being drawn is rewound and the player keeps drawing.
+     */
+    @Test
+    public void testCutAndRegrownBetweenSyncs(){
+        ArrayList<InkStroke> lines = new ArrayList<InkStroke>();
+        InkStroke drawn = line(100, 100, 4, 0, 10);
+        lines.add(drawn);
+        InkIndex index = new InkIndex();
+        index.sync(lines);
+        drawn.truncate(5);
+        for(int i = 0; i < 5; i++){
+            drawn.add(100 + 4 * i, 300);
+        }
+        index.sync(lines);
+        assertEquals(10, drawn.size());
+        assertEquals(0, index.findFirst(108, 300, App.POINTSIZE/2));
+        assertEquals(-1, index.findFirst(132, 100, App.POINTSIZE/2));
+
+        // Make several changes between syncs, cutting lines back and growing them again
+        Random random = new Random(5);
+        for(int round = 0; round < 200; round++){
+            for(int change = 0; change < 4; change++){
+                if(lines.isEmpty() || random.nextInt(4) == 0){
+                    lines.add(line(random.nextFloat() * App.WIDTH, random.nextFloat() * App.HEIGHT,
+                        random.nextFloat() * 8 - 4, random.nextFloat() * 8 - 4, 1 + random.nextInt(20)));
+                }
+                InkStroke changed = lines.get(random.nextInt(lines.size()));
+                if(random.nextBoolean()){
+                    changed.truncate(random.nextInt(changed.size() + 1));
+                }
+                for(int k = random.nextInt(6); k > 0; k--){
+                    changed.add(random.nextFloat() * App.WIDTH, random.nextFloat() * App.HEIGHT);
+                }
+            }
+            index.sync(lines);
+            for(InkStroke line: lines){
+                for(int k = 0; k < line.size(); k++){
+                    float x = line.getX(k);
+                    float y = line.getY(k);
+                    assertEquals(scan(lines, x, y), index.findFirst(x, y, App.POINTSIZE/2));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that erasing part of a line splits it around the erased points.
+     */
+    @Test
+    public void testEraseSpanSplitsLine(){
+        App app = new App();
+        app.lines = new ArrayList<InkStroke>();
+        InkStroke other = line(100, 400, 4, 0, 10);
+        InkStroke drawn = line(100, 100, 4, 0, 30);
+        app.lines.add(other);
+        app.lines.add(drawn);
+        app.currentStroke[0] = drawn;
+
+        // Points 9 to 11 are within 5 pixels of x = 140
+        app.eraseSpanAt(140, 100);
+        assertEquals(3, app.lines.size());
+        assertSame(other, app.lines.get(0));
+        InkStroke before = app.lines.get(1);
+        InkStroke after = app.lines.get(2);
+        assertEquals(9, before.size());
+        assertEquals(132f, before.getX(8));
+        assertEquals(18, after.size());
+        assertEquals(148f, after.getX(0));
+        // Drawing continues on the part after the cut
+        assertSame(after, app.currentStroke[0]);
+
+        // Erasing the first point only leaves the rest of the line
+        app.eraseSpanAt(98, 100);
+        assertEquals(8, app.lines.get(1).size());
+        app.eraseSpanAt(300, 300);
+        assertEquals(3, app.lines.size());
+
+        app.eraseAt(110, 400);
+        assertEquals(2, app.lines.size());
+        assertFalse(app.lines.contains(other));
+    }
+}
@@ -0,0 +1,132 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests searching for the lines that lead the balls into their holes.
+ */
+public class InkSolverTest {
+
+    /**
+     * Creates a game of a level with one blue ball and one blue hole, which the ball does not find
+     * without lines.
+     */
+    private static App createApp(){
+        String[] layout = new String[App.BOARD_HEIGHT];
+        for(int row = 0; row < App.BOARD_HEIGHT; row++){
+            layout[row] = row == 0 || row == App.BOARD_HEIGHT - 1 ? "XXXXXXXXXXXXXXXXXX" : "X                X";
+        }
+        layout[3] = "X  B2            X";
+        layout[12] = "X          H2    X";
+        App app = new App();
+        app.clock = new VirtualClock();
+        app.random = new Random(1);
+        app.config = new GameConfig(Collections.singletonList(
+            new LevelDefinition("solver", layout, 30, 5, 1f, 1f, new ArrayList<String>())), 50, 25);
+        app.reset();
+        return app;
+    }
+
+    /**
+     * Plays a game until the level is finished or lost, drawing the lines of the solver if there is one.
+     *
+     * @return the number of frames played
+     */
+    private static int play(App app, InkSolver solver){
+        int tick = 0;
+        while(!app.levelUp && !app.gameOver && tick < 31 * App.FPS){
+            if(solver != null && tick % solver.replanInterval == 0 && !app.ballsOnBoard.isEmpty()){
+                for(InkStroke stroke: solver.solve(app)){
+                    app.lines.add(new InkStroke(stroke));
+                }
+            }
+            app.update();
+            tick++;
+        }
+        return tick;
+    }
+
+    /**
+     * Tests that the solver finishes a level that is lost without lines, always with the same lines.
+     */
+    @Test
+    public void testSolvesSmallLevel(){
+        App plain = createApp();
+        play(plain, null);
+        assertFalse(plain.levelUp);
+
+        InkSolver solver = InkSolver.fromArgs(new String[] {"--solve", "--seed=1", "--beam=4", "--depth=2", "--threads=2"});
+        App first = createApp();
+        List<InkStroke> firstPlan = solver.solve(first);
+        List<InkStroke> secondPlan = solver.solve(createApp());
+        assertFalse(firstPlan.isEmpty());
+        assertEquals(firstPlan.size(), secondPlan.size());
+        for(int i = 0; i < firstPlan.size(); i++){
+            assertEquals(firstPlan.get(i).size(), secondPlan.get(i).size());
+            for(int p = 0; p < firstPlan.get(i).size(); p++){
+                assertEquals(firstPlan.get(i).getX(p), secondPlan.get(i).getX(p));
+                assertEquals(firstPlan.get(i).getY(p), secondPlan.get(i).getY(p));
+            }
+        }
+        assertTrue(solver.evaluate(first, firstPlan) > solver.evaluate(first, new ArrayList<InkStroke>()));
+
+        App solved = createApp();
+        int ticks = play(solved, solver);
+        assertTrue(solved.levelUp);
+        assertTrue(ticks < 10 * App.FPS);
+    }
+
+    /**
+     * Tests that searching for a hint leaves the game being played as it would have been without it.
+     */
+    @Test
+    public void testHintLeavesGameUntouched() throws InterruptedException {
+        App app = TestGames.createApp();
+        App twin = TestGames.createApp();
+        app.requestHint();
+        // The hint draws the seed of its copy from the game
+        twin.random.nextLong();
+        // Keep playing while the search runs, as the game does
+        int ticks = 0;
+        while(app.hint == null && ticks < 100000){
+            app.update();
+            twin.update();
+            ticks++;
+            if(ticks % 10 == 0){
+                Thread.sleep(1);
+            }
+        }
+        assertNotNull(app.hint);
+        assertTrue(app.lines.isEmpty());
+        assertEquals(twin.levelScore, app.levelScore);
+        assertEquals(twin.ballQueue.size(), app.ballQueue.size());
+        assertEquals(twin.balls.size(), app.balls.size());
+        for(int i = 0; i < twin.balls.size(); i++){
+            assertEquals(twin.balls.get(i).getXF(), app.balls.get(i).getXF());
+            assertEquals(twin.balls.get(i).getYF(), app.balls.get(i).getYF());
+            assertEquals(twin.balls.get(i).getVX(), app.balls.get(i).getVX());
+            assertEquals(twin.balls.get(i).getVY(), app.balls.get(i).getVY());
+        }
+        assertEquals(twin.random.nextLong(), app.random.nextLong());
+    }
+
+    /**
+     * Tests that the batch solver is only created with {@code --solve} and reports unknown arguments.
+     */
+    @Test
+    public void testFromArgs(){
+        assertNull(InkSolver.fromArgs(new String[] {"--beam=3"}));
+        InkSolver solver = InkSolver.fromArgs(new String[] {"--solve", "--level=2", "--horizon=90", "--config=other.json"});
+        assertEquals(1, solver.level);
+        assertEquals(90, solver.horizon);
+        assertEquals("other.json", solver.configPath);
+        assertThrows(IllegalArgumentException.class, () -> InkSolver.fromArgs(new String[] {"--solve", "--width=3"}));
+        assertThrows(IllegalArgumentException.class, () -> InkSolver.fromArgs(new String[] {"--solve", "fast"}));
+    }
+}
@@ -0,0 +1,110 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+/**
+ * Tests the point arrays and the segment geometry of a drawn line.
+ */
+public class InkStrokeTest {
+
+    /**
+     * Tests that the quick checks never skip a position from which a ball touches a segment.
+     */
+    @Test
+    public void testMayTouchNeverMissesContact(){
+        Random random = new Random(7);
+        for(int n = 0; n < 20; n++){
+            InkStroke line = new InkStroke(2);
+            float x = 100 + random.nextFloat() * 400;
+            float y = 100 + random.nextFloat() * 400;
+            for(int i = 0; i < 30; i++){
+                line.add(x, y);
+                x += random.nextFloat() * 20 - 10;
+                y += random.nextFloat() * 20 - 10;
+            }
+            for(int k = 0; k < 2000; k++){
+                float cx = random.nextFloat() * App.WIDTH;
+                float cy = random.nextFloat() * App.HEIGHT;
+                for(int s = 0; s < line.size() - 1; s++){
+                    double distanceP1 = Math.sqrt(Math.pow(line.getX(s) - cx, 2) + Math.pow(line.getY(s) - cy, 2));
+                    double distanceP2 = Math.sqrt(Math.pow(line.getX(s + 1) - cx, 2) + Math.pow(line.getY(s + 1) - cy, 2));
+                    if(distanceP1 + distanceP2 < line.getReach(s)){
+                        assertTrue(line.mayTouch(cx, cy));
+                        assertTrue(line.mayTouch(s, cx, cy));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that the hierarchy of a long line lists every segment a ball touches, in order.
+     */
+    @Test
+    public void testHierarchyKeepsTouchedSegments(){
+        Random random = new Random(9);
+        for(int n = 0; n < 10; n++){
+            InkStroke line = new InkStroke();
+            float x = random.nextFloat() * App.WIDTH;
+            float y = App.TOPBAR + random.nextFloat() * (App.HEIGHT - App.TOPBAR);
+            for(int i = 0; i < 600; i++){
+                line.add(x, y);
+                x = Math.max(0, Math.min(App.WIDTH, x + random.nextFloat() * 16 - 8));
+                y = Math.max(App.TOPBAR, Math.min(App.HEIGHT, y + random.nextFloat() * 16 - 8));
+                if(i == 400){
+                    // Cutting a line back keeps its boxes large enough
+                    line.truncate(300);
+                }
+            }
+            for(int k = 0; k < 500; k++){
+                float cx = random.nextFloat() * App.WIDTH;
+                float cy = random.nextFloat() * App.HEIGHT;
+                int candidate = line.nextCandidate(0, cx, cy);
+                for(int s = 0; s < line.size() - 1; s++){
+                    double distanceP1 = Math.sqrt(Math.pow(line.getX(s) - cx, 2) + Math.pow(line.getY(s) - cy, 2));
+                    double distanceP2 = Math.sqrt(Math.pow(line.getX(s + 1) - cx, 2) + Math.pow(line.getY(s + 1) - cy, 2));
+                    if(distanceP1 + distanceP2 < line.getReach(s)){
+                        while(candidate >= 0 && candidate < s){
+                            candidate = line.nextCandidate(candidate + 1, cx, cy);
+                        }
+                        assertEquals(s, candidate);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that a copy grows on its own and that cutting a line back keeps its first points.
+     */
+    @Test
+    public void testCopyAndTruncate(){
+        InkStroke line = new InkStroke(2);
+        for(int i = 0; i < 10; i++){
+            line.add(i, 2 * i);
+        }
+        InkStroke copy = new InkStroke(line);
+        copy.add(50, 50);
+        assertEquals(10, line.size());
+        assertEquals(11, copy.size());
+        assertEquals(9f, copy.getX(9));
+        assertEquals(18f, copy.getY(9));
+
+        // The normal of a segment along (1, 2) points to its left
+        float length = (float) Math.sqrt(5);
+        assertEquals(-2 / length, line.getNormalX(0), 1e-6);
+        assertEquals(1 / length, line.getNormalY(0), 1e-6);
+
+        line.truncate(4);
+        assertEquals(4, line.size());
+        line.add(7, 7);
+        assertEquals(7f, line.getX(4));
+        assertEquals((3 + 7) / 2f, line.getMidX(3));
+        line.truncate(0);
+        assertTrue(line.isEmpty());
+        assertFalse(line.mayTouch(0, 0));
+    }
+}
@@ -0,0 +1,123 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests generating levels and keeping only those the balls can finish.
+ */
+public class LevelGeneratorTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Creates a small generator that validates its candidates quickly.
+     */
+    private static LevelGenerator createGenerator(){
+        LevelGenerator generator = new LevelGenerator();
+        generator.seed = 4;
+        generator.count = 2;
+        generator.balls = 2;
+        generator.time = 60;
+        generator.spawnInterval = 2;
+        generator.simulations = 4;
+        generator.minSuccessRate = 0.5f;
+        generator.threads = 2;
+        return generator;
+    }
+
+    /**
+     * Creates a layout with a wall border, a spawner and one orange hole.
+     */
+    private static String[] createLayout(){
+        String[] layout = new String[App.BOARD_HEIGHT];
+        char[] border = new char[App.BOARD_WIDTH];
+        Arrays.fill(border, 'X');
+        char[] inside = new char[App.BOARD_WIDTH];
+        Arrays.fill(inside, ' ');
+        inside[0] = 'X';
+        inside[App.BOARD_WIDTH - 1] = 'X';
+        for(int row = 0; row < App.BOARD_HEIGHT; row++){
+            layout[row] = new String(row == 0 || row == App.BOARD_HEIGHT - 1 ? border : inside);
+        }
+        layout[2] = "X S" + layout[2].substring(3);
+        layout[8] = layout[8].substring(0, 8) + "H1" + layout[8].substring(10);
+        return layout;
+    }
+
+    /**
+     * Tests that a candidate whose balls match no hole is never finished, and that one with an
+     * unknown ball colour cannot be played.
+     */
+    @Test
+    public void testBadCandidatesRejected(){
+        LevelGenerator generator = createGenerator();
+        LevelGenerator.Candidate unsolvable = new LevelGenerator.Candidate(1, createLayout(),
+            new ArrayList<String>(Arrays.asList("blue", "green")));
+        for(long runSeed = 0; runSeed < 4; runSeed++){
+            assertFalse(generator.simulate(unsolvable, runSeed));
+        }
+        LevelGenerator.Candidate invalid = new LevelGenerator.Candidate(2, createLayout(),
+            new ArrayList<String>(Arrays.asList("purple")));
+        assertThrows(IllegalArgumentException.class, () -> generator.simulate(invalid, 0));
+    }
+
+    /**
+     * Tests that every accepted candidate was finished in enough of its runs, and that the same seed
+     * generates the same levels.
+     */
+    @Test
+    public void testAcceptedCandidatesAreFinished() throws InterruptedException {
+        LevelGenerator generator = createGenerator();
+        List<LevelGenerator.Candidate> levels = generator.generate();
+        assertEquals(2, levels.size());
+        for(LevelGenerator.Candidate level: levels){
+            int successes = 0;
+            for(int j = 0; j < generator.simulations; j++){
+                if(generator.simulate(level, level.seed * 31 + j)){
+                    successes++;
+                }
+            }
+            assertTrue(successes >= 2, "candidate " + level.seed);
+        }
+        List<LevelGenerator.Candidate> again = createGenerator().generate();
+        for(int i = 0; i < levels.size(); i++){
+            assertEquals(levels.get(i).seed, again.get(i).seed);
+            assertArrayEquals(levels.get(i).layout, again.get(i).layout);
+        }
+    }
+
+    /**
+     * Tests that the written config file is read back into the same levels.
+     */
+    @Test
+    public void testWrittenConfigLoads() throws IOException {
+        LevelGenerator generator = createGenerator();
+        generator.outDir = folder.toString();
+        List<LevelGenerator.Candidate> levels = Arrays.asList(generator.createCandidate(10), generator.createCandidate(11));
+        generator.write(levels);
+
+        GameConfig config = GameConfig.load(folder.resolve("config.json").toString());
+        assertEquals(2, config.getLevelCount());
+        for(int i = 0; i < levels.size(); i++){
+            LevelDefinition level = config.getLevel(i);
+            assertArrayEquals(levels.get(i).layout, level.getLayout());
+            assertEquals(generator.time, level.getTime());
+            assertEquals(generator.spawnInterval, level.getSpawnInterval());
+            assertEquals(levels.get(i).balls.size(), level.getBallCount());
+            for(int b = 0; b < level.getBallCount(); b++){
+                assertEquals(GameConfig.colourOf(levels.get(i).balls.get(b)), level.getBallColour(b));
+            }
+        }
+        assertEquals(50, config.getCaptureScore(2));
+        assertEquals(25, config.getWrongHolePenalty(2));
+    }
+}
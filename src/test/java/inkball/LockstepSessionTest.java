@@ -0,0 +1,123 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tests two games kept in step over a loopback connection.
+ */
+public class LockstepSessionTest {
+
+    /**
+     * Connects a host and a guest on the loopback interface.
+     *
+     * @return the session of the host followed by the session of the guest
+     */
+    static LockstepSession[] connect() throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()){
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            CompletableFuture<LockstepSession> guest = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return LockstepSession.join(address);
+                } catch (Exception e){
+                    throw new RuntimeException(e);
+                }
+            });
+            LockstepSession host = LockstepSession.host(server, 42);
+            return new LockstepSession[] {host, guest.get()};
+        }
+    }
+
+    /**
+     * Creates the game of one side of a session.
+     *
+     * @param session the session of the side
+     * @return the game, reset to the first level
+     */
+    static App createApp(LockstepSession session){
+        App app = new App();
+        session.attach(app);
+        app.loadConfig();
+        app.reset();
+        return app;
+    }
+
+    /**
+     * Tests that both sides go through the same states while both players draw lines.
+     */
+    @Test
+    public void testStaysInStep() throws Exception {
+        LockstepSession[] sessions = connect();
+        App[] apps = {createApp(sessions[0]), createApp(sessions[1])};
+        assertEquals(sessions[0].seed, sessions[1].seed);
+        int frames = 30 * App.FPS;
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        int[] drawn = new int[2];
+        while((sessions[0].frame < frames || sessions[1].frame < frames) && System.nanoTime() < deadline){
+            for(int side = 0; side < 2; side++){
+                if(sessions[side].frame >= frames){
+                    continue;
+                }
+                // Each player draws a short line every second, at different places
+                int frame = sessions[side].frame;
+                if(frame % App.FPS == side * 7 && drawn[side] <= frame){
+                    int x = 100 + side * 250 + (frame * 13) % 100;
+                    int y = 150 + (frame * 7) % 300;
+                    apps[side].inkInput(App.INK_BEGIN, x, y);
+                    for(int i = 0; i < 10; i++){
+                        apps[side].inkInput(App.INK_POINT, x + 3 * i, y + 2 * i);
+                    }
+                    apps[side].inkInput(App.INK_END, x + 30, y + 20);
+                    drawn[side] = frame + 1;
+                }
+                sessions[side].step(apps[side]);
+            }
+        }
+        // Catching up can run one side a frame further, so let the other side reach it
+        sessions[0].maxCatchUp = 1;
+        sessions[1].maxCatchUp = 1;
+        while(sessions[0].frame != sessions[1].frame && System.nanoTime() < deadline){
+            int behind = sessions[0].frame < sessions[1].frame ? 0 : 1;
+            sessions[behind].step(apps[behind]);
+        }
+        assertTrue(sessions[0].frame >= frames);
+        assertEquals(sessions[0].frame, sessions[1].frame);
+        assertFalse(sessions[0].desynced);
+        assertFalse(sessions[1].desynced);
+        assertEquals(LockstepSession.stateHash(apps[0]), LockstepSession.stateHash(apps[1]));
+        assertTrue(apps[0].lines.size() + apps[0].totalScore + apps[0].levelScore != 0);
+        sessions[0].close();
+        sessions[1].close();
+    }
+
+    /**
+     * Tests that a difference between the two games is detected by the hash check.
+     */
+    @Test
+    public void testDetectsDesync() throws Exception {
+        LockstepSession[] sessions = connect();
+        App[] apps = {createApp(sessions[0]), createApp(sessions[1])};
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        boolean changed = false;
+        while(!sessions[0].desynced && !sessions[1].desynced && System.nanoTime() < deadline){
+            for(int side = 0; side < 2; side++){
+                sessions[side].step(apps[side]);
+            }
+            // Change the score on one side only, behind the back of the session
+            if(!changed && sessions[1].frame == 10){
+                apps[1].levelScore += 5;
+                changed = true;
+            }
+        }
+        assertTrue(sessions[0].desynced || sessions[1].desynced);
+        int frame = Math.max(sessions[0].desyncFrame, sessions[1].desyncFrame);
+        assertTrue(frame <= 10 + 2 * LockstepSession.HASH_INTERVAL);
+        sessions[0].close();
+        sessions[1].close();
+    }
+}
@@ -0,0 +1,69 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Tests splitting the collisions of the balls across threads.
+ */
+public class ParallelCollisionsTest {
+
+    /**
+     * Creates a crowded stress board.
+     *
+     * @param threads the threads sharing the collisions, 1 for none
+     * @return the game
+     */
+    private static App createApp(int threads){
+        StressTest stress = new StressTest();
+        stress.balls = 800;
+        stress.strokes = 60;
+        stress.threads = threads;
+        App app = new App();
+        app.clock = new VirtualClock();
+        app.random = new Random(stress.seed);
+        app.rewindBuffer = null;
+        stress.apply(app);
+        if(app.parallelCollisions != null){
+            // Split even the smallest boards into many slices
+            app.parallelCollisions.threshold = 1;
+            app.parallelCollisions.grain = 8;
+        }
+        app.reset();
+        stress.populate(app);
+        return app;
+    }
+
+    /**
+     * Tests that the split phases give the same balls, walls, lines, scores and events as the sequential loops.
+     */
+    @Test
+    public void testSameResultAsSequential(){
+        App sequential = createApp(1);
+        App parallel = createApp(4);
+        assertNull(sequential.parallelCollisions);
+        assertNotNull(parallel.parallelCollisions);
+        EventBus.Subscription sequentialEvents = sequential.events.subscribe();
+        EventBus.Subscription parallelEvents = parallel.events.subscribe();
+        int startLines = sequential.lines.size();
+        for(int tick = 0; tick < 200; tick++){
+            sequential.update();
+            parallel.update();
+            assertEquals(LockstepSession.stateHash(sequential), LockstepSession.stateHash(parallel), "tick " + tick);
+            for(int i = 0; i < sequential.ballsOnBoard.size(); i++){
+                assertEquals(sequential.balls.indexOf(sequential.ballsOnBoard.get(i)), parallel.balls.indexOf(parallel.ballsOnBoard.get(i)));
+            }
+            ArrayList<String> expected = new ArrayList<String>();
+            ArrayList<String> actual = new ArrayList<String>();
+            sequential.events.drain(sequentialEvents, e -> expected.add(e.type + ":" + e.color + ":" + e.target + ":" + e.x + ":" + e.y));
+            parallel.events.drain(parallelEvents, e -> actual.add(e.type + ":" + e.color + ":" + e.target + ":" + e.x + ":" + e.y));
+            assertEquals(expected, actual, "tick " + tick);
+        }
+        // The board was busy enough to remove lines and break bricks
+        assertTrue(sequential.lines.size() < startLines);
+        assertTrue(parallel.walls.size() < new World(parallel.config, 0).walls.size());
+    }
+}
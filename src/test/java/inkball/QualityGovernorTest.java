@@ -0,0 +1,65 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests lowering and raising the drawing quality with the frame times.
+ */
+public class QualityGovernorTest {
+
+    /**
+     * Tests that slow frames lower the quality one window at a time and fast frames raise it again.
+     */
+    @Test
+    public void testLowersAndRestoresQuality(){
+        QualityGovernor governor = new QualityGovernor();
+        long slow = QualityGovernor.FRAME_BUDGET * 3 / 2;
+        long fast = QualityGovernor.FRAME_BUDGET / 4;
+        for(int i = 0; i < App.FPS - 1; i++){
+            governor.record(slow);
+        }
+        assertEquals(QualityGovernor.LEVEL_FULL, governor.getLevel());
+        governor.record(slow);
+        assertEquals(QualityGovernor.LEVEL_REDUCED, governor.getLevel());
+        for(int i = 0; i < 10 * App.FPS; i++){
+            governor.record(slow);
+        }
+        assertEquals(QualityGovernor.LEVEL_MINIMAL, governor.getLevel());
+
+        // Frames near the budget keep the level where it is
+        for(int i = 0; i < 10 * App.FPS; i++){
+            governor.record(QualityGovernor.FRAME_BUDGET * 3 / 4);
+        }
+        assertEquals(QualityGovernor.LEVEL_MINIMAL, governor.getLevel());
+        for(int i = 0; i < 2 * App.FPS; i++){
+            governor.record(fast);
+        }
+        assertEquals(QualityGovernor.LEVEL_FULL, governor.getLevel());
+    }
+
+    /**
+     * Tests that running as fast as possible, which spends most of every frame simulating, does not
+     * keep the quality low when drawing is quick.
+     */
+    @Test
+    public void testUncappedSpeedRestoresQuality(){
+        App app = TestGames.createApp();
+        app.setSpeed(App.SPEEDS.length - 1);
+        assertEquals(0f, App.SPEEDS[app.speed]);
+        app.governor.setLevel(QualityGovernor.LEVEL_MINIMAL);
+        for(int i = 0; i < 3 * App.FPS; i++){
+            long tickStart = System.nanoTime();
+            app.tickFrame(QualityGovernor.FRAME_BUDGET * 3 / 4);
+            app.recordFrame(System.nanoTime() - tickStart, QualityGovernor.FRAME_BUDGET / 10);
+        }
+        assertTrue(app.lastFrameNanos >= QualityGovernor.FRAME_BUDGET * 3 / 4);
+        assertEquals(QualityGovernor.LEVEL_FULL, app.governor.getLevel());
+
+        // Slow drawing still lowers the quality
+        for(int i = 0; i < App.FPS; i++){
+            app.recordFrame(0, QualityGovernor.FRAME_BUDGET * 2);
+        }
+        assertEquals(QualityGovernor.LEVEL_REDUCED, app.governor.getLevel());
+    }
+}
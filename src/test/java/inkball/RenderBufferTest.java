@@ -0,0 +1,82 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests handing snapshots of the game from the simulation to the drawing of the frames.
+ */
+public class RenderBufferTest {
+
+    /**
+     * Tests that drawing gets the newest snapshot and keeps it until a newer one is published.
+     */
+    @Test
+    public void testLatestSnapshot(){
+        App app = TestGames.createApp(11);
+        RenderBuffer buffer = new RenderBuffer();
+        assertNull(buffer.latest());
+        app.update();
+        buffer.publish(app);
+        app.update();
+        buffer.publish(app);
+        RenderSnapshot frame = buffer.latest();
+        assertEquals(2, frame.frameNumber);
+        assertSame(frame, buffer.latest());
+        // Publishing never writes into the snapshot being drawn
+        for(int i = 0; i < 5; i++){
+            app.update();
+            buffer.publish(app);
+            assertEquals(2, frame.frameNumber);
+        }
+        assertEquals(7, buffer.latest().frameNumber);
+    }
+
+    /**
+     * Tests that a snapshot holds the visible state of the game.
+     */
+    @Test
+    public void testCapture(){
+        App app = TestGames.createApp(11);
+        app.applyInput(0, App.INK_BEGIN, 0, 0);
+        for(int i = 0; i < 5; i++){
+            app.applyInput(0, App.INK_POINT, 100 + i, 200);
+        }
+        app.applyInput(0, App.INK_END, 0, 0);
+        RenderSnapshot frame = new RenderSnapshot();
+        frame.capture(app);
+        assertEquals(app.walls.size(), frame.wallCount);
+        assertEquals(1, frame.lineCount);
+        assertEquals(5, frame.lineStart[1]);
+        assertEquals(104f, frame.pointX[4]);
+        assertEquals(Math.min(5, app.ballQueue.size()), frame.queueCount);
+        assertEquals(app.totalScore + app.levelScore, frame.score);
+    }
+
+    /**
+     * Tests that the simulation thread applies the queued actions and keeps publishing snapshots.
+     */
+    @Test
+    public void testSimulationThread() throws Exception {
+        App app = TestGames.createApp(11);
+        SimulationThread simulation = new SimulationThread(app, 300);
+        app.simulation = simulation;
+        simulation.start();
+        app.inkInput(App.INK_BEGIN, 0, 0);
+        for(int i = 0; i < 10; i++){
+            app.inkInput(App.INK_POINT, 300 + i, 100);
+        }
+        app.inkInput(App.INK_END, 0, 0);
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        RenderSnapshot frame = app.renderBuffer.latest();
+        while((frame == null || frame.frameNumber < 30) && System.nanoTime() < deadline){
+            Thread.sleep(5);
+            frame = app.renderBuffer.latest();
+        }
+        simulation.stop();
+        assertNotNull(frame);
+        assertTrue(frame.frameNumber >= 30);
+        assertEquals(1, frame.lineCount);
+        assertEquals(10, frame.lineStart[1]);
+    }
+}
@@ -0,0 +1,118 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+
+/**
+ * Tests rewinding the game to earlier states of the level.
+ */
+public class RewindBufferTest {
+
+    /**
+     * Saves the position of every ball and the score of the game.
+     *
+     * @param app the game
+     * @return the positions of the balls followed by the score and the number of balls on the board
+     */
+    static float[] state(App app){
+        float[] state = new float[2 * app.balls.size() + 3];
+        for(int i = 0; i < app.balls.size(); i++){
+            state[2 * i] = app.balls.get(i).getXF();
+            state[2 * i + 1] = app.balls.get(i).getYF();
+        }
+        state[state.length - 3] = app.levelScore;
+        state[state.length - 2] = app.ballsOnBoard.size();
+        state[state.length - 1] = app.ballQueue.size();
+        return state;
+    }
+
+    /**
+     * Tests that rewinding one second restores the balls, the score and the lines of that moment.
+     */
+    @Test
+    public void testRewindOneSecond(){
+        App app = TestGames.createApp();
+        InkStroke line = new InkStroke();
+        float[] saved = null;
+        int savedLines = 0;
+        int savedTime = 0;
+        for(int tick = 1; tick <= 300; tick++){
+            app.update();
+            if(tick == 271){
+                saved = state(app);
+                savedLines = app.lines.size();
+                savedTime = app.millis() - app.starttime;
+            }
+            // Draw a line after the saved state, which the rewind has to remove
+            if(tick == 280){
+                line.add(300, 300);
+                line.add(310, 310);
+                app.lines.add(line);
+            }
+        }
+        assertTrue(app.rewind(App.FPS));
+        assertArrayEquals(saved, state(app));
+        assertEquals(savedLines, app.lines.size());
+        assertEquals(savedTime, app.millis() - app.starttime);
+    }
+
+    /**
+     * Tests that rewinding repeatedly goes further back until the limit is reached.
+     */
+    @Test
+    public void testRewindLimit(){
+        App app = TestGames.createApp();
+        for(int tick = 0; tick < 20 * App.FPS; tick++){
+            app.update();
+        }
+        assertEquals(App.REWIND_SECONDS, app.rewindBuffer.secondsAvailable(), 0.5f);
+        int rewinds = 0;
+        while(app.rewind(App.FPS)){
+            rewinds++;
+        }
+        assertTrue(rewinds >= App.REWIND_SECONDS - 1 && rewinds <= App.REWIND_SECONDS + 1);
+        // The game carries on from the oldest state
+        app.update();
+        assertTrue(app.rewind(App.FPS));
+    }
+
+    /**
+     * Tests that a restarted level cannot be rewound into the previous attempt.
+     */
+    @Test
+    public void testResetClearsHistory(){
+        App app = TestGames.createApp();
+        for(int tick = 0; tick < 5 * App.FPS; tick++){
+            app.update();
+        }
+        app.reset();
+        assertFalse(app.rewind(App.FPS));
+    }
+
+    /**
+     * Tests that broken bricks and the hits on them are restored.
+     */
+    @Test
+    public void testRestoreBricks(){
+        App app = TestGames.createApp();
+        Wall brick = new Wall(5 * App.CELLSIZE, 5 * App.CELLSIZE + App.TOPBAR, 1, true);
+        app.walls.add(0, brick);
+        app.board[5][5].setGameObject(brick);
+        app.update();
+        app.rewindBuffer = new RewindBuffer(App.REWIND_SECONDS * App.FPS, App.FPS / 3);
+        brick.setNumHits(2);
+        app.update();
+        // Break the brick after the snapshot
+        brick.hit(app);
+        for(int tick = 0; tick < App.FPS; tick++){
+            app.update();
+        }
+        assertFalse(app.walls.contains(brick));
+        assertTrue(app.rewind(App.FPS));
+        assertSame(brick, app.walls.get(0));
+        assertSame(brick, app.board[5][5].getGameObject());
+        assertEquals(2, brick.getNumHits());
+    }
+}
@@ -0,0 +1,115 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Tests the session recording format by recording games played without a window and reading them back.
+ */
+public class SessionRecorderTest {
+
+    static final int TICKS = 60 * App.FPS;
+
+    /**
+     * Plays the first level for a minute with a line drawn every few seconds, recording every frame.
+     *
+     * @param path      the file to record into
+     * @param positions the x and y position of every ball after every frame, filled by this method
+     * @return the recorder after it has been closed
+     */
+    static SessionRecorder play(Path path, ArrayList<float[]> positions) throws Exception {
+        App app = new App();
+        app.clock = new VirtualClock();
+        app.random = new Random(3);
+        app.loadConfig();
+        app.reset();
+        app.recorder = new SessionRecorder(path);
+        Random lines = new Random(5);
+        for(int tick = 0; tick < TICKS; tick++){
+            if(tick % 90 == 0){
+                InkStroke line = new InkStroke();
+                float x = 100 + lines.nextFloat() * 400;
+                float y = 150 + lines.nextFloat() * 400;
+                for(int i = 0; i < 20; i++){
+                    line.add(x + 2 * i, y + i);
+                }
+                app.lines.add(line);
+            }
+            app.update();
+            float[] frame = new float[2 * app.balls.size()];
+            for(int i = 0; i < app.balls.size(); i++){
+                frame[2 * i] = app.balls.get(i).getXF();
+                frame[2 * i + 1] = app.balls.get(i).getYF();
+            }
+            positions.add(frame);
+        }
+        SessionRecorder recorder = app.recorder;
+        recorder.close();
+        return recorder;
+    }
+
+    /**
+     * Tests that reading the recording frame by frame gives back the position of every ball on the board.
+     */
+    @Test
+    public void testReadBack(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("session.inkr");
+        ArrayList<float[]> positions = new ArrayList<float[]>();
+        play(file, positions);
+        try (SessionReader reader = new SessionReader(file)){
+            int frames = 0;
+            while(reader.next()){
+                float[] expected = positions.get(reader.tick - 1);
+                for(int i = 0; i < reader.ballCount; i++){
+                    if(reader.ballStatus[i] == 1){
+                        assertEquals(expected[2 * i], reader.ballX[i], 0.05f);
+                        assertEquals(expected[2 * i + 1], reader.ballY[i], 0.05f);
+                    }
+                }
+                frames++;
+            }
+            assertEquals(TICKS, frames);
+        }
+    }
+
+    /**
+     * Tests that seeking through the keyframe index lands on the same state as reading from the start.
+     */
+    @Test
+    public void testSeek(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("session.inkr");
+        ArrayList<float[]> positions = new ArrayList<float[]>();
+        play(file, positions);
+        try (SessionReader reader = new SessionReader(file)){
+            assertTrue(reader.keyframeCount() >= TICKS / (10 * App.FPS));
+            for(int target: new int[] {TICKS - 1, 1, 777, 301, 1200}){
+                assertTrue(reader.seek(target));
+                assertEquals(target, reader.tick);
+                float[] expected = positions.get(target - 1);
+                for(int i = 0; i < reader.ballCount; i++){
+                    if(reader.ballStatus[i] == 1){
+                        assertEquals(expected[2 * i], reader.ballX[i], 0.05f);
+                        assertEquals(expected[2 * i + 1], reader.ballY[i], 0.05f);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that a typical level is recorded at around a kilobyte per second of play or less.
+     */
+    @Test
+    public void testSize(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("session.inkr");
+        play(file, new ArrayList<float[]>());
+        double bytesPerSecond = Files.size(file) / (TICKS / (double) App.FPS);
+        assertTrue(bytesPerSecond < 1024, "recorded " + bytesPerSecond + " bytes per second");
+    }
+}
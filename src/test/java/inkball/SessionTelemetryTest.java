@@ -0,0 +1,104 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests writing the telemetry of a session to compressed log files.
+ */
+public class SessionTelemetryTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Reads the lines of every log file in the folder, in the order the files were written.
+     */
+    private List<String> readLines() throws IOException {
+        List<Path> files;
+        try(Stream<Path> list = Files.list(folder)){
+            files = list.sorted().collect(Collectors.toList());
+        }
+        List<String> lines = new ArrayList<String>();
+        for(Path file: files){
+            try(BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.US_ASCII))){
+                String line;
+                while((line = reader.readLine()) != null){
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Tests that every record is written once and in order, across several rotated files.
+     */
+    @Test
+    public void testRecordsWrittenInOrderAcrossFiles() throws IOException {
+        SessionTelemetry telemetry = new SessionTelemetry(folder, 8192);
+        telemetry.rotateBytes = 4096;
+        for(int i = 0; i < 5000; i++){
+            telemetry.log(SessionTelemetry.INK, i, i % 5, i);
+        }
+        telemetry.close();
+
+        List<String> lines = readLines();
+        assertEquals(0, telemetry.getDropped());
+        assertEquals(5000, lines.size());
+        try(Stream<Path> list = Files.list(folder)){
+            assertTrue(list.count() > 1);
+        }
+        int last = -1;
+        for(String line: lines){
+            String[] fields = line.split(",");
+            assertEquals(6, fields.length);
+            assertEquals(telemetry.getSession(), fields[1]);
+            assertEquals("ink", fields[3]);
+            int tick = Integer.parseInt(fields[2]);
+            assertEquals(last + 1, tick);
+            assertEquals(fields[2], fields[5]);
+            last = tick;
+        }
+    }
+
+    /**
+     * Tests that a game logs its level start, its captures and misses, its pauses and its lines.
+     */
+    @Test
+    public void testGameLogsSession() throws IOException {
+        App app = TestGames.createApp();
+        app.telemetry = new SessionTelemetry(folder);
+        app.applyInput(0, App.INPUT_RESTART, 0, 0);
+        app.applyInput(0, App.INK_BEGIN, 0, 0);
+        app.applyInput(0, App.INK_POINT, 100, 200);
+        app.applyInput(0, App.INK_POINT, 150, 200);
+        app.applyInput(0, App.INK_END, 0, 0);
+        for(int tick = 0; tick < 60 * App.FPS && !app.paused; tick++){
+            app.update();
+        }
+        app.applyInput(0, App.INPUT_PAUSE, 0, 0);
+        app.telemetry.close();
+
+        List<String> types = new ArrayList<String>();
+        for(String line: readLines()){
+            types.add(line.split(",")[3]);
+        }
+        assertEquals(List.of("restart", "level_start", "ink"), types.subList(0, 3));
+        assertTrue(types.contains("capture") || types.contains("miss"));
+        assertEquals("pause", types.get(types.size() - 1));
+    }
+}
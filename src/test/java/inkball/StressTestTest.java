@@ -0,0 +1,65 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+/**
+ * Tests setting up the generated level of the stress test.
+ */
+public class StressTestTest {
+
+    /**
+     * Creates a game set up by a stress test, as the headless run does.
+     */
+    private static App createApp(StressTest stress){
+        App app = new App();
+        app.clock = new VirtualClock();
+        app.random = new Random(stress.seed);
+        stress.apply(app);
+        app.reset();
+        stress.populate(app);
+        return app;
+    }
+
+    /**
+     * Tests that the game has the requested holes, spawners, balls and lines, and that the same seed
+     * sets up the same game.
+     */
+    @Test
+    public void testLevelIsReproducible(){
+        StressTest stress = StressTest.fromArgs(new String[] {"--stress", "--seed=3", "--holes=5", "--spawners=3",
+            "--balls=300", "--queued=20", "--strokes=7", "--threads=1"});
+        App first = createApp(stress);
+        assertEquals(5, first.holes.size());
+        assertEquals(3, first.spawners.size());
+        assertEquals(300, first.ballsOnBoard.size());
+        assertEquals(20, first.ballQueue.size());
+        assertEquals(7, first.lines.size());
+
+        App second = createApp(stress);
+        assertEquals(first.walls.size(), second.walls.size());
+        for(int i = 0; i < first.balls.size(); i++){
+            assertEquals(first.balls.get(i).getXF(), second.balls.get(i).getXF());
+            assertEquals(first.balls.get(i).getYF(), second.balls.get(i).getYF());
+            assertEquals(first.balls.get(i).getVX(), second.balls.get(i).getVX());
+            assertEquals(first.balls.get(i).getColor(), second.balls.get(i).getColor());
+        }
+        for(int tick = 0; tick < App.FPS * 2; tick++){
+            first.update();
+            second.update();
+        }
+        assertEquals(first.ballsOnBoard.size(), second.ballsOnBoard.size());
+        assertEquals(first.levelScore, second.levelScore);
+    }
+
+    /**
+     * Tests that an unknown argument is reported.
+     */
+    @Test
+    public void testUnknownArgument(){
+        assertNull(StressTest.fromArgs(new String[] {"--balls=10"}));
+        assertThrows(IllegalArgumentException.class, () -> StressTest.fromArgs(new String[] {"--stress", "--colours=3"}));
+    }
+}
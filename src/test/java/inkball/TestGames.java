@@ -0,0 +1,36 @@
+package inkball;
+
+import java.util.Random;
+
+/**
+ * Creates the games played by the tests without a window.
+ */
+final class TestGames {
+
+    private TestGames(){
+    }
+
+    /**
+     * Creates a game of the first level on a virtual clock.
+     *
+     * @return the game
+     */
+    static App createApp(){
+        return createApp(7);
+    }
+
+    /**
+     * Creates a game of the first level on a virtual clock.
+     *
+     * @param seed the seed of the spawn positions and ball velocities
+     * @return the game
+     */
+    static App createApp(long seed){
+        App app = new App();
+        app.clock = new VirtualClock();
+        app.random = new Random(seed);
+        app.loadConfig();
+        app.reset();
+        return app;
+    }
+}
@@ -0,0 +1,96 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+/**
+ * Tests playing whole levels without a window on a clock moved by the simulated frames.
+ */
+public class VirtualClockTest {
+
+    /**
+     * Tests that the first level spawns its queued balls on time and runs out of time at its time limit.
+     */
+    @Test
+    public void testFullLevelTimesOut(){
+        App app = TestGames.createApp();
+        int limit = app.config.getLevel(0).getTime() * App.FPS;
+        int firstSpawn = -1;
+        int frames = 0;
+        while(!app.paused && frames <= limit){
+            int queued = app.ballQueue.size();
+            app.update();
+            frames++;
+            if(firstSpawn < 0 && app.ballQueue.size() < queued){
+                firstSpawn = frames;
+            }
+        }
+        assertEquals(app.config.getLevel(0).getSpawnInterval() * App.FPS, firstSpawn);
+        assertEquals(limit, frames);
+        assertTrue(app.gameOver);
+        assertFalse(app.levelUp);
+        assertEquals(app.config.getLevel(0).getTime() * 1000, app.millis());
+    }
+
+    /**
+     * Tests that the time spent paused is not taken from the time limit of the level.
+     */
+    @Test
+    public void testPauseKeepsTimeLeft(){
+        App app = TestGames.createApp();
+        VirtualClock clock = (VirtualClock) app.clock;
+        for(int i = 0; i < App.FPS; i++){
+            app.update();
+        }
+        app.pause();
+        clock.advance(100 * App.FPS);
+        app.pause();
+        int frames = App.FPS;
+        while(!app.paused){
+            app.update();
+            frames++;
+        }
+        assertEquals(app.config.getLevel(0).getTime() * App.FPS, frames);
+        assertEquals(100 * App.FPS + frames, clock.getFrames());
+    }
+
+    /**
+     * Tests that changing the speed simulates more or fewer frames per frame drawn and speeds up the timers with them.
+     */
+    @Test
+    public void testSpeedsScaleTimers(){
+        App app = new App();
+        app.random = new Random(7);
+        app.loadConfig();
+        app.reset();
+        int queued = app.ballQueue.size();
+
+        // A quarter of a frame is simulated per frame drawn
+        app.setSpeed(0);
+        assertTrue(app.clock instanceof VirtualClock);
+        int ticks = 0;
+        for(int i = 0; i < 8; i++){
+            ticks += app.tickFrame(0);
+        }
+        assertEquals(2, ticks);
+        assertEquals(2, app.tickCount);
+
+        // At 8x, the spawn interval passes after an eighth of its frames drawn
+        app.setSpeed(3);
+        int drawn = 0;
+        while(app.ballQueue.size() == queued && drawn < 100){
+            assertEquals(8, app.tickFrame(0));
+            drawn++;
+        }
+        assertEquals(app.config.getLevel(0).getSpawnInterval() * App.FPS / 8 + 1, drawn, 1);
+
+        // Normal speed goes back to the wall clock without the time jumping back
+        int before = app.millis();
+        app.setSpeed(App.SPEED_NORMAL);
+        assertTrue(app.clock instanceof SystemClock);
+        assertTrue(app.millis() >= before);
+        assertEquals(1, app.tickFrame(0));
+    }
+}
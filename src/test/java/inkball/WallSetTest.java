@@ -0,0 +1,62 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+
+/**
+ * Tests the ordered store of the walls of a level.
+ */
+public class WallSetTest {
+
+    /**
+     * Tests that removing walls keeps the remaining walls in their original order.
+     */
+    @Test
+    public void testRemoveKeepsOrder(){
+        WallSet walls = new WallSet();
+        ArrayList<Wall> expected = new ArrayList<Wall>();
+        for(int i = 0; i < 200; i++){
+            Wall wall = new Wall(i * App.CELLSIZE, App.TOPBAR, 0, true);
+            walls.add(wall);
+            expected.add(wall);
+        }
+        for(int i = 0; i < 200; i += 3){
+            assertTrue(walls.remove(expected.get(i)));
+            assertFalse(walls.contains(expected.get(i)));
+        }
+        expected.removeIf(w -> (w.getX() / App.CELLSIZE) % 3 == 0);
+        assertEquals(expected.size(), walls.size());
+        // Iterating skips the gaps, and indexing closes them up
+        assertEquals(expected, new ArrayList<Wall>(walls));
+        for(int i = 0; i < expected.size(); i++){
+            assertSame(expected.get(i), walls.get(i));
+        }
+        assertFalse(walls.remove(new Wall(0, 0, 0, true)));
+    }
+
+    /**
+     * Tests that walls can be inserted, cleared and added again.
+     */
+    @Test
+    public void testInsertAndClear(){
+        WallSet walls = new WallSet();
+        Wall a = new Wall(0, App.TOPBAR, 0, false);
+        Wall b = new Wall(App.CELLSIZE, App.TOPBAR, 0, false);
+        Wall c = new Wall(2 * App.CELLSIZE, App.TOPBAR, 0, false);
+        walls.add(a);
+        walls.add(c);
+        walls.remove(a);
+        walls.add(0, b);
+        assertSame(b, walls.get(0));
+        assertSame(c, walls.get(1));
+        assertTrue(walls.contains(c));
+        walls.clear();
+        assertEquals(0, walls.size());
+        assertFalse(walls.contains(c));
+        walls.add(a);
+        assertTrue(walls.contains(a));
+        assertEquals(1, walls.size());
+    }
+}
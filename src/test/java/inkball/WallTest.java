@@ -0,0 +1,78 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+/**
+ * Tests the collisions of balls with walls and bricks.
+ */
+public class WallTest {
+
+    /**
+     * Plays a generated board full of walls and bricks without a window.
+     *
+     * @param seed  the seed of the board and the balls
+     * @param ticks the number of frames to play
+     * @return the hash of the game state at the end
+     */
+    static long play(long seed, int ticks){
+        StressTest stress = new StressTest();
+        stress.seed = seed;
+        stress.wallDensity = 0.3f;
+        stress.brickRatio = 0.6f;
+        stress.balls = 150;
+        stress.queuedBalls = 20;
+        stress.strokes = 0;
+        App app = new App();
+        app.clock = new VirtualClock();
+        app.random = new Random(seed);
+        stress.apply(app);
+        app.reset();
+        stress.populate(app);
+        for(int tick = 0; tick < ticks; tick++){
+            app.update();
+        }
+        return LockstepSession.stateHash(app);
+    }
+
+    /**
+     * Tests that the corner and side rules still give the states recorded before the neighbour
+     * masks were introduced.
+     */
+    @Test
+    public void testRecordedTraces(){
+        assertEquals(3328362401549275201L, play(1, 3000));
+        assertEquals(2481902521142093249L, play(2, 3000));
+        assertEquals(3175150384221118675L, play(3, 3000));
+    }
+
+    /**
+     * Tests that the neighbour masks of the walls around a broken brick are updated.
+     */
+    @Test
+    public void testMaskPatchedWhenBrickBreaks(){
+        App app = new App();
+        app.clock = new VirtualClock();
+        app.loadConfig();
+        app.reset();
+        Wall wall = new Wall(5 * App.CELLSIZE, 5 * App.CELLSIZE + App.TOPBAR, 0, false);
+        Wall brick = new Wall(6 * App.CELLSIZE, 6 * App.CELLSIZE + App.TOPBAR, 0, true);
+        app.board[5][5].setGameObject(wall);
+        app.board[6][6].setGameObject(brick);
+        app.walls.add(wall);
+        app.walls.add(brick);
+        app.updateWallNeighbours(5, 5);
+        app.updateWallNeighbours(6, 6);
+        assertEquals(Wall.NEIGHBOUR_SE, wall.getNeighbours() & Wall.NEIGHBOUR_SE);
+        assertEquals(Wall.NEIGHBOUR_NW, brick.getNeighbours() & Wall.NEIGHBOUR_NW);
+
+        brick.setNumHits(Wall.BRICK_HITS - 1);
+        brick.hit(app);
+        app.paused = false;
+        app.update();
+        assertFalse(app.walls.contains(brick));
+        assertEquals(0, wall.getNeighbours() & Wall.NEIGHBOUR_SE);
+    }
+}
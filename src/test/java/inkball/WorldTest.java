@@ -0,0 +1,73 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+/**
+ * Tests building the world of the next level in the background during the score conversion.
+ */
+public class WorldTest {
+
+    /**
+     * Tests that a level built during the score conversion starts exactly like one built when it is reached.
+     */
+    @Test
+    public void testPreloadedLevelMatchesDirectBuild(){
+        App direct = TestGames.createApp();
+        direct.currentLevel = 1;
+        direct.reset();
+
+        App preloaded = TestGames.createApp();
+        for(Ball b: preloaded.balls){
+            b.absorb();
+        }
+        // The first check starts the conversion and the build of the next level
+        preloaded.checkWin();
+        assertTrue(preloaded.levelUp);
+        preloaded.remainingTime = 0;
+        preloaded.checkWin();
+
+        assertEquals(1, preloaded.currentLevel);
+        assertFalse(preloaded.levelUp);
+        assertEquals(direct.walls.size(), preloaded.walls.size());
+        assertEquals(direct.holes.size(), preloaded.holes.size());
+        assertEquals(direct.spawners.size(), preloaded.spawners.size());
+        assertEquals(direct.ballQueue.size(), preloaded.ballQueue.size());
+        assertEquals(direct.ballsOnBoard.size(), preloaded.ballsOnBoard.size());
+        for(int i = 0; i < direct.ballsOnBoard.size(); i++){
+            Ball expected = direct.ballsOnBoard.get(i);
+            Ball actual = preloaded.ballsOnBoard.get(i);
+            assertEquals(expected.getXF(), actual.getXF());
+            assertEquals(expected.getYF(), actual.getYF());
+            assertEquals(expected.getVX(), actual.getVX());
+            assertEquals(expected.getVY(), actual.getVY());
+        }
+        for(int row = 0; row < App.BOARD_HEIGHT; row++){
+            for(int col = 0; col < App.BOARD_WIDTH; col++){
+                assertEquals(direct.board[row][col].getType(), preloaded.board[row][col].getType());
+            }
+        }
+        // Both games go on to draw the same random numbers
+        assertEquals(direct.random.nextLong(), preloaded.random.nextLong());
+    }
+
+    /**
+     * Tests that a world is not used for a level other than the one it was built for.
+     */
+    @Test
+    public void testRestartIgnoresPreloadedLevel(){
+        App app = TestGames.createApp();
+        int queued = app.ballQueue.size();
+        for(Ball b: app.balls){
+            b.absorb();
+        }
+        app.checkWin();
+        // Restarting the level during the conversion rebuilds the same level
+        app.reset();
+        assertEquals(0, app.currentLevel);
+        assertEquals(queued, app.ballQueue.size());
+        assertEquals(new World(app.config, 0).walls.size(), app.walls.size());
+    }
+}